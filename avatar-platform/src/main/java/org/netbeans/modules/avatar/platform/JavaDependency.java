@@ -19,6 +19,7 @@
 package org.netbeans.modules.avatar.platform;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -136,10 +137,11 @@ final class JavaDependency {
                 javaInfo = new LinkedHashMap<>(javaInfo);
             }
             Object o = javaInfo.get("dependencies"); //NOI18N
-            if (o == null && !(o instanceof List<?>)) {
+            if (!(o instanceof List<?>)) {
                 o = new LinkedList<>();
             }
-            List<?> l = (List<?>) o;
+            // The metadata's lists are immutable - edit a copy
+            List<?> l = new ArrayList<>((List<?>) o);
             for (Iterator<?> it = l.iterator(); it.hasNext();) {
                 Object d = it.next();
                 if (d instanceof String) {
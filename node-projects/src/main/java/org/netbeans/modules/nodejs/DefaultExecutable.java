@@ -143,6 +143,7 @@ public final class DefaultExecutable extends NodeJSExecutable {
             location = null;
         }
         preferences().put( NODE_EXE_KEY, location );
+        Npm.getDefault().clearCachedRoots();
     }
 
     public void stopRunningProcesses ( Lookup.Provider p ) {
@@ -0,0 +1,363 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs;
+
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
+
+/**
+ * Rewrites only the top-level members of a JSON object which actually
+ * changed, leaving the key order, whitespace and comments of everything
+ * else exactly as the user wrote them, so that saving package.json does not
+ * turn a one-line edit into a diff of the whole file.  Values which do need
+ * writing keep the order of their keys, rather than the sorted order the
+ * shared writer uses, and are indented to match the file.
+ *
+ * @author Tim Boudreau
+ */
+final class JsonSplicer {
+    private static final ObjectWriter UNSORTED = ObjectMapperProvider.writer()
+            .without( SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS );
+
+    private JsonSplicer () {
+        throw new AssertionError();
+    }
+
+    /**
+     * Serialize a whole tree, for when there is nothing to splice into.
+     */
+    static String write ( Map<String, Object> tree ) throws IOException {
+        return UNSORTED.writeValueAsString( tree ) + '\n';
+    }
+
+    /**
+     * Apply the differences between two trees to the text the first was
+     * parsed from.
+     *
+     * @param text The original text
+     * @param before The tree parsed from the original text
+     * @param after The tree to write
+     * @return The new text, or null if the original is not a JSON object
+     * whose top-level members can be located and matched to
+     * <code>before</code>, in which case the caller should write the whole
+     * tree instead
+     */
+    static String splice ( String text, Map<String, Object> before, Map<String, Object> after ) throws IOException {
+        Scanner scanner = new Scanner( text );
+        List<Member> members = scanner.scan();
+        if (members == null || members.isEmpty() || members.size() != before.size()) {
+            return null;
+        }
+        Set<String> seen = new HashSet<>();
+        for (Member m : members) {
+            if (!before.containsKey( m.key ) || !seen.add( m.key )) {
+                return null;
+            }
+        }
+        String lineSeparator = text.contains( "\r\n" ) ? "\r\n" : "\n"; //NOI18N
+        Member first = members.get( 0 );
+        String indent = indentOf( text, first.start );
+        if (indent == null || indent.isEmpty()) {
+            // One-line object - no layout worth preserving
+            return null;
+        }
+        ObjectWriter writer = UNSORTED.with( new DefaultPrettyPrinter()
+                .withObjectIndenter( new DefaultIndenter( indent, lineSeparator ) ) );
+        String separator = text.substring( first.keyEnd, first.valueStart );
+
+        List<Edit> edits = new ArrayList<>();
+        int lastKept = -1;
+        for (int i = 0; i < members.size(); i++) {
+            Member m = members.get( i );
+            if (after.containsKey( m.key )) {
+                lastKept = i;
+                Object value = after.get( m.key );
+                if (!Objects.equals( before.get( m.key ), value )) {
+                    // A member sharing a line with the one before it has no
+                    // indent of its own; use the first member's
+                    String memberIndent = indentOf( text, m.start );
+                    edits.add( new Edit( m.valueStart, m.valueEnd,
+                            render( writer, value, memberIndent == null ? indent : memberIndent, lineSeparator ) ) );
+                }
+            }
+        }
+        if (lastKept < 0) {
+            return null;
+        }
+        // Removed members take the comma and the rest of their line along,
+        // leaving comments above the next member; those after the last kept
+        // one take the comma before them instead
+        for (int i = 0; i < lastKept; i++) {
+            Member m = members.get( i );
+            if (!after.containsKey( m.key )) {
+                edits.add( new Edit( m.start, lineEnd( text, m.end, members.get( i + 1 ).start ), "" ) );
+            }
+        }
+        StringBuilder added = new StringBuilder();
+        for (Map.Entry<String, Object> e : after.entrySet()) {
+            if (!before.containsKey( e.getKey() )) {
+                added.append( ',' ).append( lineSeparator ).append( indent )
+                        .append( UNSORTED.writeValueAsString( e.getKey() ) )
+                        .append( separator )
+                        .append( render( writer, e.getValue(), indent, lineSeparator ) );
+            }
+        }
+        int tailStart = members.get( lastKept ).valueEnd;
+        int tailEnd = members.get( members.size() - 1 ).valueEnd;
+        if (tailEnd > tailStart || added.length() > 0) {
+            edits.add( new Edit( tailStart, tailEnd, added.toString() ) );
+        }
+        if (edits.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder( text );
+        // Edits never overlap; apply from the end so offsets stay valid
+        edits.sort( ( a, b ) -> Integer.compare( b.start, a.start ) );
+        for (Edit edit : edits) {
+            result.replace( edit.start, edit.end, edit.replacement );
+        }
+        return result.toString();
+    }
+
+    private static String render ( ObjectWriter writer, Object value, String indent, String lineSeparator ) throws IOException {
+        // JSON strings cannot contain raw line breaks, so every one is layout
+        return writer.writeValueAsString( value ).replace( lineSeparator, lineSeparator + indent );
+    }
+
+    /**
+     * Find where the whitespace after an offset ends, including the line
+     * break and the next line's indent if only whitespace follows it.
+     */
+    private static int lineEnd ( String text, int offset, int limit ) {
+        int result = offset;
+        while ( result < limit && (text.charAt( result ) == ' ' || text.charAt( result ) == '\t') ) {
+            result++;
+        }
+        if (result < limit && text.charAt( result ) == '\r') {
+            result++;
+        }
+        if (result < limit && text.charAt( result ) == '\n') {
+            result++;
+            while ( result < limit && (text.charAt( result ) == ' ' || text.charAt( result ) == '\t') ) {
+                result++;
+            }
+            return result;
+        }
+        return result < limit && Character.isWhitespace( text.charAt( result ) ) ? result : offset;
+    }
+
+    /**
+     * Get the whitespace between the start of the line and an offset, or
+     * null if something other than whitespace precedes it on its line.
+     */
+    private static String indentOf ( String text, int offset ) {
+        int lineStart = offset;
+        while ( lineStart > 0 && text.charAt( lineStart - 1 ) != '\n' ) {
+            lineStart--;
+            if (!Character.isWhitespace( text.charAt( lineStart ) )) {
+                return null;
+            }
+        }
+        return text.substring( lineStart, offset );
+    }
+
+    static final class Member {
+        final String key;
+        final int start;
+        final int keyEnd;
+        final int valueStart;
+        final int valueEnd;
+        final int end;
+
+        Member ( String key, int start, int keyEnd, int valueStart, int valueEnd, int end ) {
+            this.key = key;
+            this.start = start;
+            this.keyEnd = keyEnd;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+            this.end = end;
+        }
+    }
+
+    private static final class Edit {
+        final int start;
+        final int end;
+        final String replacement;
+
+        Edit ( int start, int end, String replacement ) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * Locates the members of a top-level object without building values.
+     * Understands the comments the shared reader allows, but not unquoted
+     * keys, for which it gives up.
+     */
+    static final class Scanner {
+        private final String text;
+        private int pos;
+
+        Scanner ( String text ) {
+            this.text = text;
+        }
+
+        /**
+         * @return The members in file order, or null if the text is not a
+         * single object this class understands
+         */
+        List<Member> scan () throws IOException {
+            List<Member> result = new ArrayList<>();
+            skipWhitespace();
+            if (!consume( '{' )) {
+                return null;
+            }
+            skipWhitespace();
+            if (consume( '}' )) {
+                return atEnd() ? result : null;
+            }
+            for (;;) {
+                skipWhitespace();
+                int start = pos;
+                if (!skipString()) {
+                    return null;
+                }
+                int keyEnd = pos;
+                String key = ObjectMapperProvider.reader( String.class ).readValue( text.substring( start, keyEnd ) );
+                skipWhitespace();
+                if (!consume( ':' )) {
+                    return null;
+                }
+                skipWhitespace();
+                int valueStart = pos;
+                if (!skipValue()) {
+                    return null;
+                }
+                int valueEnd = pos;
+                skipWhitespace();
+                if (consume( '}' )) {
+                    result.add( new Member( key, start, keyEnd, valueStart, valueEnd, valueEnd ) );
+                    return atEnd() ? result : null;
+                } else if (!consume( ',' )) {
+                    return null;
+                }
+                result.add( new Member( key, start, keyEnd, valueStart, valueEnd, pos ) );
+            }
+        }
+
+        private boolean atEnd () {
+            skipWhitespace();
+            return pos == text.length();
+        }
+
+        private boolean consume ( char c ) {
+            if (pos < text.length() && text.charAt( pos ) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace () {
+            while ( pos < text.length() ) {
+                char c = text.charAt( pos );
+                if (Character.isWhitespace( c )) {
+                    pos++;
+                } else if (text.startsWith( "//", pos )) { //NOI18N
+                    int end = text.indexOf( '\n', pos );
+                    pos = end < 0 ? text.length() : end + 1;
+                } else if (text.startsWith( "/*", pos )) { //NOI18N
+                    int end = text.indexOf( "*/", pos + 2 ); //NOI18N
+                    pos = end < 0 ? text.length() : end + 2;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private boolean skipString () {
+            if (!consume( '"' )) {
+                return false;
+            }
+            while ( pos < text.length() ) {
+                char c = text.charAt( pos++ );
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '"') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean skipValue () {
+            if (pos >= text.length()) {
+                return false;
+            }
+            char c = text.charAt( pos );
+            if (c == '"') {
+                return skipString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                while ( pos < text.length() ) {
+                    c = text.charAt( pos );
+                    if (c == '"') {
+                        if (!skipString()) {
+                            return false;
+                        }
+                        continue;
+                    } else if (c == '/' && (text.startsWith( "//", pos ) || text.startsWith( "/*", pos ))) { //NOI18N
+                        skipWhitespace();
+                        continue;
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    pos++;
+                    if (depth == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int start = pos;
+            while ( pos < text.length() ) {
+                c = text.charAt( pos );
+                if (c == ',' || c == '}' || c == ']' || c == '/' || Character.isWhitespace( c )) {
+                    break;
+                }
+                pos++;
+            }
+            return pos > start;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Operations on the immutable trees of maps and lists which hold the
+ * contents of package.json.  A tree is never modified once built; changing
+ * a value produces a new tree which shares every map not on the path to
+ * that value with the old one, so readers need no locks and a change costs
+ * one map copy per level of nesting.
+ *
+ * @author Tim Boudreau
+ */
+final class MetadataTree {
+    private static final int MAX_CACHED_KEYS = 512;
+    private static final ConcurrentMap<String, String[]> KEY_PATHS = new ConcurrentHashMap<>();
+
+    private MetadataTree () {
+        throw new AssertionError();
+    }
+
+    /**
+     * Split a dot-delimited key such as <code>author.name</code> into its
+     * parts, caching the result, since the same few keys are looked up
+     * over and over.
+     */
+    static String[] keyPath ( String key ) {
+        String[] result = KEY_PATHS.get( key );
+        if (result == null) {
+            result = split( key );
+            if (KEY_PATHS.size() < MAX_CACHED_KEYS) {
+                String[] old = KEY_PATHS.putIfAbsent( key, result );
+                if (old != null) {
+                    result = old;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String[] split ( String key ) {
+        List<String> parts = new ArrayList<>( 3 );
+        int start = 0;
+        for (int dot = key.indexOf( '.' ); dot >= 0; dot = key.indexOf( '.', start )) {
+            parts.add( key.substring( start, dot ) );
+            start = dot + 1;
+        }
+        parts.add( key.substring( start ) );
+        return parts.toArray( new String[parts.size()] );
+    }
+
+    /**
+     * Make an immutable deep copy of a map.
+     */
+    static Map<String, Object> freeze ( Map<String, ?> m ) {
+        Map<String, Object> result = new LinkedHashMap<>( m.size() + 1, 1F );
+        for (Map.Entry<String, ?> e : m.entrySet()) {
+            result.put( e.getKey(), freezeValue( e.getValue() ) );
+        }
+        return Collections.unmodifiableMap( result );
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static Object freezeValue ( Object o ) {
+        if (o instanceof Map<?, ?>) {
+            return freeze( (Map<String, ?>) o );
+        } else if (o instanceof List<?>) {
+            List<?> l = (List<?>) o;
+            List<Object> result = new ArrayList<>( l.size() );
+            for (Object item : l) {
+                result.add( freezeValue( item ) );
+            }
+            return Collections.unmodifiableList( result );
+        }
+        return o;
+    }
+
+    /**
+     * Look up a value.  If a value on the way to it is not a map, that
+     * value is returned, so <code>license.type</code> finds the
+     * <code>license</code> string in packages which use the short form.
+     */
+    static Object get ( Map<String, Object> root, String[] path ) {
+        Object o = root;
+        for (String key : path) {
+            if (!(o instanceof Map<?, ?>)) {
+                return o;
+            }
+            o = ((Map<?, ?>) o).get( key );
+        }
+        return o;
+    }
+
+    /**
+     * Get a tree with one value replaced, removed if it is null, creating
+     * maps along the path as needed.  Anything on the path which is not a
+     * map is replaced by one.
+     */
+    static Map<String, Object> with ( Map<String, Object> root, String[] path, Object value ) {
+        return with( root, path, 0, value );
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static Map<String, Object> with ( Map<String, Object> m, String[] path, int index, Object value ) {
+        String key = path[index];
+        boolean leaf = index == path.length - 1;
+        if (value == null && (leaf ? !m.containsKey( key ) : !(m.get( key ) instanceof Map<?, ?>))) {
+            // Nothing to remove
+            return m;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>( m.size() + 2, 1F );
+        copy.putAll( m );
+        if (leaf) {
+            if (value == null) {
+                copy.remove( key );
+            } else {
+                copy.put( key, freezeValue( value ) );
+            }
+        } else {
+            Object child = m.get( key );
+            Map<String, Object> childMap = child instanceof Map<?, ?>
+                    ? (Map<String, Object>) child : Collections.<String, Object>emptyMap();
+            copy.put( key, with( childMap, path, index + 1, value ) );
+        }
+        return Collections.unmodifiableMap( copy );
+    }
+
+    /**
+     * Determine which top-level keys differ between two trees, comparing
+     * values structurally.
+     */
+    static Set<String> changedKeys ( Map<String, Object> old, Map<String, Object> nue ) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> e : old.entrySet()) {
+            if (!nue.containsKey( e.getKey() ) || !Objects.equals( e.getValue(), nue.get( e.getKey() ) )) {
+                result.add( e.getKey() );
+            }
+        }
+        for (String key : nue.keySet()) {
+            if (!old.containsKey( key )) {
+                result.add( key );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Carry the changes made to a tree over to a newer version of the tree
+     * it was made from, one top-level key at a time.  Where both changed
+     * the same key, the edit wins.
+     *
+     * @param base The tree the edits were made to
+     * @param edited The base with the edits made
+     * @param onto The newer tree
+     * @return A tree with the edits applied to <code>onto</code>
+     */
+    static Map<String, Object> rebase ( Map<String, Object> base, Map<String, Object> edited, Map<String, Object> onto ) {
+        Map<String, Object> result = onto;
+        for (String key : changedKeys( base, edited )) {
+            result = with( result, new String[]{ key }, edited.get( key ) );
+        }
+        return result;
+    }
+}
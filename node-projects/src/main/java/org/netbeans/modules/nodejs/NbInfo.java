@@ -6,7 +6,6 @@ import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
-import static org.netbeans.modules.nodejs.json.ObjectMapperProvider.STRING_OBJECT_MAP;
 import org.openide.filesystems.FileObject;
 import org.openide.util.Exceptions;
 import org.openide.util.RequestProcessor;
@@ -23,6 +22,7 @@ final class NbInfo implements Runnable {
     private final NodeJSProject prj;
     private String platform;
     private String runArguments;
+    private String scanExcludes;
     private boolean initialized;
     private volatile boolean fileFound;
 
@@ -62,6 +62,21 @@ final class NbInfo implements Runnable {
         }
     }
 
+    void setScanExcludes ( String excludes ) {
+        checkInit();
+        synchronized ( this ) {
+            this.scanExcludes = excludes;
+        }
+        task.schedule( 1000 );
+    }
+
+    public String getScanExcludes () {
+        checkInit();
+        synchronized ( this ) {
+            return scanExcludes;
+        }
+    }
+
     public String getPlatformName () {
         checkInit();
         synchronized ( this ) {
@@ -87,9 +102,12 @@ final class NbInfo implements Runnable {
                 if (runArguments != null) {
                     m.put( "arguments", runArguments );
                 }
+                if (scanExcludes != null) {
+                    m.put( "scanExcludes", scanExcludes );
+                }
             }
             try (OutputStream out = fo.getOutputStream()) {
-                ObjectMapperProvider.newObjectMapper().writeValue( out, m );
+                ObjectMapperProvider.writer().writeValue( out, m );
             }
         } catch ( IOException ex ) {
             Exceptions.printStackTrace( ex );
@@ -102,7 +120,7 @@ final class NbInfo implements Runnable {
             fileFound = true;
             Map<String, String> loadedData = null;
             try (InputStream in = fo.getInputStream()) {
-                loadedData = ObjectMapperProvider.newObjectMapper().readValue( in, STRING_OBJECT_MAP );
+                loadedData = ObjectMapperProvider.mapReader().readValue( in );
             } catch ( IOException ex ) {
                 Exceptions.printStackTrace( ex );
             } finally {
@@ -110,6 +128,7 @@ final class NbInfo implements Runnable {
                     synchronized ( this ) {
                         platform = loadedData.get( "platformName" );
                         runArguments = loadedData.get( "arguments" );
+                        scanExcludes = loadedData.get( "scanExcludes" );
                     }
                 }
             }
@@ -59,10 +59,13 @@ import org.netbeans.api.validation.adapters.DialogBuilder;
 import org.netbeans.api.validation.adapters.DialogBuilder.DialogType;
 import org.netbeans.modules.nodejs.api.MainFileProvider;
 import org.netbeans.modules.nodejs.api.NodeJSExecutable;
+import org.netbeans.modules.nodejs.api.RunMetrics;
 import org.netbeans.modules.nodejs.libraries.LibrariesPanel;
 import org.netbeans.modules.nodejs.node.NodeJSLogicalViewProvider;
+import org.netbeans.modules.nodejs.node.RequireIndex;
 import org.netbeans.modules.nodejs.platform.NodeJSPlatforms;
 import org.netbeans.modules.nodejs.registry.FileChangeRegistry;
+import org.netbeans.modules.nodejs.registry.WatchScope;
 import org.netbeans.spi.project.ActionProvider;
 import org.netbeans.spi.project.CopyOperationImplementation;
 import org.netbeans.spi.project.DeleteOperationImplementation;
@@ -132,6 +135,7 @@ public class NodeJSProject implements Project, ProjectConfiguration, ActionProvi
     private final Sources sources = new NodeJSProjectSources( this );
     private final NodeJSLogicalViewProvider logicalView = new NodeJSLogicalViewProvider( this );
     private final FileChangeRegistry registry = new FileChangeRegistry( this );
+    private final RequireIndex requireIndex = new RequireIndex( this );
     public static final RequestProcessor NODE_JS_PROJECT_THREAD_POOL = new RequestProcessor( "NodeJS", 3 ); //NOI18N
     private final Lookup lookup;
     private final PI pi;
@@ -143,7 +147,7 @@ public class NodeJSProject implements Project, ProjectConfiguration, ActionProvi
         this.pi = new PI( dir ).setProject( this );
         lookup = Lookups.fixed( this, logicalView,
                 new NodeJSProjectProperties( this ), classpath, sources,
-                new NodeJsEncodingQuery(), registry, metadata,
+                new NodeJsEncodingQuery(), registry, registry.getStats(), new RunMetrics(), requireIndex, metadata,
                 new PlatformProvider(), new LibrariesResolverImpl(),
                 pi,
                 /*            new NodeJsSupportImpl( this ), */
@@ -165,7 +169,8 @@ public class NodeJSProject implements Project, ProjectConfiguration, ActionProvi
 
         void init () {
             FileChangeRegistry reg = getLookup().lookup( FileChangeRegistry.class );
-            reg.registerInterest( NodeJSProjectFactory.NODE_MODULES_FOLDER, this );
+            // Only which libraries are installed matters, not their contents
+            reg.registerInterest( NodeJSProjectFactory.NODE_MODULES_FOLDER, this, WatchScope.depth( 1 ) );
             ProjectMetadata md = getLookup().lookup( ProjectMetadata.class );
             md.addPropertyChangeListener( WeakListeners.propertyChange( this, md ) );
         }
@@ -218,6 +218,37 @@ public class NodeJSProjectProperties {
         return result;
     }
 
+    /**
+     * Get the user-supplied gitignore-style patterns for files and folders
+     * which should not be scanned for <code>require()</code> calls.
+     *
+     * @return A list of patterns, possibly empty
+     */
+    public List<String> getScanExcludes () {
+        List<String> result = new ArrayList<>();
+        String excludes = nbinfo.getScanExcludes();
+        if (excludes != null) {
+            for (String exclude : excludes.split( "," )) { //NOI18N
+                exclude = exclude.trim();
+                if (!exclude.isEmpty()) {
+                    result.add( exclude );
+                }
+            }
+        }
+        return result;
+    }
+
+    public void setScanExcludes ( List<String> excludes ) {
+        StringBuilder sb = new StringBuilder();
+        for (String exclude : excludes) {
+            if (sb.length() > 0) {
+                sb.append( ',' );
+            }
+            sb.append( exclude.trim() );
+        }
+        nbinfo.setScanExcludes( sb.length() == 0 ? null : sb.toString() );
+    }
+
     public String getPlatformName () {
         String result = nbinfo.getPlatformName();
         if (result == null) {
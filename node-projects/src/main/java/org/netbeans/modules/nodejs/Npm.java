@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +61,8 @@ public class Npm {
         "C:" + File.separatorChar + "Users" + File.separatorChar + System.getProperty( "user.name" ) + File.separatorChar + "AppData" + File.separatorChar + "Roaming" + File.separatorChar + "npm"
     };
     private String npm;
+    private final Map<Boolean, File> roots = new HashMap<>();
+    private String rootsExe;
 
     private static final Npm INSTANCE = new Npm();
 
@@ -117,10 +120,55 @@ public class Npm {
         return null;
     }
 
+    /**
+     * Get the folder npm installs local or global modules into, as reported
+     * by <code>npm root</code> or <code>npm root -g</code> run in the
+     * user's home directory.  The answer is cached per npm executable, so
+     * npm is only run once rather than on every libraries refresh; failures
+     * are not cached, so npm is asked again next time.
+     *
+     * @param global Whether to get the global root
+     * @return A folder, or null if npm could not be run
+     */
+    public File root ( boolean global ) {
+        String exe = exe();
+        synchronized ( roots ) {
+            if (!exe.equals( rootsExe )) {
+                roots.clear();
+                rootsExe = exe;
+            }
+            File cached = roots.get( global );
+            if (cached != null) {
+                return cached;
+            }
+        }
+        File home = new File( System.getProperty( "user.home" ) ); //NOI18N
+        String s = global ? run( home, "root", "-g" ) : run( home, "root" ); //NOI18N
+        File result = s == null ? null : new File( s );
+        synchronized ( roots ) {
+            if (result != null && exe.equals( rootsExe )) {
+                roots.put( global, result );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forget the results of {@link #root(boolean)}, because the npm or node
+     * executable has changed.
+     */
+    public void clearCachedRoots () {
+        synchronized ( roots ) {
+            roots.clear();
+            rootsExe = null;
+        }
+    }
+
     public void setExePath ( String location ) {
         if (location != null && !location.isEmpty() && !location.equals( this.npm )) {
             if (new File( location ).exists() && new File( location ).canExecute()) {
                 this.npm = location;
+                clearCachedRoots();
                 Preferences prefs = prefs();
                 prefs.put( NPM_EXECUTABLE, npm );
                 try {
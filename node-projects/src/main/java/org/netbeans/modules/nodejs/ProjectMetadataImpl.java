@@ -20,15 +20,18 @@ package org.netbeans.modules.nodejs;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.netbeans.modules.nodejs.api.ProjectMetadata;
 import java.awt.EventQueue;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -36,6 +39,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -59,7 +63,6 @@ import org.openide.util.Exceptions;
 import org.openide.util.Mutex;
 import org.openide.util.MutexException;
 import org.openide.util.NbBundle;
-import org.openide.util.NbCollections;
 import org.openide.util.RequestProcessor;
 import org.openide.util.RequestProcessor.Task;
 import org.openide.util.WeakListeners;
@@ -80,33 +83,11 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
 
     @Override
     public String getValue ( String key ) {
-        if (key.indexOf( '.' ) > 0) {
-            List<String> keys = new ArrayList<>( Arrays.asList( key.split( "\\." ) ) );
-            Object result = getValue( getMap(), keys );
-            synchronized ( this ) {
-                if (map.isEmpty()) {
-                    map = null;
-                }
-            }
-            return toString( result );
-        } else {
-            return toString( getMap().get( key ) );
-        }
+        return toString( lookup( key ) );
     }
 
     public List<?> getValues ( String key ) {
-        Object result;
-        if (key.indexOf( '.' ) > 0) {
-            List<String> keys = new ArrayList<>( Arrays.asList( key.split( "\\." ) ) );
-            result = getValue( getMap(), keys );
-        } else {
-            result = getMap().get( key );
-        }
-        synchronized ( this ) {
-            if (map.isEmpty()) {
-                map = null;
-            }
-        }
+        Object result = lookup( key );
         if (result instanceof List) {
             return (List<?>) result;
         } else if (result instanceof Map) {
@@ -118,10 +99,27 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
         }
     }
 
+    /**
+     * Look up a possibly dot-delimited key, without locking.
+     */
+    private Object lookup ( String key ) {
+        Map<String, Object> m = getMap();
+        if (m.isEmpty()) {
+            // Possibly a failed load - try again next time
+            synchronized ( this ) {
+                if (map == m) {
+                    map = null;
+                }
+            }
+            return null;
+        }
+        return MetadataTree.get( m, MetadataTree.keyPath( key ) );
+    }
+
     private String toString ( Object o ) {
         if (o instanceof Map) {
             try {
-                return ObjectMapperProvider.newObjectMapper().writeValueAsString( o );
+                return ObjectMapperProvider.writer().writeValueAsString( o );
             } catch ( JsonGenerationException ex ) {
                 Exceptions.printStackTrace( ex );
             } catch ( JsonMappingException ex ) {
@@ -148,35 +146,26 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
 
     @Override
     public void clearValue ( String key ) {
-        if (key.indexOf( "." ) >= 0) {
-            List<String> keys = new ArrayList<>( Arrays.asList( key.split( "\\." ) ) );
-            String last = keys.get( keys.size() - 1 );
-            keys.remove( keys.size() - 1 );
-            Map<?, ?> result = (Map<?, ?>) getValue( getMap(), keys );
-            if (result != null) {
-                if (result.containsKey( last )) {
-                    Object o = result.remove( last );
-                    if (o != null) {
-                        queueSave();
-                    }
-                }
-            }
+        Object old = update( MetadataTree.keyPath( key ), null );
+        if (old != null) {
+            queueSave();
+            supp.firePropertyChange( key, toString( old ), null );
         }
     }
 
-    @SuppressWarnings ("unchecked")
-    private Object getValue ( Map<String, Object> m, List<String> keys ) {
-        String next = keys.remove( 0 );
-        if (keys.isEmpty()) {
-            Object result = m.get( next );
-            return result;
-        } else {
-            Object o = m.get( next );
-            if (o instanceof Map) {
-                return getValue( (Map<String, Object>) o, keys );
-            } else {
-                return toString( o );
-            }
+    /**
+     * Replace a value in a copy of the tree, and make that the current
+     * tree.
+     *
+     * @return The old value
+     */
+    private Object update ( String[] path, Object value ) {
+        Map<String, Object> loaded = getMap();
+        synchronized ( this ) {
+            Map<String, Object> current = map == null ? loaded : map;
+            Object old = MetadataTree.get( current, path );
+            map = MetadataTree.with( current, path, value );
+            return old;
         }
     }
     private volatile Map<String, Object> map;
@@ -185,66 +174,82 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
     private final ReentrantLock lock = new ReentrantLock();
 
     private Map<String, Object> load ( FileObject fo ) throws IOException {
-        if (!fo.isValid()) {
-            Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING, "Project root dir became invalid" );
-            return new LinkedHashMap<>();
-        }
         lock.lock();
-        boolean err = false;
         try {
             synchronized ( this ) {
                 if (map != null) {
                     return map;
                 }
             }
-            InputStream in = fo.getInputStream();
+            return parse( fo );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Object> parse ( FileObject fo ) throws IOException {
+        if (!fo.isValid()) {
+            Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING, "Project root dir became invalid" );
+            return Collections.emptyMap();
+        }
+        boolean err = false;
+        try {
+            String text;
             try {
-                try {
-                    return ObjectMapperProvider.newObjectMapper().readValue( in, Map.class );
-                } finally {
-                    in.close();
-                }
+                text = fo.asText( "UTF-8" ); //NOI18N
             } catch ( FileStateInvalidException inv ) {
                 Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.INFO,
                         "Invalid package.json" );
-                return new LinkedHashMap<>();
+                return Collections.emptyMap();
+            }
+            try {
+                Map<String, Object> result = MetadataTree.freeze( ObjectMapperProvider.mapReader().<Map<String, Object>>readValue( text ) );
+                onDisk = new OnDisk( text, result );
+                return result;
             } catch ( IOException ex ) {
                 Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.INFO,
                         "Bad package.json in " + fo.getPath() + " - will try with permissive parser", ex );
             }
             try {
                 SimpleJSONParser p = new SimpleJSONParser( true ); //permissive mode - will parse as much as it can
-                if (!fo.isValid()) {
-                    Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING, "Project root dir became invalid" );
-                    return new LinkedHashMap<>();
-                }
-                in = fo.getInputStream();
-                try {
-                    Map<String, Object> m = p.parse( fo );
-                    ProjectMetadataImpl.this.hasErrors = err = p.hasErrors();
-                    synchronized ( this ) {
-                        map = Collections.synchronizedMap( m );
-                        return map;
-                    }
-                } finally {
-                    in.close();
-                }
-            } catch ( FileStateInvalidException e ) {
-                Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING, "Project root dir became invalid" );
-                return new LinkedHashMap<>();
+                Map<String, Object> m = p.parse( text );
+                ProjectMetadataImpl.this.hasErrors = err = p.hasErrors();
+                Map<String, Object> result = MetadataTree.freeze( m );
+                // Not worth splicing into a file we could not really read
+                onDisk = new OnDisk( null, result );
+                return result;
             } catch ( JsonException ex ) {
                 Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.INFO,
                         "Bad package.json in " + fo.getPath(), ex );
-                return new LinkedHashMap<>();
+                return Collections.emptyMap();
             }
         } finally {
-            lock.unlock();
             if (err) {
                 StatusDisplayer.getDefault().setStatusText( NbBundle.getMessage( ProjectMetadataImpl.class, "ERROR_PARSING_PACKAGE_JSON", ProjectUtils.getInformation( project ).getDisplayName() ), 3 );
             }
         }
     }
 
+    /**
+     * What package.json contained when last read or written, so that a save
+     * can rewrite only what changed since, and be skipped if nothing did.
+     */
+    private static final class OnDisk {
+        final String text;
+        final Map<String, Object> tree;
+
+        OnDisk ( String text, Map<String, Object> tree ) {
+            this.text = text;
+            this.tree = tree;
+        }
+    }
+    private volatile OnDisk onDisk;
+    private volatile Map<String, Object> saved;
+
+    /**
+     * Get the contents of package.json, which is an immutable snapshot
+     * that later changes do not affect.
+     */
     public final Map<String, Object> getMap () {
         Map<String, Object> result = map;
         if (result == null) {
@@ -255,7 +260,7 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
         if (result == null) {
             final FileObject fo = project.getProjectDirectory().getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
             if (fo == null) {
-                return new LinkedHashMap<>();
+                return Collections.emptyMap();
             }
             if (!listening) {
                 listening = true;
@@ -264,36 +269,83 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
             try {
                 result = load( fo );
                 synchronized ( this ) {
-                    map = result;
+                    if (map == null) {
+                        map = result;
+                    } else {
+                        // Written to meanwhile
+                        result = map;
+                    }
                 }
             } catch ( IOException ioe ) {
                 Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING,
                         "Problems loading " + fo.getPath(), ioe );
-                result = new LinkedHashMap<>();
+                result = Collections.emptyMap();
             }
         }
         return result;
     }
-    volatile int saveCount;
-
     @Override
     public void fileChanged ( FileEvent fe ) {
-        if (saveCount > 0) {
-            saveCount--;
-            return;
+        if (map != null) {
+            // Keep serving the old contents until the new ones are parsed
+            reloadTask.schedule( RELOAD_DELAY );
         }
-        map = null;
     }
 
-    public void setValue ( String key, List<String> values ) {
-        Object oldValue;
-        if (key.indexOf( '.' ) > 0) {
-            List<String> keys = new ArrayList<>( Arrays.asList( key.split( "\\." ) ) );
-            oldValue = setValues( getMap(), keys, values );
-        } else {
-            oldValue = getMap().put( key, values );
+    /**
+     * Re-reads package.json after it was changed on disk, and fires a
+     * change for each top-level key whose value is different.  Edits which
+     * a queued save has not written yet are carried over to the new
+     * contents, so that the save does not revert the change on disk.
+     */
+    private final class Reloader implements Runnable {
+        @Override
+        public void run () {
+            FileObject fo = project.getProjectDirectory().getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
+            if (map == null || fo == null) {
+                return;
+            }
+            Map<String, Object> old;
+            Map<String, Object> nue;
+            lock.lock();
+            try {
+                OnDisk before = onDisk;
+                Map<String, Object> reloaded = parse( fo );
+                OnDisk after = onDisk;
+                if (before != null && before.text != null && after != null && before.text.equals( after.text )) {
+                    // Our own save, or a touch which changed nothing
+                    onDisk = before;
+                    return;
+                }
+                synchronized ( ProjectMetadataImpl.this ) {
+                    old = map;
+                    if (old == null) {
+                        // Discarded meanwhile - the next read gets the new contents
+                        return;
+                    }
+                    Map<String, Object> base = before == null ? Collections.<String, Object>emptyMap() : before.tree;
+                    nue = MetadataTree.rebase( base, old, reloaded );
+                    map = nue;
+                }
+            } catch ( IOException ioe ) {
+                Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING,
+                        "Problems reloading " + fo.getPath(), ioe );
+                return;
+            } finally {
+                lock.unlock();
+            }
+            Set<String> changed = MetadataTree.changedKeys( old, nue );
+            Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.FINE,
+                    "Reloaded {0}, changed: {1}", new Object[]{ fo.getPath(), changed } ); //NOI18N
+            for (String key : changed) {
+                supp.firePropertyChange( key, old.get( key ), nue.get( key ) );
+            }
         }
-        if (unequal( oldValue, values )) {
+    }
+
+    public void setValue ( String key, List<String> values ) {
+        Object oldValue = update( MetadataTree.keyPath( key ), values );
+        if (!Objects.equals( oldValue, values )) {
             queueSave();
             supp.firePropertyChange( key, toString( oldValue ), values );
         }
@@ -301,92 +353,25 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
 
     @Override
     public void setValue ( String key, String value ) {
-        Object oldValue;
-        if (key.indexOf( '.' ) > 0) {
-            List<String> keys = new ArrayList<>( Arrays.asList( key.split( "\\." ) ) );
-            oldValue = setValue( getMap(), keys, value );
-        } else {
-            oldValue = getMap().put( key, value );
-        }
-        if (unequal( oldValue, value )) {
+        Object oldValue = update( MetadataTree.keyPath( key ), value );
+        if (!Objects.equals( oldValue, value )) {
             queueSave();
             supp.firePropertyChange( key, toString( oldValue ), value );
         }
     }
 
-    private boolean unequal ( Object a, Object b ) {
-        if (a == null && b == null) {
-            return false;
-        }
-        if (a == null || b == null) {
-            return false;
-        }
-        return !a.equals( b );
-    }
-
-    private Object setValue ( Map<String, Object> m, List<String> keys, String value ) {
-        String nextKey = keys.remove( 0 );
-        if (keys.isEmpty()) {
-            Object result = m.put( nextKey, value );
-            if (unequal( value, result )) {
-                queueSave();
-            }
-            return result;
-        } else {
-            Object o = m.get( nextKey );
-            Map<String, Object> nue = null;
-            if (o instanceof Map) {
-                nue = (Map<String, Object>) o;
-            }
-            if (nue == null) {
-                //if the value was a string, we clobber it here - careful
-                nue = new LinkedHashMap<>();
-                queueSave();
-            }
-            if (value == null) {
-                m.remove( nextKey );
-            } else {
-                m.put( nextKey, nue );
-            }
-            return setValue( nue, keys, value );
-        }
-    }
-
-    private Object setValues ( Map<String, Object> m, List<String> keys, List<String> values ) {
-        String nextKey = keys.remove( 0 );
-        if (keys.isEmpty()) {
-            Object result = m.put( nextKey, values );
-            if (unequal( values, result )) {
-                queueSave();
-            }
-            return result;
-        } else {
-            Map<String, Object> nue = (Map<String, Object>) m.get( nextKey );
-            if (nue == null) {
-                nue = new LinkedHashMap<>();
-                queueSave();
-            }
-            if (values == null) {
-                m.remove( nextKey );
-            } else {
-                m.put( nextKey, nue );
-            }
-            return setValues( nue, keys, values );
-        }
-    }
-
     public <T> T setValueAs ( String key, T obj ) {
-        ObjectMapper mapper = ObjectMapperProvider.newObjectMapper();
+        ObjectWriter writer = ObjectMapperProvider.writer();
         if (obj instanceof List || obj.getClass().isArray()) {
             try {
-                List<?> l = mapper.readValue( mapper.writeValueAsBytes( obj ), List.class );
+                List<?> l = ObjectMapperProvider.listReader().readValue( writer.writeValueAsBytes( obj ) );
                 addList( key, l );
             } catch ( IOException ex ) {
                 Exceptions.printStackTrace( ex );
             }
         } else {
             try {
-                Map<String, Object> m = mapper.readValue( mapper.writeValueAsBytes( obj ), Map.class );
+                Map<String, Object> m = ObjectMapperProvider.mapReader().readValue( writer.writeValueAsBytes( obj ) );
                 addMap( key, m );
             } catch ( IOException ex ) {
                 Exceptions.printStackTrace( ex );
@@ -398,7 +383,7 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
     @Override
     public String toString () {
         try {
-            return ObjectMapperProvider.newObjectMapper().writeValueAsString( map );
+            return ObjectMapperProvider.writer().writeValueAsString( map );
         } catch ( IOException ex ) {
             Logger.getLogger( ProjectMetadataImpl.class.getName() ).log( Level.WARNING, "Bad metadata in project " + project.getProjectDirectory().getPath(), ex );
             return SimpleJSONParser.out( getMap() ).toString();
@@ -460,12 +445,25 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
                         ProjectManager.mutex().writeAccess( new Mutex.ExceptionAction<Void>() {
                             @Override
                             public Void run () throws Exception {
-                                Map<String, Object> writeOut = copyPruningEmptyValues( map );
-                                CharSequence seq = ObjectMapperProvider.newObjectMapper()
-                                        .writeValueAsString( writeOut );
-                                try (OutputStream out = writeTo.getOutputStream()) {
-                                    out.write( seq.toString().getBytes( "UTF-8" ) );
-                                    out.write( "\n".getBytes( "UTF-8" ) );
+                                Map<String, Object> snapshot = map;
+                                OnDisk disk = onDisk;
+                                if (snapshot == null || snapshot == saved || disk != null && disk.tree == snapshot) {
+                                    // Unchanged since read or written
+                                    task.cancel();
+                                    return null;
+                                }
+                                Map<String, Object> writeOut = MetadataTree.freeze( copyPruningEmptyValues( snapshot ) );
+                                String text = disk == null || disk.text == null ? null
+                                        : JsonSplicer.splice( disk.text, disk.tree, writeOut );
+                                if (text == null) {
+                                    text = JsonSplicer.write( writeOut );
+                                }
+                                try {
+                                    if (disk == null || !text.equals( disk.text )) {
+                                        write( writeTo, text.getBytes( "UTF-8" ) ); //NOI18N
+                                    }
+                                    onDisk = new OnDisk( text, writeOut );
+                                    saved = snapshot;
                                     task.cancel();
                                 } catch ( FileAlreadyLockedException e ) {
                                     Logger.getLogger( ProjectMetadataImpl.class.getName() ).log(
@@ -476,7 +474,6 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
                                     synchronized ( ProjectMetadataImpl.this ) { //tests
                                         ProjectMetadataImpl.this.notifyAll();
                                     }
-                                    saveCount++;
                                 }
                                 hasErrors = false;
                                 return null;
@@ -502,15 +499,43 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
         }
     }
 
+    /**
+     * Replace the file's contents.  A file on disk is written to a temporary
+     * file beside it which is then renamed over it, so that neither npm nor
+     * a crash can ever see it half written.
+     */
+    private void write ( FileObject fo, byte[] bytes ) throws IOException {
+        File file = FileUtil.toFile( fo );
+        if (file == null) {
+            try (OutputStream out = fo.getOutputStream()) {
+                out.write( bytes );
+            }
+            return;
+        }
+        Path target = file.toPath();
+        Path temp = Files.createTempFile( target.getParent(), "." + file.getName(), ".tmp" ); //NOI18N
+        try {
+            Files.write( temp, bytes );
+            try {
+                Files.move( temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( AtomicMoveNotSupportedException ex ) {
+                Files.move( temp, target, StandardCopyOption.REPLACE_EXISTING );
+            }
+        } finally {
+            Files.deleteIfExists( temp );
+        }
+        fo.refresh();
+    }
+
     @Override
     public void addMap ( String key, Map<String, Object> m ) {
-        Map<String, Object> into = getMap();
-        if (key == null && into != m) {
-            into.putAll( m );
+        if (key == null) {
+            for (Map.Entry<String, Object> e : m.entrySet()) {
+                update( new String[]{ e.getKey() }, e.getValue() );
+            }
             supp.firePropertyChange( null, null, null );
         } else {
-            assert m != into : "Cannot add map to itself";
-            into.put( key, m );
+            update( new String[]{ key }, m );
             supp.firePropertyChange( key, null, null );
         }
         queueSave();
@@ -518,9 +543,7 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
 
     @Override
     public void addList ( String key, List<?> l ) {
-        Map<String,Object> into = getMap();
-        Object old = into.get( key );
-        into.put( key, l );
+        Object old = update( new String[]{ key }, l );
         if (!Objects.equals( old, l )) {
             supp.firePropertyChange( key, null, null );
             queueSave();
@@ -533,8 +556,8 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
             return getMap();
         }
         Object o = getMap().get( key );
-        if (o instanceof Map<?,?>) {
-            return NbCollections.checkedMapByFilter( (Map<?,?>) o, String.class, Object.class, false );
+        if (o instanceof Map<?, ?>) {
+            return (Map<String, Object>) o;
         }
         return null;
     }
@@ -550,6 +573,8 @@ public final class ProjectMetadataImpl extends FileChangeAdapter implements Proj
         }
     }
     private final Task task = rp.create( new R() );
+    private static final int RELOAD_DELAY = 100;
+    private final Task reloadTask = rp.create( new Reloader() );
 
     private void queueSave () {
         task.schedule( 1000 );
@@ -3,12 +3,14 @@ package org.netbeans.modules.nodejs.api;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.prefs.Preferences;
 import javax.swing.event.ChangeListener;
 import org.netbeans.api.extexecution.ExecutionDescriptor;
 import org.netbeans.api.extexecution.ExecutionService;
@@ -25,6 +27,7 @@ import org.openide.filesystems.FileUtil;
 import org.openide.util.ChangeSupport;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle;
+import org.openide.util.NbPreferences;
 
 /**
  * Makes it easy to wire up a node executable to the output window with stack
@@ -33,6 +36,24 @@ import org.openide.util.NbBundle;
  * @author Tim Boudreau
  */
 public abstract class LaunchSupport {
+    /**
+     * Preference for whether process output goes through a buffer which
+     * folds repeated lines, limits how fast lines are shown and logs all
+     * output to a file, rather than straight to the output window.  Off
+     * unless set.
+     */
+    public static final String PREF_BUFFERED_OUTPUT = "bufferedOutput"; //NOI18N
+    /**
+     * Preference for the number of lines waiting to be shown beyond which
+     * the oldest are dropped from the output window.
+     */
+    public static final String PREF_OUTPUT_BUFFER_LINES = "outputBufferLines"; //NOI18N
+    /**
+     * Preference for the most lines shown per second; 0 for no limit.
+     */
+    public static final String PREF_OUTPUT_LINES_PER_SECOND = "outputLinesPerSecond"; //NOI18N
+    private static final int DEFAULT_OUTPUT_BUFFER_LINES = 10000;
+    private static final int DEFAULT_OUTPUT_LINES_PER_SECOND = 2000;
     private final NodeJSExecutable exe;
     private final Map<Project, Rerunner> rerunners = new HashMap<>();
 
@@ -110,6 +131,13 @@ public abstract class LaunchSupport {
         return rerunner.launch();
     }
 
+    /**
+     * Preferences for how process output is shown.
+     */
+    public static Preferences preferences () {
+        return NbPreferences.forModule( LaunchSupport.class );
+    }
+
     protected abstract String[] getLaunchCommandLine ( boolean showDialog, Map<String, String> env );
 
     public void stopRunningProcesses ( Lookup.Provider p ) {
@@ -177,6 +205,9 @@ public abstract class LaunchSupport {
                 supp.fireChange();
             }
             if (!isPre) {
+                if (recorder != null) {
+                    recorder.finish();
+                }
                 BuildExecutionSupport.registerFinishedItem( this );
             }
         }
@@ -203,14 +234,29 @@ public abstract class LaunchSupport {
             }
         }
         Process process;
+        // Only for unbuffered runs - a pipe records the run it reads
+        // the output of, once that output ends
+        RunRecorder recorder;
 
         @Override
         public Process call () throws Exception {
+            Preferences prefs = preferences();
+            boolean buffered = prefs.getBoolean( PREF_BUFFERED_OUTPUT, false );
+            RunRecorder rec = new RunRecorder( RunMetrics.forFile( file ), file.getPath() );
             Process result = processCreator.call();
+            rec.started( result );
             synchronized ( this ) {
                 process = result;
+                recorder = buffered ? null : rec;
             }
             BuildExecutionSupport.registerRunningItem( this );
+            if (buffered) {
+                // Output is redirected to the input stream, so that is all
+                // there is to read
+                return OutputPipe.wrap( result, displayName, Charset.defaultCharset(),
+                        Math.max( 1, prefs.getInt( PREF_OUTPUT_BUFFER_LINES, DEFAULT_OUTPUT_BUFFER_LINES ) ),
+                        prefs.getInt( PREF_OUTPUT_LINES_PER_SECOND, DEFAULT_OUTPUT_LINES_PER_SECOND ), rec );
+            }
             return result;
         }
 
@@ -18,18 +18,26 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package org.netbeans.modules.nodejs.api;
 
+import java.awt.EventQueue;
 import java.awt.Toolkit;
 import java.io.File;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.netbeans.api.extexecution.ExecutionDescriptor.LineConvertorFactory;
 import org.netbeans.api.extexecution.print.ConvertedLine;
 import org.netbeans.api.extexecution.print.LineConvertor;
 import org.netbeans.modules.nodejs.api.NodeJSExecutable;
+import org.netbeans.modules.nodejs.sourcemap.SourceMap;
+import org.netbeans.modules.nodejs.sourcemap.SourceMaps;
 import org.openide.cookies.EditorCookie;
 import org.openide.cookies.LineCookie;
 import org.openide.filesystems.FileObject;
@@ -40,6 +48,7 @@ import org.openide.text.Line;
 import org.openide.text.Line.ShowOpenType;
 import org.openide.text.Line.ShowVisibilityType;
 import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
 import org.openide.windows.OutputEvent;
 import org.openide.windows.OutputListener;
 
@@ -48,10 +57,15 @@ import org.openide.windows.OutputListener;
  * @author Tim Boudreau
  */
 public final class LineConverter implements LineConvertorFactory {
+    private static final RequestProcessor LINK_RESOLVER = new RequestProcessor( "node.js output links", 1 ); //NOI18N
     private final String sources;
+    // Shared by the output and error streams of one run
+    private final Map<String, Future<FileObject>> resolved = new ConcurrentHashMap<>();
+    // Where each position printed leads, shared by every line printing it
+    private final Map<String, Future<Location>> located = new ConcurrentHashMap<>();
 
-    // XXX for avalon, probably need to encapsulate ERR_PATTERN and SYNTAX_ERR_PATTERN
-    // and have the executable provide them
+    // XXX for avalon, probably need to have the executable provide the
+    // StackFrame scanner
     
     LineConverter ( String sources ) {
         this.sources = sources;
@@ -62,50 +76,161 @@ public final class LineConverter implements LineConvertorFactory {
         return new LineConvertor() {
             @Override
             public List<ConvertedLine> convert ( String line ) {
-                Matcher m = ERR_PATTERN.matcher( line );
-                OutputListener ol = null;
-                try {
-                    if (m.find()) {
-                        String clazz = m.group( 1 );
-                        String path = m.group( 2 );
-                        int lineNumber = Integer.parseInt( m.group( 3 ) );
-                        int charPos = Integer.parseInt( m.group( 4 ) );
-                        ol = new Link( clazz, path, lineNumber, charPos );
-                    } else {
-                        m = SYNTAX_ERR_PATTERN.matcher( line );
-                        if (m.find()) {
-                            String clazz = null;
-                            String path = m.group( 1 );
-                            int lineNumber = Integer.parseInt( m.group( 2 ) );
-                            int charPos = 0;
-                            ol = new Link( clazz, path, lineNumber, charPos );
-                        }
+                StackFrame frame = StackFrame.find( line );
+                Link link;
+                if (frame != null) {
+                    link = new Link( frame.function, frame.path, frame.line, frame.column, true );
+                } else {
+                    String log = OutputPipe.loggedTo( line );
+                    if (log == null) {
+                        // Printed as is
+                        return null;
                     }
-                } catch ( NumberFormatException nfe ) {
-                    //do nothing - some output looked like a stack element by accident
+                    link = new Link( null, log, 1, 0, false );
                 }
-                return Collections.singletonList( ConvertedLine.forText( line, ol ) );
+                // Find where it goes now, so following the link is instant
+                link.target();
+                return Collections.singletonList( ConvertedLine.forText( line, link ) );
             }
         };
     }
-    private static final Pattern ERR_PATTERN =
-            Pattern.compile( "at\\s(.*?)\\s\\((.*?.js):(\\d+):(\\d+)\\)" );
-    //e.g. at Server.<anonymous> (/home/tim/Fooger/src/Fooger.js:7:5)
-    private static final Pattern SYNTAX_ERR_PATTERN =
-            Pattern.compile( "(\\/.*?\\.js):(\\d+)" );
-    //e.g. /home/tim/work/personal/captcha/captcha.js:38
+
+    /**
+     * Find the file for a path printed in a stack trace, once per run, in
+     * the background.
+     */
+    Future<FileObject> resolve ( final String path ) {
+        return once( resolved, path, new Callable<FileObject>() {
+            @Override
+            public FileObject call () {
+                File f = toFile( path );
+                return f == null ? null : FileUtil.toFileObject( FileUtil.normalizeFile( f ) );
+            }
+        } );
+    }
+
+    /**
+     * Find the file and position a link leads to, once per run for each
+     * position printed, in the background.
+     */
+    private Future<Location> locate ( final String path, final int line, final int column, final boolean sourceMapped ) {
+        return once( located, key( path, line, column, sourceMapped ), new Callable<Location>() {
+            @Override
+            public Location call () {
+                return locationOf( path, line, column, sourceMapped );
+            }
+        } );
+    }
+
+    private static String key ( String path, int line, int column, boolean sourceMapped ) {
+        return (sourceMapped ? "" : "log:") + path + ':' + line + ':' + column; //NOI18N
+    }
+
+    private static <T> Future<T> once ( Map<String, Future<T>> cache, String key, Callable<T> work ) {
+        Future<T> result = cache.get( key );
+        if (result == null) {
+            FutureTask<T> task = new FutureTask<>( work );
+            result = cache.putIfAbsent( key, task );
+            if (result == null) {
+                LINK_RESOLVER.post( task );
+                result = task;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the file and position to show, which for transpiled code is
+     * the original source's if there is a source map.  Log files, which
+     * may be huge, are not searched for one.
+     */
+    private Location locationOf ( String path, int line, int column, boolean sourceMapped ) {
+        FileObject fo = now( resolve( path ) );
+        File f = fo == null ? null : FileUtil.toFile( fo );
+        if (f != null && sourceMapped) {
+            SourceMap.Position original = SourceMaps.getDefault().originalPosition( f, line, column );
+            FileObject source = original == null ? null : now( resolve( original.source ) );
+            if (source != null) {
+                return new Location( source, original.line, original.column );
+            }
+        }
+        return new Location( fo, line, column );
+    }
+
+    /**
+     * Get the file a path refers to; node prints its own library files
+     * with no folder, so look for those in the node sources.
+     */
+    private File toFile ( String path ) {
+        File f = new File( path );
+        if (path.indexOf( File.separatorChar ) < 0 && sources != null) {
+            File sourceDir = new File( sources );
+            f = new File( sourceDir, path );
+            if (!f.exists()) {
+                f = new File( new File( sourceDir, "lib" ), path ); //NOI18N
+            }
+        }
+        return f.isFile() ? f : null;
+    }
+
+    /**
+     * Get a result from the resolver thread, without waiting for work
+     * queued behind the current task.
+     */
+    private static <T> T now ( Future<T> future ) {
+        if (!future.isDone() && future instanceof RunnableFuture<?>) {
+            ((RunnableFuture<?>) future).run();
+        }
+        return valueOf( future );
+    }
+
+    private static <T> T valueOf ( Future<T> future ) {
+        try {
+            return future.get();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException ex ) {
+            Logger.getLogger( LineConverter.class.getName() ).log( Level.INFO, null, ex.getCause() );
+        }
+        return null;
+    }
+
+    private static final class Location {
+        final FileObject file;
+        final int line;
+        final int column;
+
+        Location ( FileObject file, int line, int column ) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+        }
+
+        boolean isValid () {
+            return file != null && file.isValid();
+        }
+    }
 
     private class Link implements OutputListener {
         private final String path;
         private final String clazz;
         private final int line;
         private final int charPos;
+        private final boolean sourceMapped;
 
-        Link ( String clazz, String path, int line, int charPos ) {
+        Link ( String clazz, String path, int line, int charPos, boolean sourceMapped ) {
             this.clazz = clazz;
             this.path = path;
             this.line = line;
             this.charPos = charPos;
+            this.sourceMapped = sourceMapped;
+        }
+
+        /**
+         * Where the link goes, which is found on the resolver thread.
+         */
+        Future<Location> target () {
+            return locate( path, line, charPos, sourceMapped );
         }
 
         @Override
@@ -115,51 +240,67 @@ public final class LineConverter implements LineConvertorFactory {
 
         @Override
         public void outputLineAction ( OutputEvent ev ) {
-            String pathLocal = this.path;
-            if (pathLocal.indexOf( File.separatorChar ) < 0) { //NOI18N
-                String sourcePath = sources;
-                if (sourcePath != null) {
-                    File f = new File( sourcePath );
-                    f = new File( f, pathLocal );
-                    if (!f.exists() && new File( f, "lib" ).exists()) { //NOI18N
-                        f = new File( f, "lib" ); //NOI18N
-                        f = new File( f, pathLocal );
+            Future<Location> target = target();
+            Location t = target.isDone() ? valueOf( target ) : null;
+            if (t != null && t.isValid()) {
+                show( t );
+                return;
+            }
+            LINK_RESOLVER.post( new Runnable() {
+                @Override
+                public void run () {
+                    Location t = now( target() );
+                    if (t == null || !t.isValid()) {
+                        // Look again, in case it has been created since
+                        resolved.remove( path );
+                        located.remove( key( path, line, charPos, sourceMapped ) );
+                        t = now( target() );
                     }
-                    pathLocal = f.getAbsolutePath();
+                    final Location found = t;
+                    EventQueue.invokeLater( new Runnable() {
+                        @Override
+                        public void run () {
+                            show( found );
+                        }
+                    } );
                 }
+            } );
+        }
+
+        private void show ( Location location ) {
+            if (!location.isValid()) {
+                Toolkit.getDefaultToolkit().beep();
+                return;
             }
-            File f = new File( pathLocal );
-            if (f.exists()) {
-                FileObject fo = FileUtil.toFileObject( f );
-                try {
-                    DataObject dob = DataObject.find( fo );
-                    EditorCookie ck = dob.getLookup().lookup( EditorCookie.class );
-                    if (ck != null) {
-                        LineCookie l = dob.getLookup().lookup( LineCookie.class );
-                        if (l != null) {
-                            Line goTo = l.getLineSet().getCurrent( Math.max (0, line -1) );
-                            if (goTo == null) {
-                                goTo =  l.getLineSet().getOriginal(line -1);
-                            }
-                            if (goTo != null) {
-                                String txt = goTo.getText();
-                                int length = txt == null ? -1 : txt.length();
-                                int position = charPos >= length && txt != null ? 0 : charPos;
-                                goTo.show( ShowOpenType.REUSE_NEW, 
-                                    ShowVisibilityType.FOCUS, position );
-                            } else {
-                                Logger.getLogger(LineConvertor.class.getName()).log(
-                                        Level.WARNING, 
-                                        "Could not go to line {0} of {1}", 
-                                        new Object[]{line - 1, fo.getPath()});
-                            }
+            FileObject fo = location.file;
+            int line = location.line;
+            int charPos = location.column;
+            try {
+                DataObject dob = DataObject.find( fo );
+                EditorCookie ck = dob.getLookup().lookup( EditorCookie.class );
+                if (ck != null) {
+                    LineCookie l = dob.getLookup().lookup( LineCookie.class );
+                    if (l != null) {
+                        Line goTo = l.getLineSet().getCurrent( Math.max (0, line -1) );
+                        if (goTo == null) {
+                            goTo =  l.getLineSet().getOriginal(line -1);
+                        }
+                        if (goTo != null) {
+                            String txt = goTo.getText();
+                            int length = txt == null ? -1 : txt.length();
+                            int position = charPos >= length && txt != null ? 0 : charPos;
+                            goTo.show( ShowOpenType.REUSE_NEW, 
+                                ShowVisibilityType.FOCUS, position );
+                        } else {
+                            Logger.getLogger(LineConvertor.class.getName()).log(
+                                    Level.WARNING, 
+                                    "Could not go to line {0} of {1}", 
+                                    new Object[]{line - 1, fo.getPath()});
                         }
                     }
-                } catch ( DataObjectNotFoundException ex ) {
-                    Exceptions.printStackTrace( ex );
                 }
-            } else {
-                Toolkit.getDefaultToolkit().beep();
+            } catch ( DataObjectNotFoundException ex ) {
+                Exceptions.printStackTrace( ex );
             }
         }
 
@@ -0,0 +1,487 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.modules.Places;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Decouples a process's output from the output window, so a process which
+ * writes faster than the output window can show it is never blocked on a
+ * full pipe.  A pump thread reads the process's output as fast as it comes,
+ * writes all of it to a log file and splits it into lines kept in a bounded
+ * ring buffer; the output window reads from {@link #output()}, which renders
+ * lines from the buffer at no more than a set rate.  Identical consecutive
+ * lines which arrive while waiting to be shown are folded into one line
+ * ending in <code>&#215;N</code>, and if the buffer overflows the oldest
+ * lines are dropped and replaced by a note pointing to the log file, which
+ * is also announced on the first line.  Logs stop growing at a set size,
+ * are deleted on exit, and any left by a session which did not exit
+ * cleanly are deleted when the first of the next session's is created.
+ * If the run is being measured, the
+ * measurements are shown after the process exits.
+ *
+ * @author Tim Boudreau
+ */
+final class OutputPipe implements Runnable {
+    /**
+     * Where logs of process output are written - in the user's cache
+     * directory, not a shared temporary directory other users can read or
+     * plant files in.
+     */
+    static final File LOG_DIR = Places.getCacheSubdirectory( "nodejs-output" ); //NOI18N
+    private static final String LOG_EXTENSION = ".log"; //NOI18N
+    private static final long MAX_LOG = Long.getLong( "nodejs.output.log.size", 64 * 1024 * 1024 ); //NOI18N
+    private static final AtomicBoolean PRUNED = new AtomicBoolean();
+    private static final RequestProcessor PUMPS = new RequestProcessor( "node.js output", 64 ); //NOI18N
+    // Longer lines are broken, so a process which never writes a newline
+    // cannot use unbounded memory
+    private static final int MAX_LINE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private final InputStream in;
+    private final File log;
+    private final Charset charset;
+    private final int maxLinesPerSecond;
+    private final RunRecorder recorder;
+    private final long maxLog;
+    private final String[] lines;
+    private final int[] repeats;
+    private int head;
+    private int count;
+    private long dropped;
+    private boolean announced;
+    private boolean closed;
+
+    OutputPipe ( InputStream in, File log, Charset charset, int capacity, int maxLinesPerSecond ) {
+        this( in, log, charset, capacity, maxLinesPerSecond, null );
+    }
+
+    OutputPipe ( InputStream in, File log, Charset charset, int capacity, int maxLinesPerSecond, RunRecorder recorder ) {
+        this( in, log, charset, capacity, maxLinesPerSecond, recorder, MAX_LOG );
+    }
+
+    OutputPipe ( InputStream in, File log, Charset charset, int capacity, int maxLinesPerSecond, RunRecorder recorder, long maxLog ) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException( "Bad capacity " + capacity ); //NOI18N
+        }
+        this.in = in;
+        this.log = log;
+        this.charset = charset;
+        this.maxLinesPerSecond = maxLinesPerSecond;
+        this.recorder = recorder;
+        this.maxLog = maxLog;
+        this.lines = new String[capacity];
+        this.repeats = new int[capacity];
+        this.announced = log == null;
+    }
+
+    /**
+     * Wrap a process so its output goes through a pipe, logging to a new
+     * file named for the run if one can be created.
+     *
+     * @param recorder Measures the run, or null
+     */
+    static Process wrap ( Process process, String name, Charset charset, int capacity, int maxLinesPerSecond, RunRecorder recorder ) {
+        OutputPipe pipe = new OutputPipe( process.getInputStream(), newLog( name ), charset,
+                capacity, maxLinesPerSecond, recorder );
+        PUMPS.post( pipe );
+        return new PipedProcess( process, pipe.output() );
+    }
+
+    static File newLog ( String name ) {
+        if (PRUNED.compareAndSet( false, true )) {
+            pruneLogs();
+        }
+        String safe = name.replaceAll( "[^A-Za-z0-9._-]", "_" ); //NOI18N
+        String stamp = new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date() ); //NOI18N
+        File result = new File( LOG_DIR, safe + '-' + stamp + LOG_EXTENSION );
+        for (int i = 1;; i++) {
+            try {
+                // Fails rather than following anything already there
+                Files.createFile( result.toPath() );
+                break;
+            } catch ( FileAlreadyExistsException ex ) {
+                result = new File( LOG_DIR, safe + '-' + stamp + '-' + i + LOG_EXTENSION );
+            } catch ( IOException ex ) {
+                Logger.getLogger( OutputPipe.class.getName() ).log( Level.INFO,
+                        "Could not create " + result, ex ); //NOI18N
+                return null;
+            }
+        }
+        result.deleteOnExit();
+        return result;
+    }
+
+    /**
+     * Delete the logs of earlier sessions, which are normally deleted on
+     * exit but survive a crash or a kill.  Only called before this session
+     * has created any.
+     */
+    private static void pruneLogs () {
+        File[] old = LOG_DIR.listFiles();
+        if (old == null) {
+            return;
+        }
+        for (File f : old) {
+            if (f.getName().endsWith( LOG_EXTENSION ) && f.isFile() && !f.delete()) {
+                Logger.getLogger( OutputPipe.class.getName() ).log( Level.FINE,
+                        "Could not delete {0}", f ); //NOI18N
+            }
+        }
+    }
+
+    /**
+     * Find the path of a log file mentioned in a line of output.
+     *
+     * @return The path, or null
+     */
+    static String loggedTo ( String line ) {
+        int start = line.indexOf( LOG_DIR.getPath() );
+        int end = start < 0 ? -1 : line.indexOf( LOG_EXTENSION, start );
+        return end < 0 ? null : line.substring( start, end + LOG_EXTENSION.length() );
+    }
+
+    File log () {
+        return log;
+    }
+
+    /**
+     * Read the process's output until it ends.
+     */
+    @Override
+    public void run () {
+        byte[] buf = new byte[8192];
+        ByteArrayOutputStream line = new ByteArrayOutputStream( 256 );
+        OutputStream out = openLog();
+        long logged = 0;
+        try {
+            for (int n; (n = in.read( buf )) >= 0;) {
+                if (recorder != null && n > 0) {
+                    recorder.output();
+                }
+                if (out != null) {
+                    try {
+                        int room = (int) Math.min( n, maxLog - logged );
+                        out.write( buf, 0, room );
+                        logged += room;
+                        if (room < n) {
+                            // Cannot fill the disk, however long it runs
+                            String note = '\n' + NbBundle.getMessage( OutputPipe.class, "LOG_TRUNCATED", maxLog ) + '\n'; //NOI18N
+                            out.write( note.getBytes( charset ) );
+                            out = close( out );
+                        } else if (in.available() == 0) {
+                            out.flush();
+                        }
+                    } catch ( IOException ex ) {
+                        Logger.getLogger( OutputPipe.class.getName() ).log( Level.INFO,
+                                "Could not write " + log, ex ); //NOI18N
+                        out = close( out );
+                    }
+                }
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n') {
+                        line.write( buf, start, i - start );
+                        add( line );
+                        start = i + 1;
+                    } else if (line.size() + i - start >= MAX_LINE) {
+                        line.write( buf, start, i - start );
+                        add( line );
+                        start = i;
+                    }
+                }
+                line.write( buf, start, n - start );
+            }
+            if (line.size() > 0) {
+                add( line );
+            }
+        } catch ( IOException ex ) {
+            // Process killed
+            Logger.getLogger( OutputPipe.class.getName() ).log( Level.FINE, null, ex );
+        } finally {
+            close( out );
+            if (recorder != null) {
+                for (String metric : recorder.awaitExit()) {
+                    add( metric );
+                }
+            }
+            synchronized ( this ) {
+                closed = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private OutputStream openLog () {
+        if (log == null) {
+            return null;
+        }
+        try {
+            return new BufferedOutputStream( new FileOutputStream( log ), 32768 );
+        } catch ( IOException ex ) {
+            Logger.getLogger( OutputPipe.class.getName() ).log( Level.INFO,
+                    "Could not create " + log, ex ); //NOI18N
+            return null;
+        }
+    }
+
+    private static OutputStream close ( OutputStream out ) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch ( IOException ex ) {
+                Logger.getLogger( OutputPipe.class.getName() ).log( Level.FINE, null, ex );
+            }
+        }
+        return null;
+    }
+
+    private void add ( ByteArrayOutputStream bytes ) {
+        byte[] b = bytes.toByteArray();
+        bytes.reset();
+        int length = b.length;
+        if (length > 0 && b[length - 1] == '\r') {
+            length--;
+        }
+        add( new String( b, 0, length, charset ) );
+    }
+
+    synchronized void add ( String line ) {
+        int capacity = lines.length;
+        if (count > 0) {
+            int last = (head + count - 1) % capacity;
+            if (line.equals( lines[last] )) {
+                repeats[last]++;
+                return;
+            }
+        }
+        if (count == capacity) {
+            dropped += repeats[head];
+            lines[head] = null;
+            head = (head + 1) % capacity;
+            count--;
+        }
+        int ix = (head + count) % capacity;
+        lines[ix] = line;
+        repeats[ix] = 1;
+        count++;
+        notifyAll();
+    }
+
+    /**
+     * Get the next line to show, waiting for one if necessary.
+     *
+     * @return A line, or null at the end of output
+     */
+    synchronized String take () throws InterruptedException {
+        if (!announced) {
+            announced = true;
+            return NbBundle.getMessage( OutputPipe.class, "FULL_OUTPUT", log.getPath() ); //NOI18N
+        }
+        while ( count == 0 && dropped == 0 && !closed ) {
+            wait();
+        }
+        if (dropped > 0) {
+            long skipped = dropped;
+            dropped = 0;
+            return NbBundle.getMessage( OutputPipe.class, "LINES_SKIPPED", skipped, //NOI18N
+                    log == null ? "-" : log.getPath() ); //NOI18N
+        }
+        if (count == 0) {
+            return null;
+        }
+        String result = lines[head];
+        int times = repeats[head];
+        lines[head] = null;
+        head = (head + 1) % lines.length;
+        count--;
+        return times > 1 ? result + " \u00d7" + times : result; //NOI18N
+    }
+
+    /**
+     * Determine if there is or may yet be more to read.  True until the
+     * pump is done, including adding any run metrics after the process
+     * exits.
+     */
+    synchronized boolean hasMore () {
+        return !announced || count > 0 || dropped > 0 || !closed;
+    }
+
+    synchronized boolean isClosed () {
+        return closed;
+    }
+
+    /**
+     * The rendered output, for the output window to read.
+     */
+    InputStream output () {
+        return new Rendered();
+    }
+
+    private final class Rendered extends InputStream {
+        private final long window = TimeUnit.SECONDS.toNanos( 1 );
+        private byte[] current = EMPTY;
+        private int pos;
+        private long windowStart = System.nanoTime();
+        private int shown;
+
+        @Override
+        public int read () throws IOException {
+            if (pos >= current.length && !fill()) {
+                return -1;
+            }
+            return current[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read ( byte[] b, int off, int len ) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= current.length && !fill()) {
+                return -1;
+            }
+            int result = Math.min( len, current.length - pos );
+            System.arraycopy( current, pos, b, off, result );
+            pos += result;
+            return result;
+        }
+
+        @Override
+        public int available () {
+            int result = current.length - pos;
+            return result > 0 ? result : hasMore() ? 1 : 0;
+        }
+
+        private boolean fill () throws IOException {
+            throttle();
+            String line;
+            try {
+                line = take();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (line == null) {
+                return false;
+            }
+            current = (line + '\n').getBytes( charset );
+            pos = 0;
+            return true;
+        }
+
+        /**
+         * Wait out the rest of the second if this second's lines have been
+         * shown, meanwhile letting the ring buffer fold and drop lines.  Once
+         * the process is done, or when being drained after it is stopped,
+         * the rest is shown as fast as it can be read.
+         */
+        private void throttle () {
+            if (maxLinesPerSecond <= 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - windowStart >= window) {
+                windowStart = now;
+                shown = 0;
+            }
+            if (++shown > maxLinesPerSecond && !isClosed() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep( windowStart + window - now );
+                } catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                }
+                windowStart = System.nanoTime();
+                shown = 1;
+            }
+        }
+    }
+
+    /**
+     * A process whose output is read through a pipe.
+     */
+    private static final class PipedProcess extends Process {
+        private final Process delegate;
+        private final InputStream output;
+
+        PipedProcess ( Process delegate, InputStream output ) {
+            this.delegate = delegate;
+            this.output = output;
+        }
+
+        @Override
+        public OutputStream getOutputStream () {
+            return delegate.getOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream () {
+            return output;
+        }
+
+        @Override
+        public InputStream getErrorStream () {
+            return delegate.getErrorStream();
+        }
+
+        @Override
+        public int waitFor () throws InterruptedException {
+            return delegate.waitFor();
+        }
+
+        @Override
+        public int exitValue () {
+            return delegate.exitValue();
+        }
+
+        @Override
+        public void destroy () {
+            delegate.destroy();
+        }
+
+        @Override
+        public boolean isAlive () {
+            return delegate.isAlive();
+        }
+
+        @Override
+        public Process destroyForcibly () {
+            delegate.destroyForcibly();
+            return this;
+        }
+    }
+}
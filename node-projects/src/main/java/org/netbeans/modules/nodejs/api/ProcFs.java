@@ -0,0 +1,222 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads what is known about a running process from Linux's
+ * <code>/proc</code> filesystem:  its CPU time, its peak resident set size
+ * and whether it has a listening TCP socket.  Everything answers -1 where
+ * there is no <code>/proc</code>, or once the process is gone.
+ *
+ * @author Tim Boudreau
+ */
+final class ProcFs {
+    private static final File PROC = new File( "/proc" ); //NOI18N
+    // The kernel reports CPU times to userspace in units of 1/100 second
+    // regardless of its internal tick rate
+    private static final int USER_HZ = 100;
+    private static final String TCP_LISTEN = "0A"; //NOI18N
+    private static final String SOCKET = "socket:["; //NOI18N
+
+    private ProcFs () {
+        throw new AssertionError();
+    }
+
+    static boolean isAvailable () {
+        return new File( PROC, "self/stat" ).isFile(); //NOI18N
+    }
+
+    /**
+     * Get a process's id.
+     *
+     * @return The pid, or -1 if it cannot be determined
+     */
+    static long pid ( Process process ) {
+        try {
+            // JDK 9 and later
+            Method m = Process.class.getMethod( "pid" ); //NOI18N
+            return ((Number) m.invoke( process )).longValue();
+        } catch ( ReflectiveOperationException | RuntimeException ex ) {
+            // JDK 8's UNIXProcess
+            try {
+                Field f = process.getClass().getDeclaredField( "pid" ); //NOI18N
+                f.setAccessible( true );
+                return f.getInt( process );
+            } catch ( ReflectiveOperationException | RuntimeException ex1 ) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Get the CPU time a process and the children it has waited for have
+     * used.
+     *
+     * @return Milliseconds, or -1
+     */
+    static long cpuTime ( long pid ) {
+        String stat = read( pid, "stat" ); //NOI18N
+        return stat == null ? -1 : cpuTime( stat );
+    }
+
+    static long cpuTime ( String stat ) {
+        // The command name is in parentheses and may contain anything
+        int close = stat.lastIndexOf( ')' );
+        if (close < 0) {
+            return -1;
+        }
+        String[] fields = stat.substring( close + 1 ).trim().split( "\\s+" ); //NOI18N
+        // Fields 14-17, utime, stime, cutime and cstime, counting from the
+        // pid; state, field 3, is the first after the name
+        if (fields.length < 15) {
+            return -1;
+        }
+        try {
+            long ticks = 0;
+            for (int i = 11; i <= 14; i++) {
+                ticks += Long.parseLong( fields[i] );
+            }
+            return ticks * 1000 / USER_HZ;
+        } catch ( NumberFormatException ex ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the most memory a process has had resident.
+     *
+     * @return Bytes, or -1
+     */
+    static long peakRss ( long pid ) {
+        String status = read( pid, "status" ); //NOI18N
+        return status == null ? -1 : peakRss( status );
+    }
+
+    static long peakRss ( String status ) {
+        int ix = status.indexOf( "VmHWM:" ); //NOI18N
+        if (ix < 0) {
+            return -1;
+        }
+        int end = status.indexOf( '\n', ix );
+        String[] parts = status.substring( ix + 6, end < 0 ? status.length() : end ).trim().split( "\\s+" ); //NOI18N
+        try {
+            return Long.parseLong( parts[0] ) * 1024;
+        } catch ( NumberFormatException ex ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Find a TCP port a process is listening on.
+     *
+     * @return The lowest such port, or -1
+     */
+    static int listeningPort ( long pid ) {
+        Set<String> inodes = socketInodes( pid );
+        if (inodes.isEmpty()) {
+            return -1;
+        }
+        int result = -1;
+        for (String table : new String[]{"net/tcp", "net/tcp6"}) { //NOI18N
+            String text = read( pid, table );
+            if (text != null) {
+                int port = listeningPort( text, inodes );
+                if (port > 0 && (result < 0 || port < result)) {
+                    result = port;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the lowest local port of a listening socket in a
+     * <code>/proc/net/tcp</code> table whose inode is one of the passed ones.
+     */
+    static int listeningPort ( String table, Set<String> inodes ) {
+        int result = -1;
+        String[] lines = table.split( "\n" ); //NOI18N
+        // Skip the header
+        for (int i = 1; i < lines.length; i++) {
+            // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode
+            String[] fields = lines[i].trim().split( "\\s+" ); //NOI18N
+            if (fields.length < 10 || !TCP_LISTEN.equals( fields[3] ) || !inodes.contains( fields[9] )) {
+                continue;
+            }
+            int colon = fields[1].lastIndexOf( ':' );
+            try {
+                int port = Integer.parseInt( fields[1].substring( colon + 1 ), 16 );
+                if (result < 0 || port < result) {
+                    result = port;
+                }
+            } catch ( NumberFormatException ex ) {
+                // ignore
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> socketInodes ( long pid ) {
+        Set<String> result = new HashSet<>();
+        Path fds = new File( PROC, pid + "/fd" ).toPath(); //NOI18N
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream( fds )) {
+            for (Path fd : ds) {
+                try {
+                    String target = Files.readSymbolicLink( fd ).toString();
+                    if (target.startsWith( SOCKET ) && target.endsWith( "]" )) { //NOI18N
+                        result.add( target.substring( SOCKET.length(), target.length() - 1 ) );
+                    }
+                } catch ( IOException | UnsupportedOperationException ex ) {
+                    // Closed while we looked
+                }
+            }
+        } catch ( IOException | SecurityException ex ) {
+            // Gone, or not ours
+        }
+        return result;
+    }
+
+    private static String read ( long pid, String name ) {
+        if (pid < 0) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines( new File( PROC, pid + "/" + name ).toPath(), StandardCharsets.ISO_8859_1 ); //NOI18N
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                sb.append( line ).append( '\n' );
+            }
+            return sb.toString();
+        } catch ( IOException | SecurityException ex ) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.ChangeListener;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.openide.filesystems.FileObject;
+import org.openide.util.ChangeSupport;
+
+/**
+ * Measurements of the recent runs of each file launched from a project,
+ * found in the project's lookup, so that a change which makes a program
+ * slower to start or hungrier shows up between one run and the next.
+ * Measurements which could not be taken - on systems without a Linux-style
+ * <code>/proc</code> filesystem, or for a process which never listened on a
+ * port - are -1.  History is kept for the life of the IDE session only.
+ *
+ * @author Tim Boudreau
+ */
+public final class RunMetrics {
+    private static final int HISTORY = Integer.getInteger( "nodejs.run.history", 20 ); //NOI18N
+    // For files which do not belong to a project
+    private static final RunMetrics UNOWNED = new RunMetrics();
+    private final Map<String, List<Run>> runs = new HashMap<>();
+    private final ChangeSupport supp = new ChangeSupport( this );
+
+    public RunMetrics () {
+    }
+
+    /**
+     * Find the metrics runs of a file are recorded in.
+     */
+    static RunMetrics forFile ( FileObject file ) {
+        Project p = FileOwnerQuery.getOwner( file );
+        RunMetrics result = p == null ? null : p.getLookup().lookup( RunMetrics.class );
+        return result == null ? UNOWNED : result;
+    }
+
+    /**
+     * Get the recorded runs of a file, oldest first.
+     */
+    public List<Run> getRuns ( FileObject file ) {
+        return getRuns( file.getPath() );
+    }
+
+    /**
+     * Get the recorded runs of the file with a path, oldest first.
+     */
+    public synchronized List<Run> getRuns ( String path ) {
+        List<Run> result = runs.get( path );
+        return result == null ? Collections.<Run>emptyList()
+                : Collections.unmodifiableList( new ArrayList<>( result ) );
+    }
+
+    /**
+     * Get the most recent run of a file.
+     *
+     * @return A run, or null
+     */
+    public Run getLastRun ( FileObject file ) {
+        return getLastRun( file.getPath() );
+    }
+
+    /**
+     * Get the most recent run of the file with a path.
+     *
+     * @return A run, or null
+     */
+    public synchronized Run getLastRun ( String path ) {
+        List<Run> result = runs.get( path );
+        return result == null ? null : result.get( result.size() - 1 );
+    }
+
+    /**
+     * Record a run, returning the run of the same file before it.
+     */
+    Run add ( Run run ) {
+        Run previous;
+        synchronized ( this ) {
+            List<Run> history = runs.get( run.path );
+            if (history == null) {
+                history = new ArrayList<>( 4 );
+                runs.put( run.path, history );
+            }
+            previous = history.isEmpty() ? null : history.get( history.size() - 1 );
+            if (history.size() >= HISTORY) {
+                history.remove( 0 );
+            }
+            history.add( run );
+        }
+        supp.fireChange();
+        return previous;
+    }
+
+    public void addChangeListener ( ChangeListener listener ) {
+        supp.addChangeListener( listener );
+    }
+
+    public void removeChangeListener ( ChangeListener listener ) {
+        supp.removeChangeListener( listener );
+    }
+
+    /**
+     * One run of a file.  Times are in milliseconds.
+     */
+    public static final class Run {
+        final String path;
+        private final long startTime;
+        private final long firstOutput;
+        private final long listening;
+        private final int port;
+        private final long wallTime;
+        private final long peakRss;
+        private final long cpuTime;
+        private final int exitCode;
+
+        Run ( String path, long startTime, long firstOutput, long listening, int port,
+                long wallTime, long peakRss, long cpuTime, int exitCode ) {
+            this.path = path;
+            this.startTime = startTime;
+            this.firstOutput = firstOutput;
+            this.listening = listening;
+            this.port = port;
+            this.wallTime = wallTime;
+            this.peakRss = peakRss;
+            this.cpuTime = cpuTime;
+            this.exitCode = exitCode;
+        }
+
+        /**
+         * The path of the file that was run.
+         */
+        public String getPath () {
+            return path;
+        }
+
+        /**
+         * When the process was started, as from
+         * <code>System.currentTimeMillis()</code>.
+         */
+        public long getStartTime () {
+            return startTime;
+        }
+
+        /**
+         * The time from start until the process first wrote output.
+         */
+        public long getTimeToFirstOutput () {
+            return firstOutput;
+        }
+
+        /**
+         * The time from start until the process was seen listening on a TCP
+         * port; accurate to within the sampling interval, which is 50ms for
+         * the first seconds of a run.
+         */
+        public long getTimeToListening () {
+            return listening;
+        }
+
+        /**
+         * The lowest TCP port the process listened on.
+         */
+        public int getListeningPort () {
+            return port;
+        }
+
+        /**
+         * The time from start until the process exited, or was last seen
+         * running if its exit was not observed.
+         */
+        public long getWallTime () {
+            return wallTime;
+        }
+
+        /**
+         * The most memory the process had resident, in bytes.
+         */
+        public long getPeakRss () {
+            return peakRss;
+        }
+
+        /**
+         * The CPU time, user and system, used by the process and the child
+         * processes it waited for, as of the last sample taken.
+         */
+        public long getCpuTime () {
+            return cpuTime;
+        }
+
+        /**
+         * The process's exit code, or -1 if unknown.
+         */
+        public int getExitCode () {
+            return exitCode;
+        }
+
+        @Override
+        public String toString () {
+            return "Run{" + path + " firstOutput=" + firstOutput //NOI18N
+                    + " listening=" + listening + " port=" + port //NOI18N
+                    + " wallTime=" + wallTime + " peakRss=" + peakRss //NOI18N
+                    + " cpuTime=" + cpuTime + " exitCode=" + exitCode + "}"; //NOI18N
+        }
+    }
+}
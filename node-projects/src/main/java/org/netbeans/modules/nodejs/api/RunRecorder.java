@@ -0,0 +1,222 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.netbeans.modules.nodejs.api.RunMetrics.Run;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Measures one run of a process and records it in a {@link RunMetrics}.
+ * While the process runs, its CPU time, peak memory and listening sockets
+ * are sampled from <code>/proc</code> - every 50ms for the first seconds,
+ * so the time it starts listening is caught closely, and every 500ms after
+ * that; the time to first output is reported by whoever reads the output.
+ *
+ * @author Tim Boudreau
+ */
+final class RunRecorder implements Runnable {
+    private static final RequestProcessor SAMPLER = new RequestProcessor( "node.js run metrics", 4 ); //NOI18N
+    private static final long STARTUP_MILLIS = 5000;
+    private static final int STARTUP_INTERVAL = 50;
+    private static final int INTERVAL = 500;
+    private final RunMetrics metrics;
+    private final String path;
+    private final long startNanos = System.nanoTime();
+    private final long startTime = System.currentTimeMillis();
+    private final RequestProcessor.Task task = SAMPLER.create( this );
+    private volatile long firstOutput = -1;
+    private Process process;
+    private long pid = -1;
+    private long listening = -1;
+    private int port = -1;
+    private long peakRss = -1;
+    private long cpuTime = -1;
+    private boolean finished;
+
+    /**
+     * Create a recorder, starting the clock.
+     */
+    RunRecorder ( RunMetrics metrics, String path ) {
+        this.metrics = metrics;
+        this.path = path;
+    }
+
+    /**
+     * Begin sampling a process that has been started.
+     */
+    void started ( Process process ) {
+        long id = ProcFs.isAvailable() ? ProcFs.pid( process ) : -1;
+        synchronized ( this ) {
+            this.process = process;
+            this.pid = id;
+        }
+        if (id > 0) {
+            task.schedule( 0 );
+        }
+    }
+
+    /**
+     * Note that the process has written output.
+     */
+    void output () {
+        if (firstOutput < 0) {
+            firstOutput = elapsed();
+        }
+    }
+
+    private long elapsed () {
+        return TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos );
+    }
+
+    @Override
+    public void run () {
+        long id;
+        boolean findPort;
+        synchronized ( this ) {
+            if (finished) {
+                return;
+            }
+            id = pid;
+            findPort = port < 0;
+        }
+        long cpu = ProcFs.cpuTime( id );
+        if (cpu < 0) {
+            // Exited and reaped
+            return;
+        }
+        long rss = ProcFs.peakRss( id );
+        int listeningOn = findPort ? ProcFs.listeningPort( id ) : -1;
+        long now = elapsed();
+        synchronized ( this ) {
+            if (finished) {
+                return;
+            }
+            cpuTime = cpu;
+            peakRss = Math.max( peakRss, rss );
+            if (listeningOn > 0) {
+                port = listeningOn;
+                listening = now;
+            }
+        }
+        task.schedule( now < STARTUP_MILLIS ? STARTUP_INTERVAL : INTERVAL );
+    }
+
+    /**
+     * Wait for the process to exit, then record the run.
+     *
+     * @return Lines describing the run, or an empty list if it was already
+     * recorded
+     */
+    List<String> awaitExit () {
+        Process p;
+        synchronized ( this ) {
+            p = process;
+        }
+        if (p != null) {
+            try {
+                p.waitFor();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Record the run, if that has not been done already.
+     *
+     * @return Lines describing the run, or an empty list if it was already
+     * recorded
+     */
+    List<String> finish () {
+        Run run;
+        synchronized ( this ) {
+            if (finished) {
+                return Collections.emptyList();
+            }
+            finished = true;
+            run = new Run( path, startTime, firstOutput, listening, port, elapsed(),
+                    peakRss, cpuTime, exitCode( process ) );
+        }
+        task.cancel();
+        return describe( run, metrics.add( run ) );
+    }
+
+    private static int exitCode ( Process p ) {
+        if (p != null) {
+            try {
+                return p.exitValue();
+            } catch ( IllegalThreadStateException e ) {
+                // still running
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Describe a run as a small table, comparing it with the previous run
+     * of the same file.
+     */
+    static List<String> describe ( Run run, Run previous ) {
+        List<String> result = new ArrayList<>( 6 );
+        result.add( NbBundle.getMessage( RunRecorder.class, "RUN_METRICS" ) ); //NOI18N
+        row( result, NbBundle.getMessage( RunRecorder.class, "METRIC_FIRST_OUTPUT" ), false, //NOI18N
+                run.getTimeToFirstOutput(), previous == null ? -1 : previous.getTimeToFirstOutput() );
+        if (run.getListeningPort() > 0) {
+            row( result, NbBundle.getMessage( RunRecorder.class, "METRIC_LISTENING", //NOI18N
+                    Integer.toString( run.getListeningPort() ) ), false,
+                    run.getTimeToListening(), previous == null ? -1 : previous.getTimeToListening() );
+        }
+        row( result, NbBundle.getMessage( RunRecorder.class, "METRIC_WALL_TIME" ), false, //NOI18N
+                run.getWallTime(), previous == null ? -1 : previous.getWallTime() );
+        row( result, NbBundle.getMessage( RunRecorder.class, "METRIC_CPU_TIME" ), false, //NOI18N
+                run.getCpuTime(), previous == null ? -1 : previous.getCpuTime() );
+        row( result, NbBundle.getMessage( RunRecorder.class, "METRIC_PEAK_RSS" ), true, //NOI18N
+                run.getPeakRss(), previous == null ? -1 : previous.getPeakRss() );
+        return result;
+    }
+
+    private static void row ( List<String> into, String label, boolean bytes, long value, long previous ) {
+        if (value < 0) {
+            return;
+        }
+        String row = String.format( "  %-24s %10s", label, format( value, bytes ) ); //NOI18N
+        if (previous > 0) {
+            long change = Math.round( (value - previous) * 100D / previous );
+            row += "  " + NbBundle.getMessage( RunRecorder.class, "METRIC_VS_PREVIOUS", //NOI18N
+                    format( previous, bytes ), String.format( "%+d%%", change ) ); //NOI18N
+        } else if (previous == 0) {
+            row += "  " + NbBundle.getMessage( RunRecorder.class, "METRIC_PREVIOUS", //NOI18N
+                    format( previous, bytes ) );
+        }
+        into.add( row );
+    }
+
+    static String format ( long value, boolean bytes ) {
+        if (bytes) {
+            return String.format( "%.1f MB", value / (1024D * 1024D) ); //NOI18N
+        }
+        return value < 10000 ? value + " ms" : String.format( "%.1f s", value / 1000D ); //NOI18N
+    }
+}
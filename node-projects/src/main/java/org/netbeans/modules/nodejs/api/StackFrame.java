@@ -0,0 +1,248 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * A source location found in a line of node's output - a stack trace
+ * element such as <code>at Server.&lt;anonymous&gt; (/x/y.js:7:5)</code> or
+ * <code>at file:///x/y.mjs:7:5</code>, or the first line of a syntax error
+ * report such as <code>/x/y.js:38</code>.
+ * <p/>
+ * Found by a hand-written scanner rather than regular expressions, since it
+ * runs on every line a process writes:  a line is rejected in one pass
+ * without allocating anything unless it contains a <code>:</code> followed
+ * by a digit directly after a <code>.js</code>, <code>.mjs</code>,
+ * <code>.cjs</code> or <code>.ts</code> file name, and the location is then
+ * read around that point.  Paths may be absolute unix or Windows paths or
+ * <code>file:</code> URLs; relative paths, as node prints for its own
+ * library files, are only accepted in stack trace elements.
+ *
+ * @author Tim Boudreau
+ */
+final class StackFrame {
+    private static final String AT = "at "; //NOI18N
+    private static final String FILE_URL = "file:"; //NOI18N
+    private static final int MAX_DIGITS = 9;
+    /**
+     * The function, as node prints it, or null.
+     */
+    final String function;
+    /**
+     * The file path, with any <code>file:</code> URL converted to a path.
+     */
+    final String path;
+    /**
+     * The one-based line number.
+     */
+    final int line;
+    /**
+     * The column, or 0 if none was printed.
+     */
+    final int column;
+
+    StackFrame ( String function, String path, int line, int column ) {
+        this.function = function;
+        this.path = path;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Find the first source location in a line of output.
+     *
+     * @param line A line
+     * @return A frame, or null
+     */
+    static StackFrame find ( String line ) {
+        int max = line.length() - 1;
+        for (int i = 3; i < max; i++) {
+            if (line.charAt( i ) != ':' || !isDigit( line.charAt( i + 1 ) )) {
+                continue;
+            }
+            int dot = extensionStart( line, i );
+            if (dot > 0) {
+                StackFrame result = read( line, dot, i );
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the position of the '.' of a script file extension ending just
+     * before a colon, or -1.
+     */
+    private static int extensionStart ( String line, int colon ) {
+        char s = line.charAt( colon - 1 );
+        char t = line.charAt( colon - 2 );
+        if (s != 's' || (t != 'j' && t != 't')) {
+            return -1;
+        }
+        char u = line.charAt( colon - 3 );
+        if (u == '.') {
+            return colon - 3;
+        }
+        if (t == 'j' && (u == 'm' || u == 'c') && colon > 3 && line.charAt( colon - 4 ) == '.') {
+            return colon - 4;
+        }
+        return -1;
+    }
+
+    private static StackFrame read ( String line, int dot, int colon ) {
+        int lineStart = colon + 1;
+        int lineEnd = digitsEnd( line, lineStart );
+        if (lineEnd < 0) {
+            return null;
+        }
+        int column = 0;
+        int end = lineEnd;
+        if (lineEnd + 1 < line.length() && line.charAt( lineEnd ) == ':' && isDigit( line.charAt( lineEnd + 1 ) )) {
+            end = digitsEnd( line, lineEnd + 1 );
+            if (end < 0) {
+                return null;
+            }
+            column = parse( line, lineEnd + 1, end );
+        }
+        int lineNumber = parse( line, lineStart, lineEnd );
+        int pathStart = -1;
+        if (end < line.length() && line.charAt( end ) == ')') {
+            // Inside parentheses the path may contain spaces
+            int open = line.lastIndexOf( '(', dot );
+            if (open >= 0) {
+                pathStart = open + 1;
+            }
+        }
+        if (pathStart < 0) {
+            pathStart = dot;
+            while ( pathStart > 0 && !isDelimiter( line.charAt( pathStart - 1 ) ) ) {
+                pathStart--;
+            }
+        }
+        if (pathStart == dot) {
+            return null;
+        }
+        int at = atPrefix( line, pathStart );
+        boolean url = line.startsWith( FILE_URL, pathStart );
+        if (at < 0 && !url && !isAbsolute( line, pathStart )) {
+            return null;
+        }
+        if (line.startsWith( "node:", pathStart )) { //NOI18N
+            // Node's built-in modules, which are not files
+            return null;
+        }
+        String function = null;
+        if (at >= 0) {
+            int fnEnd = pathStart;
+            while ( fnEnd > at && (line.charAt( fnEnd - 1 ) == '(' || Character.isWhitespace( line.charAt( fnEnd - 1 ) )) ) {
+                fnEnd--;
+            }
+            if (fnEnd > at + AT.length()) {
+                function = line.substring( at + AT.length(), fnEnd );
+            }
+        }
+        String path = line.substring( pathStart, colon );
+        if (url) {
+            path = urlToPath( path );
+        }
+        return new StackFrame( function, path, lineNumber, column );
+    }
+
+    /**
+     * Find the "at " starting the stack trace element which a path ends,
+     * or -1 if the path is not in one.
+     */
+    private static int atPrefix ( String line, int pathStart ) {
+        for (int at = line.indexOf( AT ); at >= 0 && at < pathStart; at = line.indexOf( AT, at + 1 )) {
+            if (at == 0 || Character.isWhitespace( line.charAt( at - 1 ) )) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isAbsolute ( String line, int pathStart ) {
+        char c = line.charAt( pathStart );
+        if (c == '/' || c == '\\') {
+            return true;
+        }
+        // C:\ or C:/
+        return pathStart + 2 < line.length() && isLetter( c ) && line.charAt( pathStart + 1 ) == ':'
+                && (line.charAt( pathStart + 2 ) == '\\' || line.charAt( pathStart + 2 ) == '/');
+    }
+
+    private static String urlToPath ( String url ) {
+        try {
+            return new File( new URI( url ) ).getPath();
+        } catch ( URISyntaxException | IllegalArgumentException ex ) {
+            // Not escaped, or has a host
+            String result = url.substring( FILE_URL.length() );
+            return result.startsWith( "//" ) ? result.substring( 2 ) : result; //NOI18N
+        }
+    }
+
+    private static int digitsEnd ( String line, int start ) {
+        int end = start;
+        int max = Math.min( line.length(), start + MAX_DIGITS + 1 );
+        while ( end < max && isDigit( line.charAt( end ) ) ) {
+            end++;
+        }
+        return end - start > MAX_DIGITS ? -1 : end;
+    }
+
+    private static int parse ( String line, int start, int end ) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (line.charAt( i ) - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDelimiter ( char c ) {
+        switch ( c ) {
+            case '(':
+            case '"':
+            case '\'':
+            case '`':
+            case '<':
+            case '[':
+                return true;
+            default:
+                return Character.isWhitespace( c );
+        }
+    }
+
+    private static boolean isDigit ( char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter ( char c ) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    @Override
+    public String toString () {
+        return (function == null ? "" : function + ' ') + path + ':' + line + ':' + column; //NOI18N
+    }
+}
@@ -49,7 +49,7 @@ public final class JsonPanel extends JPanel {
     private static Map<String, Object> parse ( FileObject fo ) throws FileNotFoundException, IOException {
         InputStream in = fo.getInputStream();
         try {
-            return NbCollections.checkedMapByFilter( ObjectMapperProvider.newObjectMapper().readValue( in, Map.class ), String.class, Object.class, false );
+            return NbCollections.checkedMapByFilter( ObjectMapperProvider.mapReader().<Map<?, ?>>readValue( in ), String.class, Object.class, false );
         } catch ( Exception e ) {
             Logger.getLogger( JsonPanel.class.getName() ).log( Level.WARNING, "Bad json in " + fo.getPath(), e );
             in = fo.getInputStream();
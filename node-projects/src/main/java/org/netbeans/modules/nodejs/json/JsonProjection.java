@@ -0,0 +1,156 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.netbeans.modules.nodejs.json.JsonPullParser.Token;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * Reads only selected parts of a JSON object, for the many callers which
+ * want two or three fields of a package.json and nothing else.  Everything
+ * not selected is skipped over character by character, without building
+ * strings, numbers, maps or lists; and once every selected top-level key
+ * has been seen, the rest of the input is not read at all.
+ * <p>
+ * Paths are dot-delimited keys, such as <code>main</code> or
+ * <code>repository.url</code>, and select the whole value found there.
+ * Paths only descend through objects, never into arrays.  The result has
+ * the same shape and value types as what {@link SimpleJSONParser} would
+ * return, minus everything unselected; objects on the way to a selected
+ * value are only present if something beneath them was found.  Instances
+ * are immutable and may be shared.
+ *
+ * @author Tim Boudreau
+ */
+public final class JsonProjection {
+    private final Node root = new Node();
+
+    private JsonProjection ( String... paths ) {
+        for (String path : paths) {
+            Node node = root;
+            for (String part : path.split( "\\." )) { //NOI18N
+                if (part.isEmpty()) {
+                    throw new IllegalArgumentException( "Bad path '" + path + "'" ); //NOI18N
+                }
+                if (node.all) {
+                    break;
+                }
+                node = node.child( part );
+            }
+            node.all = true;
+            node.children.clear();
+        }
+        for (Node child : root.children.values()) {
+            if (child.all) {
+                root.leaves++;
+            }
+        }
+    }
+
+    public static JsonProjection of ( String... paths ) {
+        return new JsonProjection( paths );
+    }
+
+    public Map<String, Object> read ( File file ) throws JsonException, IOException {
+        try (InputStream in = new FileInputStream( file )) {
+            return read( in );
+        }
+    }
+
+    /**
+     * Read from a UTF-8 stream, which is not closed.
+     */
+    public Map<String, Object> read ( InputStream in ) throws JsonException, IOException {
+        return read( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Read the selected values.
+     *
+     * @throws JsonException if the input is not a JSON object, or the part
+     * of it that was read is malformed
+     */
+    public Map<String, Object> read ( Reader in ) throws JsonException, IOException {
+        JsonPullParser p = new JsonPullParser( in );
+        if (p.next() != Token.START_OBJECT) {
+            throw p.error( "Expected '{'" ); //NOI18N
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        read( p, root, result );
+        return result;
+    }
+
+    private void read ( JsonPullParser p, Node node, Map<String, Object> into ) throws JsonException, IOException {
+        int leavesFound = 0;
+        while ( p.next() == Token.KEY ) {
+            String key = p.text();
+            Node child = node.children.get( key );
+            if (child == null) {
+                p.skipValue();
+                continue;
+            }
+            Token t = p.next();
+            if (child.all) {
+                Object value = SimpleJSONParser.value( p, t );
+                SimpleJSONParser.readChildren( p, value );
+                if (!into.containsKey( key )) {
+                    leavesFound++;
+                }
+                into.put( key, value );
+                if (node == root && leavesFound == root.leaves && root.leaves == root.children.size()) {
+                    // Everything wanted is here; don't read the rest
+                    return;
+                }
+            } else if (t == Token.START_OBJECT) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                read( p, child, m );
+                if (!m.isEmpty()) {
+                    into.put( key, m );
+                }
+            } else {
+                p.skipValue();
+            }
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>( 8 );
+        boolean all;
+        int leaves;
+
+        Node child ( String name ) {
+            Node result = children.get( name );
+            if (result == null) {
+                result = new Node();
+                children.put( name, result );
+            }
+            return result;
+        }
+    }
+}
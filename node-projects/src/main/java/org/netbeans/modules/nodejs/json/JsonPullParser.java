@@ -0,0 +1,621 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * A streaming JSON tokenizer over a Reader, which accepts the same liberties
+ * hand-written package.json files take and SimpleJSONParser has always
+ * tolerated:  comments, unquoted keys, single-quoted strings and trailing
+ * commas.  Input is read through a fixed buffer, so nothing is materialized
+ * but the token at hand; numbers and literals are decoded in place without
+ * creating strings, and keys are shared, both within a file and, for the
+ * keys npm uses, across files.
+ * <p>
+ * Call {@link #next()} until it returns {@link Token#END}; the current
+ * token's value is available from {@link #text()}, {@link #isIntegral()},
+ * {@link #longValue()} and {@link #doubleValue()}.  Not thread-safe.
+ *
+ * @author Tim Boudreau
+ */
+public final class JsonPullParser implements Closeable {
+    public enum Token {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        KEY,
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL,
+        END
+    }
+    // What may come next
+    private static final int VALUE = 0;
+    private static final int KEY_OR_CLOSE = 1;
+    private static final int VALUE_OR_CLOSE = 2;
+    private static final int AFTER_VALUE = 3;
+    private static final String[] COMMON_KEYS = new String[256];
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private final Reader in;
+    private final char[] buf;
+    private int pos;
+    private int limit;
+    private int consumed;
+    private int line;
+    private int state = VALUE;
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    private Token token;
+    private String text;
+    private boolean integral;
+    private long longValue;
+    private double doubleValue;
+    private char[] scratch = new char[64];
+    private int scratchLength;
+    private final String[] keys = new String[512];
+
+    static {
+        for (String key : new String[]{ "name", "version", "description", "main", "scripts", //NOI18N
+            "dependencies", "devDependencies", "peerDependencies", "optionalDependencies", //NOI18N
+            "bundledDependencies", "bundleDependencies", "repository", "type", "url", "author", //NOI18N
+            "email", "license", "licenses", "keywords", "bugs", "homepage", "engines", "node", //NOI18N
+            "npm", "private", "files", "bin", "directories", "lib", "test", "start", //NOI18N
+            "contributors", "maintainers", "web", "resolved", "integrity", "requires", "dev", //NOI18N
+            "optional", "bundled", "lockfileVersion", "packages", "from" }) { //NOI18N
+            int slot = key.hashCode() & (COMMON_KEYS.length - 1);
+            if (COMMON_KEYS[slot] == null) {
+                COMMON_KEYS[slot] = key;
+            }
+        }
+    }
+
+    public JsonPullParser ( Reader in ) {
+        this( in, DEFAULT_BUFFER_SIZE );
+    }
+
+    JsonPullParser ( Reader in, int bufferSize ) {
+        this.in = in;
+        this.buf = new char[bufferSize];
+    }
+
+    /**
+     * Read the next token.
+     *
+     * @return The token, which is {@link Token#END} once the top-level value
+     * and any whitespace and comments after it have been read
+     * @throws JsonException if the input is not JSON, even leniently
+     */
+    public Token next () throws JsonException, IOException {
+        int c = peek();
+        if (state == AFTER_VALUE) {
+            if (depth == 0) {
+                if (c < 0) {
+                    return token = Token.END;
+                }
+                throw error( "Expected end of input" ); //NOI18N
+            }
+            boolean inObject = objects[depth - 1];
+            if (c == ',') {
+                pos++;
+                state = inObject ? KEY_OR_CLOSE : VALUE_OR_CLOSE;
+                c = peek();
+            } else if (c == (inObject ? '}' : ']')) {
+                return closeScope();
+            } else {
+                throw error( inObject ? "Expected , or }" : "Expected , or ]" ); //NOI18N
+            }
+        }
+        if (c < 0) {
+            throw error( "Unexpected end of input" ); //NOI18N
+        }
+        if (state == KEY_OR_CLOSE) {
+            if (c == '}') {
+                return closeScope();
+            }
+            readKey( (char) c );
+            return token = Token.KEY;
+        }
+        if (state == VALUE_OR_CLOSE && c == ']') {
+            return closeScope();
+        }
+        return readValue( (char) c );
+    }
+
+    /**
+     * Skip over a value without decoding any of it - only quotes, comments
+     * and brackets are looked at.  If the current token is a key, its value
+     * is skipped; if it starts an object or array, the rest of that object or
+     * array is skipped, and the current token becomes the matching end
+     * token.  Otherwise does nothing.  Input which is not well formed inside
+     * skipped values is not detected.
+     */
+    public void skipValue () throws JsonException, IOException {
+        if (token == Token.KEY) {
+            int c = peek();
+            state = AFTER_VALUE;
+            if (c == '{' || c == '[') {
+                pos++;
+                skipNested();
+            } else if (c == '"' || c == '\'') {
+                pos++;
+                skipString( (char) c );
+            } else {
+                // A number, or a word such as true or null
+                while ( (pos < limit || fill()) && (isWordChar( buf[pos] ) || isNumberChar( buf[pos] )) ) {
+                    pos++;
+                }
+            }
+        } else if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+            token = skipNested() == '}' ? Token.END_OBJECT : Token.END_ARRAY;
+            depth--;
+            state = AFTER_VALUE;
+        }
+    }
+
+    private int skipNested () throws JsonException, IOException {
+        for (int nesting = 1;;) {
+            int c = read();
+            switch ( c ) {
+                case '"':
+                case '\'':
+                    skipString( (char) c );
+                    break;
+                case '/':
+                    skipComment();
+                    break;
+                case '\n':
+                    line++;
+                    break;
+                case '{':
+                case '[':
+                    nesting++;
+                    break;
+                case '}':
+                case ']':
+                    if (--nesting == 0) {
+                        return c;
+                    }
+            }
+        }
+    }
+
+    private void skipString ( char quote ) throws JsonException, IOException {
+        for (int c = read(); c != quote; c = read()) {
+            if (c == '\\') {
+                read();
+            } else if (c == '\n') {
+                line++;
+            }
+        }
+    }
+
+    /**
+     * The current token.
+     */
+    public Token token () {
+        return token;
+    }
+
+    /**
+     * The text of the current key or string token.
+     */
+    public String text () {
+        return text;
+    }
+
+    /**
+     * Whether the current number has neither a fraction nor an exponent,
+     * and fits in a long.
+     */
+    public boolean isIntegral () {
+        return integral;
+    }
+
+    public long longValue () {
+        return integral ? longValue : (long) doubleValue;
+    }
+
+    public double doubleValue () {
+        return integral ? longValue : doubleValue;
+    }
+
+    /**
+     * The number of objects and arrays the current token is inside of.
+     */
+    public int depth () {
+        return depth;
+    }
+
+    @Override
+    public void close () throws IOException {
+        in.close();
+    }
+
+    /**
+     * Create an exception describing a problem at the current position.
+     */
+    public JsonException error ( String msg ) {
+        char what = pos < limit ? buf[pos] : '\000';
+        return new JsonException( msg, what, line, consumed + pos );
+    }
+
+    private Token closeScope () {
+        token = buf[pos++] == '}' ? Token.END_OBJECT : Token.END_ARRAY;
+        depth--;
+        state = AFTER_VALUE;
+        return token;
+    }
+
+    private void push ( boolean object ) {
+        if (depth == objects.length) {
+            boolean[] nue = new boolean[depth * 2];
+            System.arraycopy( objects, 0, nue, 0, depth );
+            objects = nue;
+        }
+        objects[depth++] = object;
+    }
+
+    private Token readValue ( char c ) throws JsonException, IOException {
+        state = AFTER_VALUE;
+        switch ( c ) {
+            case '{':
+                pos++;
+                push( true );
+                state = KEY_OR_CLOSE;
+                return token = Token.START_OBJECT;
+            case '[':
+                pos++;
+                push( false );
+                state = VALUE_OR_CLOSE;
+                return token = Token.START_ARRAY;
+            case '"':
+            case '\'':
+                readString( c, false );
+                return token = Token.STRING;
+            case '-':
+            case '+':
+            case '.':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                readNumber();
+                return token = Token.NUMBER;
+            default:
+                readWord();
+                if (scratchMatches( "true" )) { //NOI18N
+                    return token = Token.TRUE;
+                } else if (scratchMatches( "false" )) { //NOI18N
+                    return token = Token.FALSE;
+                } else if (scratchMatches( "null" )) { //NOI18N
+                    return token = Token.NULL;
+                }
+                throw error( scratchLength == 0 ? "Expected a value" //NOI18N
+                        : "Expected a value but found '" + new String( scratch, 0, scratchLength ) + "'" ); //NOI18N
+        }
+    }
+
+    private void readKey ( char c ) throws JsonException, IOException {
+        if (c == '"' || c == '\'') {
+            readString( c, true );
+        } else if (Character.isJavaIdentifierStart( c )) {
+            readWord();
+            text = key( scratch, 0, scratchLength );
+        } else {
+            throw error( "Expected '\"' or whitespace before key" ); //NOI18N
+        }
+        if (peek() != ':') {
+            throw error( "Expected : or whitespace between key and value" ); //NOI18N
+        }
+        pos++;
+        state = VALUE;
+    }
+
+    /**
+     * Read a quoted string, slicing it straight out of the buffer unless it
+     * contains escapes or crosses a refill.
+     */
+    private void readString ( char quote, boolean isKey ) throws JsonException, IOException {
+        pos++;
+        int start = pos;
+        boolean copied = false;
+        scratchLength = 0;
+        for (;;) {
+            if (pos == limit) {
+                append( buf, start, pos - start );
+                copied = true;
+                if (!fill()) {
+                    throw error( "Unterminated string" ); //NOI18N
+                }
+                start = pos;
+            }
+            char c = buf[pos];
+            if (c == quote) {
+                if (copied) {
+                    append( buf, start, pos - start );
+                    text = isKey ? key( scratch, 0, scratchLength ) : new String( scratch, 0, scratchLength );
+                } else {
+                    text = isKey ? key( buf, start, pos - start ) : new String( buf, start, pos - start );
+                }
+                pos++;
+                return;
+            } else if (c == '\\') {
+                append( buf, start, pos - start );
+                copied = true;
+                pos++;
+                readEscape();
+                start = pos;
+            } else {
+                if (c == '\n') {
+                    line++;
+                }
+                pos++;
+            }
+        }
+    }
+
+    private void readEscape () throws JsonException, IOException {
+        int c = read();
+        switch ( c ) {
+            case 'n':
+                append( '\n' );
+                break;
+            case 't':
+                append( '\t' );
+                break;
+            case 'r':
+                append( '\r' );
+                break;
+            case 'b':
+                append( '\b' );
+                break;
+            case 'f':
+                append( '\f' );
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit( read(), 16 );
+                    if (digit < 0) {
+                        throw error( "Bad unicode escape" ); //NOI18N
+                    }
+                    value = (value << 4) | digit;
+                }
+                append( (char) value );
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                append( (char) c );
+                break;
+            default:
+                // Lenient - keep what was written
+                append( '\\' );
+                append( (char) c );
+        }
+    }
+
+    /**
+     * Read a number, computing its value as the digits go by, and only
+     * building a string for the rare numbers with a fraction or exponent.
+     */
+    private void readNumber () throws JsonException, IOException {
+        scratchLength = 0;
+        long value = 0;
+        boolean negative = false;
+        boolean overflow = false;
+        boolean decimal = false;
+        int digits = 0;
+        for (;;) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buf[pos];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    overflow = true;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c == '-' && scratchLength == 0) {
+                negative = true;
+            } else if (isNumberChar( c )) {
+                decimal = true;
+            } else {
+                break;
+            }
+            append( c );
+            pos++;
+        }
+        if (!decimal && !overflow && digits > 0) {
+            integral = true;
+            longValue = negative ? -value : value;
+            return;
+        }
+        integral = false;
+        try {
+            doubleValue = Double.parseDouble( new String( scratch, 0, scratchLength ) );
+        } catch ( NumberFormatException ex ) {
+            throw error( "Invalid number '" + new String( scratch, 0, scratchLength ) + "'" ); //NOI18N
+        }
+    }
+
+    /**
+     * Read an unquoted run of identifier characters into the scratch buffer.
+     */
+    private void readWord () throws IOException {
+        scratchLength = 0;
+        while ( (pos < limit || fill()) && isWordChar( buf[pos] ) ) {
+            append( buf[pos++] );
+        }
+    }
+
+    /**
+     * Determine if a character can be part of a number, other than its
+     * digits.
+     */
+    private static boolean isNumberChar ( char c ) {
+        return c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+';
+    }
+
+    private static boolean isWordChar ( char c ) {
+        return Character.isJavaIdentifierPart( c ) || c == '-' || c == '.';
+    }
+
+    private boolean scratchMatches ( String s ) {
+        if (scratchLength != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != s.charAt( i )) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a key, reusing the string from an earlier occurrence in this file,
+     * or one of the well known ones, if there is one.
+     */
+    private String key ( char[] chars, int start, int length ) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = hash & (keys.length - 1);
+        String result = keys[slot];
+        if (result != null && matches( result, chars, start, length )) {
+            return result;
+        }
+        result = COMMON_KEYS[hash & (COMMON_KEYS.length - 1)];
+        if (result == null || !matches( result, chars, start, length )) {
+            result = new String( chars, start, length );
+        }
+        keys[slot] = result;
+        return result;
+    }
+
+    private static boolean matches ( String s, char[] chars, int start, int length ) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt( i ) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append ( char c ) {
+        if (scratchLength == scratch.length) {
+            char[] nue = new char[scratch.length * 2];
+            System.arraycopy( scratch, 0, nue, 0, scratchLength );
+            scratch = nue;
+        }
+        scratch[scratchLength++] = c;
+    }
+
+    private void append ( char[] chars, int start, int length ) {
+        if (scratchLength + length > scratch.length) {
+            char[] nue = new char[Math.max( scratch.length * 2, scratchLength + length )];
+            System.arraycopy( scratch, 0, nue, 0, scratchLength );
+            scratch = nue;
+        }
+        System.arraycopy( chars, start, scratch, scratchLength, length );
+        scratchLength += length;
+    }
+
+    private int read () throws JsonException, IOException {
+        if (pos == limit && !fill()) {
+            throw error( "Unexpected end of input" ); //NOI18N
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Skip whitespace and comments, and return the next character without
+     * consuming it, or -1 at the end of input.
+     */
+    private int peek () throws JsonException, IOException {
+        for (;;) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buf[pos];
+            if (c == '\n') {
+                line++;
+                pos++;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\uFEFF' || Character.isWhitespace( c )) {
+                pos++;
+            } else if (c == '/') {
+                pos++;
+                skipComment();
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void skipComment () throws JsonException, IOException {
+        int c = read();
+        if (c == '/') {
+            while ( (pos < limit || fill()) && buf[pos] != '\n' ) {
+                pos++;
+            }
+        } else if (c == '*') {
+            for (int last = 0; (c = read()) != '/' || last != '*'; last = c) {
+                if (c == '\n') {
+                    line++;
+                }
+            }
+        } else {
+            throw error( "Expected / or * awaiting comment marker" ); //NOI18N
+        }
+    }
+
+    private boolean fill () throws IOException {
+        int count;
+        do {
+            count = in.read( buf, 0, buf.length );
+        } while ( count == 0 );
+        if (count < 0) {
+            return false;
+        }
+        consumed += limit;
+        pos = 0;
+        limit = count;
+        return true;
+    }
+}
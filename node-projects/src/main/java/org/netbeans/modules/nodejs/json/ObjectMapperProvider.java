@@ -22,17 +22,29 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import java.util.List;
 import java.util.Map;
 
 
 /**
- * Jackson's ObjectMapper is stateful, so we need to create new ones; and we
- * don't want to put configuration all over the place.
+ * Keeps Jackson configuration in one place.  An ObjectMapper may not be
+ * reconfigured once in use, so code which needs to change its configuration
+ * should call {@link #newObjectMapper()}; everything else should use the
+ * shared, immutable and thread-safe readers and writer here, which reuse
+ * one mapper's serializer and deserializer caches instead of rebuilding
+ * them for every file.
  *
  * @author Tim Boudreau
  */
 public class ObjectMapperProvider {
+    private static final ObjectMapper SHARED = newObjectMapper();
+    private static final ObjectReader MAP_READER;
+    private static final ObjectReader LIST_READER;
+    private static final ObjectWriter WRITER;
+
     public static ObjectMapper newObjectMapper () {
         ObjectMapper m = new ObjectMapper();
         m.configure( JsonParser.Feature.ALLOW_COMMENTS, true );
@@ -45,9 +57,44 @@ public class ObjectMapperProvider {
         return m;
     }
 
+    /**
+     * Get a shared reader which reads JSON objects as
+     * <code>Map&lt;String, Object&gt;</code>.
+     */
+    public static ObjectReader mapReader () {
+        return MAP_READER;
+    }
+
+    /**
+     * Get a shared reader which reads JSON arrays as lists.
+     */
+    public static ObjectReader listReader () {
+        return LIST_READER;
+    }
+
+    /**
+     * Get a shared reader for some other type.
+     */
+    public static ObjectReader reader ( Class<?> type ) {
+        return SHARED.readerFor( type );
+    }
+
+    /**
+     * Get the shared writer.
+     */
+    public static ObjectWriter writer () {
+        return WRITER;
+    }
+
     public static final TypeReference<Map<String,Object>> STRING_OBJECT_MAP
             = new TR();
 
     private static final class TR extends TypeReference<Map<String,Object>> {
     }
+
+    static {
+        MAP_READER = SHARED.readerFor( STRING_OBJECT_MAP );
+        LIST_READER = SHARED.readerFor( List.class );
+        WRITER = SHARED.writer();
+    }
 }
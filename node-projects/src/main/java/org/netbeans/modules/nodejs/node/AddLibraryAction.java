@@ -164,8 +164,7 @@ public class AddLibraryAction extends AbstractAction {
             for (LibraryAndVersion lib : l) {
                 map.put( lib.name, lib.version );
             }
-            Map<String, Object> m = metadata.getMap();
-            m.put( "dependencies", map );
+            metadata.addMap( "dependencies", map ); //NOI18N
             try {
                 metadata.save();
             } catch ( IOException ex ) {
@@ -0,0 +1,498 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.nodejs.NodeJSProjectFactory;
+import org.netbeans.modules.nodejs.json.JsonPullParser;
+import org.netbeans.modules.nodejs.json.JsonPullParser.Token;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * The installed dependency tree of a project as npm recorded it in its lock
+ * file, so that it can be had from reading one file rather than listing and
+ * reading package.json in every folder under node_modules.  Both the
+ * <code>packages</code> layout of lockfile versions 2 and 3 and the nested
+ * <code>dependencies</code> layout of version 1 are understood; the lock
+ * file is streamed, and everything but names, versions, resolved URLs,
+ * flags and dependency names is skipped without being parsed.
+ * <p>
+ * Packages are identified by int index, index 0 being the project itself,
+ * and by their install path relative to the project, such as
+ * <code>node_modules/a/node_modules/b</code>.  Dependencies are resolved to
+ * packages the way node resolves them, by looking in the nearest
+ * node_modules folder which has them.  Whether a package is actually
+ * present on disk is only checked when asked, and then remembered.
+ * <p>
+ * With a version 1 lock file, the project's own dependencies are not
+ * recorded, so {@link #dependencies(int)} of the root is empty; use
+ * {@link #find(String)}.
+ *
+ * @author Tim Boudreau
+ */
+final class DependencyGraph {
+    /**
+     * Written by npm 7 and later to describe what is really in node_modules.
+     */
+    static final String HIDDEN_LOCK_JSON = NodeJSProjectFactory.NODE_MODULES_FOLDER + "/.package-lock.json"; //NOI18N
+    private static final String[] LOCK_FILES = { HIDDEN_LOCK_JSON,
+        NodeJSProjectFactory.NPM_SHRINKWRAP_JSON, NodeJSProjectFactory.PACKAGE_LOCK_JSON };
+    private static final String NODE_MODULES_PREFIX = NodeJSProjectFactory.NODE_MODULES_FOLDER + '/';
+    private static final String NESTED_NODE_MODULES = '/' + NODE_MODULES_PREFIX;
+    private static final int[] NONE = new int[0];
+    private static final byte DEV = 1;
+    private static final byte OPTIONAL = 2;
+    private static final byte LINK = 4;
+    private static final byte PRESENT = 8;
+    private static final byte ABSENT = 16;
+    private final File projectDir;
+    private final File source;
+    private final long sourceModified;
+    private final String[] paths;
+    private final String[] names;
+    private final String[] versions;
+    private final String[] resolved;
+    private final byte[] flags;
+    private final int[][] dependencies;
+    private final String[][] unresolved;
+    private final Map<String, Integer> byPath;
+
+    private DependencyGraph ( File projectDir, File source, Builder b ) {
+        this.projectDir = projectDir;
+        this.source = source;
+        this.sourceModified = source == null ? 0 : source.lastModified();
+        int size = b.entries.size();
+        paths = new String[size];
+        names = new String[size];
+        versions = new String[size];
+        resolved = new String[size];
+        flags = new byte[size];
+        dependencies = new int[size][];
+        unresolved = new String[size][];
+        byPath = new HashMap<>( size * 2 );
+        for (int i = 0; i < size; i++) {
+            Entry e = b.entries.get( i );
+            paths[i] = e.path;
+            names[i] = e.name;
+            versions[i] = e.version;
+            resolved[i] = e.resolved;
+            flags[i] = e.flags;
+            byPath.put( e.path, i );
+        }
+        for (int i = 0; i < size; i++) {
+            List<String> requires = b.entries.get( i ).requires;
+            if (requires == null) {
+                dependencies[i] = NONE;
+                continue;
+            }
+            int[] deps = new int[requires.size()];
+            int count = 0;
+            List<String> missing = null;
+            for (String name : requires) {
+                int dep = resolve( paths[i], name );
+                if (dep >= 0) {
+                    deps[count++] = dep;
+                } else {
+                    if (missing == null) {
+                        missing = new ArrayList<>( 2 );
+                    }
+                    missing.add( name );
+                }
+            }
+            dependencies[i] = count == deps.length ? deps : Arrays.copyOf( deps, count );
+            unresolved[i] = missing == null ? null : missing.toArray( new String[missing.size()] );
+        }
+    }
+
+    /**
+     * Load the graph from the first lock file a project has.
+     *
+     * @return A graph, or null if there is no lock file or none is readable
+     */
+    static DependencyGraph load ( File projectDir ) {
+        if (projectDir == null) {
+            return null;
+        }
+        for (String name : LOCK_FILES) {
+            File f = new File( projectDir, name );
+            if (!f.isFile()) {
+                continue;
+            }
+            try (InputStream in = new FileInputStream( f )) {
+                return load( projectDir, f, new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+            } catch ( IOException | JsonException ex ) {
+                Logger.getLogger( DependencyGraph.class.getName() ).log( Level.INFO,
+                        "Unreadable lock file " + f, ex ); //NOI18N
+            }
+        }
+        return null;
+    }
+
+    static DependencyGraph load ( File projectDir, File source, Reader in ) throws JsonException, IOException {
+        JsonPullParser p = new JsonPullParser( in );
+        if (p.next() != Token.START_OBJECT) {
+            throw p.error( "Expected '{'" ); //NOI18N
+        }
+        Builder packages = new Builder();
+        Builder legacy = new Builder();
+        Entry root = new Entry( "" ); //NOI18N
+        legacy.entries.add( root );
+        while ( p.next() == Token.KEY ) {
+            switch ( p.text() ) {
+                case "name": //NOI18N
+                    root.name = legacy.string( p );
+                    break;
+                case "version": //NOI18N
+                    root.version = legacy.string( p );
+                    break;
+                case "packages": //NOI18N
+                    if (p.next() == Token.START_OBJECT) {
+                        packages.readPackages( p );
+                    } else {
+                        p.skipValue();
+                    }
+                    break;
+                case "dependencies": //NOI18N
+                    if (!packages.entries.isEmpty()) {
+                        // Kept in version 2 files for old npms; we have better
+                        p.skipValue();
+                    } else if (p.next() == Token.START_OBJECT) {
+                        legacy.readDependencies( p, "" ); //NOI18N
+                    } else {
+                        p.skipValue();
+                    }
+                    break;
+                default:
+                    p.skipValue();
+            }
+        }
+        Builder b = packages.entries.isEmpty() ? legacy : packages;
+        if (b == packages && b.find( "" ) == null) { //NOI18N
+            b.entries.add( 0, root );
+        } else if (b == packages) {
+            // The root must be index 0
+            Entry r = b.find( "" ); //NOI18N
+            b.entries.remove( r );
+            b.entries.add( 0, r );
+            if (r.name == null) {
+                r.name = root.name;
+            }
+        }
+        return new DependencyGraph( projectDir, source, b );
+    }
+
+    /**
+     * Determine if this graph still describes the project:  the lock file
+     * it was read from is unchanged and no lock file that would be preferred
+     * over it has appeared.
+     */
+    boolean isUpToDate () {
+        for (String name : LOCK_FILES) {
+            File f = new File( projectDir, name );
+            if (f.isFile()) {
+                return f.equals( source ) && f.lastModified() == sourceModified;
+            }
+        }
+        return false;
+    }
+
+    int size () {
+        return paths.length;
+    }
+
+    /**
+     * Find a package by its path relative to the project, such as
+     * <code>node_modules/foo</code>.
+     *
+     * @return The package's index, or -1
+     */
+    int find ( String path ) {
+        Integer result = byPath.get( path );
+        return result == null ? -1 : result;
+    }
+
+    String path ( int pkg ) {
+        return paths[pkg];
+    }
+
+    String name ( int pkg ) {
+        return names[pkg];
+    }
+
+    String version ( int pkg ) {
+        return versions[pkg];
+    }
+
+    String resolved ( int pkg ) {
+        return resolved[pkg];
+    }
+
+    boolean isDev ( int pkg ) {
+        return (flags[pkg] & DEV) != 0;
+    }
+
+    boolean isOptional ( int pkg ) {
+        return (flags[pkg] & OPTIONAL) != 0;
+    }
+
+    /**
+     * The packages a package depends on.  A dependency which is a link is
+     * represented by the package it links to.  Do not modify the result.
+     */
+    int[] dependencies ( int pkg ) {
+        return dependencies[pkg];
+    }
+
+    /**
+     * Names of dependencies of a package which the lock file does not have.
+     */
+    List<String> unresolved ( int pkg ) {
+        return unresolved[pkg] == null ? Collections.<String>emptyList()
+                : Arrays.asList( unresolved[pkg] );
+    }
+
+    File folder ( int pkg ) {
+        return paths[pkg].isEmpty() ? projectDir : new File( projectDir, paths[pkg] );
+    }
+
+    /**
+     * Determine if a package's folder exists, checking the disk only the
+     * first time.
+     */
+    boolean isInstalled ( int pkg ) {
+        byte f = flags[pkg];
+        if ((f & (PRESENT | ABSENT)) == 0) {
+            f |= folder( pkg ).isDirectory() ? PRESENT : ABSENT;
+            flags[pkg] = f;
+        }
+        return (f & PRESENT) != 0;
+    }
+
+    /**
+     * Find the package node would load for a require of a name from a
+     * package's folder, following links.
+     */
+    private int resolve ( String fromPath, String name ) {
+        String base = fromPath;
+        for (;;) {
+            Integer result = byPath.get( base.isEmpty() ? NODE_MODULES_PREFIX + name : base + NESTED_NODE_MODULES + name );
+            if (result != null) {
+                if ((flags[result] & LINK) != 0 && resolved[result] != null) {
+                    Integer target = byPath.get( resolved[result] );
+                    return target == null ? result : target;
+                }
+                return result;
+            }
+            if (base.isEmpty()) {
+                return -1;
+            }
+            int cut = base.lastIndexOf( NESTED_NODE_MODULES );
+            base = cut < 0 ? "" : base.substring( 0, cut ); //NOI18N
+        }
+    }
+
+    private static final class Entry {
+        final String path;
+        String name;
+        String version;
+        String resolved;
+        byte flags;
+        List<String> requires;
+
+        Entry ( String path ) {
+            this.path = path;
+        }
+
+        void require ( String name ) {
+            if (requires == null) {
+                requires = new ArrayList<>( 4 );
+            }
+            if (!requires.contains( name )) {
+                requires.add( name );
+            }
+        }
+    }
+
+    private static final class Builder {
+        final List<Entry> entries = new ArrayList<>();
+        // Names and versions repeat endlessly in big trees
+        private final Map<String, String> strings = new HashMap<>();
+
+        Entry find ( String path ) {
+            for (Entry e : entries) {
+                if (e.path.equals( path )) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        String intern ( String s ) {
+            String result = strings.get( s );
+            if (result == null) {
+                strings.put( s, s );
+                result = s;
+            }
+            return result;
+        }
+
+        String string ( JsonPullParser p ) throws JsonException, IOException {
+            Token t = p.next();
+            if (t == Token.STRING) {
+                return intern( p.text() );
+            }
+            p.skipValue();
+            return null;
+        }
+
+        boolean bool ( JsonPullParser p ) throws JsonException, IOException {
+            Token t = p.next();
+            p.skipValue();
+            return t == Token.TRUE;
+        }
+
+        void requires ( JsonPullParser p, Entry into ) throws JsonException, IOException {
+            if (p.next() != Token.START_OBJECT) {
+                p.skipValue();
+                return;
+            }
+            while ( p.next() == Token.KEY ) {
+                into.require( intern( p.text() ) );
+                p.skipValue();
+            }
+        }
+
+        /**
+         * Read a version 2 or 3 <code>packages</code> object, keyed by
+         * install path.
+         */
+        void readPackages ( JsonPullParser p ) throws JsonException, IOException {
+            while ( p.next() == Token.KEY ) {
+                Entry e = new Entry( p.text() );
+                if (p.next() != Token.START_OBJECT) {
+                    p.skipValue();
+                    continue;
+                }
+                while ( p.next() == Token.KEY ) {
+                    switch ( p.text() ) {
+                        case "name": //NOI18N
+                            e.name = string( p );
+                            break;
+                        case "version": //NOI18N
+                            e.version = string( p );
+                            break;
+                        case "resolved": //NOI18N
+                            e.resolved = string( p );
+                            break;
+                        case "dev": //NOI18N
+                            e.flags |= bool( p ) ? DEV : 0;
+                            break;
+                        case "optional": //NOI18N
+                            e.flags |= bool( p ) ? OPTIONAL : 0;
+                            break;
+                        case "link": //NOI18N
+                            e.flags |= bool( p ) ? LINK : 0;
+                            break;
+                        case "devDependencies": //NOI18N
+                            // Only installed for the project itself
+                            if (e.path.isEmpty()) {
+                                requires( p, e );
+                            } else {
+                                p.skipValue();
+                            }
+                            break;
+                        case "dependencies": //NOI18N
+                        case "optionalDependencies": //NOI18N
+                        case "peerDependencies": //NOI18N
+                            requires( p, e );
+                            break;
+                        default:
+                            p.skipValue();
+                    }
+                }
+                if (e.name == null) {
+                    int ix = e.path.lastIndexOf( NODE_MODULES_PREFIX );
+                    e.name = intern( ix < 0 ? e.path.substring( e.path.lastIndexOf( '/' ) + 1 )
+                            : e.path.substring( ix + NODE_MODULES_PREFIX.length() ) );
+                }
+                entries.add( e );
+            }
+        }
+
+        /**
+         * Read a version 1 <code>dependencies</code> object, keyed by name
+         * and nested the way node_modules is.
+         */
+        void readDependencies ( JsonPullParser p, String parentPath ) throws JsonException, IOException {
+            while ( p.next() == Token.KEY ) {
+                String name = intern( p.text() );
+                Entry e = new Entry( parentPath.isEmpty() ? NODE_MODULES_PREFIX + name
+                        : parentPath + NESTED_NODE_MODULES + name );
+                e.name = name;
+                if (p.next() != Token.START_OBJECT) {
+                    p.skipValue();
+                    continue;
+                }
+                entries.add( e );
+                while ( p.next() == Token.KEY ) {
+                    switch ( p.text() ) {
+                        case "version": //NOI18N
+                            e.version = string( p );
+                            break;
+                        case "resolved": //NOI18N
+                            e.resolved = string( p );
+                            break;
+                        case "dev": //NOI18N
+                            e.flags |= bool( p ) ? DEV : 0;
+                            break;
+                        case "optional": //NOI18N
+                            e.flags |= bool( p ) ? OPTIONAL : 0;
+                            break;
+                        case "requires": //NOI18N
+                            requires( p, e );
+                            break;
+                        case "dependencies": //NOI18N
+                            if (p.next() == Token.START_OBJECT) {
+                                readDependencies( p, e.path );
+                            } else {
+                                p.skipValue();
+                            }
+                            break;
+                        default:
+                            p.skipValue();
+                    }
+                }
+            }
+        }
+    }
+}
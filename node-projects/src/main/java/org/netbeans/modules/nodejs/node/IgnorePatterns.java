@@ -0,0 +1,140 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.netbeans.modules.nodejs.registry.Globs;
+
+/**
+ * An immutable, ordered set of .gitignore-style patterns.  Supports comments,
+ * negation with <code>!</code>, directory-only patterns with a trailing
+ * slash, patterns anchored to the directory of the file they came from, and
+ * the <code>*</code>, <code>?</code> and <code>**</code> wildcards.  As with
+ * git, the last pattern which matches a path decides whether it is ignored.
+ *
+ * @author Tim Boudreau
+ */
+final class IgnorePatterns {
+    static final IgnorePatterns EMPTY = new IgnorePatterns( Collections.<Rule>emptyList() );
+    private final List<Rule> rules;
+
+    private IgnorePatterns ( List<Rule> rules ) {
+        this.rules = rules;
+    }
+
+    /**
+     * Parse patterns, one per line.
+     *
+     * @param base The path, relative to the project root, of the folder the
+     * patterns are relative to, or the empty string
+     * @param lines The patterns
+     * @return A new set of patterns containing those in this one followed by
+     * the new ones
+     */
+    IgnorePatterns add ( String base, Iterable<String> lines ) {
+        List<Rule> nue = new ArrayList<>( rules );
+        for (String line : lines) {
+            Rule rule = Rule.parse( base, line );
+            if (rule != null) {
+                nue.add( rule );
+            }
+        }
+        return nue.size() == rules.size() ? this : new IgnorePatterns( nue );
+    }
+
+    boolean isEmpty () {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Determine if a path is ignored.
+     *
+     * @param path A path relative to the project root, with no leading slash
+     * @param folder Whether the path is a folder
+     * @return true if it is ignored
+     */
+    boolean isIgnored ( String path, boolean folder ) {
+        boolean result = false;
+        for (Rule rule : rules) {
+            if (rule.negated == result && rule.matches( path, folder )) {
+                result = !rule.negated;
+            }
+        }
+        return result;
+    }
+
+    private static final class Rule {
+        private final String base;
+        private final Pattern pattern;
+        private final boolean negated;
+        private final boolean folderOnly;
+        private final boolean anchored;
+
+        private Rule ( String base, Pattern pattern, boolean negated, boolean folderOnly, boolean anchored ) {
+            this.base = base;
+            this.pattern = pattern;
+            this.negated = negated;
+            this.folderOnly = folderOnly;
+            this.anchored = anchored;
+        }
+
+        static Rule parse ( String base, String line ) {
+            String glob = line.trim();
+            if (glob.isEmpty() || glob.charAt( 0 ) == '#') {
+                return null;
+            }
+            boolean negated = glob.charAt( 0 ) == '!';
+            if (negated) {
+                glob = glob.substring( 1 );
+            }
+            boolean folderOnly = glob.endsWith( "/" ); //NOI18N
+            while ( glob.endsWith( "/" ) ) { //NOI18N
+                glob = glob.substring( 0, glob.length() - 1 );
+            }
+            boolean anchored = glob.indexOf( '/' ) >= 0;
+            while ( glob.startsWith( "/" ) ) { //NOI18N
+                glob = glob.substring( 1 );
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            String prefix = base == null || base.isEmpty() ? "" : base + '/';
+            return new Rule( prefix, Globs.toPattern( glob ), negated, folderOnly, anchored );
+        }
+
+        boolean matches ( String path, boolean folder ) {
+            if (folderOnly && !folder) {
+                return false;
+            }
+            if (!base.isEmpty()) {
+                if (!path.startsWith( base )) {
+                    return false;
+                }
+                path = path.substring( base.length() );
+            }
+            if (!anchored) {
+                path = path.substring( path.lastIndexOf( '/' ) + 1 );
+            }
+            return pattern.matcher( path ).matches();
+        }
+    }
+}
@@ -18,32 +18,35 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package org.netbeans.modules.nodejs.node;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.awt.EventQueue;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import org.netbeans.api.queries.VisibilityQuery;
 import org.netbeans.modules.nodejs.NodeJSProject;
 import org.netbeans.modules.nodejs.NodeJSProjectFactory;
 import org.netbeans.modules.nodejs.Npm;
-import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
+import org.netbeans.modules.nodejs.json.JsonProjection;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
 import org.openide.filesystems.FileChangeAdapter;
 import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileObject;
@@ -55,7 +58,7 @@ import org.openide.nodes.ChildFactory;
 import org.openide.nodes.Children;
 import org.openide.nodes.Node;
 import org.openide.util.Exceptions;
-import org.openide.util.NbCollections;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -63,23 +66,35 @@ import org.openide.util.NbCollections;
  */
 public final class LibrariesChildFactory extends ChildFactory.Detachable<ProjectNodeKey> {
     private final A a = new A();
+    private final ChangeListener indexListener = new IndexListener();
+    private final RefreshCoalescer refresher = new RefreshCoalescer( new Refresher(), REFRESH_QUIET_PERIOD, REFRESH_MAX_LATENCY );
     private FileObject modulesFolder;
     private FileObject prjFolder;
+    private final Map<String, Set<ProjectNodeKey>> dependencyCache = new HashMap<>();
+    private final Set<String> staleLibraries = new HashSet<>();
+    private boolean allLibrariesStale;
+    private DependencyGraph lockGraph;
     private final NodeJSProject project;
+    private static final int REFRESH_QUIET_PERIOD = 300;
+    private static final int REFRESH_MAX_LATENCY = 2000;
+    private static final JsonProjection MAIN = JsonProjection.of( "main" ); //NOI18N
+    private static final RequestProcessor LIBRARY_SCAN = new RequestProcessor( "node.js library scan", //NOI18N
+            Math.max( 2, Math.min( 16, Runtime.getRuntime().availableProcessors() ) ) );
     public static final String[] BUILT_IN_NODE_LIBS = new String[]{"assert", "buffer",
         "buffer_ieee754", "child_process", "cluster", "console", "constants", "crypto",
         "dgram", "dns", "events", "freelist", "fs", "http", "https", "module",
         "net", "os", "path", "punycode", "querystring", "readline", "repl", "stream",
         "string_decoder", "sys", "timers", "tls", "tty",
         "url", "util", "vm", "zlib"};
-    public static final Pattern CHECK_FOR_REQUIRE = Pattern.compile(
-            "require\\s??\\(\\s??['\"](.*?)['\"]\\s??\\)", 40 );
 
     public LibrariesChildFactory ( NodeJSProject project ) {
         this.project = project;
     }
 
     public void update () {
+        synchronized ( this ) {
+            allLibrariesStale = true;
+        }
         super.refresh( false );
     }
 
@@ -100,6 +115,10 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
             this.modulesFolder = lmodsFld;
             this.prjFolder = lprjFolder;
         }
+        RequireIndex index = project.getLookup().lookup( RequireIndex.class );
+        if (index != null) {
+            index.addChangeListener( indexListener );
+        }
     }
 
     @Override
@@ -116,6 +135,11 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
         if (lprjFolder != null) {
             lprjFolder.removeFileChangeListener( a );
         }
+        RequireIndex index = project.getLookup().lookup( RequireIndex.class );
+        if (index != null) {
+            index.removeChangeListener( indexListener );
+        }
+        refresher.cancel();
     }
 
     @Override
@@ -193,70 +217,124 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
         return null;
     }
 
+    /**
+     * Note which of the project's direct libraries a file event affects, so
+     * the next refresh only re-resolves their dependencies.
+     */
+    private void invalidate ( FileObject fo ) {
+        FileObject parent = fo.getParent();
+        FileObject lmodulesFolder;
+        boolean attach = false;
+        synchronized ( this ) {
+            lmodulesFolder = modulesFolder;
+            if (lmodulesFolder != null && lmodulesFolder.equals( parent ) && !fo.isData()) {
+                staleLibraries.add( fo.getNameExt() );
+            } else if (lmodulesFolder != null && lmodulesFolder.equals( parent )) {
+                // npm rewrites files such as .package-lock.json here after
+                // changes anywhere in the tree
+                allLibrariesStale = true;
+            } else if (parent != null && parent.equals( prjFolder ) && isLockFile( fo.getNameExt() )) {
+                allLibrariesStale = true;
+            } else if (NodeJSProjectFactory.NODE_MODULES_FOLDER.equals( fo.getNameExt() )) {
+                allLibrariesStale = true;
+                attach = fo.isValid() && fo.isFolder() && !fo.equals( lmodulesFolder );
+                if (attach) {
+                    modulesFolder = fo;
+                }
+            }
+        }
+        if (attach) {
+            if (lmodulesFolder != null) {
+                lmodulesFolder.removeFileChangeListener( a );
+            }
+            fo.addFileChangeListener( a );
+        }
+    }
+
+    private static boolean isLockFile ( String name ) {
+        return NodeJSProjectFactory.PACKAGE_LOCK_JSON.equals( name )
+                || NodeJSProjectFactory.NPM_SHRINKWRAP_JSON.equals( name );
+    }
+
     class A extends FileChangeAdapter {
         @Override
         public void fileFolderCreated ( FileEvent fe ) {
-            refresh( false );
+            invalidate( fe.getFile() );
+            refresher.request();
         }
 
         @Override
         public void fileDataCreated ( FileEvent fe ) {
-            refresh( false );
+            invalidate( fe.getFile() );
+            refresher.request();
         }
 
         @Override
         public void fileChanged ( FileEvent fe ) {
-            refresh( false );
+            invalidate( fe.getFile() );
+            refresher.request();
         }
 
         @Override
         public void fileDeleted ( FileEvent fe ) {
+            invalidate( fe.getFile() );
+            refresher.request();
+        }
+    }
+
+    class IndexListener implements ChangeListener {
+        @Override
+        public void stateChanged ( ChangeEvent e ) {
+            refresher.request();
+        }
+    }
+
+    class Refresher implements Runnable {
+        @Override
+        public void run () {
+            Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.FINE,
+                    "Refresh libraries of {0}: {1}", new Object[]{project.getProjectDirectory().getPath(), refresher} ); //NOI18N
             refresh( false );
         }
     }
 
     public List<ProjectNodeKey> libraries () {
         VisibilityQuery q = VisibilityQuery.getDefault();
-        List<ProjectNodeKey> keys = new ArrayList<>();
-        Map<String, List<FileObject>> otherLibs = findOtherModules( project.getProjectDirectory() );
+        LibrarySet keys = new LibrarySet();
+        Map<String, Set<String>> otherLibs = findOtherModules();
         FileObject libFolder = project.getProjectDirectory().getFileObject( NodeJSProjectFactory.NODE_MODULES_FOLDER );
         if (libFolder != null) {
-            Set<ProjectNodeKey> libFolders = new HashSet<>();
-            Set<FileObject> childFolders = new LinkedHashSet<>();
-            for (FileObject lib : libFolder.getChildren()) {
-                File f = FileUtil.toFile( lib );
-                try {
-                    f = f.getCanonicalFile();
-                    lib = FileUtil.toFileObject( FileUtil.normalizeFile( f ) );
-                } catch ( IOException ex ) {
-                    Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.FINER,
-                            "No canonical file for " + lib.getPath(), ex ); //NOI18N
+            List<FileObject> childFolders = new ArrayList<>();
+            for (FileObject kid : libFolder.getChildren()) {
+                if (kid.isFolder()) {
+                    childFolders.add( kid );
                 }
-                childFolders.add( lib );
             }
-            for (FileObject lib : childFolders) {
+            Map<FileObject, FileObject> canonical = canonicalize( childFolders );
+            Map<String, FileObject> directLibs = new LinkedHashMap<>();
+            for (FileObject kid : childFolders) {
+                FileObject lib = canonical.containsKey( kid ) ? canonical.get( kid ) : kid;
                 boolean visible = q.isVisible( lib );
                 if ((visible) && (!NodeJSProjectFactory.NODE_MODULES_FOLDER.equals( lib.getName() ))
                         && (!"nbproject".equals( lib.getName() )) && (lib.isFolder())) { //NOI18N
-                    if (otherLibs.containsKey( lib.getName() )) {
-                        otherLibs.remove( lib.getName() );
-                    }
+                    otherLibs.remove( lib.getName() );
                     ProjectNodeKey key = new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, lib );
                     key.direct = true;
                     keys.add( key );
-                    recurseLibraries( lib, libFolders );
+                    directLibs.put( kid.getNameExt(), lib );
+                }
+            }
+            for (Set<ProjectNodeKey> deps : dependencies( directLibs ).values()) {
+                for (ProjectNodeKey dep : deps) {
+                    keys.add( dep );
                 }
             }
-            keys.addAll( libFolders );
         }
         File home = new File(System.getProperty("user.home"));
         File userHomeModules = new File( home, NodeJSProjectFactory.NODE_MODULES_FOLDER ); //NOI18N
         userHomeModules = (userHomeModules.exists()) && (userHomeModules.isDirectory()) ? userHomeModules : null;
         if (userHomeModules == null) {
-            String s = Npm.getDefault().run( home, "root");
-            if (s != null) {
-                userHomeModules = new File(s);
-            }
+            userHomeModules = Npm.getDefault().root( false );
         }
         File libModules = new File( "/usr/local/lib/node_modules" ); //NOI18N
         if (!libModules.exists()) {
@@ -269,9 +347,9 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
             libModules = new File( "/opt/local/lib/node_modules" ); //NOI18N
         }
         if (!libModules.exists()) {
-            String s = Npm.getDefault().run( new File( System.getProperty( "user.home" ) ), "root", "-g" );
-            if (s != null) {
-                libModules = new File( s );
+            File globalRoot = Npm.getDefault().root( true );
+            if (globalRoot != null) {
+                libModules = globalRoot;
             }
         }
 
@@ -310,8 +388,8 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
             }
             if (Arrays.binarySearch( BUILT_IN_NODE_LIBS, lib ) >= 0) {
                 ProjectNodeKey key = new ProjectNodeKey.BuiltInLibrary( lib );
-                keys.add( key );
                 key.direct = true;
+                keys.add( key );
                 continue;
             }
             if (lib.startsWith( "./" ) || lib.startsWith( "../" )) { //NOI18N
@@ -321,132 +399,356 @@ public final class LibrariesChildFactory extends ChildFactory.Detachable<Project
                 //                }
             }
             ProjectNodeKey.MissingLibrary key = new ProjectNodeKey.MissingLibrary( lib );
-            List<FileObject> referencedBy = otherLibs.get( lib );
-            List<String> paths = new LinkedList<>();
-            for (FileObject fo : referencedBy) {
-                if (FileUtil.isParentOf( project.getProjectDirectory(), fo )) {
-                    paths.add( FileUtil.getRelativePath( project.getProjectDirectory(), fo ) );
+            key.references = new ArrayList<>( otherLibs.get( lib ) );
+            keys.add( key );
+        }
+        return keys.toSortedList();
+    }
+
+    /**
+     * Canonicalize a batch of folders in parallel, so symlinked libraries
+     * (e.g. from <code>npm link</code>) resolve to their real location.
+     */
+    private static Map<FileObject, FileObject> canonicalize ( List<FileObject> folders ) {
+        List<Callable<FileObject[]>> tasks = new ArrayList<>( folders.size() );
+        for (final FileObject fo : folders) {
+            tasks.add( new Callable<FileObject[]>() {
+                @Override
+                public FileObject[] call () {
+                    return new FileObject[]{fo, canonicalize( fo )};
+                }
+            } );
+        }
+        Map<FileObject, FileObject> result = new HashMap<>();
+        for (FileObject[] pair : runAll( tasks )) {
+            result.put( pair[0], pair[1] );
+        }
+        return result;
+    }
+
+    private static FileObject canonicalize ( FileObject lib ) {
+        File f = FileUtil.toFile( lib );
+        if (f != null) {
+            try {
+                File canon = f.getCanonicalFile();
+                if (!canon.equals( f )) {
+                    FileObject result = FileUtil.toFileObject( FileUtil.normalizeFile( canon ) );
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } catch ( IOException ex ) {
+                Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.FINER,
+                        "No canonical file for " + lib.getPath(), ex ); //NOI18N
+            }
+        }
+        return lib;
+    }
+
+    /**
+     * Get the libraries each of the project's direct libraries depends on,
+     * keyed by the direct library's folder name under node_modules.  Results
+     * are cached between refreshes, and only libraries which are new or
+     * which file events have marked as changed are resolved again.
+     */
+    private Map<String, Set<ProjectNodeKey>> dependencies ( Map<String, FileObject> directLibs ) {
+        Map<String, Set<ProjectNodeKey>> result = new HashMap<>();
+        Map<String, FileObject> toResolve = new LinkedHashMap<>();
+        DependencyGraph graph;
+        synchronized ( this ) {
+            if (allLibrariesStale || !staleLibraries.isEmpty()) {
+                // Something was installed or removed; what is on disk may
+                // no longer be what we remember
+                lockGraph = null;
+            }
+            graph = lockGraph;
+            if (allLibrariesStale) {
+                dependencyCache.clear();
+                allLibrariesStale = false;
+            }
+            dependencyCache.keySet().removeAll( staleLibraries );
+            staleLibraries.clear();
+            dependencyCache.keySet().retainAll( directLibs.keySet() );
+            for (Map.Entry<String, FileObject> e : directLibs.entrySet()) {
+                Set<ProjectNodeKey> cached = dependencyCache.get( e.getKey() );
+                if (cached != null) {
+                    result.put( e.getKey(), cached );
                 } else {
-                    paths.add( fo.getPath() );
+                    toResolve.put( e.getKey(), e.getValue() );
                 }
             }
-            key.references = paths;
-            keys.add( key );
         }
-        outer:
-        for (Iterator<ProjectNodeKey> it = keys.iterator(); it.hasNext();) {
-            ProjectNodeKey k = it.next();
-            if (k.getType() == ProjectNodeKeyTypes.MISSING_LIBRARY) {
-                for (ProjectNodeKey k1 : new LinkedList<>( keys )) {
-                    if (k == k1) {
-                        continue;
+        if (!toResolve.isEmpty()) {
+            if (graph == null || !graph.isUpToDate()) {
+                graph = DependencyGraph.load( FileUtil.toFile( project.getProjectDirectory() ) );
+                synchronized ( this ) {
+                    lockGraph = graph;
+                }
+            }
+            Map<String, Set<ProjectNodeKey>> resolved = graph == null
+                    ? new HashMap<String, Set<ProjectNodeKey>>()
+                    : lockedLibraries( graph, toResolve );
+            if (!toResolve.isEmpty()) {
+                resolved.putAll( transitiveLibraries( toResolve ) );
+            }
+            synchronized ( this ) {
+                if (!allLibrariesStale) {
+                    for (Map.Entry<String, Set<ProjectNodeKey>> e : resolved.entrySet()) {
+                        // If it changed again while we were working, leave it
+                        // for the next refresh
+                        if (!staleLibraries.contains( e.getKey() )) {
+                            dependencyCache.put( e.getKey(), e.getValue() );
+                        }
                     }
-                    if (k.toString().equals( k1.toString() ) && k1.getType() != ProjectNodeKeyTypes.MISSING_LIBRARY) {
-                        it.remove();
-                        break outer;
-                    } else if (k.getType() == k1.getType() && k.toString().equals( k1.toString() )) {
-                        it.remove();
-                        break outer;
+                }
+            }
+            result.putAll( resolved );
+        }
+        return result;
+    }
+
+    /**
+     * Find the libraries the passed libraries depend on from the project's
+     * lock file, without reading anything else.  Libraries the lock file
+     * knows are removed from the passed map; whatever remains needs to be
+     * found by scanning.  Only whether each library's folder exists is
+     * checked, and only once it is reached.
+     */
+    private Map<String, Set<ProjectNodeKey>> lockedLibraries ( DependencyGraph graph, Map<String, FileObject> directLibs ) {
+        Map<String, Set<ProjectNodeKey>> result = new HashMap<>();
+        Map<Integer, ProjectNodeKey> keys = new HashMap<>();
+        for (Iterator<Map.Entry<String, FileObject>> it = directLibs.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, FileObject> e = it.next();
+            List<Integer> roots = lockedRoots( graph, e.getKey() );
+            if (roots.isEmpty()) {
+                continue;
+            }
+            it.remove();
+            Set<ProjectNodeKey> deps = new HashSet<>();
+            result.put( e.getKey(), deps );
+            BitSet visited = new BitSet( graph.size() );
+            List<Integer> queue = new ArrayList<>( roots );
+            for (int root : roots) {
+                visited.set( root );
+            }
+            for (int i = 0; i < queue.size() && !Thread.currentThread().isInterrupted(); i++) {
+                for (int dep : graph.dependencies( queue.get( i ) )) {
+                    if (visited.get( dep ) || !graph.isInstalled( dep )) {
+                        continue;
                     }
-                    if (k.getFld() != null && k1.getFld() != null && k.getFld().equals( k1.getFld() )) {
-                        it.remove();
-                        break outer;
+                    visited.set( dep );
+                    queue.add( dep );
+                    ProjectNodeKey key = keys.get( dep );
+                    if (key == null) {
+                        FileObject folder = FileUtil.toFileObject( FileUtil.normalizeFile( graph.folder( dep ) ) );
+                        if (folder == null) {
+                            continue;
+                        }
+                        key = new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, folder );
+                        key.direct = false;
+                        keys.put( dep, key );
                     }
+                    deps.add( key );
                 }
             }
         }
-        Collections.sort( keys );
-        return keys;
+        return result;
     }
 
-    private void recurseLibraries ( FileObject libFolder, Set<ProjectNodeKey> keys ) {
-        FileObject libs = libFolder.getFileObject( NodeJSProjectFactory.NODE_MODULES_FOLDER );
-        ObjectMapper mapper = ObjectMapperProvider.newObjectMapper();
-        if (libs != null) {
-            for (FileObject fo : libFolder.getChildren()) {
-                for (FileObject lib : fo.getChildren()) {
-                    if ((!NodeJSProjectFactory.NODE_MODULES_FOLDER.equals( lib.getName() )) && (!"nbproject".equals( lib.getName() )) && (lib.isFolder())) {
-                        File f = FileUtil.toFile( lib );
-                        if (f != null) {
-                            try {
-                                File canon = f.getCanonicalFile();
-                                if (canon != null && !canon.equals( f )) {
-                                    lib = FileUtil.toFileObject( canon );
-                                }
-                            } catch ( IOException ex ) {
-                                Exceptions.printStackTrace( ex );
-                            }
-                        }
-                        boolean jsFound = false;
-                        FileObject pkgJson = lib.getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
-                        if (pkgJson != null && pkgJson.isValid()) {
-                            File pkgFile = FileUtil.toFile( pkgJson );
-                            if (pkgFile != null && pkgJson.isValid()) {
-                                try {
-                                    Map<String, Object> m = mapper.readValue( pkgFile, Map.class );
-                                    Object mainO = m.get( "main" ); //NOI18N
-                                    if (mainO instanceof String) {
-                                        jsFound = lib.getFileObject( mainO.toString() ) != null;
-                                    }
-                                    if (!jsFound) {
-                                        jsFound = lib.getFileObject( "index.js" ) != null; //NOI18N
-                                    }
-                                } catch ( FileNotFoundException ex ) {
-                                    Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.WARNING,
-                                            "File disappeared: {0}", pkgFile.getPath() ); //NOI18N
-                                } catch ( IOException ex ) {
-                                    Exceptions.printStackTrace( ex );
-                                }
-                            }
-                        } else {
-                            for (FileObject kid : lib.getChildren()) {
-                                if (!kid.isValid()) {
-                                    continue;
-                                }
-                                jsFound = "js".equals( kid.getExt() );
-                                if (jsFound) {
-                                    break;
-                                }
-                            }
+    /**
+     * Find the packages a folder directly under node_modules holds - the
+     * package itself, or each package in it if it is an npm scope.
+     */
+    private static List<Integer> lockedRoots ( DependencyGraph graph, String folderName ) {
+        String path = NodeJSProjectFactory.NODE_MODULES_FOLDER + '/' + folderName;
+        int pkg = graph.find( path );
+        if (pkg >= 0) {
+            return graph.isInstalled( pkg ) ? Collections.singletonList( pkg )
+                    : Collections.<Integer>emptyList();
+        }
+        List<Integer> result = new ArrayList<>();
+        if (folderName.startsWith( "@" )) { //NOI18N
+            String prefix = path + '/';
+            for (int i = 1; i < graph.size(); i++) {
+                String p = graph.path( i );
+                if (p.startsWith( prefix ) && p.indexOf( '/', prefix.length() ) < 0 && graph.isInstalled( i )) {
+                    result.add( i );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the libraries the passed libraries depend on, breadth-first.  Each
+     * level of the dependency tree is resolved in parallel on a bounded
+     * thread pool - canonicalizing each folder, reading its package.json and
+     * looking for its main file - and the libraries found become the next
+     * level.  A folder reachable from several of the passed libraries is
+     * only resolved once, and each is only visited once per library, so
+     * links which create cycles cannot cause infinite recursion.
+     */
+    private Map<String, Set<ProjectNodeKey>> transitiveLibraries ( Map<String, FileObject> directLibs ) {
+        Map<String, Set<ProjectNodeKey>> result = new HashMap<>();
+        Map<String, Set<FileObject>> visited = new HashMap<>();
+        Map<FileObject, ResolvedLibrary> resolved = new HashMap<>();
+        Set<FileObject> tried = new HashSet<>();
+        Map<FileObject, ProjectNodeKey> keys = new HashMap<>();
+        Map<FileObject, Set<String>> level = new LinkedHashMap<>();
+        for (Map.Entry<String, FileObject> e : directLibs.entrySet()) {
+            result.put( e.getKey(), new HashSet<ProjectNodeKey>() );
+            visited.put( e.getKey(), new HashSet<>( Collections.singleton( e.getValue() ) ) );
+            for (FileObject dep : dependencyFolders( e.getValue() )) {
+                reachedFrom( level, dep, e.getKey() );
+            }
+        }
+        while ( !level.isEmpty() && !Thread.currentThread().isInterrupted() ) {
+            List<Callable<ResolvedLibrary>> tasks = new ArrayList<>( level.size() );
+            for (final FileObject candidate : level.keySet()) {
+                if (tried.add( candidate )) {
+                    tasks.add( new Callable<ResolvedLibrary>() {
+                        @Override
+                        public ResolvedLibrary call () {
+                            return resolveLibrary( candidate );
                         }
-                        if (jsFound) {
-                            ProjectNodeKey key = new ProjectNodeKey(
-                                    ProjectNodeKeyTypes.LIBRARY, lib );
+                    } );
+                }
+            }
+            for (ResolvedLibrary lib : runAll( tasks )) {
+                resolved.put( lib.candidate, lib );
+            }
+            Map<FileObject, Set<String>> next = new LinkedHashMap<>();
+            for (Map.Entry<FileObject, Set<String>> e : level.entrySet()) {
+                ResolvedLibrary lib = resolved.get( e.getKey() );
+                if (lib == null) {
+                    continue;
+                }
+                for (String direct : e.getValue()) {
+                    if (visited.get( direct ).add( lib.folder )) {
+                        ProjectNodeKey key = keys.get( lib.folder );
+                        if (key == null) {
+                            key = new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, lib.folder );
                             key.direct = false;
-                            keys.add( key );
-                            recurseLibraries( lib, keys );
+                            keys.put( lib.folder, key );
+                        }
+                        result.get( direct ).add( key );
+                        for (FileObject dep : lib.dependencies) {
+                            reachedFrom( next, dep, direct );
                         }
                     }
                 }
             }
+            level = next;
         }
+        return result;
     }
 
-    private Map<String, List<FileObject>> findOtherModules ( FileObject fld ) {
-        Map<String, List<FileObject>> libs = new HashMap<>();
-        assert (!EventQueue.isDispatchThread());
-        for (FileObject fo : NbCollections.iterable( fld.getChildren( true ) )) {
-            if (("js".equals( fo.getExt() )) && (fo.isData()) && (fo.canRead())) {
-                checkForLibraries( fo, libs );
+    private static void reachedFrom ( Map<FileObject, Set<String>> level, FileObject folder, String directLib ) {
+        Set<String> from = level.get( folder );
+        if (from == null) {
+            from = new HashSet<>();
+            level.put( folder, from );
+        }
+        from.add( directLib );
+    }
+
+    private static List<FileObject> dependencyFolders ( FileObject libFolder ) {
+        FileObject libs = libFolder.getFileObject( NodeJSProjectFactory.NODE_MODULES_FOLDER );
+        if (libs == null || !libs.isFolder()) {
+            return Collections.emptyList();
+        }
+        List<FileObject> result = new ArrayList<>();
+        for (FileObject lib : libs.getChildren()) {
+            if ((!NodeJSProjectFactory.NODE_MODULES_FOLDER.equals( lib.getName() ))
+                    && (!"nbproject".equals( lib.getName() )) && (lib.isFolder())) { //NOI18N
+                result.add( lib );
+            }
+        }
+        return result;
+    }
+
+    private static ResolvedLibrary resolveLibrary ( FileObject candidate ) {
+        FileObject lib = canonicalize( candidate );
+        if (!lib.isValid()) {
+            return null;
+        }
+        boolean jsFound = false;
+        FileObject pkgJson = lib.getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
+        if (pkgJson != null && pkgJson.isValid()) {
+            File pkgFile = FileUtil.toFile( pkgJson );
+            if (pkgFile != null && pkgJson.isValid()) {
+                try {
+                    Map<String, Object> m = MAIN.read( pkgFile );
+                    Object mainO = m.get( "main" ); //NOI18N
+                    if (mainO instanceof String) {
+                        jsFound = lib.getFileObject( mainO.toString() ) != null;
+                    }
+                    if (!jsFound) {
+                        jsFound = lib.getFileObject( "index.js" ) != null; //NOI18N
+                    }
+                } catch ( FileNotFoundException ex ) {
+                    Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.WARNING,
+                            "File disappeared: {0}", pkgFile.getPath() ); //NOI18N
+                } catch ( IOException | JsonException ex ) {
+                    Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.INFO,
+                            "Bad package.json " + pkgFile.getPath(), ex ); //NOI18N
+                }
+            }
+        } else {
+            for (FileObject kid : lib.getChildren()) {
+                if (!kid.isValid()) {
+                    continue;
+                }
+                jsFound = "js".equals( kid.getExt() ); //NOI18N
+                if (jsFound) {
+                    break;
+                }
             }
         }
-        return libs;
+        return jsFound ? new ResolvedLibrary( candidate, lib, dependencyFolders( lib ) ) : null;
     }
 
-    private void checkForLibraries ( FileObject jsFile, Map<String, List<FileObject>> all ) {
+    /**
+     * Run a batch of tasks on the library scanning thread pool, returning
+     * their non-null results in order.
+     */
+    private static <T> List<T> runAll ( List<Callable<T>> tasks ) {
+        List<T> result = new ArrayList<>( tasks.size() );
         try {
-            String text = jsFile.asText();
-            Matcher m = CHECK_FOR_REQUIRE.matcher( text );
-            while ( m.find() ) {
-                List<FileObject> l = all.get( m.group( 1 ) );
-                if (l == null) {
-                    l = new LinkedList<FileObject>();
-                    all.put( m.group( 1 ), l );
+            for (Future<T> f : LIBRARY_SCAN.invokeAll( tasks )) {
+                try {
+                    T t = f.get();
+                    if (t != null) {
+                        result.add( t );
+                    }
+                } catch ( ExecutionException ex ) {
+                    Exceptions.printStackTrace( ex.getCause() );
                 }
-                l.add( jsFile );
             }
-        } catch ( IOException ex ) {
-            Logger.getLogger( LibrariesChildFactory.class.getName() ).log( Level.INFO, jsFile.getPath(), ex );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private static final class ResolvedLibrary {
+        final FileObject candidate;
+        final FileObject folder;
+        final List<FileObject> dependencies;
+
+        ResolvedLibrary ( FileObject candidate, FileObject folder, List<FileObject> dependencies ) {
+            this.candidate = candidate;
+            this.folder = folder;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private Map<String, Set<String>> findOtherModules () {
+        assert (!EventQueue.isDispatchThread());
+        RequireIndex index = project.getLookup().lookup( RequireIndex.class );
+        if (index == null) {
+            index = new RequireIndex( project );
         }
+        return index.requires();
     }
 }
@@ -25,15 +25,12 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,8 +43,6 @@ import org.netbeans.api.project.Project;
 import org.netbeans.modules.nodejs.NodeJSProject;
 import org.netbeans.modules.nodejs.NodeJSProjectFactory;
 import org.netbeans.modules.nodejs.json.JsonPanel;
-import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
-import static org.netbeans.modules.nodejs.json.ObjectMapperProvider.STRING_OBJECT_MAP;
 import org.netbeans.modules.nodejs.node.AddLibraryAction.LibraryAndVersion;
 import org.openide.awt.HtmlBrowser.URLDisplayer;
 import org.openide.filesystems.FileObject;
@@ -119,9 +114,7 @@ final class LibraryFilterNode extends FilterNode {
     }
 
     public String getVersion () {
-        synchronized ( key ) {
-            return getString( getPackageInfo(), "version", null );
-        }
+        return getPackageInfo().version;
     }
 
     public ProjectNodeKey getKey () {
@@ -137,121 +130,17 @@ final class LibraryFilterNode extends FilterNode {
             @Override
             public void run () {
                 try {
-                    Map<String, Object> json = getPackageInfo();
+                    PackageDescriptor desc = getPackageInfo();
                     synchronized ( key ) {
-                        LibraryFilterNode.this.name = getString( json, "name", getDisplayName() ); //NOI18N
+                        LibraryFilterNode.this.name = desc.name == null ? getDisplayName() : desc.name;
                         LibraryFilterNode.this.setName( LibraryFilterNode.this.name );
-                        LibraryFilterNode.this.description = getString( json, "description", "[no description]" );
-                        LibraryFilterNode.this.author = getString( json, "author", null ); //NOI18N
-                        LibraryFilterNode.this.version = getString( json, "version", null ); //NOI18N
-                    }
-                    Object license = json.get( "license" ); //NOI18N
-                    List<String> l = new ArrayList<String>();
-                    if (license == null) {
-                        license = json.get( "licenses" ); //NOI18N
-                    }
-                    if (license instanceof String) {
-                        l.add( license.toString() );
-                    }
-                    if (license instanceof List) {
-                        for (Object o : (List<?>) license) {
-                            if (o instanceof String) {
-                                l.add( o.toString() );
-                            } else if (o instanceof Map) {
-                                Map<?, ?> m = (Map<?, ?>) o;
-                                Object val = m.get( "type" ); //NOI18N
-                                if (val != null) {
-                                    l.add( val.toString() );
-                                }
-                            }
-                        }
-                    }
-                    if (license instanceof Map) {
-                        Map<?, ?> m = (Map<?, ?>) license;
-                        Object val = m.get( "type" ); //NOI18N
-                        if (val != null) {
-                            l.add( val.toString() );
-                        }
-                    }
-                    Object repo = json.get( "repository" ); //NOI18N
-                    if (repo instanceof String) {
-                        synchronized ( key ) {
-                            LibraryFilterNode.this.repo = repo.toString();
-                            LibraryFilterNode.this.repoType = "[unknown]";
-                        }
-                    }
-                    if (repo instanceof Map) {
-                        Map<?, ?> m = (Map<?, ?>) repo;
-                        Object rType = m.get( "type" ); //NOI18N
-                        if (rType instanceof String) {
-                            synchronized ( key ) {
-                                LibraryFilterNode.this.repoType = rType.toString();
-                            }
-                        }
-                        Object r = m.get( "url" ); //NOI18N
-                        if (r instanceof String) {
-                            synchronized ( key ) {
-                                LibraryFilterNode.this.repo = r.toString();
-                            }
-                        }
-                    }
-                    if (author == null) {
-                        Object a = json.get( "author" ); //NOI18N
-                        if (a instanceof Map) {
-                            StringBuilder sb = new StringBuilder();
-                            Object nm = ((Map) a).get( "name" ); //NOI18N
-                            if (nm != null) {
-                                sb.append( nm );
-                            }
-                            nm = ((Map) a).get( "email" ); //NOI18N
-                            if (nm != null) {
-                                sb.append( " <" ).append( nm ).append( ">" ); //NOI18N
-                            }
-                            synchronized ( key ) {
-                                LibraryFilterNode.this.author = sb.toString();
-                            }
-                        } else if (a instanceof List) {
-                            StringBuilder sb = new StringBuilder();
-                            List<?> list = (List<?>) a;
-                            for (Iterator<?> it = list.iterator(); it.hasNext();) {
-                                Object o = it.next();
-                                if (o instanceof String) {
-                                    sb.append( o );
-                                    if (it.hasNext()) {
-                                        sb.append( ", " ); //NOI18N
-                                    }
-                                } else if (o instanceof Map) {
-                                    Object nm = ((Map) o).get( "name" ); //NOI18N
-                                    if (nm != null) {
-                                        sb.append( nm );
-                                    }
-                                    nm = ((Map) o).get( "email" ); //NOI18N
-                                    if (nm != null) {
-                                        sb.append( " <" ).append( nm ).append( ">" ); //NOI18N
-                                    }
-                                }
-                            }
-                            synchronized ( key ) {
-                                LibraryFilterNode.this.author = sb.toString();
-                            }
-                        }
-                    }
-                    Object o = json.get( "bugs" ); //NOI18N
-                    if (o instanceof String) {
-                        synchronized ( key ) {
-                            LibraryFilterNode.this.bugUrl = o.toString();
-                        }
-                    } else if (o instanceof Map) {
-                        Map<?, ?> m = (Map<?, ?>) o;
-                        Object web = m.get( "web" ); //NOI18N
-                        if (web instanceof String) {
-                            synchronized ( key ) {
-                                LibraryFilterNode.this.bugUrl = web.toString();
-                            }
-                        }
-                    }
-                    synchronized ( key ) {
-                        LibraryFilterNode.this.licenses = l.toArray( new String[l.size()] );
+                        LibraryFilterNode.this.description = desc.description == null ? "[no description]" : desc.description;
+                        LibraryFilterNode.this.author = desc.author;
+                        LibraryFilterNode.this.version = desc.version;
+                        LibraryFilterNode.this.repoType = desc.repoType;
+                        LibraryFilterNode.this.repo = desc.repo;
+                        LibraryFilterNode.this.bugUrl = desc.bugUrl;
+                        LibraryFilterNode.this.licenses = desc.licenses.toArray( new String[desc.licenses.size()] );
                     }
                 } finally {
                     if (latch != null) {
@@ -381,24 +270,6 @@ final class LibraryFilterNode extends FilterNode {
         return super.getShortDescription();
     }
 
-    private String getString ( Map<String, Object> m, String key, String def ) {
-        Object o = m.get( key );
-        if (o instanceof String) {
-            return (String) o;
-        }
-        if (o instanceof List) {
-            StringBuilder sb = new StringBuilder();
-            for (Iterator<?> it = ((List<?>) o).iterator(); it.hasNext();) {
-                sb.append( it.next() );
-                if (it.hasNext()) {
-                    sb.append( ',' ); //NOI18N
-                }
-            }
-            return sb.toString();
-        }
-        return def;
-    }
-
     public Action[] getActions ( boolean ignored ) {
         Action[] result = super.getActions( ignored );
         List<Action> l = new ArrayList<Action>( Arrays.asList( result ) );
@@ -523,22 +394,8 @@ final class LibraryFilterNode extends FilterNode {
         }
     }
 
-    private Map<String, Object> getPackageInfo () {
+    private PackageDescriptor getPackageInfo () {
         assert !EventQueue.isDispatchThread();
-        FileObject json = getLookup().lookup( DataObject.class )
-                .getPrimaryFile().getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
-        if (json != null && json.isValid()) {
-            try {
-                try (InputStream in = json.getInputStream()) {
-                    Map<String, Object> m = ObjectMapperProvider.newObjectMapper()
-                            .readValue( in, STRING_OBJECT_MAP );
-                    return m;
-                }
-            } catch ( IOException ex ) {
-                Logger.getLogger( LibraryFilterNode.class.getName() ).log(
-                        Level.INFO, "Failed to read JSON in " + json.getPath(), ex ); //NOI18N
-            }
-        }
-        return Collections.<String, Object>emptyMap();
+        return PackageDescriptorCache.getDefault().get( getLookup().lookup( DataObject.class ).getPrimaryFile() );
     }
 }
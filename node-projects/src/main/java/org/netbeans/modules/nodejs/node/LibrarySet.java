@@ -0,0 +1,94 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.openide.filesystems.FileObject;
+
+/**
+ * The keys shown under a project's libraries node, indexed by name and by
+ * folder so that duplicates are rejected as they are added rather than by
+ * comparing every key with every other afterwards.  A library is only listed
+ * once per folder, the first key added for a folder wins, and a library
+ * which was found somewhere replaces a missing library of the same name.
+ *
+ * @author Tim Boudreau
+ */
+final class LibrarySet {
+    private final Set<ProjectNodeKey> keys = new LinkedHashSet<>();
+    private final Map<String, ProjectNodeKey> byName = new HashMap<>();
+    private final Map<FileObject, ProjectNodeKey> byFolder = new HashMap<>();
+
+    /**
+     * Add a key, unless it duplicates one already present.
+     *
+     * @param key A key
+     * @return true if the key was added
+     */
+    boolean add ( ProjectNodeKey key ) {
+        FileObject fld = key.getFld();
+        if (fld != null && byFolder.containsKey( fld )) {
+            return false;
+        }
+        String name = key.toString();
+        ProjectNodeKey existing = byName.get( name );
+        if (isMissing( key )) {
+            if (existing != null) {
+                return false;
+            }
+        } else if (existing != null && isMissing( existing )) {
+            keys.remove( existing );
+            existing = null;
+        }
+        if (existing == null) {
+            byName.put( name, key );
+        }
+        if (fld != null) {
+            byFolder.put( fld, key );
+        }
+        return keys.add( key );
+    }
+
+    boolean containsName ( String name ) {
+        return byName.containsKey( name );
+    }
+
+    int size () {
+        return keys.size();
+    }
+
+    /**
+     * Get the keys in display order.
+     */
+    List<ProjectNodeKey> toSortedList () {
+        List<ProjectNodeKey> result = new ArrayList<>( keys );
+        Collections.sort( result );
+        return result;
+    }
+
+    private static boolean isMissing ( ProjectNodeKey key ) {
+        return key.getType() == ProjectNodeKeyTypes.MISSING_LIBRARY;
+    }
+}
@@ -0,0 +1,185 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.netbeans.modules.nodejs.json.JsonProjection;
+
+/**
+ * The parts of a library's package.json shown in the libraries node, read
+ * once and kept instead of the raw JSON map.
+ *
+ * @author Tim Boudreau
+ */
+final class PackageDescriptor {
+    /**
+     * The only parts of package.json which need to be read.
+     */
+    static final JsonProjection FIELDS = JsonProjection.of( "name", "version", "description", //NOI18N
+            "author", "license", "licenses", "repository", "bugs" ); //NOI18N
+    static final PackageDescriptor EMPTY = new PackageDescriptor( null, null, null, null,
+            Collections.<String>emptyList(), null, null, null );
+    final String name;
+    final String version;
+    final String description;
+    final String author;
+    final List<String> licenses;
+    final String repoType;
+    final String repo;
+    final String bugUrl;
+
+    PackageDescriptor ( String name, String version, String description, String author,
+            List<String> licenses, String repoType, String repo, String bugUrl ) {
+        this.name = name;
+        this.version = version;
+        this.description = description;
+        this.author = author;
+        this.licenses = licenses;
+        this.repoType = repoType;
+        this.repo = repo;
+        this.bugUrl = bugUrl;
+    }
+
+    static PackageDescriptor from ( Map<String, Object> json ) {
+        if (json.isEmpty()) {
+            return EMPTY;
+        }
+        String repoType = null;
+        String repo = null;
+        Object r = json.get( "repository" ); //NOI18N
+        if (r instanceof String) {
+            repo = r.toString();
+            repoType = "[unknown]"; //NOI18N
+        } else if (r instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) r;
+            Object rType = m.get( "type" ); //NOI18N
+            if (rType instanceof String) {
+                repoType = rType.toString();
+            }
+            Object url = m.get( "url" ); //NOI18N
+            if (url instanceof String) {
+                repo = url.toString();
+            }
+        }
+        String bugUrl = null;
+        Object bugs = json.get( "bugs" ); //NOI18N
+        if (bugs instanceof String) {
+            bugUrl = bugs.toString();
+        } else if (bugs instanceof Map) {
+            Object web = ((Map<?, ?>) bugs).get( "web" ); //NOI18N
+            if (web instanceof String) {
+                bugUrl = web.toString();
+            }
+        }
+        return new PackageDescriptor( getString( json, "name" ), getString( json, "version" ), //NOI18N
+                getString( json, "description" ), author( json ), licenses( json ), //NOI18N
+                repoType, repo, bugUrl );
+    }
+
+    private static List<String> licenses ( Map<String, Object> json ) {
+        Object license = json.get( "license" ); //NOI18N
+        if (license == null) {
+            license = json.get( "licenses" ); //NOI18N
+        }
+        List<String> l = new ArrayList<>( 3 );
+        if (license instanceof String) {
+            l.add( license.toString() );
+        }
+        if (license instanceof List) {
+            for (Object o : (List<?>) license) {
+                if (o instanceof String) {
+                    l.add( o.toString() );
+                } else if (o instanceof Map) {
+                    Object val = ((Map<?, ?>) o).get( "type" ); //NOI18N
+                    if (val != null) {
+                        l.add( val.toString() );
+                    }
+                }
+            }
+        }
+        if (license instanceof Map) {
+            Object val = ((Map<?, ?>) license).get( "type" ); //NOI18N
+            if (val != null) {
+                l.add( val.toString() );
+            }
+        }
+        return l.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList( l );
+    }
+
+    private static String author ( Map<String, Object> json ) {
+        String result = getString( json, "author" ); //NOI18N
+        if (result != null) {
+            return result;
+        }
+        Object a = json.get( "author" ); //NOI18N
+        if (a instanceof Map) {
+            StringBuilder sb = new StringBuilder();
+            appendPerson( (Map<?, ?>) a, sb );
+            return sb.toString();
+        } else if (a instanceof List) {
+            StringBuilder sb = new StringBuilder();
+            for (Iterator<?> it = ((List<?>) a).iterator(); it.hasNext();) {
+                Object o = it.next();
+                if (o instanceof String) {
+                    sb.append( o );
+                    if (it.hasNext()) {
+                        sb.append( ", " ); //NOI18N
+                    }
+                } else if (o instanceof Map) {
+                    appendPerson( (Map<?, ?>) o, sb );
+                }
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+
+    private static void appendPerson ( Map<?, ?> person, StringBuilder sb ) {
+        Object nm = person.get( "name" ); //NOI18N
+        if (nm != null) {
+            sb.append( nm );
+        }
+        nm = person.get( "email" ); //NOI18N
+        if (nm != null) {
+            sb.append( " <" ).append( nm ).append( ">" ); //NOI18N
+        }
+    }
+
+    private static String getString ( Map<String, Object> m, String key ) {
+        Object o = m.get( key );
+        if (o instanceof String) {
+            return (String) o;
+        }
+        if (o instanceof List) {
+            StringBuilder sb = new StringBuilder();
+            for (Iterator<?> it = ((List<?>) o).iterator(); it.hasNext();) {
+                sb.append( it.next() );
+                if (it.hasNext()) {
+                    sb.append( ',' ); //NOI18N
+                }
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+}
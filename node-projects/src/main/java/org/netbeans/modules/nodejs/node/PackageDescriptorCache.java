@@ -0,0 +1,205 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.nodejs.NodeJSProjectFactory;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+import org.openide.filesystems.FileAttributeEvent;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Shared cache of the package.json contents of libraries, so that each
+ * library node, and each call to its <code>getVersion()</code>, does not
+ * re-parse the file.  Entries are keyed by the canonical path of the
+ * package.json and remember its timestamp, so a file changed behind our back
+ * is re-read; they are also dropped as soon as the file is changed, renamed
+ * or deleted.  The least recently used entries are evicted beyond a size
+ * limit, which can be set with the system property
+ * <code>nodejs.package.cache.size</code>.
+ *
+ * @author Tim Boudreau
+ */
+final class PackageDescriptorCache {
+    private static final int DEFAULT_SIZE = Integer.getInteger( "nodejs.package.cache.size", 2048 ); //NOI18N
+    private static final PackageDescriptorCache INSTANCE = new PackageDescriptorCache( DEFAULT_SIZE );
+    private final Map<String, Entry> entries;
+    private final AtomicLong parses = new AtomicLong();
+
+    PackageDescriptorCache ( final int maxSize ) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException( "Bad size " + maxSize ); //NOI18N
+        }
+        entries = new LinkedHashMap<String, Entry>( 64, 0.75F, true ) {
+            @Override
+            protected boolean removeEldestEntry ( Map.Entry<String, Entry> eldest ) {
+                if (size() > maxSize) {
+                    eldest.getValue().detach();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static PackageDescriptorCache getDefault () {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the descriptor for a library folder, parsing its package.json only
+     * if it is not cached or has changed.
+     *
+     * @param libFolder A library folder
+     * @return A descriptor, which is {@link PackageDescriptor#EMPTY} if there
+     * is no readable package.json
+     */
+    PackageDescriptor get ( FileObject libFolder ) {
+        FileObject json = libFolder == null || !libFolder.isValid() ? null
+                : libFolder.getFileObject( NodeJSProjectFactory.PACKAGE_JSON );
+        if (json == null || !json.isValid() || !json.isData()) {
+            return PackageDescriptor.EMPTY;
+        }
+        String path = canonicalPath( json );
+        long lastModified = json.lastModified().getTime();
+        synchronized ( this ) {
+            Entry e = entries.get( path );
+            if (e != null && e.lastModified == lastModified) {
+                return e.descriptor;
+            }
+        }
+        PackageDescriptor result = parse( json );
+        Entry nue = new Entry( path, json, lastModified, result );
+        nue.attach();
+        Entry old;
+        synchronized ( this ) {
+            old = entries.put( path, nue );
+        }
+        if (old != null) {
+            old.detach();
+        }
+        return result;
+    }
+
+    synchronized int size () {
+        return entries.size();
+    }
+
+    /**
+     * The number of times a package.json was actually parsed.
+     */
+    long parseCount () {
+        return parses.get();
+    }
+
+    private PackageDescriptor parse ( FileObject json ) {
+        parses.incrementAndGet();
+        try (InputStream in = json.getInputStream()) {
+            return PackageDescriptor.from( PackageDescriptor.FIELDS.read( in ) );
+        } catch ( IOException | JsonException ex ) {
+            Logger.getLogger( PackageDescriptorCache.class.getName() ).log(
+                    Level.INFO, "Failed to read JSON in " + json.getPath(), ex ); //NOI18N
+            return PackageDescriptor.EMPTY;
+        }
+    }
+
+    private static String canonicalPath ( FileObject fo ) {
+        File f = FileUtil.toFile( fo );
+        if (f != null) {
+            try {
+                return f.getCanonicalPath();
+            } catch ( IOException ex ) {
+                return f.getAbsolutePath();
+            }
+        }
+        return fo.getPath();
+    }
+
+    private final class Entry implements FileChangeListener {
+        final String path;
+        final FileObject file;
+        final long lastModified;
+        final PackageDescriptor descriptor;
+
+        Entry ( String path, FileObject file, long lastModified, PackageDescriptor descriptor ) {
+            this.path = path;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.descriptor = descriptor;
+        }
+
+        void attach () {
+            file.addFileChangeListener( this );
+        }
+
+        void detach () {
+            file.removeFileChangeListener( this );
+        }
+
+        private void drop () {
+            synchronized ( PackageDescriptorCache.this ) {
+                if (entries.get( path ) == this) {
+                    entries.remove( path );
+                }
+            }
+            detach();
+        }
+
+        @Override
+        public void fileChanged ( FileEvent fe ) {
+            drop();
+        }
+
+        @Override
+        public void fileDeleted ( FileEvent fe ) {
+            drop();
+        }
+
+        @Override
+        public void fileRenamed ( FileRenameEvent fe ) {
+            drop();
+        }
+
+        @Override
+        public void fileFolderCreated ( FileEvent fe ) {
+            // do nothing
+        }
+
+        @Override
+        public void fileDataCreated ( FileEvent fe ) {
+            // do nothing
+        }
+
+        @Override
+        public void fileAttributeChanged ( FileAttributeEvent fe ) {
+            // do nothing
+        }
+    }
+}
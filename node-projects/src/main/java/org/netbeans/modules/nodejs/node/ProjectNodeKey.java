@@ -216,7 +216,8 @@ public class ProjectNodeKey implements Comparable<ProjectNodeKey> {
             if ((this.name == null) ? (other.name != null) : !this.name.equals( other.name )) {
                 return false;
             }
-            return true;
+            // So the node's tooltip is updated when the referencing files change
+            return (this.references == null) ? other.references == null : this.references.equals( other.references );
         }
     }
 }
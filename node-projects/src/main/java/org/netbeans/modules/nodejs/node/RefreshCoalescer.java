@@ -0,0 +1,126 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Collapses bursts of refresh requests - such as the thousands of file
+ * events an <code>npm install</code> generates - into a single refresh.
+ * A refresh runs once no further request has arrived for the quiet period,
+ * but never later than the maximum latency after the first request it
+ * covers, so a continuous stream of events cannot starve it.
+ *
+ * @author Tim Boudreau
+ */
+final class RefreshCoalescer {
+    private static final RequestProcessor REFRESH_THREAD = new RequestProcessor( "node.js refresh coalescer", 1 ); //NOI18N
+    private final RequestProcessor.Task task;
+    private final int quietPeriod;
+    private final int maxLatency;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private long firstPending = -1;
+
+    RefreshCoalescer ( Runnable refresh, int quietPeriod, int maxLatency ) {
+        if (quietPeriod < 0 || maxLatency < quietPeriod) {
+            throw new IllegalArgumentException( "Bad delays " + quietPeriod + ", " + maxLatency ); //NOI18N
+        }
+        this.task = REFRESH_THREAD.create( new Runner( refresh ) );
+        this.quietPeriod = quietPeriod;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Request a refresh, which will run after the quiet period unless
+     * another request arrives first.
+     */
+    void request () {
+        requests.incrementAndGet();
+        long now = System.nanoTime();
+        synchronized ( this ) {
+            if (firstPending < 0) {
+                firstPending = now;
+            } else {
+                coalesced.incrementAndGet();
+            }
+            long waited = TimeUnit.NANOSECONDS.toMillis( now - firstPending );
+            task.schedule( (int) Math.max( 0, Math.min( quietPeriod, maxLatency - waited ) ) );
+        }
+    }
+
+    /**
+     * Drop any pending refresh.
+     */
+    void cancel () {
+        synchronized ( this ) {
+            if (task.cancel()) {
+                firstPending = -1;
+            }
+        }
+    }
+
+    /**
+     * The total number of refreshes requested.
+     */
+    long requestCount () {
+        return requests.get();
+    }
+
+    /**
+     * The number of refreshes actually run.
+     */
+    long refreshCount () {
+        return refreshes.get();
+    }
+
+    /**
+     * The number of requests which were folded into a refresh that was
+     * already pending.
+     */
+    long coalescedCount () {
+        return coalesced.get();
+    }
+
+    @Override
+    public String toString () {
+        return "RefreshCoalescer{requests=" + requests + ", refreshes=" + refreshes //NOI18N
+                + ", coalesced=" + coalesced + '}'; //NOI18N
+    }
+
+    private final class Runner implements Runnable {
+        private final Runnable refresh;
+
+        Runner ( Runnable refresh ) {
+            this.refresh = refresh;
+        }
+
+        @Override
+        public void run () {
+            synchronized ( RefreshCoalescer.this ) {
+                firstPending = -1;
+            }
+            refreshes.incrementAndGet();
+            refresh.run();
+        }
+    }
+}
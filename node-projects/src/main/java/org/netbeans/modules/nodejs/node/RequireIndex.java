@@ -0,0 +1,374 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.swing.event.ChangeListener;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.queries.FileEncodingQuery;
+import org.netbeans.modules.nodejs.NodeJSProjectProperties;
+import org.netbeans.modules.nodejs.registry.FileChangeRegistry;
+import org.netbeans.modules.nodejs.registry.FileChangeRegistry.EventType;
+import org.netbeans.modules.nodejs.registry.FileChangeRegistry.FileObserver;
+import org.openide.filesystems.FileObject;
+import org.openide.util.ChangeSupport;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Per-project index of the modules each javascript file in the project
+ * <code>require()</code>s, so that recomputing the libraries node after an
+ * edit only re-reads the files which actually changed, rather than every
+ * javascript file in the project.
+ * <p/>
+ * Entries are keyed by project-relative path and remember the timestamp and
+ * size of the file when it was scanned; files reported as changed by the
+ * project's {@link FileChangeRegistry} are only re-read if one of those
+ * differs, and only re-scanned if their checksum differs too.  The index is
+ * persisted in the IDE's cache directory between sessions.
+ * <p/>
+ * Only sources the project owns are indexed - see {@link SourceWalker} for
+ * what is skipped.
+ *
+ * @author Tim Boudreau
+ */
+public final class RequireIndex implements FileObserver {
+    private static final Logger LOGGER = Logger.getLogger( RequireIndex.class.getName() );
+    private final Project project;
+    // Replaced, never modified, once published, so it can be read
+    // without locking
+    private volatile Map<String, Entry> entries = Collections.emptyMap();
+    // Written by the event delivery thread, which must never wait for a
+    // scan in progress
+    private final Set<String> dirty = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+    private final AtomicInteger generation = new AtomicInteger( 1 );
+    private final AtomicBoolean registered = new AtomicBoolean();
+    private final ChangeSupport supp = new ChangeSupport( this );
+    private final RequestProcessor.Task saveTask = SAVE_THREAD.create( new Saver() );
+    private static final RequestProcessor SAVE_THREAD = new RequestProcessor( "node.js require index saver", 1 ); //NOI18N
+    private static final int SAVE_DELAY = 5000;
+    private static final String NB_INFO = ".nbinfo"; //NOI18N
+    // Held while scanning, so only one thread at a time updates entries
+    private final Object scanLock = new Object();
+    private SourceWalker walker;
+    // What the walker was built with, to tell if a write to .nbinfo
+    // changed them
+    private volatile List<String> walkedExcludes;
+    private int walkedGeneration;
+    private boolean modified;
+
+    public RequireIndex ( Project project ) {
+        this.project = project;
+    }
+
+    /**
+     * Get the set of modules required by javascript files in the project,
+     * mapped to the project-relative paths of the files which require them.
+     * Only files which have changed since the last call are re-scanned.
+     *
+     * @return A map of module name to referencing files
+     */
+    public Map<String, Set<String>> requires () {
+        ensureRegistered();
+        Map<String, Entry> current;
+        synchronized ( scanLock ) {
+            int gen = generation.get();
+            if (gen != walkedGeneration) {
+                // Anything which changes during the walk stays dirty and is
+                // re-checked afterwards
+                dirty.clear();
+                walk();
+                walkedGeneration = gen;
+            }
+            if (!dirty.isEmpty()) {
+                updateDirty();
+            }
+            current = entries;
+        }
+        synchronized ( this ) {
+            if (modified) {
+                saveTask.schedule( SAVE_DELAY );
+            }
+        }
+        Map<String, Set<String>> result = new HashMap<>();
+        for (Map.Entry<String, Entry> e : current.entrySet()) {
+            for (String module : e.getValue().modules) {
+                Set<String> referencedBy = result.get( module );
+                if (referencedBy == null) {
+                    referencedBy = new TreeSet<>();
+                    result.put( module, referencedBy );
+                }
+                referencedBy.add( e.getKey() );
+            }
+        }
+        return result;
+    }
+
+    public void addChangeListener ( ChangeListener listener ) {
+        supp.addChangeListener( listener );
+    }
+
+    public void removeChangeListener ( ChangeListener listener ) {
+        supp.removeChangeListener( listener );
+    }
+
+    private void ensureRegistered () {
+        if (registered.compareAndSet( false, true )) {
+            FileChangeRegistry reg = project.getLookup().lookup( FileChangeRegistry.class );
+            if (reg != null) {
+                reg.registerInterest( "", this, SourceWalker.SCOPE ); //NOI18N
+            }
+        }
+    }
+
+    @Override
+    public void onEvent ( EventType type, String path ) {
+        if (handle( type, path )) {
+            supp.fireChange();
+        }
+    }
+
+    @Override
+    public void onEvents ( List<FileChangeRegistry.Event> events ) {
+        boolean fire = false;
+        for (FileChangeRegistry.Event e : events) {
+            fire |= handle( e.getType(), e.getPath() );
+        }
+        if (fire) {
+            supp.fireChange();
+        }
+    }
+
+    /**
+     * Update state for one event.  Called on the registry's delivery
+     * thread, so this never blocks on a scan.
+     *
+     * @return true if listeners should be notified
+     */
+    private boolean handle ( EventType type, String path ) {
+        if (path == null || path.isEmpty()) {
+            // The project directory itself
+            if (type == EventType.DELETED) {
+                generation.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        if (SourceWalker.isNeverScanned( path )) {
+            return false;
+        }
+        if (NB_INFO.equals( path )) {
+            // Also written when the run arguments or platform change
+            List<String> walked = walkedExcludes;
+            if (walked != null && !walked.equals( scanExcludes() )) {
+                generation.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        String name = path.substring( path.lastIndexOf( '/' ) + 1 );
+        if (SourceWalker.IGNORE_FILES.contains( name )) {
+            // Exclusions changed - re-walk, reusing whatever is unchanged
+            generation.incrementAndGet();
+            return true;
+        }
+        if (type == EventType.CHANGE && !isJs( path )) {
+            return false;
+        }
+        dirty.add( path );
+        return true;
+    }
+
+    private void walk () {
+        FileObject root = project.getProjectDirectory();
+        Map<String, Entry> walked = new HashMap<>( entries );
+        boolean changed;
+        if (root.isValid()) {
+            if (walked.isEmpty()) {
+                RequireIndexCache cache = RequireIndexCache.forProject( root );
+                if (cache != null) {
+                    walked.putAll( cache.load() );
+                }
+            }
+            walker = createWalker( root );
+            Set<String> seen = new HashSet<>();
+            changed = scanFolder( root, walked, seen );
+            changed |= walked.keySet().retainAll( seen );
+        } else {
+            changed = !walked.isEmpty();
+            walked.clear();
+        }
+        publish( walked, changed );
+    }
+
+    private void updateDirty () {
+        FileObject root = project.getProjectDirectory();
+        Map<String, Entry> updated = new HashMap<>( entries );
+        boolean changed = false;
+        for (Iterator<String> it = dirty.iterator(); it.hasNext();) {
+            String path = it.next();
+            it.remove();
+            FileObject fo = root.isValid() ? root.getFileObject( path ) : null;
+            if (fo == null || !fo.isValid() || walker == null || walker.isExcluded( fo )) {
+                changed |= removeUnder( updated, path, Collections.<String>emptySet() );
+            } else if (fo.isFolder()) {
+                Set<String> seen = new HashSet<>();
+                changed |= scanFolder( fo, updated, seen );
+                changed |= removeUnder( updated, path, seen );
+            } else if (isIndexable( fo )) {
+                changed |= scanFile( updated, path, fo );
+            }
+        }
+        if (changed) {
+            publish( updated, true );
+        }
+    }
+
+    private void publish ( Map<String, Entry> nue, boolean changed ) {
+        synchronized ( this ) {
+            entries = nue;
+            modified |= changed;
+        }
+    }
+
+    private static boolean removeUnder ( Map<String, Entry> entries, String path, Set<String> except ) {
+        boolean result = entries.remove( path ) != null;
+        String prefix = path + '/';
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+            String key = it.next();
+            if (key.startsWith( prefix ) && !except.contains( key )) {
+                it.remove();
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    private boolean scanFolder ( FileObject fld, final Map<String, Entry> into, final Set<String> seen ) {
+        final boolean[] changed = new boolean[1];
+        walker.walk( fld, new SourceWalker.Visitor() {
+            @Override
+            public void visit ( String path, FileObject fo ) {
+                if (isIndexable( fo )) {
+                    seen.add( path );
+                    changed[0] |= scanFile( into, path, fo );
+                }
+            }
+        } );
+        return changed[0];
+    }
+
+    private SourceWalker createWalker ( FileObject root ) {
+        List<String> excludes = scanExcludes();
+        walkedExcludes = excludes;
+        return new SourceWalker( root, excludes );
+    }
+
+    private List<String> scanExcludes () {
+        NodeJSProjectProperties props = project.getLookup().lookup( NodeJSProjectProperties.class );
+        return props == null ? Collections.<String>emptyList() : props.getScanExcludes();
+    }
+
+    /**
+     * Re-read a file if its timestamp or size changed.
+     *
+     * @return true if the entries were changed
+     */
+    private static boolean scanFile ( Map<String, Entry> entries, String path, FileObject fo ) {
+        long lastModified = fo.lastModified().getTime();
+        long size = fo.getSize();
+        Entry old = entries.get( path );
+        if (old != null && old.lastModified == lastModified && old.size == size) {
+            return false;
+        }
+        try {
+            byte[] bytes = fo.asBytes();
+            CRC32 crc = new CRC32();
+            crc.update( bytes );
+            int checksum = (int) crc.getValue();
+            Set<String> modules;
+            if (old != null && old.checksum == checksum && old.size == bytes.length) {
+                // Touched but not modified, as after a branch switch
+                modules = old.modules;
+            } else {
+                modules = RequireScanner.scan( bytes, FileEncodingQuery.getEncoding( fo ) );
+            }
+            entries.put( path, new Entry( lastModified, size, checksum, modules ) );
+        } catch ( IOException ex ) {
+            LOGGER.log( Level.INFO, fo.getPath(), ex );
+            entries.remove( path );
+        }
+        return true;
+    }
+
+    private static boolean isIndexable ( FileObject fo ) {
+        String ext = fo.getExt();
+        return ("js".equals( ext ) || "mjs".equals( ext ) || "cjs".equals( ext )) //NOI18N
+                && fo.isData() && fo.canRead();
+    }
+
+    private static boolean isJs ( String path ) {
+        return path.endsWith( ".js" ) || path.endsWith( ".mjs" ) || path.endsWith( ".cjs" ); //NOI18N
+    }
+
+    private final class Saver implements Runnable {
+        @Override
+        public void run () {
+            Map<String, Entry> snapshot;
+            synchronized ( RequireIndex.this ) {
+                if (!modified) {
+                    return;
+                }
+                snapshot = entries;
+                modified = false;
+            }
+            RequireIndexCache cache = RequireIndexCache.forProject( project.getProjectDirectory() );
+            if (cache != null) {
+                cache.save( snapshot );
+            }
+        }
+    }
+
+    static final class Entry {
+        final long lastModified;
+        final long size;
+        final int checksum;
+        final Set<String> modules;
+
+        Entry ( long lastModified, long size, int checksum, Set<String> modules ) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.checksum = checksum;
+            this.modules = modules;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.nodejs.node.RequireIndex.Entry;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.modules.Places;
+
+/**
+ * Reads and writes the contents of a {@link RequireIndex} to a file in the
+ * IDE's cache directory, so that opening a project after a restart only
+ * needs to re-read files which changed while the IDE was not running.
+ * <p/>
+ * The format is a version header, a table of the distinct module names,
+ * and then one record per file of path, timestamp, size, checksum and
+ * indices into the module table.
+ *
+ * @author Tim Boudreau
+ */
+final class RequireIndexCache {
+    private static final int MAGIC = 0x4E4A5249;
+    private static final int VERSION = 2;
+    private static final String CACHE_DIR = "nodejs/requires"; //NOI18N
+    private final File file;
+
+    RequireIndexCache ( File file ) {
+        this.file = file;
+    }
+
+    /**
+     * Get the cache for a project directory, or null if the project is not on
+     * disk.
+     */
+    static RequireIndexCache forProject ( FileObject projectDir ) {
+        File dir = FileUtil.toFile( projectDir );
+        if (dir == null) {
+            return null;
+        }
+        String path = dir.getAbsolutePath();
+        String name = dir.getName().replaceAll( "[^a-zA-Z0-9_\\-]", "_" ) //NOI18N
+                + '-' + Integer.toHexString( path.hashCode() ) + ".idx"; //NOI18N
+        return new RequireIndexCache( new File( Places.getCacheSubdirectory( CACHE_DIR ), name ) );
+    }
+
+    Map<String, Entry> load () {
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) )) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Collections.emptyMap();
+            }
+            int moduleCount = in.readInt();
+            String[] modules = new String[moduleCount];
+            for (int i = 0; i < moduleCount; i++) {
+                modules[i] = in.readUTF();
+            }
+            int entryCount = in.readInt();
+            Map<String, Entry> result = new HashMap<>( entryCount * 2 );
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                int checksum = in.readInt();
+                int count = in.readInt();
+                Set<String> required;
+                if (count == 0) {
+                    required = Collections.emptySet();
+                } else {
+                    required = new LinkedHashSet<>( count * 2 );
+                    for (int j = 0; j < count; j++) {
+                        required.add( modules[in.readInt()] );
+                    }
+                }
+                result.put( path, new Entry( lastModified, size, checksum, required ) );
+            }
+            return result;
+        } catch ( IOException | RuntimeException ex ) {
+            // Truncated or corrupt - the index will simply be rebuilt
+            Logger.getLogger( RequireIndexCache.class.getName() ).log( Level.FINE,
+                    "Discarding unreadable require cache " + file, ex ); //NOI18N
+            return Collections.emptyMap();
+        }
+    }
+
+    void save ( Map<String, Entry> entries ) {
+        Map<String, Integer> moduleIndices = new HashMap<>();
+        List<String> modules = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            for (String module : e.modules) {
+                if (!moduleIndices.containsKey( module )) {
+                    moduleIndices.put( module, modules.size() );
+                    modules.add( module );
+                }
+            }
+        }
+        File tmp = new File( file.getParentFile(), file.getName() + ".tmp" ); //NOI18N
+        try {
+            try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) )) {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeInt( modules.size() );
+                for (String module : modules) {
+                    out.writeUTF( module );
+                }
+                out.writeInt( entries.size() );
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF( e.getKey() );
+                    out.writeLong( entry.lastModified );
+                    out.writeLong( entry.size );
+                    out.writeInt( entry.checksum );
+                    out.writeInt( entry.modules.size() );
+                    for (String module : entry.modules) {
+                        out.writeInt( moduleIndices.get( module ) );
+                    }
+                }
+            }
+            if (!tmp.renameTo( file )) {
+                file.delete();
+                if (!tmp.renameTo( file )) {
+                    tmp.delete();
+                }
+            }
+        } catch ( IOException ex ) {
+            tmp.delete();
+            Logger.getLogger( RequireIndexCache.class.getName() ).log( Level.INFO,
+                    "Could not write require cache " + file, ex ); //NOI18N
+        }
+    }
+}
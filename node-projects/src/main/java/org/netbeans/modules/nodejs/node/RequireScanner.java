@@ -0,0 +1,466 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Single-pass extractor for the module specifiers a javascript file depends
+ * on: <code>require('x')</code>, <code>import ... from 'x'</code>,
+ * <code>import 'x'</code>, <code>import('x')</code> and
+ * <code>export ... from 'x'</code>.
+ * <p/>
+ * Works directly on the file's bytes, skipping comments, string, template and
+ * regular expression literals, and only allocates a string for each
+ * specifier found.  Unlike a regular expression over the file text it does
+ * not report calls which appear inside comments or strings, and runs in
+ * linear time on minified bundles.
+ *
+ * @author Tim Boudreau
+ */
+final class RequireScanner {
+    private static final byte[] REQUIRE = ascii( "require" ); //NOI18N
+    private static final byte[] IMPORT = ascii( "import" ); //NOI18N
+    private static final byte[] EXPORT = ascii( "export" ); //NOI18N
+    private static final byte[] FROM = ascii( "from" ); //NOI18N
+    // Keywords after which a '/' starts a regular expression, not a division
+    private static final byte[][] EXPRESSION_KEYWORDS = {
+        ascii( "return" ), ascii( "typeof" ), ascii( "case" ), ascii( "do" ), //NOI18N
+        ascii( "else" ), ascii( "in" ), ascii( "instanceof" ), ascii( "new" ), //NOI18N
+        ascii( "delete" ), ascii( "void" ), ascii( "throw" ), ascii( "yield" ), //NOI18N
+        ascii( "await" ), ascii( "of" ) //NOI18N
+    };
+    private static final int PREV_NONE = 0;
+    private static final int PREV_OPERATOR = 1;
+    private static final int PREV_OPERAND = 2;
+    private static final int PREV_DOT = 3;
+    private final byte[] bytes;
+    private final int max;
+    private final Charset charset;
+    private final Set<String> result = new LinkedHashSet<>();
+    private int pos;
+    private int prev = PREV_NONE;
+
+    private RequireScanner ( byte[] bytes, Charset charset ) {
+        this.bytes = bytes;
+        this.max = bytes.length;
+        this.charset = charset;
+    }
+
+    /**
+     * Find the module specifiers a file depends on.
+     *
+     * @param bytes The file content
+     * @param charset The file's encoding
+     * @return The specifiers, in the order they first appear
+     */
+    static Set<String> scan ( byte[] bytes, Charset charset ) {
+        if (!isAsciiCompatible( charset )) {
+            bytes = new String( bytes, charset ).getBytes( StandardCharsets.UTF_8 );
+            charset = StandardCharsets.UTF_8;
+        }
+        RequireScanner scanner = new RequireScanner( bytes, charset );
+        scanner.scanCode( false );
+        return scanner.result.isEmpty() ? Collections.<String>emptySet() : scanner.result;
+    }
+
+    private static boolean isAsciiCompatible ( Charset charset ) {
+        String name = charset.name();
+        return name.equals( "UTF-8" ) || name.equals( "US-ASCII" ) //NOI18N
+                || name.startsWith( "ISO-8859-" ) || name.startsWith( "windows-125" ); //NOI18N
+    }
+
+    /**
+     * Scan code, stopping at the end of input or, if nested inside a
+     * template literal's <code>${...}</code>, at the brace which closes it.
+     */
+    private void scanCode ( boolean nested ) {
+        int depth = 0;
+        while ( pos < max ) {
+            int c = bytes[pos] & 0xFF;
+            switch ( c ) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case '\f':
+                case 0x0B:
+                    pos++;
+                    break;
+                case '/':
+                    if (at( pos + 1 ) == '/') {
+                        skipLineComment();
+                    } else if (at( pos + 1 ) == '*') {
+                        skipBlockComment();
+                    } else if (prev == PREV_NONE || prev == PREV_OPERATOR) {
+                        skipRegex();
+                        prev = PREV_OPERAND;
+                    } else {
+                        pos++;
+                        prev = PREV_OPERATOR;
+                    }
+                    break;
+                case '\'':
+                case '"':
+                    skipString( c );
+                    prev = PREV_OPERAND;
+                    break;
+                case '`':
+                    skipTemplate();
+                    prev = PREV_OPERAND;
+                    break;
+                case '{':
+                    depth++;
+                    pos++;
+                    prev = PREV_OPERATOR;
+                    break;
+                case '}':
+                    pos++;
+                    if (nested && depth == 0) {
+                        return;
+                    }
+                    depth--;
+                    prev = PREV_OPERAND;
+                    break;
+                case ')':
+                case ']':
+                    pos++;
+                    prev = PREV_OPERAND;
+                    break;
+                case '.':
+                    if (at( pos + 1 ) == '.' && at( pos + 2 ) == '.') {
+                        pos += 3;
+                        prev = PREV_OPERATOR;
+                    } else if (isDigit( at( pos + 1 ) )) {
+                        skipNumber();
+                    } else {
+                        pos++;
+                        prev = PREV_DOT;
+                    }
+                    break;
+                default:
+                    if (isDigit( c )) {
+                        skipNumber();
+                    } else if (isIdentifierStart( c )) {
+                        identifier();
+                    } else {
+                        pos++;
+                        prev = PREV_OPERATOR;
+                    }
+            }
+        }
+    }
+
+    private void identifier () {
+        int start = pos;
+        while ( pos < max && isIdentifierPart( bytes[pos] & 0xFF ) ) {
+            pos++;
+        }
+        int end = pos;
+        boolean memberAccess = prev == PREV_DOT;
+        prev = PREV_OPERAND;
+        if (memberAccess) {
+            return;
+        }
+        if (is( start, end, REQUIRE )) {
+            call();
+        } else if (is( start, end, IMPORT )) {
+            importStatement();
+        } else if (is( start, end, EXPORT )) {
+            exportStatement();
+        } else {
+            for (byte[] kw : EXPRESSION_KEYWORDS) {
+                if (is( start, end, kw )) {
+                    prev = PREV_OPERATOR;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Having read <code>require</code> or <code>import</code>, match
+     * <code>('specifier')</code>; if it does not match, rewind so the
+     * main loop sees whatever follows.
+     */
+    private boolean call () {
+        int save = pos;
+        skipTrivia();
+        if (at( pos ) == '(') {
+            pos++;
+            skipTrivia();
+            String specifier = stringLiteral();
+            if (specifier != null) {
+                skipTrivia();
+                if (at( pos ) == ')') {
+                    pos++;
+                    result.add( specifier );
+                    prev = PREV_OPERAND;
+                    return true;
+                }
+            }
+        }
+        pos = save;
+        return false;
+    }
+
+    private void importStatement () {
+        int save = pos;
+        skipTrivia();
+        int c = at( pos );
+        if (c == '(') {
+            call();
+            return;
+        } else if (c == '\'' || c == '"') {
+            String specifier = stringLiteral();
+            if (specifier != null) {
+                result.add( specifier );
+                return;
+            }
+        } else if (fromClause()) {
+            return;
+        }
+        pos = save;
+    }
+
+    private void exportStatement () {
+        int save = pos;
+        skipTrivia();
+        int c = at( pos );
+        if ((c != '*' && c != '{') || !fromClause()) {
+            pos = save;
+        }
+    }
+
+    /**
+     * Skip an import or export clause - identifiers, braces, commas and
+     * asterisks - up to <code>from 'specifier'</code>.
+     */
+    private boolean fromClause () {
+        while ( pos < max ) {
+            skipTrivia();
+            int c = at( pos );
+            if (c == '{' || c == '}' || c == ',' || c == '*') {
+                pos++;
+            } else if (isIdentifierStart( c )) {
+                int start = pos;
+                while ( pos < max && isIdentifierPart( bytes[pos] & 0xFF ) ) {
+                    pos++;
+                }
+                if (is( start, pos, FROM )) {
+                    skipTrivia();
+                    int q = at( pos );
+                    if (q == '\'' || q == '"') {
+                        String specifier = stringLiteral();
+                        if (specifier != null) {
+                            result.add( specifier );
+                            prev = PREV_OPERAND;
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read a string literal, or a template literal with no substitutions,
+     * at the current position, returning null if there is none.
+     */
+    private String stringLiteral () {
+        int quote = at( pos );
+        if (quote != '\'' && quote != '"' && quote != '`') {
+            return null;
+        }
+        int start = pos + 1;
+        boolean escaped = false;
+        for (int i = start; i < max; i++) {
+            int c = bytes[i] & 0xFF;
+            if (c == '\\') {
+                escaped = true;
+                i++;
+            } else if (c == quote) {
+                pos = i + 1;
+                String s = new String( bytes, start, i - start, charset );
+                return escaped ? unescape( s ) : s;
+            } else if (c == '\n' && quote != '`') {
+                return null;
+            } else if (c == '$' && quote == '`' && at( i + 1 ) == '{') {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String unescape ( String s ) {
+        StringBuilder sb = new StringBuilder( s.length() );
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt( i );
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt( ++i );
+            }
+            sb.append( c );
+        }
+        return sb.toString();
+    }
+
+    private void skipTrivia () {
+        while ( pos < max ) {
+            int c = bytes[pos] & 0xFF;
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B) {
+                pos++;
+            } else if (c == '/' && at( pos + 1 ) == '/') {
+                skipLineComment();
+            } else if (c == '/' && at( pos + 1 ) == '*') {
+                skipBlockComment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipLineComment () {
+        pos += 2;
+        while ( pos < max && bytes[pos] != '\n' ) {
+            pos++;
+        }
+    }
+
+    private void skipBlockComment () {
+        pos += 2;
+        while ( pos < max ) {
+            if (bytes[pos] == '*' && at( pos + 1 ) == '/') {
+                pos += 2;
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void skipString ( int quote ) {
+        pos++;
+        while ( pos < max ) {
+            int c = bytes[pos] & 0xFF;
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == quote) {
+                pos++;
+                return;
+            } else if (c == '\n') {
+                // Unterminated - resynchronize at the end of the line
+                return;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void skipTemplate () {
+        pos++;
+        while ( pos < max ) {
+            int c = bytes[pos] & 0xFF;
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == '`') {
+                pos++;
+                return;
+            } else if (c == '$' && at( pos + 1 ) == '{') {
+                pos += 2;
+                prev = PREV_OPERATOR;
+                scanCode( true );
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void skipRegex () {
+        pos++;
+        boolean inClass = false;
+        while ( pos < max ) {
+            int c = bytes[pos] & 0xFF;
+            if (c == '\\') {
+                pos += 2;
+                continue;
+            } else if (c == '\n') {
+                return;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                pos++;
+                while ( pos < max && isIdentifierPart( bytes[pos] & 0xFF ) ) {
+                    pos++;
+                }
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void skipNumber () {
+        pos++;
+        while ( pos < max && (isIdentifierPart( bytes[pos] & 0xFF ) || bytes[pos] == '.') ) {
+            pos++;
+        }
+        prev = PREV_OPERAND;
+    }
+
+    private int at ( int index ) {
+        return index < max ? bytes[index] & 0xFF : -1;
+    }
+
+    private boolean is ( int start, int end, byte[] word ) {
+        if (end - start != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (bytes[start + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit ( int c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart ( int c ) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$'
+                || c == '\\' || c >= 0x80;
+    }
+
+    private static boolean isIdentifierPart ( int c ) {
+        return isIdentifierStart( c ) || isDigit( c );
+    }
+
+    private static byte[] ascii ( String s ) {
+        return s.getBytes( StandardCharsets.US_ASCII );
+    }
+}
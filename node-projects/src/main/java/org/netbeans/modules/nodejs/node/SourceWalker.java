@@ -0,0 +1,211 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.api.queries.VisibilityQuery;
+import org.netbeans.modules.nodejs.NodeJSProjectFactory;
+import org.netbeans.modules.nodejs.registry.WatchScope;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Walks the sources a project owns, without descending into dependency
+ * trees, version control metadata, folders hidden by the
+ * {@link VisibilityQuery}, anything matched by a <code>.gitignore</code> or
+ * <code>.npmignore</code> in the project, or anything matched by the
+ * project's own exclude patterns.
+ *
+ * @author Tim Boudreau
+ */
+final class SourceWalker {
+    static final Set<String> NEVER_SCANNED = Collections.unmodifiableSet( new HashSet<>( Arrays.asList(
+            NodeJSProjectFactory.NODE_MODULES_FOLDER, "bower_components", //NOI18N
+            ".git", ".hg", ".svn", "CVS", "nbproject" ) ) ); //NOI18N
+    /**
+     * What to watch for changes to the files walked, so the registry does
+     * not listen to folders which are never scanned.
+     */
+    static final WatchScope SCOPE = WatchScope.ALL.excluding( neverScannedGlobs() );
+    static final Set<String> IGNORE_FILES = Collections.unmodifiableSet( new HashSet<>( Arrays.asList(
+            ".gitignore", NodeJSProjectFactory.DOT_NPMIGNORE ) ) ); //NOI18N
+    private final FileObject root;
+    private final IgnorePatterns excludes;
+    private final VisibilityQuery visibility = VisibilityQuery.getDefault();
+
+    SourceWalker ( FileObject root, List<String> excludes ) {
+        this.root = root;
+        this.excludes = IgnorePatterns.EMPTY.add( "", excludes );
+    }
+
+    interface Visitor {
+        void visit ( String path, FileObject file );
+    }
+
+    /**
+     * Visit all files under the passed folder which are not excluded.  The
+     * folder itself is assumed not to be excluded.
+     */
+    void walk ( FileObject folder, Visitor visitor ) {
+        Deque<FileObject> folders = new ArrayDeque<>();
+        Deque<IgnorePatterns> patterns = new ArrayDeque<>();
+        folders.push( folder );
+        patterns.push( patternsFor( folder ) );
+        while ( !folders.isEmpty() ) {
+            FileObject fld = folders.pop();
+            IgnorePatterns ignore = withIgnoreFiles( fld, patterns.pop() );
+            for (FileObject fo : fld.getChildren()) {
+                String path = FileUtil.getRelativePath( root, fo );
+                if (path == null || isExcluded( fo, path, ignore )) {
+                    continue;
+                }
+                if (fo.isFolder()) {
+                    folders.push( fo );
+                    patterns.push( ignore );
+                } else {
+                    visitor.visit( path, fo );
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine if a file, or any folder above it in the project, is
+     * excluded from scanning.  Works down from the root in one pass, reading
+     * each ancestor's ignore files once.
+     */
+    boolean isExcluded ( FileObject fo ) {
+        Deque<FileObject> chain = ancestry( fo );
+        if (chain == null) {
+            return true;
+        }
+        IgnorePatterns ignore = IgnorePatterns.EMPTY;
+        FileObject parent = root;
+        String path = ""; //NOI18N
+        while ( !chain.isEmpty() ) {
+            FileObject f = chain.pop();
+            path = path.isEmpty() ? f.getNameExt() : path + '/' + f.getNameExt();
+            ignore = withIgnoreFiles( parent, ignore );
+            if (isExcluded( f, path, ignore )) {
+                return true;
+            }
+            parent = f;
+        }
+        return false;
+    }
+
+    /**
+     * Get a file and the folders above it, up to but not including the
+     * root, outermost first.
+     *
+     * @return The folders, or null if the file is not under the root
+     */
+    private Deque<FileObject> ancestry ( FileObject fo ) {
+        Deque<FileObject> result = new ArrayDeque<>();
+        for (FileObject f = fo; !f.equals( root ); f = f.getParent()) {
+            if (f.getParent() == null) {
+                return null;
+            }
+            result.push( f );
+        }
+        return result;
+    }
+
+    private static String[] neverScannedGlobs () {
+        List<String> result = new ArrayList<>( NEVER_SCANNED.size() );
+        for (String name : NEVER_SCANNED) {
+            result.add( "**/" + name ); //NOI18N
+        }
+        return result.toArray( new String[result.size()] );
+    }
+
+    /**
+     * Determine if a project-relative path names something that never needs
+     * to be scanned, without touching the filesystem.  Used to cheaply
+     * discard file events from dependency trees.
+     */
+    static boolean isNeverScanned ( String path ) {
+        int start = 0;
+        int max = path.length();
+        while ( start < max ) {
+            int end = path.indexOf( '/', start );
+            if (end < 0) {
+                end = max;
+            }
+            if (NEVER_SCANNED.contains( path.substring( start, end ) )) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private boolean isExcluded ( FileObject fo, String path, IgnorePatterns ignore ) {
+        boolean folder = fo.isFolder();
+        if (folder && NEVER_SCANNED.contains( fo.getNameExt() )) {
+            return true;
+        }
+        if (!visibility.isVisible( fo )) {
+            return true;
+        }
+        return ignore.isIgnored( path, folder ) || excludes.isIgnored( path, folder );
+    }
+
+    /**
+     * Get the patterns from the ignore files in the folders above a folder.
+     */
+    private IgnorePatterns patternsFor ( FileObject folder ) {
+        Deque<FileObject> chain = ancestry( folder );
+        IgnorePatterns result = IgnorePatterns.EMPTY;
+        if (chain != null) {
+            FileObject parent = root;
+            while ( !chain.isEmpty() ) {
+                result = withIgnoreFiles( parent, result );
+                parent = chain.pop();
+            }
+        }
+        return result;
+    }
+
+    private IgnorePatterns withIgnoreFiles ( FileObject folder, IgnorePatterns patterns ) {
+        String base = folder.equals( root ) ? "" : FileUtil.getRelativePath( root, folder );
+        for (String name : IGNORE_FILES) {
+            FileObject ignoreFile = folder.getFileObject( name );
+            if (ignoreFile != null && ignoreFile.isData()) {
+                try {
+                    patterns = patterns.add( base, ignoreFile.asLines() );
+                } catch ( IOException ex ) {
+                    Logger.getLogger( SourceWalker.class.getName() ).log( Level.FINE,
+                            "Could not read " + ignoreFile.getPath(), ex ); //NOI18N
+                }
+            }
+        }
+        return patterns;
+    }
+}
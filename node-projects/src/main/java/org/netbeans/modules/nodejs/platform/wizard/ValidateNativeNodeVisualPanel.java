@@ -28,7 +28,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import javax.swing.JPanel;
 import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
-import static org.netbeans.modules.nodejs.json.ObjectMapperProvider.STRING_OBJECT_MAP;
 import org.netbeans.modules.nodejs.platform.NativeNodeJS;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
@@ -176,7 +175,7 @@ public final class ValidateNativeNodeVisualPanel extends JPanel implements Runna
             Integer result = fut.get();
             if (result != null && result == 0) {
                 FileObject fo = FileUtil.toFileObject( FileUtil.normalizeFile( outFile ) );
-                Map<String, Object> m = loaded = ObjectMapperProvider.newObjectMapper().readValue( fo.asText(), STRING_OBJECT_MAP );
+                Map<String, Object> m = loaded = ObjectMapperProvider.mapReader().readValue( fo.asText() );
                 StringBuilder sb = new StringBuilder();
                 for (Map.Entry<String, Object> e : m.entrySet()) {
                     sb.append( e.getKey() ).append( " = " ).append( e.getValue() ).append( '\n' );
@@ -0,0 +1,95 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how long to wait before delivering file events.  An event which
+ * arrives after a quiet spell is delivered at once; while events keep
+ * arriving, the debounce grows from the base delay with the length of the
+ * burst, up to a ceiling, so a long burst is delivered in a few large
+ * batches rather than many small ones.
+ * No event waits longer than the maximum latency, however long the burst.
+ * <p>
+ * Callers pass the time, in nanoseconds, so this can be tested without
+ * sleeping.
+ *
+ * @author Tim Boudreau
+ */
+final class AdaptiveDelay {
+    private static final long NONE = Long.MIN_VALUE;
+    private final int baseDelay;
+    private final int maxDelay;
+    private final int maxLatency;
+    private final AtomicLong firstPending = new AtomicLong( NONE );
+    private volatile long lastEvent = NONE;
+    private volatile long burstStart;
+    private volatile int debounce;
+
+    AdaptiveDelay ( int baseDelay, int maxDelay, int maxLatency ) {
+        if (baseDelay < 0 || maxDelay < baseDelay || maxLatency < baseDelay) {
+            throw new IllegalArgumentException( "Bad delays " + baseDelay + ", " //NOI18N
+                    + maxDelay + ", " + maxLatency ); //NOI18N
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Note the arrival of an event.
+     *
+     * @param now The current value of <code>System.nanoTime()</code>
+     * @return The delay in milliseconds after which to deliver it
+     */
+    int onEvent ( long now ) {
+        long last = lastEvent;
+        lastEvent = now;
+        firstPending.compareAndSet( NONE, now );
+        int d;
+        if (last == NONE || now - last >= TimeUnit.MILLISECONDS.toNanos( baseDelay )) {
+            burstStart = now;
+            d = 0;
+        } else {
+            long burst = TimeUnit.NANOSECONDS.toMillis( now - burstStart );
+            d = (int) Math.min( maxDelay, Math.max( baseDelay, burst / 2 ) );
+        }
+        debounce = d;
+        long first = firstPending.get();
+        long waited = first == NONE ? 0 : TimeUnit.NANOSECONDS.toMillis( now - first );
+        return (int) Math.max( 0, Math.min( d, maxLatency - waited ) );
+    }
+
+    /**
+     * Note that pending events are about to be delivered, so the latency
+     * bound restarts with the next event.
+     */
+    void delivering () {
+        firstPending.set( NONE );
+    }
+
+    /**
+     * The debounce used for the most recent event.
+     */
+    int currentDelay () {
+        return debounce;
+    }
+}
@@ -18,14 +18,25 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package org.netbeans.modules.nodejs.registry;
 
+import java.io.File;
+import java.io.FileFilter;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import org.netbeans.api.project.Project;
 import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
 import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileRenameEvent;
@@ -34,143 +45,268 @@ import org.openide.util.Exceptions;
 import org.openide.util.RequestProcessor;
 
 /**
+ * Delivers file changes under a project to observers registered on paths
+ * within it.  Observers are held weakly, in a trie of path segments, so
+ * delivering an event only looks at observers registered on the event's
+ * path or its ancestors.
+ * <p>
+ * Events are queued without locking, one per path:  a path which changes
+ * again before it is delivered keeps only its latest event, except that a
+ * deletion is not masked by a re-creation.  Each observer then gets all of
+ * its events for a delivery cycle in a single call to
+ * {@link FileObserver#onEvents}.
+ * <p>
+ * An event arriving after a quiet spell is delivered immediately; during a
+ * burst the debounce grows, but no event waits longer than the maximum
+ * latency, so a tool writing continuously into the project cannot postpone
+ * delivery indefinitely.  Counters are available from {@link #getStats}.
+ * <p>
+ * Observers declare a {@link WatchScope} when registering, and listeners
+ * are only attached to the folders some scope covers - so an observer which
+ * excludes <code>node_modules</code> spares the filesystem from tracking
+ * every folder in it.
  *
  * @author Tim Boudreau
  */
 public final class FileChangeRegistry {
     private final Project project;
-    private final FileChangeAdapter adapter = new A();
-    private final Set<Entry> entries = new HashSet<>();
-    private final Set<Event> pendingEvents = new HashSet<>();
+    private final PathTrie<Entry> entries = new PathTrie<>();
+    private final ConcurrentMap<String, Pending> pendingEvents = new ConcurrentHashMap<>();
+    private final Queue<String> pendingPaths = new ConcurrentLinkedQueue<>();
     private final RequestProcessor processor;
     private final RequestProcessor.Task task;
-    private final int delay;
+    private final AdaptiveDelay delay;
+    private final FileChangeStats stats;
     public static final int DEFAULT_DELAY = 100;
-    private FileObject hold;
+    public static final int DEFAULT_MAX_LATENCY = 2000;
+    private final Map<String, Attachment> attached = new HashMap<>();
 
     public FileChangeRegistry ( Project project ) {
         this( project, DEFAULT_DELAY );
     }
 
     public FileChangeRegistry ( Project project, int delay ) {
+        this( project, delay, Math.max( delay, DEFAULT_MAX_LATENCY ) );
+    }
+
+    /**
+     * Create a registry.
+     *
+     * @param project The project
+     * @param delay The debounce applied to events arriving in quick
+     * succession, which doubles for as long as they keep arriving
+     * @param maxLatency The longest any event may wait to be delivered
+     */
+    public FileChangeRegistry ( Project project, int delay, int maxLatency ) {
         this.project = project;
-        this.delay = delay;
+        this.delay = new AdaptiveDelay( delay, Math.min( delay * 8, maxLatency ), maxLatency );
+        this.stats = new FileChangeStats( pendingEvents, this.delay );
         processor = new RequestProcessor( "FileChangeRegistry " + project, 1, true ); //NOI18N
         task = processor.create( deliverer );
     }
 
-    private boolean drainPendingEvents ( Set<Event> into ) {
-        assert into != pendingEvents;
-        boolean res = false;
-        synchronized ( this ) {
-            res = !pendingEvents.isEmpty();
-            into.addAll( pendingEvents );
-            pendingEvents.clear();
+    /**
+     * Get the statistics for this registry.
+     */
+    public FileChangeStats getStats () {
+        return stats;
+    }
+
+    private boolean drainPendingEvents ( List<Event> into ) {
+        delay.delivering();
+        long now = System.nanoTime();
+        String path;
+        while ( (path = pendingPaths.poll()) != null ) {
+            Pending p = pendingEvents.remove( path );
+            if (p != null) {
+                into.add( new Event( p.type, path ) );
+                stats.latency( now - p.queued );
+            }
         }
-        return res;
+        return !into.isEmpty();
     }
 
-    private void addEvent ( Event evt ) {
-        synchronized ( this ) {
-            pendingEvents.add( evt );
-            trigger();
+    /**
+     * Queue an event without locking.  Events for a path which is already
+     * queued are coalesced with the queued one, so a path is delivered at
+     * most once per cycle.
+     */
+    void addEvent ( Event evt ) {
+        if (evt.path == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Pending added = new Pending( evt.type, now );
+        for (;;) {
+            Pending old = pendingEvents.putIfAbsent( evt.path, added );
+            if (old == null) {
+                pendingPaths.offer( evt.path );
+                stats.received( false );
+                break;
+            }
+            EventType nue = coalesce( old.type, evt.type );
+            if (nue == old.type || pendingEvents.replace( evt.path, old, new Pending( nue, old.queued ) )) {
+                stats.received( true );
+                break;
+            }
         }
+        trigger( now );
     }
+
+    private static final class Pending {
+        final EventType type;
+        final long queued;
+
+        Pending ( EventType type, long queued ) {
+            this.type = type;
+            this.queued = queued;
+        }
+    }
+
+    /**
+     * The latest event for a path wins, except that a deletion and a
+     * creation in the same cycle are reported as a deletion.
+     */
+    static EventType coalesce ( EventType old, EventType nue ) {
+        if (old == EventType.DELETED && nue == EventType.NEW_CHILD) {
+            return EventType.DELETED;
+        }
+        return nue;
+    }
+
     private final Object lock = new Object();
     private volatile boolean delivering = false;
     private final Runnable deliverer = new Runnable() {
-        private final Set<Event> deliver = new HashSet<Event>();
+        private final List<Event> deliver = new ArrayList<>();
 
         @Override
         public void run () {
-            Set<Entry> toRemove = new HashSet<>();
-            Set<Entry> entries;
-            synchronized ( lock ) {
-                entries = new HashSet<>( FileChangeRegistry.this.entries );
-            }
+            final Map<Entry, List<Event>> deliveries = new LinkedHashMap<>();
+            boolean updateListeners = false;
+            delivering = true;
             while ( drainPendingEvents( deliver ) ) {
-                delivering = true;
-                for (Event evt : deliver) {
-                    for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
-                        Entry en = it.next();
-                        if (en.get() == null) {
-                            toRemove.add( en );
-                        } else if (en.matches( evt )) {
-                            try {
-                                String eventPath = evt.path;
-                                String entryPath = en.relativePath;
-                                String deliverPath;
-                                if (eventPath.equals( entryPath )) {
-                                    deliverPath = null;
-                                } else {
-                                    if (eventPath.startsWith( entryPath )) {
-                                        deliverPath = eventPath.substring( entryPath.length(), eventPath.length() );
-                                    } else {
-                                        deliverPath = eventPath;
-                                    }
+                synchronized ( lock ) {
+                    int size = entries.size();
+                    for (final Event evt : deliver) {
+                        if (evt.type != EventType.CHANGE && entries.containsAtOrBelow( evt.path )) {
+                            // An observed path or one of its parents came or went
+                            updateListeners = true;
+                        }
+                        entries.visitAncestors( evt.path, new PathTrie.Visitor<Entry>() {
+                            @Override
+                            public boolean visit ( Entry en, String remainder ) {
+                                if (en.get() == null) {
+                                    return false;
                                 }
-                                if (deliverPath != null && !deliverPath.isEmpty() && deliverPath.charAt( 0 ) == '/') {
-                                    deliverPath = deliverPath.substring( 1 );
+                                if (!en.scope.includes( remainder )) {
+                                    return true;
                                 }
-                                boolean delivered = en.deliver( evt, deliverPath );
-                                if (!delivered) {
-                                    toRemove.add( en );
+                                List<Event> forEntry = deliveries.get( en );
+                                if (forEntry == null) {
+                                    forEntry = new ArrayList<>( 4 );
+                                    deliveries.put( en, forEntry );
                                 }
-                            } catch ( Exception e ) {
-                                Exceptions.printStackTrace( e );
+                                forEntry.add( new Event( evt.type, remainder ) );
+                                return true;
                             }
-                        }
+                        } );
                     }
+                    updateListeners |= entries.size() != size;
                 }
-            }
-            synchronized ( lock ) {
-                FileChangeRegistry.this.entries.removeAll( toRemove );
+                stats.cycle( deliver.size(), deliveries.size() );
+                deliver.clear();
+                for (Map.Entry<Entry, List<Event>> e : deliveries.entrySet()) {
+                    try {
+                        e.getKey().deliver( Collections.unmodifiableList( e.getValue() ) );
+                    } catch ( Exception ex ) {
+                        Exceptions.printStackTrace( ex );
+                    }
+                }
+                deliveries.clear();
             }
             delivering = false;
+            if (!pendingPaths.isEmpty()) {
+                // Arrived after the last drain, while trigger() was a no-op
+                trigger( System.nanoTime() );
+            }
+            if (updateListeners) {
+                updateListeners();
+            }
             synchronized ( this ) {
                 notifyAll();
             }
-            maybeStopListening();
         }
     };
-    private AtomicBoolean listening = new AtomicBoolean();
 
-    private void maybeStartListening () {
-        boolean empty;
+    /**
+     * Attach listeners for everything observers' scopes cover and detach
+     * any which are no longer needed.
+     */
+    private void updateListeners () {
+        final FileObject root = project.getProjectDirectory();
+        final Map<String, Attachment> desired = new HashMap<>();
         synchronized ( lock ) {
-            empty = this.entries.isEmpty();
-            if (!empty) {
-                startListening();
-            }
+            entries.visitAll( new PathTrie.Visitor<Entry>() {
+                @Override
+                public boolean visit ( Entry en, String path ) {
+                    if (en.get() == null) {
+                        return false;
+                    }
+                    attachments( root, path, en.scope, desired );
+                    return true;
+                }
+            } );
         }
-    }
-
-    private void maybeStopListening () {
-        boolean empty;
-        synchronized ( lock ) {
-            empty = this.entries.isEmpty();
-            if (empty) {
-                stopListening();
+        synchronized ( attached ) {
+            for (Iterator<Map.Entry<String, Attachment>> it = attached.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Attachment> e = it.next();
+                Attachment nue = desired.get( e.getKey() );
+                if (nue == null || nue.file != e.getValue().file) {
+                    e.getValue().detach();
+                    it.remove();
+                }
             }
+            attach( desired );
         }
     }
 
-    private void startListening () {
-        if (listening.compareAndSet( false, true )) {
-            hold = project.getProjectDirectory();
-            if (hold.isValid()) {
-                hold.addRecursiveListener( adapter );
-                hold.addFileChangeListener( adapter );
+    private void attach ( Map<String, Attachment> attachments ) {
+        synchronized ( attached ) {
+            for (Map.Entry<String, Attachment> e : attachments.entrySet()) {
+                if (!attached.containsKey( e.getKey() )) {
+                    e.getValue().attach();
+                    attached.put( e.getKey(), e.getValue() );
+                }
             }
         }
     }
 
-    private void stopListening () {
-        if (listening.compareAndSet( true, false )) {
-            if (hold != null && hold.isValid()) {
-                hold.removeRecursiveListener( adapter );
-                hold.removeFileChangeListener( adapter );
+    /**
+     * Compute the listeners needed to deliver events within a scope on a
+     * path:  plain listeners on each existing folder leading to it, so its
+     * creation or deletion is noticed, and on the path itself if it exists,
+     * unless the scope extends more than one folder down, in which case a
+     * recursive listener that only descends into folders within the scope.
+     */
+    private void attachments ( FileObject root, String path, WatchScope scope, Map<String, Attachment> into ) {
+        FileObject fo = root;
+        String soFar = ""; //NOI18N
+        for (String segment : path.split( "/" )) { //NOI18N
+            if (segment.isEmpty()) {
+                continue;
+            }
+            into.put( soFar, new Attachment( fo, null ) );
+            fo = fo.getFileObject( segment );
+            if (fo == null) {
+                // Not created yet
+                return;
             }
+            soFar = soFar.isEmpty() ? segment : soFar + '/' + segment;
+        }
+        if (fo.isFolder() && (scope.getDepth() < 0 || scope.getDepth() > 1)) {
+            into.put( soFar + '|' + scope, new Attachment( fo, scope ) );
+        } else {
+            into.put( soFar, new Attachment( fo, null ) );
         }
     }
 
@@ -186,25 +322,43 @@ public final class FileChangeRegistry {
         }
     }
 
-    private void trigger () {
+    private void trigger ( long now ) {
+        int wait = delay.onEvent( now );
         if (!delivering) {
-            task.schedule( delay );
+            task.schedule( wait );
         }
     }
 
     public void registerInterest ( String relativePath, FileObserver obs ) {
-        synchronized ( lock ) {
-            entries.add( new Entry( obs, relativePath ) );
-        }
-        maybeStartListening();
+        registerInterest( relativePath, obs, WatchScope.ALL );
     }
 
     public void registerInterest ( FileObject o, FileObserver obs ) {
-        String path = FileUtil.getRelativePath( project.getProjectDirectory(), o );
+        registerInterest( o, obs, WatchScope.ALL );
+    }
+
+    public void registerInterest ( FileObject o, FileObserver obs, WatchScope scope ) {
+        registerInterest( FileUtil.getRelativePath( project.getProjectDirectory(), o ), obs, scope );
+    }
+
+    /**
+     * Register an observer for events on a path and those files beneath it
+     * which fall within a scope.  Only the folders some observer's scope
+     * includes are listened to.
+     *
+     * @param relativePath A path relative to the project directory, which
+     * need not exist yet
+     * @param obs An observer, which is weakly referenced
+     * @param scope The scope
+     */
+    public void registerInterest ( String relativePath, FileObserver obs, WatchScope scope ) {
+        String path = relativePath == null ? "" : relativePath; //NOI18N
         synchronized ( lock ) {
-            entries.add( new Entry( obs, path ) );
+            entries.add( path, new Entry( obs, path, scope ) );
         }
-        maybeStartListening();
+        Map<String, Attachment> needed = new HashMap<>();
+        attachments( project.getProjectDirectory(), path, scope, needed );
+        attach( needed );
     }
 
     private final class A extends FileChangeAdapter {
@@ -239,40 +393,19 @@ public final class FileChangeRegistry {
         @Override
         public void fileRenamed ( FileRenameEvent fe ) {
             //Check if the root has been renamed, and if so, reattach
-            String originalName = fe.getName() + "." + fe.getExt();
+            String originalName = fe.getExt() == null || fe.getExt().isEmpty()
+                    ? fe.getName() : fe.getName() + "." + fe.getExt(); //NOI18N
             FileObject fo = fe.getFile();
             String pth = FileUtil.getRelativePath( project.getProjectDirectory(), fo.getParent() );
-
+            if (pth == null) {
+                return;
+            }
             String origPath = pth + '/' + originalName; //NOI18N
             String newPath = pth + '/' + fo.getNameExt(); //NOI18N
-            Set<Entry> newEntries = new HashSet<>();
-            Set<Entry> entries;
-            synchronized ( lock ) {
-                entries = new HashSet<>( FileChangeRegistry.this.entries );
-            }
-            for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
-                Entry e = it.next();
-                FileObserver obs = e.get();
-                if (obs == null) {
-                    it.remove();
-                } else {
-                    String curr = e.relativePath;
-                    if (curr.equals( origPath )) {
-                        Entry nue = new Entry( obs, newPath );
-                        newEntries.add( nue );
-                        it.remove();
-                    } else if (curr.startsWith( origPath )) {
-                        String ss = curr.substring( origPath.length(), curr.length() );
-                        Entry nue = new Entry( obs, newPath + "/" + ss );
-                        newEntries.add( nue );
-                        it.remove();
-                    }
-                }
-            }
-            maybeStopListening();
             synchronized ( lock ) {
-                FileChangeRegistry.this.entries.addAll( newEntries );
+                entries.move( origPath, newPath );
             }
+            updateListeners();
         }
 
         private class R implements Runnable {
@@ -291,13 +424,69 @@ public final class FileChangeRegistry {
         }
     }
 
-    private static final class Entry implements Comparable<Entry> {
+    /**
+     * A listener attached to a file or folder.
+     */
+    private final class Attachment {
+        private final FileObject file;
+        private final WatchScope scope;
+        private final FileChangeListener listener = new A();
+
+        Attachment ( FileObject file, WatchScope scope ) {
+            this.file = file;
+            this.scope = scope;
+        }
+
+        void attach () {
+            if (scope == null) {
+                file.addFileChangeListener( listener );
+                return;
+            }
+            final File dir = FileUtil.toFile( file );
+            if (dir == null) {
+                file.addRecursiveListener( listener );
+            } else {
+                FileUtil.addRecursiveListener( listener, dir, new FileFilter() {
+                    @Override
+                    public boolean accept ( File f ) {
+                        String rel = f.getAbsolutePath().substring(
+                                Math.min( f.getAbsolutePath().length(), dir.getAbsolutePath().length() + 1 ) );
+                        return scope.includesChildrenOf( rel.replace( File.separatorChar, '/' ) );
+                    }
+                }, NEVER_STOP );
+            }
+        }
+
+        void detach () {
+            if (scope == null) {
+                file.removeFileChangeListener( listener );
+                return;
+            }
+            File dir = FileUtil.toFile( file );
+            if (dir == null) {
+                file.removeRecursiveListener( listener );
+            } else {
+                FileUtil.removeRecursiveListener( listener, dir );
+            }
+        }
+    }
+
+    private static final Callable<Boolean> NEVER_STOP = new Callable<Boolean>() {
+        @Override
+        public Boolean call () {
+            return false;
+        }
+    };
+
+    private static final class Entry {
         private final Reference<FileObserver> obs;
         private final String relativePath;
+        private final WatchScope scope;
 
-        public Entry ( FileObserver obs, String relativePath ) {
+        public Entry ( FileObserver obs, String relativePath, WatchScope scope ) {
             this.obs = new WeakReference<>( obs );
             this.relativePath = relativePath;
+            this.scope = scope;
         }
 
         public String toString () {
@@ -308,45 +497,14 @@ public final class FileChangeRegistry {
             return obs.get();
         }
 
-        public boolean matches ( Event evt ) {
-            if (this.relativePath == null || "".equals( this.relativePath ) || "/".equals( this.relativePath )) {
-                return true;
-            }
-            boolean result = evt.path.startsWith( relativePath );
-            if (result) {
-                int ep = evt.path.length();
-                int rp = relativePath.length();
-                if (ep > rp) {
-                    char c = evt.path.charAt( relativePath.length() );
-                    result = c == '/';
-                }
-            }
-            return result;
-        }
-
-        public boolean deliver ( Event event, String path ) {
+        public boolean deliver ( List<Event> events ) {
             FileObserver o = get();
             boolean result = o != null;
             if (result) {
-                o.onEvent( event.type, path );
-            }
-            return result;
-        }
-
-        private Integer countSlashes () {
-            int result = 0;
-            for (char c : relativePath.toCharArray()) {
-                if (c == '/') { //NOI18N
-                    result++;
-                }
+                o.onEvents( events );
             }
             return result;
         }
-
-        @Override
-        public int compareTo ( Entry o ) {
-            return -countSlashes().compareTo( o.countSlashes() );
-        }
     }
 
     public static class Event {
@@ -358,6 +516,18 @@ public final class FileChangeRegistry {
             this.path = path;
         }
 
+        public EventType getType () {
+            return type;
+        }
+
+        /**
+         * Get the path, relative to the path the observer receiving this
+         * event registered on, or null if it is that path.
+         */
+        public String getPath () {
+            return path;
+        }
+
         @Override
         public int hashCode () {
             int hash = 7;
@@ -392,6 +562,18 @@ public final class FileChangeRegistry {
 
     public interface FileObserver {
         public void onEvent ( EventType type, String path );
+
+        /**
+         * Receive all of the events for this observer from one delivery
+         * cycle at once.  By default, calls {@link #onEvent} for each.
+         *
+         * @param events The events, at most one per path
+         */
+        public default void onEvents ( List<Event> events ) {
+            for (Event e : events) {
+                onEvent( e.getType(), e.getPath() );
+            }
+        }
     }
 
     public enum EventType {
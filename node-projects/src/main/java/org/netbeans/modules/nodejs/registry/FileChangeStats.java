@@ -0,0 +1,158 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a {@link FileChangeRegistry}, found in the project's lookup
+ * alongside it.  Latencies are measured from the arrival of the first event
+ * for a path to the delivery of the (possibly coalesced) event, over the
+ * most recent deliveries.
+ *
+ * @author Tim Boudreau
+ */
+public final class FileChangeStats {
+    private static final int SAMPLES = 1024;
+    private final Map<String, ?> pending;
+    private final AdaptiveDelay delay;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong callbacks = new AtomicLong();
+    private final long[] latencies = new long[SAMPLES];
+    private int nextSample;
+    private int sampleCount;
+
+    FileChangeStats ( Map<String, ?> pending, AdaptiveDelay delay ) {
+        this.pending = pending;
+        this.delay = delay;
+    }
+
+    void received ( boolean wasCoalesced ) {
+        received.incrementAndGet();
+        if (wasCoalesced) {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    void cycle ( int events, int observersCalled ) {
+        cycles.incrementAndGet();
+        delivered.addAndGet( events );
+        callbacks.addAndGet( observersCalled );
+    }
+
+    synchronized void latency ( long nanos ) {
+        latencies[nextSample] = nanos;
+        nextSample = (nextSample + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) {
+            sampleCount++;
+        }
+    }
+
+    /**
+     * The number of paths with events waiting to be delivered.
+     */
+    public int getQueueDepth () {
+        return pending.size();
+    }
+
+    /**
+     * The number of events received from the filesystem.
+     */
+    public long getEventsReceived () {
+        return received.get();
+    }
+
+    /**
+     * The number of events delivered, after coalescing.
+     */
+    public long getEventsDelivered () {
+        return delivered.get();
+    }
+
+    /**
+     * The number of times events were delivered.
+     */
+    public long getDeliveryCycles () {
+        return cycles.get();
+    }
+
+    /**
+     * The number of calls to observers.
+     */
+    public long getObserverCallbacks () {
+        return callbacks.get();
+    }
+
+    /**
+     * The fraction of received events which were merged into an event
+     * already queued for the same path.
+     */
+    public double getCoalesceRatio () {
+        long r = received.get();
+        return r == 0 ? 0 : (double) coalesced.get() / r;
+    }
+
+    /**
+     * The debounce, in milliseconds, currently applied to new events.
+     */
+    public int getCurrentDelay () {
+        return delay.currentDelay();
+    }
+
+    /**
+     * Get a delivery latency percentile over recent deliveries.
+     *
+     * @param percentile A number from 0 to 100
+     * @return The latency in milliseconds, or 0 if nothing has been
+     * delivered
+     */
+    public long getLatencyPercentile ( double percentile ) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException( "Bad percentile " + percentile ); //NOI18N
+        }
+        long[] sorted;
+        synchronized ( this ) {
+            sorted = Arrays.copyOf( latencies, sampleCount );
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort( sorted );
+        int index = (int) Math.ceil( percentile / 100D * sorted.length ) - 1;
+        return TimeUnit.NANOSECONDS.toMillis( sorted[Math.max( 0, index )] );
+    }
+
+    @Override
+    public String toString () {
+        return "FileChangeStats{queued=" + getQueueDepth() + ", received=" + received //NOI18N
+                + ", delivered=" + delivered + ", cycles=" + cycles //NOI18N
+                + ", callbacks=" + callbacks //NOI18N
+                + ", coalesced=" + String.format( "%.1f%%", getCoalesceRatio() * 100 ) //NOI18N
+                + ", delay=" + getCurrentDelay() + "ms" //NOI18N
+                + ", p50=" + getLatencyPercentile( 50 ) + "ms" //NOI18N
+                + ", p90=" + getLatencyPercentile( 90 ) + "ms" //NOI18N
+                + ", p99=" + getLatencyPercentile( 99 ) + "ms}"; //NOI18N
+    }
+}
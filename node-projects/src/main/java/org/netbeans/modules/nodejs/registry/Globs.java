@@ -0,0 +1,84 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.regex.Pattern;
+
+/**
+ * Translates the globs used for watch scope exclusions and .gitignore-style
+ * files into regular expressions, so both read globs the same way:
+ * <code>*</code> and <code>?</code> match within one path segment,
+ * <code>**</code> matches any number of segments, <code>**&#47;</code>
+ * matches zero or more leading folders, and a backslash makes the next
+ * character literal.  The whole path must match.
+ *
+ * @author Tim Boudreau
+ */
+public final class Globs {
+    private static final String SPECIAL = "[]{}()^$.|+\\"; //NOI18N
+
+    private Globs () {
+        throw new AssertionError();
+    }
+
+    public static Pattern toPattern ( String glob ) {
+        return Pattern.compile( toRegex( glob ) );
+    }
+
+    public static String toRegex ( String glob ) {
+        StringBuilder sb = new StringBuilder( glob.length() + 8 );
+        int max = glob.length();
+        for (int i = 0; i < max; i++) {
+            char c = glob.charAt( i );
+            switch ( c ) {
+                case '*':
+                    if (i + 1 < max && glob.charAt( i + 1 ) == '*') {
+                        i++;
+                        if (i + 1 < max && glob.charAt( i + 1 ) == '/') {
+                            i++;
+                            sb.append( "(?:.*/)?" ); //NOI18N
+                        } else {
+                            sb.append( ".*" ); //NOI18N
+                        }
+                    } else {
+                        sb.append( "[^/]*" ); //NOI18N
+                    }
+                    break;
+                case '?':
+                    sb.append( "[^/]" ); //NOI18N
+                    break;
+                case '\\':
+                    if (i + 1 < max) {
+                        literal( glob.charAt( ++i ), sb );
+                    }
+                    break;
+                default:
+                    literal( c, sb );
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void literal ( char c, StringBuilder sb ) {
+        if (SPECIAL.indexOf( c ) >= 0 || c == '*' || c == '?') {
+            sb.append( '\\' );
+        }
+        sb.append( c );
+    }
+}
@@ -0,0 +1,231 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values stored against slash-delimited relative paths, one trie node per
+ * path segment, so that finding everything registered on a path or any of
+ * its ancestors costs one lookup per segment of that path, regardless of how
+ * many values are stored.  The empty string, "/" and null all denote the
+ * root.  Not thread-safe.
+ *
+ * @author Tim Boudreau
+ */
+final class PathTrie<T> {
+    private final Node<T> root = new Node<>( null, null );
+    private int size;
+
+    interface Visitor<T> {
+        /**
+         * Visit a value registered on a path or one of its ancestors.
+         *
+         * @param value The value
+         * @param remainder The part of the visited path below the path the
+         * value was registered on, or null if they are the same
+         * @return false if the value should be removed
+         */
+        boolean visit ( T value, String remainder );
+    }
+
+    void add ( String path, T value ) {
+        Node<T> node = root;
+        int max = path == null ? 0 : path.length();
+        for (int start = 0; start < max;) {
+            int end = segmentEnd( path, start );
+            if (end > start) {
+                node = node.child( path.substring( start, end ), true );
+            }
+            start = end + 1;
+        }
+        node.add( value );
+        size++;
+    }
+
+    int size () {
+        return size;
+    }
+
+    boolean isEmpty () {
+        return size == 0;
+    }
+
+    /**
+     * Visit every value registered on the passed path or an ancestor of it,
+     * outermost first.
+     */
+    void visitAncestors ( String path, Visitor<T> visitor ) {
+        Node<T> node = root;
+        int max = path == null ? 0 : path.length();
+        int start = 0;
+        while ( node != null ) {
+            while ( start < max && path.charAt( start ) == '/' ) {
+                start++;
+            }
+            String remainder = start >= max ? null : path.substring( start );
+            Node<T> next = null;
+            if (start < max) {
+                int end = segmentEnd( path, start );
+                next = node.child( path.substring( start, end ), false );
+                start = end + 1;
+            }
+            visit( node, remainder, visitor );
+            node = next;
+        }
+    }
+
+    /**
+     * Visit every value, passing the path it is registered on as the
+     * remainder (the empty string for the root).
+     */
+    void visitAll ( Visitor<T> visitor ) {
+        visitAll( root, "", visitor ); //NOI18N
+    }
+
+    private void visitAll ( Node<T> node, String path, Visitor<T> visitor ) {
+        if (node.children != null) {
+            // Copy, since visiting may prune children
+            for (Node<T> child : new ArrayList<>( node.children.values() )) {
+                visitAll( child, path.isEmpty() ? child.segment : path + '/' + child.segment, visitor );
+            }
+        }
+        visit( node, path, visitor );
+    }
+
+    /**
+     * Determine if anything is registered on a path or beneath it.
+     */
+    boolean containsAtOrBelow ( String path ) {
+        return find( path ) != null && (size > 0);
+    }
+
+    /**
+     * Move everything registered on a path or below it to another path, as
+     * when a folder is renamed.
+     */
+    void move ( String from, String to ) {
+        Node<T> node = find( from );
+        if (node == null || node == root) {
+            return;
+        }
+        node.parent.children.remove( node.segment );
+        prune( node.parent );
+        Node<T> target = root;
+        int max = to == null ? 0 : to.length();
+        for (int start = 0; start < max;) {
+            int end = segmentEnd( to, start );
+            if (end > start) {
+                target = target.child( to.substring( start, end ), true );
+            }
+            start = end + 1;
+        }
+        merge( node, target );
+    }
+
+    private void merge ( Node<T> from, Node<T> into ) {
+        if (from.values != null) {
+            for (T value : from.values) {
+                into.add( value );
+            }
+        }
+        if (from.children != null) {
+            for (Node<T> child : from.children.values()) {
+                merge( child, into.child( child.segment, true ) );
+            }
+        }
+    }
+
+    private Node<T> find ( String path ) {
+        Node<T> node = root;
+        int max = path == null ? 0 : path.length();
+        for (int start = 0; start < max && node != null;) {
+            int end = segmentEnd( path, start );
+            if (end > start) {
+                node = node.child( path.substring( start, end ), false );
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private void visit ( Node<T> node, String remainder, Visitor<T> visitor ) {
+        if (node.values == null) {
+            return;
+        }
+        for (Iterator<T> it = node.values.iterator(); it.hasNext();) {
+            if (!visitor.visit( it.next(), remainder )) {
+                it.remove();
+                size--;
+            }
+        }
+        if (node.values.isEmpty()) {
+            node.values = null;
+            prune( node );
+        }
+    }
+
+    private void prune ( Node<T> node ) {
+        while ( node != root && node.values == null
+                && (node.children == null || node.children.isEmpty()) ) {
+            node.parent.children.remove( node.segment );
+            node = node.parent;
+        }
+    }
+
+    private static int segmentEnd ( String path, int start ) {
+        int end = path.indexOf( '/', start );
+        return end < 0 ? path.length() : end;
+    }
+
+    private static final class Node<T> {
+        final Node<T> parent;
+        final String segment;
+        Map<String, Node<T>> children;
+        List<T> values;
+
+        Node ( Node<T> parent, String segment ) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        Node<T> child ( String name, boolean create ) {
+            Node<T> result = children == null ? null : children.get( name );
+            if (result == null && create) {
+                if (children == null) {
+                    children = new HashMap<>( 4 );
+                }
+                result = new Node<>( this, name );
+                children.put( name, result );
+            }
+            return result;
+        }
+
+        void add ( T value ) {
+            if (values == null) {
+                values = new ArrayList<>( 2 );
+            }
+            values.add( value );
+        }
+    }
+}
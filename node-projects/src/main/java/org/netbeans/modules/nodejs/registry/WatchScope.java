@@ -0,0 +1,188 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Which files beneath a registered path an observer wants events for:
+ * how many folders deep, and which paths to leave out.  The registry only
+ * listens to folders some observer's scope includes, so an observer which
+ * does not care about, say, <code>node_modules</code> should exclude it
+ * rather than ignore its events.
+ * <p>
+ * Exclusions are globs relative to the registered path, where
+ * <code>*</code> and <code>?</code> match within one path segment and
+ * <code>**</code> matches any number of segments - see {@link Globs}.  A
+ * path is excluded if the glob matches it or any of its parent folders, so
+ * <code>**&#47;.git</code> excludes every <code>.git</code> folder and
+ * everything in them.
+ *
+ * @author Tim Boudreau
+ */
+public final class WatchScope {
+    /**
+     * Everything beneath the registered path.
+     */
+    public static final WatchScope ALL = new WatchScope( -1, Collections.<String>emptyList() );
+    /**
+     * Only the registered file or folder itself.
+     */
+    public static final WatchScope SELF = new WatchScope( 0, Collections.<String>emptyList() );
+    private final int depth;
+    private final List<String> globs;
+    private final Pattern[] excludes;
+
+    private WatchScope ( int depth, List<String> globs ) {
+        this.depth = depth;
+        this.globs = globs;
+        excludes = new Pattern[globs.size()];
+        for (int i = 0; i < excludes.length; i++) {
+            excludes[i] = Globs.toPattern( globs.get( i ) );
+        }
+    }
+
+    /**
+     * Get a scope covering the registered path and files up to some
+     * number of folders beneath it.
+     *
+     * @param depth 0 for the registered path only, 1 to include its
+     * children, and so forth
+     * @return A scope
+     */
+    public static WatchScope depth ( int depth ) {
+        if (depth < 0) {
+            throw new IllegalArgumentException( "Bad depth " + depth ); //NOI18N
+        }
+        return depth == 0 ? SELF : new WatchScope( depth, Collections.<String>emptyList() );
+    }
+
+    /**
+     * Get a copy of this scope which also excludes paths matching some
+     * globs.
+     *
+     * @param globs Globs relative to the registered path
+     * @return A scope
+     */
+    public WatchScope excluding ( String... globs ) {
+        List<String> all = new ArrayList<>( this.globs );
+        all.addAll( Arrays.asList( globs ) );
+        return new WatchScope( depth, Collections.unmodifiableList( all ) );
+    }
+
+    /**
+     * Get the depth, or -1 if unlimited.
+     */
+    public int getDepth () {
+        return depth;
+    }
+
+    public List<String> getExclusions () {
+        return globs;
+    }
+
+    /**
+     * Determine if an event on a path falls within this scope.
+     *
+     * @param path A path relative to the registered path, or null for the
+     * registered path itself
+     * @return true if it does
+     */
+    public boolean includes ( String path ) {
+        if (path == null || path.isEmpty()) {
+            return true;
+        }
+        if (depth >= 0 && segments( path ) > depth) {
+            return false;
+        }
+        return !isExcluded( path );
+    }
+
+    /**
+     * Determine if events for the children of a folder fall within this
+     * scope, meaning it is worth listening to that folder.
+     *
+     * @param folder A folder path relative to the registered path, or null
+     * or the empty string for the registered path itself
+     * @return true if it does
+     */
+    public boolean includesChildrenOf ( String folder ) {
+        if (folder == null || folder.isEmpty()) {
+            return depth != 0;
+        }
+        if (depth >= 0 && segments( folder ) >= depth) {
+            return false;
+        }
+        return !isExcluded( folder );
+    }
+
+    private boolean isExcluded ( String path ) {
+        if (excludes.length == 0) {
+            return false;
+        }
+        // Test the path and each of its parents
+        for (int end = path.indexOf( '/' ); ; end = path.indexOf( '/', end + 1 )) {
+            String sub = end < 0 ? path : path.substring( 0, end );
+            for (Pattern p : excludes) {
+                if (p.matcher( sub ).matches()) {
+                    return true;
+                }
+            }
+            if (end < 0) {
+                return false;
+            }
+        }
+    }
+
+    private static int segments ( String path ) {
+        int result = 1;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt( i ) == '/') {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals ( Object o ) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof WatchScope)) {
+            return false;
+        }
+        WatchScope other = (WatchScope) o;
+        return depth == other.depth && globs.equals( other.globs );
+    }
+
+    @Override
+    public int hashCode () {
+        return 37 * depth + globs.hashCode();
+    }
+
+    @Override
+    public String toString () {
+        return "WatchScope{depth=" + depth + ", excluding=" + globs + '}'; //NOI18N
+    }
+}
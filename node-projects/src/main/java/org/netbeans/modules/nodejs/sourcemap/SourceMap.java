@@ -0,0 +1,313 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.sourcemap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.netbeans.modules.nodejs.json.JsonPullParser;
+import org.netbeans.modules.nodejs.json.JsonPullParser.Token;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * A version 3 source map, reduced to what is needed to find the original
+ * position of a generated one.  The base64 VLQ <code>mappings</code> are
+ * decoded once into a single int array, four ints per segment, with the
+ * start of each generated line's segments in a second array, so a lookup is
+ * a binary search over one line's segments.  Names and embedded source
+ * content are skipped when parsing; index maps with <code>sections</code>
+ * are not supported.
+ * <p/>
+ * Lines and columns are one-based, as node prints them in stack traces.
+ *
+ * @author Tim Boudreau
+ */
+public final class SourceMap {
+    private static final int STRIDE = 4;
+    private static final int COLUMN = 0;
+    private static final int SOURCE = 1;
+    private static final int ORIGINAL_LINE = 2;
+    private static final int ORIGINAL_COLUMN = 3;
+    private static final int[] BASE64 = new int[128];
+
+    static {
+        Arrays.fill( BASE64, -1 );
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"; //NOI18N
+        for (int i = 0; i < chars.length(); i++) {
+            BASE64[chars.charAt( i )] = i;
+        }
+    }
+    private final String[] sources;
+    private final int[] lineStarts;
+    private final int[] segments;
+
+    private SourceMap ( String[] sources, int[] lineStarts, int[] segments ) {
+        this.sources = sources;
+        this.lineStarts = lineStarts;
+        this.segments = segments;
+    }
+
+    /**
+     * A position in an original source file.
+     */
+    public static final class Position {
+        /**
+         * The source, as named by the source map - its <code>sourceRoot</code>
+         * followed by its entry in <code>sources</code> - or, from
+         * {@link SourceMaps}, the path of the source file.
+         */
+        public final String source;
+        public final int line;
+        public final int column;
+
+        public Position ( String source, int line, int column ) {
+            this.source = source;
+            this.line = line;
+            this.column = column;
+        }
+
+        @Override
+        public String toString () {
+            return source + ':' + line + ':' + column;
+        }
+    }
+
+    /**
+     * Parse a source map.
+     *
+     * @param in The map's JSON
+     * @return A source map
+     * @throws JsonException if it is not a source map or uses sections
+     * @throws IOException if reading fails or the mappings are malformed
+     */
+    public static SourceMap parse ( Reader in ) throws JsonException, IOException {
+        JsonPullParser p = new JsonPullParser( in );
+        if (p.next() != Token.START_OBJECT) {
+            throw p.error( "Expected '{'" ); //NOI18N
+        }
+        String sourceRoot = null;
+        List<String> sources = new ArrayList<>();
+        String mappings = null;
+        while ( p.next() == Token.KEY ) {
+            switch ( p.text() ) {
+                case "sourceRoot": //NOI18N
+                    if (p.next() == Token.STRING) {
+                        sourceRoot = p.text();
+                    }
+                    break;
+                case "sources": //NOI18N
+                    if (p.next() != Token.START_ARRAY) {
+                        throw p.error( "sources is not an array" ); //NOI18N
+                    }
+                    for (Token t = p.next(); t != Token.END_ARRAY; t = p.next()) {
+                        if (t == Token.END) {
+                            throw p.error( "Unterminated sources" ); //NOI18N
+                        }
+                        sources.add( t == Token.STRING ? p.text() : null );
+                        p.skipValue();
+                    }
+                    break;
+                case "mappings": //NOI18N
+                    if (p.next() != Token.STRING) {
+                        throw p.error( "mappings is not a string" ); //NOI18N
+                    }
+                    mappings = p.text();
+                    break;
+                case "sections": //NOI18N
+                    throw p.error( "Index maps are not supported" ); //NOI18N
+                default:
+                    p.skipValue();
+            }
+        }
+        if (mappings == null) {
+            throw p.error( "No mappings" ); //NOI18N
+        }
+        String[] names = new String[sources.size()];
+        for (int i = 0; i < names.length; i++) {
+            String s = sources.get( i );
+            if (s != null && sourceRoot != null && !sourceRoot.isEmpty()) {
+                s = sourceRoot.endsWith( "/" ) ? sourceRoot + s : sourceRoot + '/' + s; //NOI18N
+            }
+            names[i] = s;
+        }
+        return decode( names, mappings );
+    }
+
+    /**
+     * Decode the base64 VLQ mappings.  Within a line, segments are
+     * separated by ',' and lines by ';'; each segment holds a generated
+     * column relative to the previous segment on the line and, unless it
+     * is unmapped, a source index, original line and original column each
+     * relative to the previous segment which had them, optionally followed
+     * by a name index which we ignore.
+     */
+    static SourceMap decode ( String[] sources, String mappings ) throws IOException {
+        int[] lineStarts = new int[16];
+        int[] segments = new int[Math.max( 16, mappings.length() / 2 )];
+        int lines = 0;
+        int count = 0;
+        int[] fields = new int[5];
+        int source = 0;
+        int originalLine = 0;
+        int originalColumn = 0;
+        int column = 0;
+        int max = mappings.length();
+        int pos = 0;
+        for (;;) {
+            // Start of a line
+            if (lines + 1 >= lineStarts.length) {
+                lineStarts = Arrays.copyOf( lineStarts, lineStarts.length * 2 );
+            }
+            lineStarts[lines++] = count;
+            column = 0;
+            int lineStart = count;
+            boolean sorted = true;
+            while ( pos < max && mappings.charAt( pos ) != ';' ) {
+                if (mappings.charAt( pos ) == ',') {
+                    pos++;
+                    continue;
+                }
+                int fieldCount = 0;
+                while ( pos < max && mappings.charAt( pos ) != ',' && mappings.charAt( pos ) != ';' ) {
+                    if (fieldCount == fields.length) {
+                        throw new IOException( "Too many fields in segment at " + pos ); //NOI18N
+                    }
+                    // Read one VLQ
+                    int value = 0;
+                    int shift = 0;
+                    for (;;) {
+                        char c = pos < max ? mappings.charAt( pos++ ) : ';';
+                        int digit = c < 128 ? BASE64[c] : -1;
+                        if (digit < 0 || shift > 30) {
+                            throw new IOException( "Bad mapping at " + (pos - 1) ); //NOI18N
+                        }
+                        value |= (digit & 31) << shift;
+                        if ((digit & 32) == 0) {
+                            break;
+                        }
+                        shift += 5;
+                    }
+                    fields[fieldCount++] = (value & 1) == 0 ? value >>> 1 : -(value >>> 1);
+                }
+                if (fieldCount != 1 && fieldCount < 4) {
+                    throw new IOException( "Bad segment ending at " + pos ); //NOI18N
+                }
+                int previousColumn = column;
+                column += fields[0];
+                sorted &= column >= previousColumn;
+                if (count + STRIDE > segments.length) {
+                    segments = Arrays.copyOf( segments, segments.length * 2 );
+                }
+                segments[count + COLUMN] = column;
+                if (fieldCount == 1) {
+                    segments[count + SOURCE] = -1;
+                } else {
+                    source += fields[1];
+                    originalLine += fields[2];
+                    originalColumn += fields[3];
+                    segments[count + SOURCE] = source;
+                    segments[count + ORIGINAL_LINE] = originalLine;
+                    segments[count + ORIGINAL_COLUMN] = originalColumn;
+                }
+                count += STRIDE;
+            }
+            if (!sorted) {
+                sortLine( segments, lineStart, count );
+            }
+            if (pos >= max) {
+                break;
+            }
+            pos++;
+        }
+        lineStarts[lines] = count;
+        return new SourceMap( sources, Arrays.copyOf( lineStarts, lines + 1 ), Arrays.copyOf( segments, count ) );
+    }
+
+    private static void sortLine ( int[] segments, int start, int end ) {
+        // Insertion sort; generators almost always emit columns in order
+        int[] tmp = new int[STRIDE];
+        for (int i = start + STRIDE; i < end; i += STRIDE) {
+            System.arraycopy( segments, i, tmp, 0, STRIDE );
+            int j = i - STRIDE;
+            while ( j >= start && segments[j + COLUMN] > tmp[COLUMN] ) {
+                System.arraycopy( segments, j, segments, j + STRIDE, STRIDE );
+                j -= STRIDE;
+            }
+            System.arraycopy( tmp, 0, segments, j + STRIDE, STRIDE );
+        }
+    }
+
+    /**
+     * The number of generated lines the map has mappings for.
+     */
+    public int lineCount () {
+        return lineStarts.length - 1;
+    }
+
+    public int sourceCount () {
+        return sources.length;
+    }
+
+    public String source ( int index ) {
+        return sources[index];
+    }
+
+    /**
+     * Find the original position of a generated one:  that of the last
+     * segment on the line which starts at or before the column, or, if the
+     * column is before all of them, of the line's first segment.
+     *
+     * @param line A one-based generated line
+     * @param column A one-based generated column, or 0 if unknown
+     * @return A position, or null if the location is not mapped
+     */
+    public Position originalPosition ( int line, int column ) {
+        int ix = line - 1;
+        if (ix < 0 || ix >= lineCount()) {
+            return null;
+        }
+        int start = lineStarts[ix] / STRIDE;
+        int end = lineStarts[ix + 1] / STRIDE;
+        if (start == end) {
+            return null;
+        }
+        int col = Math.max( 0, column - 1 );
+        int lo = start;
+        int hi = end - 1;
+        int found = start;
+        while ( lo <= hi ) {
+            int mid = (lo + hi) >>> 1;
+            if (segments[mid * STRIDE + COLUMN] <= col) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int at = found * STRIDE;
+        int source = segments[at + SOURCE];
+        if (source < 0 || source >= sources.length || sources[source] == null) {
+            return null;
+        }
+        return new Position( sources[source], segments[at + ORIGINAL_LINE] + 1,
+                segments[at + ORIGINAL_COLUMN] + 1 );
+    }
+}
@@ -0,0 +1,346 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.sourcemap;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * Shared cache of the source maps of generated javascript files, so that
+ * following stack frames into transpiled code costs a lookup, not a parse.
+ * A file's map is found from its <code>//# sourceMappingURL=</code> comment
+ * (a relative or <code>file:</code> URL, or an inline <code>data:</code>
+ * URL), or else is the <code>.map</code> file next to it.  Entries remember
+ * the timestamps of the script and the map and are reloaded when either
+ * changes, checking the disk at most once a second per file; files with no
+ * map are remembered too.  The least recently used entries are evicted
+ * beyond a size limit, which can be set with the system property
+ * <code>nodejs.sourcemap.cache.size</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class SourceMaps {
+    private static final int DEFAULT_SIZE = Integer.getInteger( "nodejs.sourcemap.cache.size", 256 ); //NOI18N
+    private static final SourceMaps INSTANCE = new SourceMaps( DEFAULT_SIZE, 1000 );
+    private static final String MAP_EXTENSION = ".map"; //NOI18N
+    private static final String URL_KEY = "sourceMappingURL="; //NOI18N
+    private static final String DATA_URL = "data:"; //NOI18N
+    private static final String FILE_URL = "file:"; //NOI18N
+    private static final String WEBPACK_URL = "webpack://"; //NOI18N
+    // The comment is normally on the last line
+    private static final int TAIL_SIZE = 8192;
+    // Do not read huge bundles end to end looking for an inline map
+    private static final long MAX_SCAN = 32 * 1024 * 1024;
+    // Enough of a line to tell whether it is the comment
+    private static final int LINE_PREFIX = 256;
+    private final Map<String, Entry> entries;
+    private final long recheckInterval;
+
+    SourceMaps ( final int maxSize, long recheckInterval ) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException( "Bad size " + maxSize ); //NOI18N
+        }
+        this.recheckInterval = recheckInterval;
+        entries = new LinkedHashMap<String, Entry>( 32, 0.75F, true ) {
+            @Override
+            protected boolean removeEldestEntry ( Map.Entry<String, Entry> eldest ) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static SourceMaps getDefault () {
+        return INSTANCE;
+    }
+
+    /**
+     * Find the original position of a position in a generated file.
+     *
+     * @param script A javascript file
+     * @param line A one-based line
+     * @param column A one-based column, or 0 if unknown
+     * @return The original position, whose source is the absolute path of
+     * the original file, or null if the file has no source map or the
+     * position is not mapped
+     */
+    public SourceMap.Position originalPosition ( File script, int line, int column ) {
+        Entry e = entry( script );
+        if (e.map == null) {
+            return null;
+        }
+        SourceMap.Position pos = e.map.originalPosition( line, column );
+        if (pos == null) {
+            return null;
+        }
+        File source = e.sourceFile( pos.source );
+        return source == null ? null : new SourceMap.Position( source.getPath(), pos.line, pos.column );
+    }
+
+    /**
+     * Get the source map of a file.
+     *
+     * @return The map, or null if it has none or it cannot be read
+     */
+    public SourceMap get ( File script ) {
+        return entry( script ).map;
+    }
+
+    private Entry entry ( File script ) {
+        String path = script.getAbsolutePath();
+        long now = System.currentTimeMillis();
+        Entry e;
+        synchronized ( this ) {
+            e = entries.get( path );
+            if (e != null && now - e.checked < recheckInterval) {
+                return e;
+            }
+        }
+        if (e != null && e.isUpToDate()) {
+            e.checked = now;
+            return e;
+        }
+        e = load( script );
+        e.checked = now;
+        synchronized ( this ) {
+            entries.put( path, e );
+        }
+        return e;
+    }
+
+    private static Entry load ( File script ) {
+        long scriptModified = script.lastModified();
+        File mapFile = null;
+        SourceMap map = null;
+        try {
+            String url = mappingUrl( script );
+            if (url != null && url.startsWith( DATA_URL )) {
+                map = parse( dataUrl( url ) );
+            } else {
+                if (url != null) {
+                    mapFile = toFile( script.getParentFile(), url );
+                }
+                if (mapFile == null || !mapFile.isFile()) {
+                    mapFile = new File( script.getPath() + MAP_EXTENSION );
+                }
+                if (mapFile.isFile()) {
+                    try (InputStream in = new FileInputStream( mapFile )) {
+                        map = parse( in );
+                    }
+                } else {
+                    mapFile = null;
+                }
+            }
+        } catch ( IOException | JsonException | IllegalArgumentException ex ) {
+            Logger.getLogger( SourceMaps.class.getName() ).log( Level.INFO,
+                    "Unreadable source map for " + script, ex ); //NOI18N
+        }
+        return new Entry( script, scriptModified, mapFile, mapFile == null ? 0 : mapFile.lastModified(), map );
+    }
+
+    private static SourceMap parse ( InputStream in ) throws IOException, JsonException {
+        return SourceMap.parse( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Find the value of the last sourceMappingURL comment in a script,
+     * looking at its end first.
+     */
+    static String mappingUrl ( File script ) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile( script, "r" )) { //NOI18N
+            long length = raf.length();
+            int tail = (int) Math.min( length, TAIL_SIZE );
+            String result = mappingUrl( read( raf, length - tail, tail ) );
+            if (result == null && length > tail) {
+                // An inline map too big to fit in the tail starts the line
+                // the tail begins in the middle of; read that line only if
+                // it starts with the comment
+                long lineStart = lineStart( raf, length - tail );
+                if (lineStart >= 0 && length - lineStart <= MAX_SCAN
+                        && mappingUrl( read( raf, lineStart, (int) Math.min( LINE_PREFIX, length - lineStart ) ) ) != null) {
+                    result = mappingUrl( read( raf, lineStart, (int) (length - lineStart) ) );
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Scan backwards from an offset for the start of the line containing
+     * it, or -1 if it is further back than anything worth reading.
+     */
+    private static long lineStart ( RandomAccessFile raf, long offset ) throws IOException {
+        byte[] buffer = new byte[TAIL_SIZE];
+        long end = offset;
+        while ( end > 0 && offset - end < MAX_SCAN ) {
+            int count = (int) Math.min( end, buffer.length );
+            raf.seek( end - count );
+            raf.readFully( buffer, 0, count );
+            for (int i = count - 1; i >= 0; i--) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {
+                    return end - count + i + 1;
+                }
+            }
+            end -= count;
+        }
+        return end == 0 ? 0 : -1;
+    }
+
+    private static String read ( RandomAccessFile raf, long start, int length ) throws IOException {
+        byte[] bytes = new byte[length];
+        raf.seek( start );
+        raf.readFully( bytes );
+        // One char per byte; the comment and URL are ascii
+        return new String( bytes, StandardCharsets.ISO_8859_1 );
+    }
+
+    static String mappingUrl ( String text ) {
+        for (int ix = text.lastIndexOf( URL_KEY ); ix >= 4; ix = text.lastIndexOf( URL_KEY, ix - 1 )) {
+            // "//# ", "/*# " or the older "//@ "
+            char marker = text.charAt( ix - 2 );
+            char slash = text.charAt( ix - 3 );
+            if (text.charAt( ix - 1 ) == ' ' && (marker == '#' || marker == '@')
+                    && (slash == '/' || slash == '*') && text.charAt( ix - 4 ) == '/') {
+                int start = ix + URL_KEY.length();
+                int end = start;
+                while ( end < text.length() && !Character.isWhitespace( text.charAt( end ) )
+                        && !text.startsWith( "*/", end ) ) { //NOI18N
+                    end++;
+                }
+                return end > start ? text.substring( start, end ) : null;
+            }
+        }
+        return null;
+    }
+
+    private static InputStream dataUrl ( String url ) throws IOException {
+        int comma = url.indexOf( ',' );
+        if (comma < 0) {
+            throw new IOException( "Bad data URL" ); //NOI18N
+        }
+        String data = url.substring( comma + 1 );
+        byte[] bytes;
+        if (url.lastIndexOf( ";base64", comma ) > 0) { //NOI18N
+            bytes = Base64.getDecoder().decode( data );
+        } else {
+            bytes = decode( data ).getBytes( StandardCharsets.UTF_8 );
+        }
+        return new ByteArrayInputStream( bytes );
+    }
+
+    /**
+     * Resolve a URL or path to a file, relative to a folder.
+     */
+    static File toFile ( File relativeTo, String url ) {
+        if (url.startsWith( FILE_URL )) {
+            try {
+                return new File( new URI( url ) );
+            } catch ( URISyntaxException | IllegalArgumentException ex ) {
+                return null;
+            }
+        }
+        if (url.indexOf( "://" ) > 0) { //NOI18N
+            // http and the like
+            return null;
+        }
+        File f = new File( decode( url ) );
+        if (!f.isAbsolute()) {
+            f = new File( relativeTo, f.getPath() );
+        }
+        return f.toPath().normalize().toFile();
+    }
+
+    private static String decode ( String url ) {
+        if (url.indexOf( '%' ) < 0) {
+            return url;
+        }
+        try {
+            return URLDecoder.decode( url.replace( "+", "%2B" ), "UTF-8" ); //NOI18N
+        } catch ( UnsupportedEncodingException | IllegalArgumentException ex ) {
+            return url;
+        }
+    }
+
+    private static final class Entry {
+        final File script;
+        final long scriptModified;
+        final File mapFile;
+        final long mapModified;
+        final SourceMap map;
+        volatile long checked;
+
+        Entry ( File script, long scriptModified, File mapFile, long mapModified, SourceMap map ) {
+            this.script = script;
+            this.scriptModified = scriptModified;
+            this.mapFile = mapFile;
+            this.mapModified = mapModified;
+            this.map = map;
+        }
+
+        boolean isUpToDate () {
+            if (script.lastModified() != scriptModified) {
+                return false;
+            }
+            if (mapFile != null) {
+                return mapFile.lastModified() == mapModified;
+            }
+            // A map may have been generated next to it since
+            return map != null || !new File( script.getPath() + MAP_EXTENSION ).isFile();
+        }
+
+        /**
+         * Find the file for a source named in the map, relative to the map,
+         * or for webpack's <code>webpack://project/./src/x.js</code> names,
+         * relative to the map's folder or one above it.
+         */
+        File sourceFile ( String source ) {
+            File base = mapFile != null ? mapFile.getParentFile() : script.getParentFile();
+            if (source.startsWith( WEBPACK_URL )) {
+                String rest = source.substring( WEBPACK_URL.length() );
+                int slash = rest.indexOf( '/' );
+                rest = slash < 0 ? rest : rest.substring( slash + 1 );
+                int query = rest.indexOf( '?' );
+                rest = query < 0 ? rest : rest.substring( 0, query );
+                for (File dir = base; dir != null; dir = dir.getParentFile()) {
+                    File f = toFile( dir, rest );
+                    if (f != null && f.isFile()) {
+                        return f;
+                    }
+                }
+                return null;
+            }
+            return toFile( base, source );
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.netbeans.modules.nodejs.NodeJSProject;
 import org.netbeans.modules.nodejs.NodeJSProjectProperties;
 import org.netbeans.modules.nodejs.Npm;
 import org.netbeans.modules.nodejs.PropertiesPanel;
+import org.netbeans.modules.nodejs.api.ProjectMetadata;
 import org.netbeans.modules.nodejs.node.AddLibraryAction;
 import org.netbeans.modules.nodejs.ui.UiUtil;
 import org.netbeans.spi.project.ActionProvider;
@@ -102,8 +103,19 @@ public final class RootNode extends AbstractNode implements ChangeListener {
             }
         } );
         setIconBaseWithExtension( LOGO_ICON );
+        project.getMetadata().addPropertyChangeListener( metadataListener );
     }
 
+    // Held here since metadata only references its listeners weakly
+    private final PropertyChangeListener metadataListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange ( PropertyChangeEvent evt ) {
+            if (ProjectMetadata.PROP_DESCRIPTION.equals( evt.getPropertyName() )) {
+                fireShortDescriptionChange( null, null );
+            }
+        }
+    };
+
     private static Children createProjectChildren ( NodeJSProject project ) {
         return Children.create( new ProjectChildren( project ), true );
     }
@@ -29,6 +29,7 @@ import org.netbeans.modules.nodejs.NodeJSProjectFactory;
 import org.netbeans.modules.nodejs.registry.FileChangeRegistry;
 import org.netbeans.modules.nodejs.registry.FileChangeRegistry.EventType;
 import org.netbeans.modules.nodejs.registry.FileChangeRegistry.FileObserver;
+import org.netbeans.modules.nodejs.registry.WatchScope;
 import org.netbeans.modules.nodejs.ui2.SourcesChildFactory.Entry;
 import org.openide.filesystems.FileObject;
 import org.openide.loaders.DataObject;
@@ -97,7 +98,9 @@ public class SourcesChildFactory extends ChildFactory.Detachable<Entry> implemen
             FileChangeRegistry fileChangeRegistry = project.getLookup().lookup( FileChangeRegistry.class );
             System.out.println( "Register on " + fileChangeRegistry );
             if (fileChangeRegistry != null) {
-                fileChangeRegistry.registerInterest( "", observer );
+                // Only the project's immediate children are shown
+                fileChangeRegistry.registerInterest( "", observer, WatchScope.depth( 1 ) //NOI18N
+                        .excluding( NodeJSProjectFactory.NODE_MODULES_FOLDER ) );
             }
         }
         registered = true;
@@ -113,17 +116,30 @@ public class SourcesChildFactory extends ChildFactory.Detachable<Entry> implemen
         @Override
         public void onEvent ( EventType type, String path ) {
             System.out.println( "onEvent " + type + " " + path + " for " + project.getDisplayName() );
+            if (needsRefresh( type, path )) {
+                refresh( false );
+            }
+        }
+
+        @Override
+        public void onEvents ( List<FileChangeRegistry.Event> events ) {
+            // One refresh for however many files came and went
+            for (FileChangeRegistry.Event e : events) {
+                if (needsRefresh( e.getType(), e.getPath() )) {
+                    refresh( false );
+                    break;
+                }
+            }
+        }
+
+        private boolean needsRefresh ( EventType type, String path ) {
             switch ( type ) {
                 case NEW_CHILD:
-                    if (path != null && path.indexOf( NodeJSProjectFactory.NODE_MODULES_FOLDER ) < 0) {
-                        refresh( false );
-                    }
-                    break;
+                    return path != null && path.indexOf( NodeJSProjectFactory.NODE_MODULES_FOLDER ) < 0;
                 case DELETED:
-                    refresh( false );
-                    break;
+                    return true;
                 case CHANGE:
-                    break;
+                    return false;
                 default:
                     throw new AssertionError( type );
             }
@@ -137,7 +153,7 @@ public class SourcesChildFactory extends ChildFactory.Detachable<Entry> implemen
         public Entry ( FileObject fo, NodeJSProject project ) {
             this.fo = fo;
             FileChangeRegistry reg = project.getLookup().lookup( FileChangeRegistry.class );
-            reg.registerInterest( fo, this );
+            reg.registerInterest( fo, this, WatchScope.SELF );
         }
 
         private Node node () {
@@ -0,0 +1,128 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.netbeans.modules.nodejs.json.ObjectMapperProvider;
+import static org.junit.Assert.*;
+
+public class JsonSplicerTest {
+    private static final String TEXT = "{\n"
+            + "    \"name\" : \"thing\",\n"
+            + "    // Keep me\n"
+            + "    \"version\" : \"1.0.0\",\n"
+            + "    \"scripts\" : { \"test\" : \"mocha\" },\n"
+            + "    \"dependencies\" : {\n"
+            + "        \"zzz\" : \"1.0.0\",\n"
+            + "        \"aaa\" : \"2.0.0\"\n"
+            + "    },\n"
+            + "    \"license\" : \"MIT\"\n"
+            + "}\n";
+
+    private static Map<String, Object> parse ( String text ) throws Exception {
+        return ObjectMapperProvider.mapReader().readValue( text );
+    }
+
+    @Test
+    public void testUnchangedTreeLeavesTextAlone () throws Exception {
+        assertSame( TEXT, JsonSplicer.splice( TEXT, parse( TEXT ), parse( TEXT ) ) );
+    }
+
+    @Test
+    public void testOnlyChangedValueIsRewritten () throws Exception {
+        Map<String, Object> after = parse( TEXT );
+        after.put( "version", "1.0.1" );
+        String result = JsonSplicer.splice( TEXT, parse( TEXT ), after );
+        assertEquals( TEXT.replace( "1.0.0\",\n    \"scripts", "1.0.1\",\n    \"scripts" ), result );
+    }
+
+    @Test
+    public void testChangedMapKeepsKeyOrderAndIndent () throws Exception {
+        Map<String, Object> after = parse( TEXT );
+        Map<String, Object> deps = new LinkedHashMap<>( (Map<String, Object>) after.get( "dependencies" ) );
+        deps.put( "mmm", "3.0.0" );
+        after.put( "dependencies", deps );
+        String result = JsonSplicer.splice( TEXT, parse( TEXT ), after );
+        assertTrue( result, result.contains( "    \"dependencies\" : {\n"
+                + "        \"zzz\" : \"1.0.0\",\n"
+                + "        \"aaa\" : \"2.0.0\",\n"
+                + "        \"mmm\" : \"3.0.0\"\n"
+                + "    },\n" ) );
+        assertTrue( result, result.contains( "// Keep me" ) );
+        assertEquals( after, parse( result ) );
+    }
+
+    @Test
+    public void testRemovedAndAddedMembers () throws Exception {
+        Map<String, Object> after = parse( TEXT );
+        after.remove( "scripts" );
+        after.remove( "license" );
+        after.put( "main", "index.js" );
+        String result = JsonSplicer.splice( TEXT, parse( TEXT ), after );
+        assertEquals( after, parse( result ) );
+        assertFalse( result, result.contains( "scripts" ) );
+        assertTrue( result, result.endsWith( "    },\n    \"main\" : \"index.js\"\n}\n" ) );
+        assertTrue( result, result.startsWith( "{\n    \"name\" : \"thing\",\n    // Keep me\n" ) );
+    }
+
+    @Test
+    public void testRemovingFirstMember () throws Exception {
+        Map<String, Object> after = parse( TEXT );
+        after.remove( "name" );
+        String result = JsonSplicer.splice( TEXT, parse( TEXT ), after );
+        assertEquals( after, parse( result ) );
+        assertTrue( result, result.startsWith( "{\n    // Keep me\n    \"version\"" ) );
+    }
+
+    @Test
+    public void testMembersSharingALine () throws Exception {
+        String text = "{\n"
+                + "    \"name\" : \"thing\", \"version\" : \"1.0.0\",\n"
+                + "    \"license\" : \"MIT\"\n"
+                + "}\n";
+        Map<String, Object> after = parse( text );
+        Map<String, Object> version = new LinkedHashMap<>();
+        version.put( "major", 1 );
+        version.put( "minor", 0 );
+        after.put( "version", version );
+        String result = JsonSplicer.splice( text, parse( text ), after );
+        assertFalse( result, result.contains( "null" ) );
+        assertEquals( after, parse( result ) );
+        assertTrue( result, result.contains( "\"version\" : {\n        \"major\" : 1,\n" ) );
+    }
+
+    @Test
+    public void testGivesUpOnTextItCannotMatch () throws Exception {
+        Map<String, Object> tree = parse( TEXT );
+        assertNull( JsonSplicer.splice( "{\"name\":\"thing\"}", parse( "{\"name\":\"thing\"}" ), tree ) );
+        assertNull( JsonSplicer.splice( "{ name : \"thing\" }", parse( "{ name : \"thing\" }" ), tree ) );
+        assertNull( JsonSplicer.splice( TEXT, parse( "{ \"name\" : \"thing\" }" ), tree ) );
+        assertNull( JsonSplicer.splice( "[ 1, 2 ]", tree, tree ) );
+    }
+
+    @Test
+    public void testWriteKeepsKeyOrder () throws Exception {
+        String result = JsonSplicer.write( parse( TEXT ) );
+        assertTrue( result, result.indexOf( "zzz" ) < result.indexOf( "aaa" ) );
+        assertTrue( result, result.indexOf( "name" ) < result.indexOf( "license" ) );
+        assertTrue( result.endsWith( "\n" ) );
+    }
+}
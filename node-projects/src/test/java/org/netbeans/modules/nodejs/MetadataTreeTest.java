@@ -0,0 +1,146 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetadataTreeTest {
+
+    private static Map<String, Object> sample () {
+        Map<String, Object> author = new LinkedHashMap<>();
+        author.put( "name", "Joe" );
+        author.put( "email", "joe@example.com" );
+        Map<String, Object> deps = new LinkedHashMap<>();
+        deps.put( "foo", "1.0.0" );
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put( "name", "thing" );
+        m.put( "author", author );
+        m.put( "dependencies", deps );
+        m.put( "license", "MIT" );
+        m.put( "keywords", Arrays.asList( "a", "b" ) );
+        return MetadataTree.freeze( m );
+    }
+
+    @Test
+    public void testKeyPathsAreCached () {
+        String[] path = MetadataTree.keyPath( "author.name" );
+        assertEquals( Arrays.asList( "author", "name" ), Arrays.asList( path ) );
+        assertSame( path, MetadataTree.keyPath( "author.name" ) );
+        assertEquals( Arrays.asList( "name" ), Arrays.asList( MetadataTree.keyPath( "name" ) ) );
+    }
+
+    @Test
+    public void testGet () {
+        Map<String, Object> m = sample();
+        assertEquals( "thing", MetadataTree.get( m, MetadataTree.keyPath( "name" ) ) );
+        assertEquals( "Joe", MetadataTree.get( m, MetadataTree.keyPath( "author.name" ) ) );
+        assertNull( MetadataTree.get( m, MetadataTree.keyPath( "author.url" ) ) );
+        assertNull( MetadataTree.get( m, MetadataTree.keyPath( "bugs.url" ) ) );
+        // Short form - the string stands in for its fields
+        assertEquals( "MIT", MetadataTree.get( m, MetadataTree.keyPath( "license.type" ) ) );
+    }
+
+    @Test
+    @SuppressWarnings ("unchecked")
+    public void testFrozen () {
+        Map<String, Object> m = sample();
+        try {
+            m.put( "x", "y" );
+            fail( "Mutable" );
+        } catch ( UnsupportedOperationException e ) {
+            // ok
+        }
+        try {
+            ((Map<String, Object>) m.get( "author" )).put( "x", "y" );
+            fail( "Nested map mutable" );
+        } catch ( UnsupportedOperationException e ) {
+            // ok
+        }
+        try {
+            ((List<Object>) m.get( "keywords" )).add( "c" );
+            fail( "Nested list mutable" );
+        } catch ( UnsupportedOperationException e ) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testWithSharesUntouchedSubtrees () {
+        Map<String, Object> m = sample();
+        Map<String, Object> nue = MetadataTree.with( m, MetadataTree.keyPath( "author.name" ), "Jane" );
+        assertEquals( "Joe", MetadataTree.get( m, MetadataTree.keyPath( "author.name" ) ) );
+        assertEquals( "Jane", MetadataTree.get( nue, MetadataTree.keyPath( "author.name" ) ) );
+        assertSame( m.get( "dependencies" ), nue.get( "dependencies" ) );
+        assertSame( m.get( "keywords" ), nue.get( "keywords" ) );
+        assertNotSame( m.get( "author" ), nue.get( "author" ) );
+        // Key order is kept
+        assertEquals( Arrays.asList( m.keySet().toArray() ), Arrays.asList( nue.keySet().toArray() ) );
+        assertEquals( Arrays.asList( "name", "email" ),
+                Arrays.asList( ((Map<?, ?>) nue.get( "author" )).keySet().toArray() ) );
+    }
+
+    @Test
+    public void testWithCreatesAndRemoves () {
+        Map<String, Object> m = sample();
+        Map<String, Object> nue = MetadataTree.with( m, MetadataTree.keyPath( "bugs.url" ), "http://x" );
+        assertEquals( "http://x", MetadataTree.get( nue, MetadataTree.keyPath( "bugs.url" ) ) );
+        nue = MetadataTree.with( nue, MetadataTree.keyPath( "name" ), null );
+        assertFalse( nue.containsKey( "name" ) );
+        assertSame( nue, MetadataTree.with( nue, MetadataTree.keyPath( "nothing.here" ), null ) );
+        // A string on the path is replaced by a map
+        nue = MetadataTree.with( nue, MetadataTree.keyPath( "license.type" ), "BSD" );
+        assertEquals( "BSD", MetadataTree.get( nue, MetadataTree.keyPath( "license.type" ) ) );
+        assertEquals( "MIT", m.get( "license" ) );
+    }
+
+    @Test
+    public void testChangedKeys () {
+        Map<String, Object> m = sample();
+        Map<String, Object> nue = MetadataTree.with( m, MetadataTree.keyPath( "author.name" ), "Bob" );
+        nue = MetadataTree.with( nue, MetadataTree.keyPath( "license" ), null );
+        nue = MetadataTree.with( nue, MetadataTree.keyPath( "main" ), "index.js" );
+        assertEquals( Arrays.asList( "author", "license", "main" ),
+                Arrays.asList( MetadataTree.changedKeys( m, nue ).toArray() ) );
+        assertTrue( MetadataTree.changedKeys( m, MetadataTree.freeze( m ) ).isEmpty() );
+    }
+
+    @Test
+    public void testRebaseKeepsUnsavedEditsAndChangesOnDisk () {
+        // Read from disk, then edited locally with the save still queued
+        Map<String, Object> disk = sample();
+        Map<String, Object> local = MetadataTree.with( disk, MetadataTree.keyPath( "author.name" ), "Bob" );
+        local = MetadataTree.with( local, MetadataTree.keyPath( "license" ), null );
+        // Meanwhile npm changes the file
+        Map<String, Object> changed = MetadataTree.with( disk, MetadataTree.keyPath( "dependencies.bar" ), "2.0.0" );
+        changed = MetadataTree.with( changed, MetadataTree.keyPath( "name" ), "renamed" );
+
+        Map<String, Object> result = MetadataTree.rebase( disk, local, changed );
+        assertEquals( "Bob", MetadataTree.get( result, MetadataTree.keyPath( "author.name" ) ) );
+        assertFalse( result.containsKey( "license" ) );
+        assertEquals( "2.0.0", MetadataTree.get( result, MetadataTree.keyPath( "dependencies.bar" ) ) );
+        assertEquals( "renamed", result.get( "name" ) );
+        // Nothing edited - the new tree is used as is
+        assertSame( changed, MetadataTree.rebase( disk, disk, changed ) );
+    }
+}
@@ -0,0 +1,243 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.openide.util.NbBundle;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class OutputPipeTest {
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private File dir;
+
+    @Before
+    public void setUp () throws IOException {
+        dir = Files.createTempDirectory( "OutputPipeTest" ).toFile();
+    }
+
+    @After
+    public void tearDown () {
+        File[] kids = dir.listFiles();
+        if (kids != null) {
+            for (File kid : kids) {
+                kid.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testLinesPassThrough () throws Exception {
+        OutputPipe pipe = pipe( "one\r\ntwo\nthree", null, 100, 0 );
+        pipe.run();
+        assertEquals( Arrays.asList( "one", "two", "three" ), read( pipe ) );
+    }
+
+    @Test
+    public void testRepeatsAreFolded () throws Exception {
+        OutputPipe pipe = pipe( "a\na\na\nb\na\n", null, 100, 0 );
+        pipe.run();
+        assertEquals( Arrays.asList( "a \u00d73", "b", "a" ), read( pipe ) );
+    }
+
+    @Test
+    public void testOverflowDropsOldest () throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            sb.append( "line " ).append( i ).append( '\n' );
+        }
+        File log = new File( dir, "x.log" );
+        OutputPipe pipe = pipe( sb.toString(), log, 3, 0 );
+        pipe.run();
+        List<String> lines = read( pipe );
+        assertEquals( lines.toString(), 5, lines.size() );
+        assertTrue( lines.get( 0 ), lines.get( 0 ).endsWith( log.getPath() ) );
+        assertTrue( lines.get( 1 ), lines.get( 1 ).startsWith( "7 " ) );
+        assertTrue( lines.get( 1 ), lines.get( 1 ).contains( log.getPath() ) );
+        assertEquals( Arrays.asList( "line 7", "line 8", "line 9" ), lines.subList( 2, 5 ) );
+        // The log has everything
+        assertEquals( sb.toString(), new String( Files.readAllBytes( log.toPath() ), UTF_8 ) );
+    }
+
+    @Test
+    public void testLogIsCapped () throws Exception {
+        File log = new File( dir, "capped.log" );
+        OutputPipe pipe = new OutputPipe( new ByteArrayInputStream( "0123456789\nabcdef\n".getBytes( UTF_8 ) ),
+                log, UTF_8, 100, 0, null, 12 );
+        pipe.run();
+        // Everything is still shown
+        assertEquals( Arrays.asList( "0123456789", "abcdef" ), read( pipe ).subList( 1, 3 ) );
+        String logged = new String( Files.readAllBytes( log.toPath() ), UTF_8 );
+        assertEquals( "0123456789\na\n" + NbBundle.getMessage( OutputPipe.class, "LOG_TRUNCATED", 12L ) + '\n', logged );
+    }
+
+    @Test
+    public void testLogsOfEarlierSessionsArePruned () throws Exception {
+        assertTrue( OutputPipe.LOG_DIR.isDirectory() || OutputPipe.LOG_DIR.mkdirs() );
+        File stale = new File( OutputPipe.LOG_DIR, "old-20140301-120000.log" );
+        File other = new File( OutputPipe.LOG_DIR, "notes.txt" );
+        assertTrue( stale.createNewFile() );
+        assertTrue( other.createNewFile() );
+        try {
+            File log = OutputPipe.newLog( "app.js" );
+            assertNotNull( log );
+            assertTrue( log.isFile() );
+            assertFalse( stale.exists() );
+            assertTrue( other.exists() );
+            // Only the first log of a session prunes
+            assertTrue( stale.createNewFile() );
+            File second = OutputPipe.newLog( "app.js" );
+            assertTrue( stale.exists() );
+            assertFalse( second.equals( log ) );
+        } finally {
+            stale.delete();
+            other.delete();
+        }
+    }
+
+    @Test
+    public void testFoldedLinesCountWhenDropped () throws Exception {
+        OutputPipe pipe = pipe( "a\na\nb\nc\nd\n", null, 2, 0 );
+        pipe.run();
+        List<String> lines = read( pipe );
+        assertTrue( lines.get( 0 ), lines.get( 0 ).startsWith( "3 " ) );
+        assertEquals( Arrays.asList( "c", "d" ), lines.subList( 1, 3 ) );
+    }
+
+    @Test
+    public void testLongLinesAreBroken () throws Exception {
+        char[] chars = new char[100000];
+        Arrays.fill( chars, 'x' );
+        OutputPipe pipe = pipe( new String( chars ), null, 100, 0 );
+        pipe.run();
+        List<String> lines = read( pipe );
+        assertEquals( 2, lines.size() );
+        assertEquals( 64 * 1024, lines.get( 0 ).length() );
+        assertEquals( 100000 - 64 * 1024, lines.get( 1 ).length() );
+    }
+
+    @Test
+    public void testLoggedTo () {
+        File log = new File( OutputPipe.LOG_DIR, "app-20140301-120000.log" );
+        assertEquals( log.getPath(), OutputPipe.loggedTo( "Full output is logged to " + log.getPath() ) );
+        assertEquals( log.getPath(), OutputPipe.loggedTo( "(" + log.getPath() + ")" ) );
+        assertNull( OutputPipe.loggedTo( "Listening on 3000" ) );
+        assertNull( OutputPipe.loggedTo( OutputPipe.LOG_DIR.getPath() ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void testRendersAtLimitedRateWhileRunning () throws Exception {
+        PipedOutputStream processOut = new PipedOutputStream();
+        OutputPipe pipe = new OutputPipe( new PipedInputStream( processOut, 65536 ), null, UTF_8, 1000, 10 );
+        Thread pump = new Thread( pipe );
+        pump.start();
+        for (int i = 0; i < 15; i++) {
+            processOut.write( ("line " + i + "\n").getBytes( UTF_8 ) );
+        }
+        processOut.flush();
+        InputStream in = pipe.output();
+        long start = System.nanoTime();
+        for (int i = 0; i < 15; i++) {
+            assertEquals( "line " + i, readLine( in ) );
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue( "Took " + elapsed + "ms", elapsed >= 800 );
+        processOut.close();
+        pump.join();
+        assertEquals( -1, in.read() );
+    }
+
+    @Test( timeout = 10000 )
+    public void testDrainsQuicklyOnceClosed () throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append( i ).append( '\n' );
+        }
+        OutputPipe pipe = pipe( sb.toString(), null, 1000, 10 );
+        pipe.run();
+        long start = System.nanoTime();
+        assertEquals( 100, read( pipe ).size() );
+        assertTrue( (System.nanoTime() - start) / 1000000 < 800 );
+    }
+
+    @Test( timeout = 10000 )
+    public void testRunMetricsAreShownBeforeTheEnd () throws Exception {
+        assumeTrue( ProcFs.isAvailable() );
+        Process p = new ProcessBuilder( "sh", "-c", "echo hello; sleep 0.3" ).start();
+        RunRecorder recorder = new RunRecorder( new RunMetrics(), "/p/app.js" );
+        recorder.started( p );
+        OutputPipe pipe = new OutputPipe( p.getInputStream(), null, UTF_8, 100, 0, recorder );
+        InputStream in = pipe.output();
+        new Thread( pipe ).start();
+        // Read the way a reader which polls available() does; it must not
+        // stop while the pump waits for the process to exit
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int c; in.available() > 0 && (c = in.read()) >= 0;) {
+            out.write( c );
+        }
+        String text = new String( out.toByteArray(), UTF_8 );
+        assertTrue( text, text.startsWith( "hello\n" + NbBundle.getMessage( RunRecorder.class, "RUN_METRICS" ) ) );
+        assertTrue( pipe.isClosed() );
+        assertEquals( 0, in.available() );
+    }
+
+    private OutputPipe pipe ( String text, File log, int capacity, int rate ) {
+        return new OutputPipe( new ByteArrayInputStream( text.getBytes( UTF_8 ) ), log, UTF_8, capacity, rate );
+    }
+
+    private static List<String> read ( OutputPipe pipe ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = pipe.output();
+        byte[] buf = new byte[100];
+        for (int n; (n = in.read( buf )) > 0;) {
+            out.write( buf, 0, n );
+        }
+        String s = new String( out.toByteArray(), UTF_8 );
+        assertTrue( s.isEmpty() || s.endsWith( "\n" ) );
+        return s.isEmpty() ? Arrays.<String>asList() : Arrays.asList( s.split( "\n" ) );
+    }
+
+    private static String readLine ( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int c; (c = in.read()) != '\n';) {
+            assertTrue( c >= 0 );
+            out.write( c );
+        }
+        return new String( out.toByteArray(), UTF_8 );
+    }
+}
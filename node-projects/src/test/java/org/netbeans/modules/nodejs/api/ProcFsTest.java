@@ -0,0 +1,92 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ProcFsTest {
+    private static final String TCP
+            = "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n"
+            + "   0: 00000000:1F90 00000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 4711 1 0000000000000000 100 0 0 10 0\n"
+            + "   1: 0100007F:0BB8 00000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 4712 1 0000000000000000 100 0 0 10 0\n"
+            + "   2: 0100007F:9C40 0100007F:1F90 01 00000000:00000000 00:00000000 00000000  1000        0 4713 1 0000000000000000 20 4 30 10 -1\n"
+            + "   3: 00000000:0050 00000000:0000 0A 00000000:00000000 00:00000000 00000000     0        0 99 1 0000000000000000 100 0 0 10 0\n";
+
+    @Test
+    public void testCpuTime () {
+        // 150 + 50 + 20 + 30 ticks
+        String stat = "4242 (node ) (x) S 1 4242 4242 0 -1 4194560 5028 0 0 0 150 50 20 30 20 0 11 0 "
+                + "123456 1000000 5000 18446744073709551615 1 1 0 0 0 0 0 16781312 17922 0 0 0 17 3 0 0 0 0 0\n";
+        assertEquals( 2500, ProcFs.cpuTime( stat ) );
+        assertEquals( -1, ProcFs.cpuTime( "4242 (node) S 1 2 3" ) );
+        assertEquals( -1, ProcFs.cpuTime( "garbage" ) );
+    }
+
+    @Test
+    public void testPeakRss () {
+        String status = "Name:\tnode\nVmPeak:\t  987654 kB\nVmSize:\t  900000 kB\nVmHWM:\t   51200 kB\nVmRSS:\t   40000 kB\n";
+        assertEquals( 51200L * 1024, ProcFs.peakRss( status ) );
+        // Zombies have no memory lines
+        assertEquals( -1, ProcFs.peakRss( "Name:\tnode\nState:\tZ (zombie)\n" ) );
+    }
+
+    @Test
+    public void testListeningPort () {
+        // Only listening sockets the process owns count
+        assertEquals( 3000, ProcFs.listeningPort( TCP, new HashSet<>( Arrays.asList( "4712", "4713" ) ) ) );
+        assertEquals( 3000, ProcFs.listeningPort( TCP, new HashSet<>( Arrays.asList( "4711", "4712" ) ) ) );
+        assertEquals( 8080, ProcFs.listeningPort( TCP, Collections.singleton( "4711" ) ) );
+        assertEquals( -1, ProcFs.listeningPort( TCP, Collections.singleton( "4713" ) ) );
+    }
+
+    @Test
+    public void testLiveProcess () throws IOException, InterruptedException {
+        assumeTrue( ProcFs.isAvailable() );
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        long self = Long.parseLong( name.substring( 0, name.indexOf( '@' ) ) );
+        assertTrue( ProcFs.cpuTime( self ) >= 0 );
+        assertTrue( ProcFs.peakRss( self ) > 0 );
+        try (ServerSocket server = new ServerSocket( 0, 1, InetAddress.getLoopbackAddress() )) {
+            int port = ProcFs.listeningPort( self );
+            assertTrue( port > 0 && port <= server.getLocalPort() );
+        }
+        Process p = new ProcessBuilder( "sleep", "5" ).start();
+        try {
+            long pid = ProcFs.pid( p );
+            assertTrue( pid > 0 );
+            assertTrue( ProcFs.cpuTime( pid ) >= 0 );
+        } finally {
+            p.destroy();
+            p.waitFor();
+        }
+    }
+}
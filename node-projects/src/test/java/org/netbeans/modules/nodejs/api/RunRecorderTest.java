@@ -0,0 +1,93 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.IOException;
+import java.util.List;
+import org.netbeans.modules.nodejs.api.RunMetrics.Run;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RunRecorderTest {
+
+    @Test
+    public void testDescribe () {
+        Run first = new Run( "/p/app.js", 0, 200, 400, 3000, 12000, 50L * 1024 * 1024, 800, 0 );
+        Run second = new Run( "/p/app.js", 0, 220, 300, 3000, 60000, 40L * 1024 * 1024, -1, 0 );
+        List<String> lines = RunRecorder.describe( second, first );
+        assertEquals( lines.toString(), 5, lines.size() );
+        assertTrue( lines.get( 1 ), lines.get( 1 ).contains( "220 ms" ) );
+        assertTrue( lines.get( 1 ), lines.get( 1 ).endsWith( "(previous 200 ms, +10%)" ) );
+        assertTrue( lines.get( 2 ), lines.get( 2 ).contains( "3000" ) );
+        assertTrue( lines.get( 2 ), lines.get( 2 ).endsWith( "-25%)" ) );
+        assertTrue( lines.get( 3 ), lines.get( 3 ).contains( "60.0 s" ) );
+        // No CPU time row, since it is unknown
+        assertTrue( lines.get( 4 ), lines.get( 4 ).contains( "40.0 MB" ) );
+        assertTrue( lines.get( 4 ), lines.get( 4 ).endsWith( "(previous 50.0 MB, -20%)" ) );
+
+        Run unmeasured = new Run( "/p/app.js", 0, -1, -1, -1, 75, -1, -1, 1 );
+        lines = RunRecorder.describe( unmeasured, null );
+        assertEquals( lines.toString(), 2, lines.size() );
+        assertTrue( lines.get( 1 ), lines.get( 1 ).trim().endsWith( "75 ms" ) );
+    }
+
+    @Test
+    public void testHistoryIsBounded () {
+        RunMetrics metrics = new RunMetrics();
+        Run previous = null;
+        for (int i = 0; i < 30; i++) {
+            Run run = new Run( "/p/app.js", i, -1, -1, -1, i, -1, -1, 0 );
+            assertSame( previous, metrics.add( run ) );
+            previous = run;
+        }
+        metrics.add( new Run( "/p/other.js", 0, -1, -1, -1, 0, -1, -1, 0 ) );
+        List<Run> runs = metrics.getRuns( "/p/app.js" );
+        assertEquals( 20, runs.size() );
+        assertEquals( 10, runs.get( 0 ).getStartTime() );
+        assertSame( previous, metrics.getLastRun( "/p/app.js" ) );
+        assertEquals( 1, metrics.getRuns( "/p/other.js" ).size() );
+        assertTrue( metrics.getRuns( "/p/none.js" ).isEmpty() );
+    }
+
+    @Test( timeout = 10000 )
+    public void testRecordsProcess () throws IOException {
+        assumeTrue( ProcFs.isAvailable() );
+        RunMetrics metrics = new RunMetrics();
+        RunRecorder recorder = new RunRecorder( metrics, "/p/app.js" );
+        Process p = new ProcessBuilder( "sh", "-c", "sleep 0.3; exit 3" ).start();
+        recorder.started( p );
+        recorder.output();
+        List<String> lines = recorder.awaitExit();
+        assertFalse( lines.isEmpty() );
+        assertTrue( recorder.finish().isEmpty() );
+        Run run = metrics.getLastRun( "/p/app.js" );
+        assertNotNull( run );
+        assertEquals( 3, run.getExitCode() );
+        assertTrue( run.toString(), run.getWallTime() >= 250 );
+        assertTrue( run.toString(), run.getTimeToFirstOutput() >= 0 && run.getTimeToFirstOutput() < 250 );
+        assertTrue( run.toString(), run.getCpuTime() >= 0 );
+        assertTrue( run.toString(), run.getPeakRss() > 0 );
+        assertEquals( -1, run.getListeningPort() );
+    }
+}
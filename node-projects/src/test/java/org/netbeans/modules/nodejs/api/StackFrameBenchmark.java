@@ -0,0 +1,124 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lines per second through the regular expressions LineConverter used to
+ * run on each line of output, against StackFrame's scanner, for output which
+ * is mostly ordinary server logging with a given percentage of stack trace
+ * lines.  Not run as part of the tests; run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.netbeans.modules.nodejs.api.StackFrameBenchmark
+ * </pre>
+ *
+ * @author Tim Boudreau
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StackFrameBenchmark {
+    private static final Pattern ERR_PATTERN =
+            Pattern.compile( "at\\s(.*?)\\s\\((.*?.js):(\\d+):(\\d+)\\)" );
+    private static final Pattern SYNTAX_ERR_PATTERN =
+            Pattern.compile( "(\\/.*?\\.js):(\\d+)" );
+    private static final String[] PLAIN = {
+        "2014-03-01T12:00:01.123Z INFO  GET /api/users/1234 200 12ms - 1.2kb",
+        "2014-03-01T12:00:01.124Z DEBUG cache hit for key session:8d7f6a5e4c3b2a19 in 0.3ms",
+        "Server listening on http://localhost:3000/ with 8 workers",
+        "{\"level\":30,\"time\":1393675201125,\"msg\":\"request completed\",\"responseTime\":4}",
+        "",
+    };
+    private static final String[] FRAMES = {
+        "    at Server.<anonymous> (/home/tim/Fooger/src/Fooger.js:7:5)",
+        "    at EventEmitter.emit (events.js:72:13)",
+        "    at async Promise.all (index 0)",
+        "    at file:///srv/app/lib/handler.mjs:120:17",
+        "/home/tim/work/personal/captcha/captcha.js:38",
+    };
+    @Param( { "0", "5", "50" } )
+    public int framePercent;
+    private String[] lines;
+
+    @Setup
+    public void setUp () {
+        Random rnd = new Random( 1393675201L );
+        lines = new String[4096];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = rnd.nextInt( 100 ) < framePercent ? FRAMES[rnd.nextInt( FRAMES.length )]
+                    : PLAIN[rnd.nextInt( PLAIN.length )];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( 4096 )
+    public void regex ( Blackhole bh ) {
+        for (String line : lines) {
+            Matcher m = ERR_PATTERN.matcher( line );
+            if (m.find()) {
+                bh.consume( m.group( 2 ) );
+                bh.consume( Integer.parseInt( m.group( 3 ) ) );
+            } else {
+                m = SYNTAX_ERR_PATTERN.matcher( line );
+                if (m.find()) {
+                    bh.consume( m.group( 1 ) );
+                    bh.consume( Integer.parseInt( m.group( 2 ) ) );
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( 4096 )
+    public void scanner ( Blackhole bh ) {
+        for (String line : lines) {
+            bh.consume( StackFrame.find( line ) );
+        }
+    }
+
+    public static void main ( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder()
+                .include( StackFrameBenchmark.class.getSimpleName() )
+                .build() ).run();
+    }
+}
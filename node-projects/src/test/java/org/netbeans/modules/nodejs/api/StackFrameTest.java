@@ -0,0 +1,136 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.api;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class StackFrameTest {
+
+    @Test
+    public void testStackTraceElement () {
+        StackFrame f = StackFrame.find( "    at Server.<anonymous> (/home/tim/Fooger/src/Fooger.js:7:5)" );
+        assertNotNull( f );
+        assertEquals( "Server.<anonymous>", f.function );
+        assertEquals( "/home/tim/Fooger/src/Fooger.js", f.path );
+        assertEquals( 7, f.line );
+        assertEquals( 5, f.column );
+    }
+
+    @Test
+    public void testSyntaxErrorLocation () {
+        StackFrame f = StackFrame.find( "/home/tim/work/personal/captcha/captcha.js:38" );
+        assertNotNull( f );
+        assertNull( f.function );
+        assertEquals( "/home/tim/work/personal/captcha/captcha.js", f.path );
+        assertEquals( 38, f.line );
+        assertEquals( 0, f.column );
+    }
+
+    @Test
+    public void testOtherExtensions () {
+        assertEquals( "/x/a.mjs", StackFrame.find( "    at f (/x/a.mjs:1:2)" ).path );
+        assertEquals( "/x/a.cjs", StackFrame.find( "    at f (/x/a.cjs:1:2)" ).path );
+        assertEquals( "/x/a.ts", StackFrame.find( "    at f (/x/a.ts:10:20)" ).path );
+        assertNull( StackFrame.find( "    at f (/x/a.json:1:2)" ) );
+        assertNull( StackFrame.find( "    at f (/x/a.rjs:1:2)" ) );
+    }
+
+    @Test
+    public void testFrameWithoutFunction () {
+        StackFrame f = StackFrame.find( "    at /srv/app/index.js:12:3" );
+        assertNotNull( f );
+        assertNull( f.function );
+        assertEquals( "/srv/app/index.js", f.path );
+        assertEquals( 12, f.line );
+        assertEquals( 3, f.column );
+    }
+
+    @Test
+    public void testRelativePathsOnlyInFrames () {
+        StackFrame f = StackFrame.find( "    at EventEmitter.emit (events.js:72:13)" );
+        assertNotNull( f );
+        assertEquals( "events.js", f.path );
+        assertEquals( "EventEmitter.emit", f.function );
+        assertNull( StackFrame.find( "Loaded config.js:3 entries" ) );
+        assertNull( StackFrame.find( "    at Module._compile (node:internal/modules/cjs/loader.js:1105:14)" ) );
+    }
+
+    @Test
+    public void testFileUrls () {
+        StackFrame f = StackFrame.find( "    at async Promise.all (file:///home/tim/my%20app/index.mjs:4:7)" );
+        assertNotNull( f );
+        assertEquals( "async Promise.all", f.function );
+        assertEquals( new File( "/home/tim/my app/index.mjs" ).getPath(), f.path );
+        assertEquals( 4, f.line );
+        assertEquals( 7, f.column );
+        f = StackFrame.find( "file:///srv/x.mjs:9" );
+        assertNotNull( f );
+        assertEquals( new File( "/srv/x.mjs" ).getPath(), f.path );
+    }
+
+    @Test
+    public void testWindowsPaths () {
+        StackFrame f = StackFrame.find( "    at Object.<anonymous> (C:\\Users\\tim\\app.js:3:9)" );
+        assertNotNull( f );
+        assertEquals( "C:\\Users\\tim\\app.js", f.path );
+        assertEquals( 3, f.line );
+        f = StackFrame.find( "C:\\Users\\tim\\app.js:30" );
+        assertNotNull( f );
+        assertEquals( "C:\\Users\\tim\\app.js", f.path );
+        assertEquals( 30, f.line );
+    }
+
+    @Test
+    public void testSpacesInParentheses () {
+        StackFrame f = StackFrame.find( "    at run (/home/tim/My Projects/app.js:1:1)" );
+        assertNotNull( f );
+        assertEquals( "/home/tim/My Projects/app.js", f.path );
+    }
+
+    @Test
+    public void testPlainLines () {
+        assertNull( StackFrame.find( "" ) );
+        assertNull( StackFrame.find( "js:" ) );
+        assertNull( StackFrame.find( "Server listening on port 3000" ) );
+        assertNull( StackFrame.find( "GET /app.js 200 12ms" ) );
+        assertNull( StackFrame.find( "/x/app.js:" ) );
+        assertNull( StackFrame.find( "/x/app.js:x" ) );
+        assertNull( StackFrame.find( ".js:1" ) );
+    }
+
+    @Test
+    public void testHugeNumbersIgnored () {
+        assertNull( StackFrame.find( "/x/app.js:12345678901234567890" ) );
+    }
+
+    @Test
+    public void testFirstLocationWins () {
+        StackFrame f = StackFrame.find( "text /a/b.txt:3 then /a/b.js:4:5 and /c/d.js:6:7" );
+        assertNotNull( f );
+        assertEquals( "/a/b.js", f.path );
+        assertEquals( 4, f.line );
+        assertEquals( 5, f.column );
+    }
+}
@@ -0,0 +1,682 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import static org.netbeans.modules.nodejs.json.CharVisitorJSONParser.S.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+/**
+ * The character-at-a-time state machine SimpleJSONParser used before it was
+ * rebuilt on JsonPullParser, kept unchanged as the baseline for
+ * SimpleJSONParserBenchmark.
+ *
+ * @author Tim Boudreau
+ */
+final class CharVisitorJSONParser {
+    private boolean permissive;
+    boolean thrown = false;
+
+    Map<String, Object> parse ( CharSequence seq ) throws JsonException {
+        CharVisitor v = new CharVisitor();
+        State state = new State();
+        int len = seq.length();
+        int line = 0;
+        for (int i = 0; i < len; i++) {
+            char c = seq.charAt( i );
+            if (c == '\n') {
+                line++;
+            }
+            v.visitChar( c, i, line, state );
+        }
+        return state.map;
+    }
+
+    private final class CharVisitor {
+        StringBuilder sb = new StringBuilder();
+        S s = S.BEGIN;
+        Stack<S> awaits = new Stack<S>();
+        char lastChar;
+        S stateBeforeComment;
+
+        void setState ( S s, char c, int pos ) {
+            stateChange( this.s, s, c, pos );
+            this.s = s;
+        }
+
+        void visitChar ( char c, int pos, int line, State state ) throws JsonException {
+            if (c == '/' && s != IN_ARRAY_ELEMENT && s != IN_KEY && s != IN_VALUE && s != AWAIT_BEGIN_COMMENT && s != IN_COMMENT && s != IN_LINE_COMMENT) {
+                stateBeforeComment = s;
+                setState( AWAIT_BEGIN_COMMENT, c, pos );
+                return;
+            }
+            if (c == '"' && lastChar == '\\' && (s == IN_KEY || s == IN_VALUE || s == IN_ARRAY_ELEMENT)) {
+                if (sb.charAt( sb.length() - 1 ) == '\\') {
+                    sb.setLength( sb.length() - 1 ); //manage escaped quotes
+                }
+                lastChar = c;
+                sb.append( c );
+                return;
+            }
+            try {
+                switch ( s ) {
+                    case BEGIN:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case '{':
+                                setState( AWAITING_KEY, c, pos );
+                                break;
+                            case '/':
+                                setState( AWAIT_BEGIN_COMMENT, c, pos );
+                                break;
+                            default:
+                                error( "Expected '{'", c, line, pos );
+                        }
+                        break;
+                    case AWAIT_BEGIN_COMMENT:
+                        if (c == '*') {
+                            setState( IN_COMMENT, c, pos );
+                            break;
+                        } else if (c == '/') {
+                            setState( IN_LINE_COMMENT, c, pos );
+                            break;
+                        } else {
+                            if (Character.isWhitespace( c )) {
+                                break;
+                            }
+                            error( "Expected / or * awaiting comment marker", c, line, pos );
+                        }
+                        break;
+                    case IN_COMMENT:
+                        if (c == '/' && lastChar == '*') {
+                            setState( stateBeforeComment, c, pos );
+                        }
+                        break;
+                    case IN_LINE_COMMENT:
+                        if (c == '\n') {
+                            setState( stateBeforeComment, c, pos );
+                        }
+                        break;
+                    case AWAITING_COMPOUND_VALUE:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case '"':
+                                setState( IN_KEY, c, pos );
+                                break;
+                            case '}':
+                                setState( AFTER_VALUE, c, pos );
+                                break;
+                            default:
+                                error( "Expected \" or key awaiting compound value", c, line, pos );
+                        }
+                        break;
+                    case AWAITING_KEY:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case '"':
+                                setState( IN_KEY, c, pos );
+                                break;
+                            case '}':
+                                setState( AFTER_VALUE, c, pos );
+                                state.exitCompoundValue();
+                                break;
+                            default:
+                                error( "Expected '\"' or whitespace before key", c, line, pos );
+                        }
+                        break;
+                    case IN_KEY:
+                        switch ( c ) {
+                            case '"':
+                                setState( BETWEEN_KEY_AND_VALUE, c, pos );
+                                state.enterKey( sb.toString() );
+                                sb.setLength( 0 );
+                                return;
+                            default:
+                                sb.append( c );
+                        }
+                        break;
+                    case BETWEEN_KEY_AND_VALUE:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case (':'):
+                                setState( S.AWAITING_VALUE, c, pos );
+                                break;
+                            default:
+                                error( "Expected : or whitespace between key and value", c, line, pos );
+                        }
+                        break;
+                    case AWAITING_VALUE:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case ('['):
+                                setState( S.AWAITING_ARRAY_ELEMENT, c, pos );
+                                state.enterArrayValue();
+                                break;
+                            case ('"'):
+                                setState( IN_VALUE, c, pos );
+                                break;
+                            case ('{'):
+                                setState( AWAITING_COMPOUND_VALUE, c, pos );
+                                state.enterCompoundValue();
+                                break;
+                            case 'f':
+                            case 't':
+                                sb.append( c );
+                                setState( IN_BOOLEAN_VALUE, c, pos );
+                                break;
+                            case '-':
+                            case '.':
+                            case '0':
+                            case '1':
+                            case '2':
+                            case '3':
+                            case '4':
+                            case '5':
+                            case '6':
+                            case '7':
+                            case '8':
+                            case '9':
+                                sb.append( c );
+                                setState( IN_NUMERIC_VALUE, c, pos );
+                                break;
+                            default:
+                                error( "Expected '\"' or ':' to start value", c, line, pos );
+                        }
+                        break;
+                    case AWAITING_ARRAY_ELEMENT:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case '{':
+                                setState( AWAITING_KEY, c, pos );
+                                state.enterCompoundValue(); //XXX
+                                break;
+                            case '[':
+                                setState( AWAITING_ARRAY_ELEMENT, c, pos );
+                                state.enterArrayValue();
+                                break;
+                            case '"':
+                                setState( S.IN_ARRAY_ELEMENT, c, pos );
+                                break;
+                            case 'f':
+                            case 't':
+                                setState( IN_BOOLEAN_ARRAY_ELEMENT, c, pos );
+                                sb.append( c );
+                                break;
+                            case '-':
+                            case '.':
+                            case '0':
+                            case '1':
+                            case '2':
+                            case '3':
+                            case '4':
+                            case '5':
+                            case '6':
+                            case '7':
+                            case '8':
+                            case '9':
+                                setState( IN_NUMERIC_ARRAY_ELEMENT, c, pos );
+                                sb.append( c );
+                                break;
+                            case ']':
+                                setState( AFTER_VALUE, c, pos );
+                                state.exitArrayValue();
+                                break;
+                            default:
+                                error( "Expected '{' or '\"' awaiting array value", c, line, pos );
+                        }
+                        break;
+                    case IN_ARRAY_ELEMENT:
+                        if (c == '"') {
+                            setState( AFTER_ARRAY_ELEMENT, c, pos );
+                            state.arrayValue( sb.toString() );
+                            sb.setLength( 0 );
+                            return;
+                        }
+                        sb.append( c );
+                        break;
+                    case IN_NUMERIC_ARRAY_ELEMENT:
+                        if ((Character.isWhitespace( c )) || (c == ',') || (c == ']')) {
+                            if (sb.length() > 0) {
+                                state.numericArrayElement( sb.toString() );
+                                sb.setLength( 0 );
+                            }
+                            if (Character.isWhitespace( c )) {
+                                setState( AFTER_ARRAY_ELEMENT, c, pos );
+                            } else {
+                                setState( c == ']' ? AFTER_VALUE : AWAITING_ARRAY_ELEMENT, c, pos );
+                                if (c == ']') {
+                                    state.exitArrayValue();
+                                }
+                            }
+                            return;
+                        }
+                        if ((c != '.') && (c != '-') && (!Character.isDigit( c ))) {
+                            error( "Invalid character in numeric array element: ", c, line, pos );
+                        } else {
+                            sb.append( c );
+                        }
+
+                        break;
+                    case IN_BOOLEAN_ARRAY_ELEMENT:
+                        if ((Character.isWhitespace( c )) || (c == ',') || (c == ']')) {
+                            if (sb.length() > 0) {
+                                state.booleanArrayElement( sb.toString() );
+                                sb.setLength( 0 );
+                            }
+                            if (Character.isWhitespace( c )) {
+                                setState( AFTER_ARRAY_ELEMENT, c, pos );
+                            } else {
+                                setState( c == ']' ? AFTER_VALUE : AWAITING_ARRAY_ELEMENT, c, pos );
+                                if (c == ']') {
+                                    state.exitArrayValue();
+                                }
+                            }
+                            return;
+                        }
+                        if ((!"true".startsWith( sb.toString() )) && (!"false".startsWith( sb.toString() ))) {
+                            error( "Invalid character in boolean array element for '" + this.sb + "': ", c, line, pos );
+                        } else {
+                            sb.append( c );
+                        }
+
+                        break;
+                    case IN_NUMERIC_VALUE:
+                        if ((Character.isWhitespace( c )) || (c == ',')) {
+                            setState( AWAITING_KEY, c, pos );
+                            state.numberValue( sb.toString() );
+                            sb.setLength( 0 );
+                            return;
+                        }
+                        if ((Character.isDigit( c )) || (c == '.') || (c == '-')) {
+                            if ((sb.indexOf( "." ) >= 0) && (c == '.')) {
+                                error( "Extra decimal in number: ", c, line, pos );
+                            } else {
+                                sb.append( c );
+                            }
+                        } else {
+                            error( "Invalid character in number: ", c, line, pos );
+                        }
+                        break;
+                    case IN_BOOLEAN_VALUE:
+                        if ((Character.isWhitespace( c )) || (c == ',')) {
+                            setState( AWAITING_KEY, c, pos );
+                            state.booleanValue( sb.toString() );
+                            sb.setLength( 0 );
+                            return;
+                        }
+                        char lc = sb.length() == 0 ? '\000' : sb.charAt( sb.length() - 1 );
+                        switch ( c ) {
+                            case 'r':
+                                if (lc != 't') {
+                                    error( "Invalid character in boolean - lc=" + lc + ": " + this.sb, c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            case 'u':
+                                if (lc != 'r') {
+                                    error( "Invalid character in boolean: " + this.sb + " lc is " + lc + " - ", c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            case 'e':
+                                if ((lc != 'u') && (lc != 's')) {
+                                    error( "Invalid character in boolean: ", c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            case 'a':
+                                if (lc != 'f') {
+                                    error( "Invalid character in boolean: ", c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            case 'l':
+                                if (lc != 'a') {
+                                    error( "Invalid character in boolean: ", c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            case 's':
+                                if (lc != 'l') {
+                                    error( "Invalid character in boolean: ", c, line, pos );
+                                } else {
+                                    sb.append( c );
+                                }
+                                break;
+                            default:
+                                error( "Invalid character in boolean: ", c, line, pos );
+                        }
+                        break;
+                    case IN_VALUE:
+                        if (c == '"') {
+                            setState( S.AFTER_VALUE, c, pos );
+                            state.value( sb.toString() );
+                            sb.setLength( 0 );
+                            return;
+                        }
+                        sb.append( c );
+                        break;
+                    case AFTER_VALUE:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case (','):
+                                setState( AWAITING_KEY, c, pos );
+                                break;
+                            case ('}'):
+                                state.exitCompoundValue();
+                                if (state.hasOuterList()) {
+                                    setState( AFTER_ARRAY_ELEMENT, c, pos );
+                                } else {
+                                    setState( S.AFTER_VALUE, c, pos );
+                                }
+
+                                break;
+                            case (']'):
+                                setState( AFTER_VALUE, c, pos );
+                                state.exitArrayValue();
+                                break;
+                            default:
+                                error( "Expected , or EOF after value", c, line, pos );
+                        }
+                        break;
+                    case AFTER_ARRAY_ELEMENT:
+                        if (Character.isWhitespace( c )) {
+                            return;
+                        }
+                        switch ( c ) {
+                            case ',':
+                                setState( AWAITING_ARRAY_ELEMENT, c, pos );
+                                break;
+                            case ']':
+                                state.exitArrayValue();
+                                if (state.hasOuterList()) {
+                                    setState( AWAITING_ARRAY_ELEMENT, c, pos );
+                                } else {
+                                    setState( AFTER_VALUE, c, pos );
+                                }
+                                break;
+                            default:
+                                error( "Expected , \" or ] after array value", c, line, pos );
+                        }
+                        break;
+                    default:
+                        throw new AssertionError( s );
+                }
+            } catch ( Internal i ) {
+                if (!thrown) {
+                    JsonException e = new JsonException( s + ": " + i.getMessage(), c, line, pos, i );
+                    if (permissive) {
+                        Logger.getLogger( CharVisitorJSONParser.class.getName() ).log( Level.WARNING, null, e );
+                    } else {
+                        throw e;
+                    }
+                    thrown = true;
+                }
+            } catch ( RuntimeException ex ) {
+                if (!thrown) {
+                    if (permissive) {
+                        Logger.getLogger( CharVisitorJSONParser.class.getName() ).log( Level.WARNING, null, ex );
+                    } else {
+                        throw ex;
+                    }
+                    thrown = true;
+                }
+            }
+            lastChar = c;
+        }
+
+        void error ( String msg, char what, int line, int pos ) throws JsonException {
+            if (thrown) {
+                return; //anything can go wrong at this point
+            }
+            JsonException e = new JsonException( s + " - " + msg, what, line, pos );
+            if (permissive) {
+                thrown = true;
+                Logger.getLogger( CharVisitorJSONParser.class.getName() ).log( Level.INFO, null, e );
+            } else {
+                throw e;
+            }
+        }
+
+        private void stateChange ( S s, S to, char c, int pos ) {
+        }
+    }
+
+    enum S {
+        AWAIT_BEGIN_COMMENT,
+        IN_COMMENT,
+        IN_LINE_COMMENT,
+        IN_KEY,
+        IN_VALUE,
+        IN_NUMERIC_VALUE,
+        IN_BOOLEAN_VALUE,
+        IN_ARRAY_ELEMENT,
+        IN_BOOLEAN_ARRAY_ELEMENT,
+        IN_NUMERIC_ARRAY_ELEMENT,
+        BEGIN,
+        AWAITING_KEY,
+        AWAITING_COMPOUND_VALUE,
+        AWAITING_ARRAY_ELEMENT,
+        AFTER_ARRAY_ELEMENT,
+        BETWEEN_KEY_AND_VALUE,
+        AWAITING_VALUE,
+        AFTER_VALUE;
+
+        boolean isAwaitState () {
+            switch ( this ) {
+                case AWAITING_ARRAY_ELEMENT:
+                case AWAITING_VALUE:
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class State {
+        private final Stack<List<Object>> currList = new Stack<List<Object>>();
+        private final Stack<String> currKey = new Stack<String>();
+        private final Stack<Map<String, Object>> currMap = new Stack<Map<String, Object>>();
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        Map<String, Object> curr = map;
+        String lastKey;
+
+        public void enterKey ( String s ) {
+            currKey.push( s );
+            lastKey = s;
+        }
+
+        S state () {
+            if (currKey.isEmpty()) {
+                if (map.isEmpty()) {
+                    return BEGIN;
+                } else {
+                    return AWAITING_KEY;
+                }
+            }
+            String k = currKey.peek();
+            Object o = map.get( k );
+            if (o == null) {
+                return AWAITING_VALUE;
+            } else if (o instanceof Map) {
+                return AWAITING_COMPOUND_VALUE;
+            } else if (o instanceof List) {
+                return AWAITING_ARRAY_ELEMENT;
+            }
+            return AWAITING_KEY;
+        }
+
+        private void numericArrayElement ( String value ) {
+            try {
+                List<Object> l = null;
+                if ((l == null) && (!this.currList.isEmpty())) {
+                    l = this.currList.peek();
+                } else if (l == null) {
+                    throw new Internal( "No array present for array value " + value );
+                }
+                l.add( toNumber( value ) );
+            } catch ( NumberFormatException nfe ) {
+                throw new Internal( "Bad number '" + value + "'" );
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void booleanArrayElement ( String value ) {
+            List<Object> l = null;
+            if ((l == null) && (!this.currList.isEmpty())) {
+                l = (List<Object>) this.currList.peek();
+            } else if (l == null) {
+                throw new Internal( "No array present for array value " + value );
+            }
+            if ("true".equals( value )) {
+                l.add(true);
+            } else if ("false".equals( value )) {
+                l.add(false);
+            } else {
+                throw new Internal( "Illegal boolean value '" + value + "'" );
+            }
+        }
+
+        private void booleanValue ( String s ) {
+            if ("true".equals( s )) {
+                String key = this.currKey.pop();
+                this.curr.put( key, Boolean.TRUE );
+            } else if ("false".equals( s )) {
+                String key = this.currKey.pop();
+                this.curr.put( key, Boolean.FALSE );
+            } else {
+                throw new Internal( "Invalid boolean '" + s + "'" );
+            }
+        }
+
+        private Number toNumber ( String toString ) {
+            Number n;
+            if (toString.indexOf( "." ) >= 0) {
+                n = Double.valueOf( Double.parseDouble( toString ) );
+                if (n.floatValue() == n.doubleValue()) {
+                    n = Float.valueOf( n.floatValue() );
+                }
+            } else {
+                n = Long.valueOf( Long.parseLong( toString ) );
+                if (n.longValue() == n.intValue()) {
+                    n = Integer.valueOf( n.intValue() );
+                }
+            }
+            return n;
+        }
+
+        private void numberValue ( String toString ) {
+            try {
+                String key = this.currKey.pop();
+                this.curr.put( key, toNumber( toString ) );
+            } catch ( NumberFormatException nfe ) {
+                throw new Internal( "Invalid number '" + toString + "'" );
+            }
+        }
+
+        public void enterCompoundValue () {
+            String key = currKey.isEmpty() ? null : currKey.peek();
+            if (key == null) {
+                key = lastKey;  //XXX - need better handling of compounds inside arrays
+            }
+            Map<String, Object> nue = new LinkedHashMap<String, Object>();
+            curr.put( key, nue );
+            currMap.push( curr );
+            curr = nue;
+        }
+
+        public void enterArrayValue () {
+            String key = currKey.peek();
+            List<Object> l = currList.isEmpty() ? null : currList.peek();
+            if (l != null) {
+                List<Object> nue = new ArrayList<Object>();
+                currList.push( nue );
+                l.add( nue );
+            } else {
+                List<Object> nue = new ArrayList<Object>();
+                currList.push( nue );
+                curr.put( key, nue );
+            }
+        }
+
+        public void exitArrayValue () {
+            String key = currKey.isEmpty() ? lastKey : currKey.pop();
+            if (!currList.isEmpty()) {
+                currList.pop();
+            }
+        }
+
+        public void arrayValue ( String value ) {
+            String key = currKey.peek();
+            List<Object> l = null;
+            if (l == null && !currList.isEmpty()) {
+                l = currList.peek();
+            } else if (l == null) {
+                throw new Internal( "No array present for array value " + value );
+            }
+            l.add( value );
+        }
+
+        public void value ( String value ) {
+            String key = currKey.pop();
+            curr.put( key, value );
+        }
+
+        public void exitCompoundValue () {
+            if (!currMap.isEmpty()) {
+                curr = currMap.pop();
+            }
+            String s = currKey.isEmpty() ? lastKey : currKey.pop();
+        }
+
+        private boolean hasOuterList () {
+            return !currList.isEmpty();
+        }
+    }
+
+    private static final class Internal extends RuntimeException {
+        Internal ( String s ) {
+            super( s );
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+public class JsonProjectionTest {
+    private static final String JSON = "{\n"
+            + "  \"name\" : \"thing\",\n"
+            + "  // a comment with a } in it\n"
+            + "  \"description\" : \"Has \\\"quotes\\\" and ] brackets {\",\n"
+            + "  \"scripts\" : { \"test\" : \"mocha\", \"nested\" : [ 1, { \"x\" : '}' } ] },\n"
+            + "  \"repository\" : { \"type\" : \"git\", \"url\" : \"git://example.com\" },\n"
+            + "  \"keywords\" : [ \"a\", \"b\" ],\n"
+            + "  \"private\" : true,\n"
+            + "  \"count\" : -12.5e3,\n"
+            + "  \"main\" : \"index.js\"\n"
+            + "}\n";
+
+    private static Map<String, Object> read ( String json, String... paths ) throws Exception {
+        return JsonProjection.of( paths ).read( new StringReader( json ) );
+    }
+
+    @Test
+    public void testTopLevelKeys () throws Exception {
+        Map<String, Object> expect = new LinkedHashMap<>();
+        expect.put( "name", "thing" );
+        expect.put( "keywords", Arrays.asList( "a", "b" ) );
+        expect.put( "main", "index.js" );
+        assertEquals( expect, read( JSON, "main", "name", "keywords" ) );
+        assertEquals( Collections.singletonMap( "private", true ), read( JSON, "private" ) );
+    }
+
+    @Test
+    public void testNestedPaths () throws Exception {
+        Map<String, Object> m = read( JSON, "repository.url", "scripts.nested", "missing.thing", "name.x" );
+        assertEquals( Collections.singletonMap( "url", "git://example.com" ), m.get( "repository" ) );
+        assertEquals( Arrays.asList( 1, Collections.singletonMap( "x", "}" ) ),
+                ((Map<?, ?>) m.get( "scripts" )).get( "nested" ) );
+        assertEquals( 2, m.size() );
+        // A shorter path wins over a longer one
+        assertEquals( read( JSON, "repository" ), read( JSON, "repository.type", "repository" ) );
+    }
+
+    @Test
+    public void testMatchesFullParse () throws Exception {
+        for (int i = 0; i < 11; i++) {
+            String name = "package_" + i + ".json";
+            Map<String, Object> full;
+            try (InputStream in = JsonProjectionTest.class.getResourceAsStream( name )) {
+                full = new SimpleJSONParser().parse( in );
+            }
+            for (String key : full.keySet()) {
+                try (InputStream in = JsonProjectionTest.class.getResourceAsStream( name )) {
+                    assertEquals( name + " " + key, Collections.singletonMap( key, full.get( key ) ),
+                            JsonProjection.of( key ).read( in ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStopsReadingOnceEverythingIsFound () throws Exception {
+        // The garbage after main is never looked at
+        assertEquals( Collections.singletonMap( "main", "a.js" ),
+                read( "{ \"main\" : \"a.js\", <html> ", "main" ) );
+        try {
+            read( "{ \"main\" : \"a.js\", <html> ", "main", "repository.url" );
+            fail( "Should have failed" );
+        } catch ( JsonException e ) {
+            // ok
+        }
+    }
+
+    @Test( expected = JsonException.class )
+    public void testNotAnObject () throws Exception {
+        read( "[ 1, 2 ]", "main" );
+    }
+}
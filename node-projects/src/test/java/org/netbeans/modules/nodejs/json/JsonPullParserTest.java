@@ -0,0 +1,142 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.netbeans.modules.nodejs.json.JsonPullParser.Token;
+import static org.netbeans.modules.nodejs.json.JsonPullParser.Token.*;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+
+public class JsonPullParserTest {
+
+    private static List<Object> tokens ( String json, int bufferSize ) throws Exception {
+        JsonPullParser p = new JsonPullParser( new StringReader( json ), bufferSize );
+        List<Object> result = new ArrayList<>();
+        for (Token t = p.next(); t != END; t = p.next()) {
+            result.add( t );
+            if (t == KEY || t == STRING) {
+                result.add( p.text() );
+            } else if (t == NUMBER) {
+                result.add( p.isIntegral() ? (Object) p.longValue() : (Object) p.doubleValue() );
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testTokens () throws Exception {
+        String json = "{ \"a\" : [ 1, -23, 4.5, true, false, null ], \"b\\\"c\" : { \"d\" : \"e\\n\\u0041\" } }";
+        List<Object> expect = Arrays.<Object>asList( START_OBJECT, KEY, "a", START_ARRAY,
+                NUMBER, 1L, NUMBER, -23L, NUMBER, 4.5D, TRUE, FALSE, NULL, END_ARRAY,
+                KEY, "b\"c", START_OBJECT, KEY, "d", STRING, "e\nA", END_OBJECT, END_OBJECT );
+        assertEquals( expect, tokens( json, 8192 ) );
+        // Every token straddles a refill somewhere
+        for (int size = 1; size < 8; size++) {
+            assertEquals( "Buffer size " + size, expect, tokens( json, size ) );
+        }
+    }
+
+    @Test
+    public void testLenientSyntax () throws Exception {
+        String json = "// comment\n{ name : 'thing', /* another */ \"list\" : [ 1, 2, ], }\n// trailing\n";
+        assertEquals( Arrays.<Object>asList( START_OBJECT, KEY, "name", STRING, "thing", KEY, "list",
+                START_ARRAY, NUMBER, 1L, NUMBER, 2L, END_ARRAY, END_OBJECT ), tokens( json, 5 ) );
+    }
+
+    @Test
+    public void testKeysAreShared () throws Exception {
+        JsonPullParser p = new JsonPullParser( new StringReader( "{ \"x-y\" : { \"x-y\" : 1, \"version\" : 2 } }" ) );
+        assertEquals( START_OBJECT, p.next() );
+        assertEquals( KEY, p.next() );
+        String first = p.text();
+        p.next();
+        p.next();
+        assertSame( first, p.text() );
+        p.next();
+        p.next();
+        assertSame( "version", p.text() );
+    }
+
+    @Test
+    public void testBigNumbers () throws Exception {
+        assertEquals( Arrays.<Object>asList( START_ARRAY, NUMBER, Long.MAX_VALUE, NUMBER, 1e30D, NUMBER, 1.5e3D, END_ARRAY ),
+                tokens( "[" + Long.MAX_VALUE + ", 1000000000000000000000000000000, 1.5e3]", 4 ) );
+    }
+
+    @Test
+    public void testSkipValue () throws Exception {
+        String json = "{ \"a\" : { \"b\" : [ \"]\", '}', /* } */ { } ] }, \"c\" : \"x\\\"y\", \"d\" : -1.5, \"e\" : [ 1 ], \"f\" : 2 }";
+        for (int size = 1; size < 10; size++) {
+            JsonPullParser p = new JsonPullParser( new StringReader( json ), size );
+            assertEquals( START_OBJECT, p.next() );
+            for (String key : new String[]{ "a", "c", "d" }) {
+                assertEquals( KEY, p.next() );
+                assertEquals( key, p.text() );
+                p.skipValue();
+            }
+            assertEquals( KEY, p.next() );
+            assertEquals( START_ARRAY, p.next() );
+            p.skipValue();
+            assertEquals( END_ARRAY, p.token() );
+            assertEquals( KEY, p.next() );
+            assertEquals( "f", p.text() );
+            assertEquals( NUMBER, p.next() );
+            assertEquals( 2L, p.longValue() );
+            assertEquals( END_OBJECT, p.next() );
+            assertEquals( END, p.next() );
+        }
+    }
+
+    @Test
+    public void testSkipNumbers () throws Exception {
+        String json = "{ \"a\" : 1e+5, \"b\" : -2.5E-3, \"c\" : true, \"d\" : 7 }";
+        for (int size = 1; size < 10; size++) {
+            JsonPullParser p = new JsonPullParser( new StringReader( json ), size );
+            assertEquals( START_OBJECT, p.next() );
+            for (String key : new String[]{ "a", "b", "c" }) {
+                assertEquals( KEY, p.next() );
+                assertEquals( key, p.text() );
+                p.skipValue();
+            }
+            assertEquals( KEY, p.next() );
+            assertEquals( "d", p.text() );
+            assertEquals( NUMBER, p.next() );
+            assertEquals( 7L, p.longValue() );
+            assertEquals( END_OBJECT, p.next() );
+        }
+    }
+
+    @Test
+    public void testErrors () throws Exception {
+        for (String bad : new String[]{ "{ \"a\" : 1 \"b\" : 2 }", "{ \"a\" 1 }", "{ \"a\" : }", "[ 1, 2",
+            "{ \"a\" : \"unterminated }", "{ } }", "{ \"a\" : 1.2.3 }", "{ \"a\" : nope }", "[ 1 / 2 ]" }) {
+            try {
+                tokens( bad, 3 );
+                fail( "Should not have parsed " + bad );
+            } catch ( JsonException e ) {
+                // ok
+            }
+        }
+    }
+}
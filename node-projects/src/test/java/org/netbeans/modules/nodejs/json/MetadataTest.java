@@ -18,10 +18,18 @@
  CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
 package org.netbeans.modules.nodejs.json;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.netbeans.modules.nodejs.ProjectMetadataImpl;
 
 import org.junit.Test;
@@ -62,6 +70,42 @@ public class MetadataTest {
         System.out.println( impl );
     }
 
+    @Test
+    public void testExternalEditFiresOnlyChangedKeys () throws Exception {
+        final Map<String, Object> old = impl.getMap();
+        final List<PropertyChangeEvent> events = new ArrayList<>();
+        PropertyChangeListener pcl = new PropertyChangeListener() {
+            @Override
+            public synchronized void propertyChange ( PropertyChangeEvent evt ) {
+                events.add( evt );
+                notifyAll();
+            }
+        };
+        impl.addPropertyChangeListener( pcl );
+        Map<String, Object> edited = new LinkedHashMap<>( old );
+        edited.put( "version", "0.0.9" );
+        edited.put( "private", true );
+        FileObject fo = fake.root.getFileObject( "package.json" );
+        try (OutputStream out = fo.getOutputStream()) {
+            out.write( ObjectMapperProvider.writer().writeValueAsBytes( edited ) );
+        }
+        // Until the reload completes, the old contents are still served
+        assertNotNull( impl.getValue( "name" ) );
+        synchronized ( pcl ) {
+            long timeout = System.currentTimeMillis() + 10000;
+            while ( events.size() < 2 && System.currentTimeMillis() < timeout ) {
+                pcl.wait( 100 );
+            }
+            Set<String> names = new HashSet<>();
+            for (PropertyChangeEvent e : events) {
+                names.add( e.getPropertyName() );
+            }
+            assertEquals( new HashSet<>( Arrays.asList( "version", "private" ) ), names );
+        }
+        assertEquals( "0.0.9", impl.getValue( "version" ) );
+        assertEquals( "recon", impl.getValue( "name" ) );
+    }
+
     private void test ( String key, String val ) {
         impl.setValue( key, val );
         assertEquals( val, impl.getValue( key ) );
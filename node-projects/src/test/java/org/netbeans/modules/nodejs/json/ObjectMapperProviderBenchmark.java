@@ -0,0 +1,131 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing the package.json samples used by SimpleJSONParserTest
+ * with a new ObjectMapper per file, as all callers used to, against the
+ * shared reader.  Not run as part of the tests; run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.netbeans.modules.nodejs.json.ObjectMapperProviderBenchmark
+ * </pre>
+ *
+ * @author Tim Boudreau
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ObjectMapperProviderBenchmark {
+    private final List<byte[]> samples = new ArrayList<>();
+
+    @Setup
+    public void setUp () throws IOException {
+        for (int i = 0; i < 11; i++) {
+            byte[] bytes = load( "package_" + i + ".json" );
+            try {
+                ObjectMapperProvider.mapReader().readValue( bytes );
+                samples.add( bytes );
+            } catch ( IOException ex ) {
+                // Some samples are only legal for the lenient SimpleJSONParser
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IOException( "No usable samples" );
+        }
+    }
+
+    @Benchmark
+    public void newMapperPerParse ( Blackhole bh ) throws IOException {
+        for (byte[] sample : samples) {
+            Map<String, Object> m = ObjectMapperProvider.newObjectMapper()
+                    .readValue( sample, ObjectMapperProvider.STRING_OBJECT_MAP );
+            bh.consume( m );
+        }
+    }
+
+    @Benchmark
+    public void sharedReader ( Blackhole bh ) throws IOException {
+        for (byte[] sample : samples) {
+            Map<String, Object> m = ObjectMapperProvider.mapReader().readValue( sample );
+            bh.consume( m );
+        }
+    }
+
+    @Benchmark
+    public void newMapperPerWrite ( Blackhole bh ) throws IOException {
+        for (byte[] sample : samples) {
+            bh.consume( ObjectMapperProvider.newObjectMapper().writeValueAsBytes(
+                    ObjectMapperProvider.mapReader().readValue( sample ) ) );
+        }
+    }
+
+    @Benchmark
+    public void sharedWriter ( Blackhole bh ) throws IOException {
+        for (byte[] sample : samples) {
+            bh.consume( ObjectMapperProvider.writer().writeValueAsBytes(
+                    ObjectMapperProvider.mapReader().readValue( sample ) ) );
+        }
+    }
+
+    private static byte[] load ( String name ) throws IOException {
+        try (InputStream in = ObjectMapperProviderBenchmark.class.getResourceAsStream( name )) {
+            if (in == null) {
+                throw new IOException( "Test data missing: " + name );
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int count; (count = in.read( buf )) > 0;) {
+                out.write( buf, 0, count );
+            }
+            return out.toByteArray();
+        }
+    }
+
+    public static void main ( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder()
+                .include( ObjectMapperProviderBenchmark.class.getSimpleName() )
+                .build() ).run();
+    }
+}
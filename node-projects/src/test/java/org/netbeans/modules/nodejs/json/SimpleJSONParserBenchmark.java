@@ -0,0 +1,146 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the character-at-a-time parser SimpleJSONParser used to be with
+ * the streaming one it is now, and with Jackson, on a large generated
+ * package.json and an npm 5 style package-lock.json, along with reading
+ * just two fields with a JsonProjection.  Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.netbeans.modules.nodejs.json.SimpleJSONParserBenchmark
+ * </pre>
+ * and add <code>-prof gc</code> to the runner options to compare
+ * allocation rates.
+ *
+ * @author Tim Boudreau
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SimpleJSONParserBenchmark {
+    @Param( { "package.json", "package-lock.json" } )
+    public String file;
+    private static final JsonProjection NAME_AND_VERSION = JsonProjection.of( "name", "version" );
+    private String text;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp () {
+        text = "package.json".equals( file ) ? packageJson( 1500 ) : packageLock( 2000 );
+        bytes = text.getBytes( StandardCharsets.UTF_8 );
+    }
+
+    @Benchmark
+    public Object charVisitor () throws Exception {
+        return new CharVisitorJSONParser().parse( new String( bytes, StandardCharsets.UTF_8 ) );
+    }
+
+    @Benchmark
+    public Object pullParser () throws Exception {
+        return new SimpleJSONParser().parse( new ByteArrayInputStream( bytes ) );
+    }
+
+    @Benchmark
+    public Object projection () throws Exception {
+        return NAME_AND_VERSION.read( new ByteArrayInputStream( bytes ) );
+    }
+
+    @Benchmark
+    public Object jackson () throws IOException {
+        return ObjectMapperProvider.mapReader().readValue( new ByteArrayInputStream( bytes ) );
+    }
+
+    static String packageJson ( int dependencies ) {
+        StringBuilder sb = new StringBuilder( "{\n" );
+        sb.append( "    // Generated\n" );
+        sb.append( "    \"name\" : \"big-project\",\n" );
+        sb.append( "    \"version\" : \"1.0.0\",\n" );
+        sb.append( "    \"description\" : \"A project with a lot of dependencies\",\n" );
+        sb.append( "    \"main\" : \"index.js\",\n" );
+        sb.append( "    \"private\" : true,\n" );
+        sb.append( "    \"keywords\" : [ \"one\", \"two\", \"three\" ],\n" );
+        sb.append( "    \"scripts\" : {\n" );
+        for (int i = 0; i < 50; i++) {
+            sb.append( "        \"script" ).append( i ).append( "\" : \"node scripts/s" ).append( i ).append( ".js --flag\",\n" );
+        }
+        sb.append( "        \"test\" : \"mocha\"\n    },\n" );
+        sb.append( "    \"dependencies\" : {\n" );
+        for (int i = 0; i < dependencies; i++) {
+            sb.append( "        \"dependency-" ).append( i ).append( "\" : \"^" )
+                    .append( i % 7 ).append( '.' ).append( i % 13 ).append( '.' ).append( i % 3 ).append( '"' );
+            sb.append( i == dependencies - 1 ? "\n" : ",\n" );
+        }
+        sb.append( "    }\n}\n" );
+        return sb.toString();
+    }
+
+    static String packageLock ( int dependencies ) {
+        StringBuilder sb = new StringBuilder( "{\n" );
+        sb.append( "  \"name\": \"big-project\",\n  \"version\": \"1.0.0\",\n  \"lockfileVersion\": 1,\n  \"requires\": true,\n" );
+        sb.append( "  \"dependencies\": {\n" );
+        for (int i = 0; i < dependencies; i++) {
+            sb.append( "    \"dependency-" ).append( i ).append( "\": {\n" );
+            sb.append( "      \"version\": \"" ).append( i % 7 ).append( '.' ).append( i % 13 ).append( ".0\",\n" );
+            sb.append( "      \"resolved\": \"https://registry.npmjs.org/dependency-" ).append( i )
+                    .append( "/-/dependency-" ).append( i ).append( "-1.0.0.tgz\",\n" );
+            sb.append( "      \"integrity\": \"sha512-" ).append( Integer.toHexString( i * 7919 ) )
+                    .append( "QWxhZGRpbjpvcGVuIHNlc2FtZQ+/abcdefghijklmnopqrstuvwxyz0123456789==\",\n" );
+            if (i % 3 == 0) {
+                sb.append( "      \"dev\": true,\n" );
+            }
+            sb.append( "      \"requires\": {\n" );
+            sb.append( "        \"dependency-" ).append( (i + 1) % dependencies ).append( "\": \"^1.0.0\",\n" );
+            sb.append( "        \"dependency-" ).append( (i + 2) % dependencies ).append( "\": \"~2.1.0\"\n" );
+            sb.append( "      }\n" );
+            sb.append( i == dependencies - 1 ? "    }\n" : "    },\n" );
+        }
+        sb.append( "  }\n}\n" );
+        return sb.toString();
+    }
+
+    public static void main ( String[] args ) throws RunnerException {
+        new Runner( new OptionsBuilder()
+                .include( SimpleJSONParserBenchmark.class.getSimpleName() )
+                .build() ).run();
+    }
+}
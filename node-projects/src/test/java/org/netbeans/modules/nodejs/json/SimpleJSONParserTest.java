@@ -64,6 +64,48 @@ public class SimpleJSONParserTest {
         assertEquals( m, m1 );
     }
 
+    @Test
+    public void testStreamingMatchesJackson () throws Exception {
+        for (int i = 0; i < 11; i++) {
+            String name = "package_" + i + ".json";
+            Map<String, Object> expected;
+            try (InputStream in = SimpleJSONParserTest.class.getResourceAsStream( name )) {
+                expected = ObjectMapperProvider.mapReader().readValue( in );
+            } catch ( IOException ex ) {
+                // Some samples are only legal for the lenient parser
+                continue;
+            }
+            try (InputStream in = SimpleJSONParserTest.class.getResourceAsStream( name )) {
+                assertEquals( name, expected, new SimpleJSONParser().parse( in ) );
+            }
+        }
+    }
+
+    @Test
+    public void testListsOfObjectsRoundTrip () throws Exception {
+        String t = "{ \"contributors\" : [ { \"name\" : \"a\\\\b\" }, { \"name\" : \"c\\\"d\" } ], \"x\" : null }";
+        Map<String, Object> m = new SimpleJSONParser().parse( t );
+        List<?> l = (List<?>) m.get( "contributors" );
+        assertEquals( 2, l.size() );
+        assertEquals( "a\\b", ((Map<?, ?>) l.get( 0 )).get( "name" ) );
+        assertEquals( "c\"d", ((Map<?, ?>) l.get( 1 )).get( "name" ) );
+        assertTrue( m.containsKey( "x" ) );
+        assertEquals( m, new SimpleJSONParser().parse( SimpleJSONParser.out( m ) ) );
+    }
+
+    @Test
+    public void testPermissiveKeepsWhatItCould () throws Exception {
+        SimpleJSONParser p = new SimpleJSONParser( true );
+        Map<String, Object> m;
+        try (InputStream in = SimpleJSONParserTest.class.getResourceAsStream( "bad_2.json" )) {
+            m = p.parse( in );
+        }
+        assertTrue( p.hasErrors() );
+        assertEquals( "recon", m.get( "name" ) );
+        assertEquals( "git", ((Map<?, ?>) m.get( "repository" )).get( "type" ) );
+        assertFalse( m.containsKey( "keywords" ) );
+    }
+
     private void parseJSON ( String what ) throws IOException, JsonException {
         System.out.println( "-------------------------------" );
         InputStream in = SimpleJSONParserTest.class.getResourceAsStream( what );
@@ -0,0 +1,232 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DependencyGraphTest {
+    private static final String V2 = "{\n"
+            + "  \"name\": \"app\",\n"
+            + "  \"version\": \"1.0.0\",\n"
+            + "  \"lockfileVersion\": 2,\n"
+            + "  \"requires\": true,\n"
+            + "  \"packages\": {\n"
+            + "    \"\": {\n"
+            + "      \"name\": \"app\",\n"
+            + "      \"version\": \"1.0.0\",\n"
+            + "      \"dependencies\": { \"a\": \"^1.0.0\", \"local\": \"file:packages/local\" },\n"
+            + "      \"devDependencies\": { \"@scope/t\": \"^2.0.0\" }\n"
+            + "    },\n"
+            + "    \"node_modules/a\": {\n"
+            + "      \"version\": \"1.2.0\",\n"
+            + "      \"resolved\": \"https://registry.npmjs.org/a/-/a-1.2.0.tgz\",\n"
+            + "      \"integrity\": \"sha512-xyz\",\n"
+            + "      \"dependencies\": { \"b\": \"^2.0.0\", \"c\": \"*\" },\n"
+            + "      \"engines\": { \"node\": \">=8\" }\n"
+            + "    },\n"
+            + "    \"node_modules/a/node_modules/b\": { \"version\": \"2.0.0\", \"dependencies\": { \"c\": \"*\" } },\n"
+            + "    \"node_modules/b\": { \"version\": \"1.0.0\" },\n"
+            + "    \"node_modules/c\": { \"version\": \"3.0.0\", \"dependencies\": { \"gone\": \"*\" } },\n"
+            + "    \"node_modules/@scope/t\": { \"version\": \"2.1.0\", \"dev\": true, \"devDependencies\": { \"b\": \"*\" } },\n"
+            + "    \"node_modules/local\": { \"resolved\": \"packages/local\", \"link\": true },\n"
+            + "    \"packages/local\": { \"version\": \"0.0.1\", \"dependencies\": { \"a\": \"*\" } }\n"
+            + "  },\n"
+            + "  \"dependencies\": {\n"
+            + "    \"a\": { \"version\": \"1.2.0\", \"requires\": { \"wrong\": \"*\" } }\n"
+            + "  }\n"
+            + "}\n";
+
+    private static final String V1 = "{\n"
+            + "  \"name\": \"app\",\n"
+            + "  \"version\": \"1.0.0\",\n"
+            + "  \"lockfileVersion\": 1,\n"
+            + "  \"dependencies\": {\n"
+            + "    \"a\": {\n"
+            + "      \"version\": \"1.2.0\",\n"
+            + "      \"requires\": { \"b\": \"^2.0.0\", \"c\": \"*\" },\n"
+            + "      \"dependencies\": {\n"
+            + "        \"b\": { \"version\": \"2.0.0\", \"requires\": { \"c\": \"*\" } }\n"
+            + "      }\n"
+            + "    },\n"
+            + "    \"b\": { \"version\": \"1.0.0\", \"dev\": true },\n"
+            + "    \"c\": { \"version\": \"3.0.0\" }\n"
+            + "  }\n"
+            + "}\n";
+
+    private File dir;
+
+    @Before
+    public void setUp () throws IOException {
+        dir = Files.createTempDirectory( "DependencyGraphTest" ).toFile();
+    }
+
+    @After
+    public void tearDown () {
+        delete( dir );
+    }
+
+    @Test
+    public void testPackagesLayout () throws Exception {
+        DependencyGraph g = DependencyGraph.load( dir, null, new StringReader( V2 ) );
+        assertEquals( 8, g.size() );
+        assertEquals( "", g.path( 0 ) );
+        assertEquals( "app", g.name( 0 ) );
+        assertEquals( set( "a", "local", "@scope/t" ), names( g, g.dependencies( 0 ) ) );
+
+        int a = g.find( "node_modules/a" );
+        assertEquals( "a", g.name( a ) );
+        assertEquals( "1.2.0", g.version( a ) );
+        assertEquals( "https://registry.npmjs.org/a/-/a-1.2.0.tgz", g.resolved( a ) );
+        // a's own copy of b wins over the hoisted one; c is hoisted
+        assertEquals( set( "node_modules/a/node_modules/b", "node_modules/c" ), paths( g, g.dependencies( a ) ) );
+        int nestedB = g.find( "node_modules/a/node_modules/b" );
+        assertEquals( "b", g.name( nestedB ) );
+        assertEquals( set( "node_modules/c" ), paths( g, g.dependencies( nestedB ) ) );
+
+        int c = g.find( "node_modules/c" );
+        assertEquals( 0, g.dependencies( c ).length );
+        assertEquals( Arrays.asList( "gone" ), g.unresolved( c ) );
+
+        int t = g.find( "node_modules/@scope/t" );
+        assertEquals( "@scope/t", g.name( t ) );
+        assertTrue( g.isDev( t ) );
+        assertFalse( g.isDev( a ) );
+        // Only the project's own dev dependencies count
+        assertEquals( 0, g.dependencies( t ).length );
+    }
+
+    @Test
+    public void testLinksResolveToTheirTarget () throws Exception {
+        DependencyGraph g = DependencyGraph.load( dir, null, new StringReader( V2 ) );
+        assertTrue( paths( g, g.dependencies( 0 ) ).contains( "packages/local" ) );
+        int local = g.find( "packages/local" );
+        assertEquals( set( "node_modules/a" ), paths( g, g.dependencies( local ) ) );
+        assertEquals( new File( dir, "packages/local" ), g.folder( local ) );
+    }
+
+    @Test
+    public void testLegacyLayout () throws Exception {
+        DependencyGraph g = DependencyGraph.load( dir, null, new StringReader( V1 ) );
+        assertEquals( 5, g.size() );
+        assertEquals( "app", g.name( 0 ) );
+        int a = g.find( "node_modules/a" );
+        assertEquals( "1.2.0", g.version( a ) );
+        assertEquals( set( "node_modules/a/node_modules/b", "node_modules/c" ), paths( g, g.dependencies( a ) ) );
+        int nestedB = g.find( "node_modules/a/node_modules/b" );
+        assertEquals( "2.0.0", g.version( nestedB ) );
+        assertEquals( set( "node_modules/c" ), paths( g, g.dependencies( nestedB ) ) );
+        assertTrue( g.isDev( g.find( "node_modules/b" ) ) );
+    }
+
+    @Test
+    public void testNamesAreShared () throws Exception {
+        DependencyGraph g = DependencyGraph.load( dir, null, new StringReader( V1 ) );
+        assertSame( g.name( g.find( "node_modules/b" ) ), g.name( g.find( "node_modules/a/node_modules/b" ) ) );
+    }
+
+    @Test
+    public void testInstalledIsCheckedOnceAndLazily () throws Exception {
+        DependencyGraph g = DependencyGraph.load( dir, null, new StringReader( V2 ) );
+        int a = g.find( "node_modules/a" );
+        int c = g.find( "node_modules/c" );
+        assertTrue( new File( dir, "node_modules/a" ).mkdirs() );
+        assertTrue( g.isInstalled( a ) );
+        assertFalse( g.isInstalled( c ) );
+        assertTrue( new File( dir, "node_modules/c" ).mkdirs() );
+        assertFalse( g.isInstalled( c ) );
+    }
+
+    @Test
+    public void testLoadPrefersHiddenLockFile () throws Exception {
+        assertNull( DependencyGraph.load( dir ) );
+        write( "package-lock.json", V1 );
+        DependencyGraph g = DependencyGraph.load( dir );
+        assertNotNull( g );
+        assertEquals( 5, g.size() );
+        assertTrue( g.isUpToDate() );
+
+        assertTrue( new File( dir, "node_modules" ).mkdirs() );
+        write( "node_modules/.package-lock.json", V2 );
+        assertFalse( g.isUpToDate() );
+        g = DependencyGraph.load( dir );
+        assertEquals( 8, g.size() );
+        assertTrue( g.isUpToDate() );
+        assertTrue( new File( dir, "node_modules/.package-lock.json" ).setLastModified( 1000 ) );
+        assertFalse( g.isUpToDate() );
+    }
+
+    @Test
+    public void testBadLockFileIsIgnored () throws Exception {
+        write( "package-lock.json", "{ \"packages\": { \"node_modules/a\": " );
+        assertNull( DependencyGraph.load( dir ) );
+    }
+
+    private void write ( String name, String content ) throws IOException {
+        try (OutputStream out = new FileOutputStream( new File( dir, name ) )) {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    private static Set<String> set ( String... s ) {
+        return new HashSet<>( Arrays.asList( s ) );
+    }
+
+    private static Set<String> names ( DependencyGraph g, int[] pkgs ) {
+        Set<String> result = new HashSet<>();
+        for (int pkg : pkgs) {
+            result.add( g.name( pkg ) );
+        }
+        return result;
+    }
+
+    private static Set<String> paths ( DependencyGraph g, int[] pkgs ) {
+        Set<String> result = new HashSet<>();
+        for (int pkg : pkgs) {
+            result.add( g.path( pkg ) );
+        }
+        return result;
+    }
+
+    private static void delete ( File f ) {
+        File[] kids = f.listFiles();
+        if (kids != null) {
+            for (File kid : kids) {
+                delete( kid );
+            }
+        }
+        f.delete();
+    }
+}
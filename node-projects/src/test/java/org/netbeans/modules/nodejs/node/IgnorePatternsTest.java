@@ -0,0 +1,59 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy 
+ of this software and associated documentation files (the "Software"), to 
+ deal in the Software without restriction, including without limitation the 
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ sell copies of the Software, and to permit persons to whom the Software is 
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all 
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IgnorePatternsTest {
+
+    @Test
+    public void testUnanchoredPatternsMatchAtAnyDepth () {
+        IgnorePatterns p = IgnorePatterns.EMPTY.add( "", Arrays.asList( "# comment", "", "*.min.js", "dist/" ) );
+        assertTrue( p.isIgnored( "jquery.min.js", false ) );
+        assertTrue( p.isIgnored( "public/js/jquery.min.js", false ) );
+        assertFalse( p.isIgnored( "public/js/app.js", false ) );
+        assertTrue( p.isIgnored( "dist", true ) );
+        assertTrue( p.isIgnored( "packages/a/dist", true ) );
+        assertFalse( "Directory-only pattern matched a file", p.isIgnored( "dist", false ) );
+    }
+
+    @Test
+    public void testAnchoredAndNestedPatterns () {
+        IgnorePatterns p = IgnorePatterns.EMPTY.add( "", Arrays.asList( "/build", "docs/**/*.js" ) )
+                .add( "packages/a", Arrays.asList( "generated/" ) );
+        assertTrue( p.isIgnored( "build", true ) );
+        assertFalse( p.isIgnored( "src/build", true ) );
+        assertTrue( p.isIgnored( "docs/x.js", false ) );
+        assertTrue( p.isIgnored( "docs/api/deep/x.js", false ) );
+        assertFalse( p.isIgnored( "src/docs/x.js", false ) );
+        assertTrue( p.isIgnored( "packages/a/generated", true ) );
+        assertTrue( p.isIgnored( "packages/a/lib/generated", true ) );
+        assertFalse( p.isIgnored( "packages/b/generated", true ) );
+    }
+
+    @Test
+    public void testNegation () {
+        IgnorePatterns p = IgnorePatterns.EMPTY.add( "", Arrays.asList( "*.js", "!keep.js" ) );
+        assertTrue( p.isIgnored( "a.js", false ) );
+        assertFalse( p.isIgnored( "lib/keep.js", false ) );
+        assertFalse( p.isIgnored( "a.json", false ) );
+    }
+}
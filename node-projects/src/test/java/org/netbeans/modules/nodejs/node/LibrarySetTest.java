@@ -0,0 +1,89 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+public class LibrarySetTest {
+    File dir;
+    FileObject modules;
+
+    @Before
+    public void setUp () throws IOException {
+        dir = File.createTempFile( "libset", "" );
+        dir.delete();
+        dir.mkdirs();
+        modules = FileUtil.createFolder( FileUtil.toFileObject( FileUtil.normalizeFile( dir ) ), "node_modules" );
+        modules.createFolder( "foo" );
+        modules.createFolder( "bar" );
+    }
+
+    @After
+    public void tearDown () throws IOException {
+        FileUtil.toFileObject( FileUtil.normalizeFile( dir ) ).delete();
+    }
+
+    @Test
+    public void testFoundLibraryReplacesMissing () {
+        LibrarySet set = new LibrarySet();
+        ProjectNodeKey.MissingLibrary missing = new ProjectNodeKey.MissingLibrary( "foo" );
+        assertTrue( set.add( missing ) );
+        assertTrue( set.add( new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, modules.getFileObject( "foo" ) ) ) );
+        assertEquals( 1, set.size() );
+        assertEquals( ProjectNodeKeyTypes.LIBRARY, set.toSortedList().get( 0 ).getType() );
+        assertFalse( set.add( new ProjectNodeKey.MissingLibrary( "foo" ) ) );
+        assertEquals( 1, set.size() );
+    }
+
+    @Test
+    public void testFolderOnlyListedOnce () {
+        LibrarySet set = new LibrarySet();
+        ProjectNodeKey direct = new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, modules.getFileObject( "bar" ) );
+        direct.direct = true;
+        assertTrue( set.add( direct ) );
+        assertFalse( set.add( new ProjectNodeKey( ProjectNodeKeyTypes.LIBRARY, modules.getFileObject( "bar" ) ) ) );
+        assertTrue( set.add( new ProjectNodeKey.BuiltInLibrary( "fs" ) ) );
+        assertTrue( set.add( new ProjectNodeKey.MissingLibrary( "baz" ) ) );
+        List<ProjectNodeKey> keys = set.toSortedList();
+        assertEquals( 3, keys.size() );
+        assertSame( direct, keys.get( 0 ) );
+        assertTrue( set.containsName( "baz" ) );
+    }
+
+    @Test
+    public void testMissingLibraryEqualityIncludesReferences () {
+        ProjectNodeKey.MissingLibrary a = new ProjectNodeKey.MissingLibrary( "foo" );
+        a.references = Arrays.asList( "a.js" );
+        ProjectNodeKey.MissingLibrary b = new ProjectNodeKey.MissingLibrary( "foo" );
+        b.references = Arrays.asList( "a.js" );
+        assertEquals( a, b );
+        b.references = Arrays.asList( "a.js", "b.js" );
+        assertFalse( a.equals( b ) );
+        assertEquals( a.hashCode(), b.hashCode() );
+    }
+}
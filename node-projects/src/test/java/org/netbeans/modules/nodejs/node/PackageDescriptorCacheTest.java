@@ -0,0 +1,103 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+public class PackageDescriptorCacheTest {
+    FileObject root;
+
+    @Before
+    public void setUp () throws IOException {
+        root = FileUtil.createMemoryFileSystem().getRoot();
+        write( "foo/package.json", "{\"name\":\"foo\",\"version\":\"1.0.0\",\"description\":\"Foo\","
+                + "\"author\":{\"name\":\"Joe\",\"email\":\"joe@example.com\"},"
+                + "\"licenses\":[{\"type\":\"MIT\"},\"BSD\"],"
+                + "\"repository\":{\"type\":\"git\",\"url\":\"git://example.com/foo.git\"},"
+                + "\"bugs\":{\"web\":\"http://example.com/bugs\"}}" );
+        write( "bar/package.json", "{\"name\":\"bar\",\"version\":\"2.0.0\"}" );
+        write( "baz/package.json", "{\"name\":\"baz\",\"version\":\"3.0.0\"}" );
+    }
+
+    @Test
+    public void testDescriptorContents () {
+        PackageDescriptor d = new PackageDescriptorCache( 10 ).get( root.getFileObject( "foo" ) );
+        assertEquals( "foo", d.name );
+        assertEquals( "1.0.0", d.version );
+        assertEquals( "Foo", d.description );
+        assertEquals( "Joe <joe@example.com>", d.author );
+        assertEquals( Arrays.asList( "MIT", "BSD" ), d.licenses );
+        assertEquals( "git", d.repoType );
+        assertEquals( "git://example.com/foo.git", d.repo );
+        assertEquals( "http://example.com/bugs", d.bugUrl );
+    }
+
+    @Test
+    public void testParsedOnceUntilChanged () throws IOException {
+        PackageDescriptorCache cache = new PackageDescriptorCache( 10 );
+        FileObject bar = root.getFileObject( "bar" );
+        PackageDescriptor d = cache.get( bar );
+        for (int i = 0; i < 100; i++) {
+            assertSame( d, cache.get( bar ) );
+        }
+        assertEquals( 1, cache.parseCount() );
+        write( "bar/package.json", "{\"name\":\"bar\",\"version\":\"2.0.1\"}" );
+        assertEquals( 0, cache.size() );
+        assertEquals( "2.0.1", cache.get( bar ).version );
+        assertEquals( 2, cache.parseCount() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted () {
+        PackageDescriptorCache cache = new PackageDescriptorCache( 2 );
+        cache.get( root.getFileObject( "foo" ) );
+        cache.get( root.getFileObject( "bar" ) );
+        cache.get( root.getFileObject( "foo" ) );
+        cache.get( root.getFileObject( "baz" ) );
+        assertEquals( 2, cache.size() );
+        assertEquals( 3, cache.parseCount() );
+        cache.get( root.getFileObject( "foo" ) );
+        assertEquals( 3, cache.parseCount() );
+        cache.get( root.getFileObject( "bar" ) );
+        assertEquals( 4, cache.parseCount() );
+    }
+
+    @Test
+    public void testMissingPackageJson () throws IOException {
+        FileObject empty = root.createFolder( "empty" );
+        assertSame( PackageDescriptor.EMPTY, new PackageDescriptorCache( 10 ).get( empty ) );
+    }
+
+    private void write ( String path, String data ) throws IOException {
+        FileObject fo = root.getFileObject( path );
+        if (fo == null) {
+            fo = FileUtil.createData( root, path );
+        }
+        try (OutputStream out = fo.getOutputStream()) {
+            out.write( data.getBytes( "UTF-8" ) );
+        }
+    }
+}
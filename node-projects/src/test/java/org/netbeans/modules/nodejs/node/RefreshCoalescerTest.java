@@ -0,0 +1,78 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RefreshCoalescerTest {
+
+    @Test
+    public void testBurstIsCoalesced () throws Exception {
+        Counter counter = new Counter();
+        RefreshCoalescer c = new RefreshCoalescer( counter, 200, 5000 );
+        for (int i = 0; i < 1000; i++) {
+            c.request();
+        }
+        assertTrue( counter.runs.tryAcquire( 5, TimeUnit.SECONDS ) );
+        Thread.sleep( 400 );
+        assertEquals( 0, counter.runs.availablePermits() );
+        assertEquals( 1000, c.requestCount() );
+        assertEquals( 1, c.refreshCount() );
+        assertEquals( 999, c.coalescedCount() );
+    }
+
+    @Test
+    public void testMaxLatencyBoundsContinuousRequests () throws Exception {
+        Counter counter = new Counter();
+        RefreshCoalescer c = new RefreshCoalescer( counter, 100, 300 );
+        long start = System.currentTimeMillis();
+        boolean ran = false;
+        // Requests arrive faster than the quiet period, so only the latency
+        // bound can let a refresh through
+        while ( System.currentTimeMillis() - start < 2000 && !ran ) {
+            c.request();
+            Thread.sleep( 10 );
+            ran = counter.runs.tryAcquire();
+        }
+        assertTrue( "Refresh starved by continuous requests", ran );
+        assertTrue( c.refreshCount() >= 1 );
+    }
+
+    @Test
+    public void testCancel () throws Exception {
+        Counter counter = new Counter();
+        RefreshCoalescer c = new RefreshCoalescer( counter, 200, 1000 );
+        c.request();
+        c.cancel();
+        assertFalse( counter.runs.tryAcquire( 500, TimeUnit.MILLISECONDS ) );
+        assertEquals( 0, c.refreshCount() );
+    }
+
+    private static final class Counter implements Runnable {
+        final Semaphore runs = new Semaphore( 0 );
+
+        @Override
+        public void run () {
+            runs.release();
+        }
+    }
+}
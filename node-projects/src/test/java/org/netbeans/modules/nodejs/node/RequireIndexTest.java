@@ -0,0 +1,145 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy 
+ of this software and associated documentation files (the "Software"), to 
+ deal in the Software without restriction, including without limitation the 
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ sell copies of the Software, and to permit persons to whom the Software is 
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all 
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.netbeans.api.project.Project;
+import org.netbeans.modules.nodejs.registry.FileChangeRegistry;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileSystem;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Lookup;
+import org.openide.util.lookup.Lookups;
+
+public class RequireIndexTest {
+    FileSystem mfs;
+    FileObject projectRoot;
+    Fake fake;
+    FileChangeRegistry reg;
+    RequireIndex index;
+
+    @Before
+    public void setUp () throws IOException {
+        mfs = FileUtil.createMemoryFileSystem();
+        projectRoot = FileUtil.createFolder( mfs.getRoot(), "prj" );
+        fake = new Fake( projectRoot );
+        reg = new FileChangeRegistry( fake );
+        index = new RequireIndex( fake );
+        fake.lookup = Lookups.fixed( fake, reg, index );
+        write( "prj/a.js", "var foo = require('foo');\n" );
+        write( "prj/lib/b.js", "var bar = require( \"bar\" );\nvar foo = require('foo');\n" );
+        write( "prj/node_modules/dep/index.js", "var transitive = require('transitive');\n" );
+        write( "prj/.gitignore", "generated/\n" );
+        write( "prj/generated/g.js", "var gen = require('gen');\n" );
+    }
+
+    @Test
+    public void testInitialScan () {
+        Map<String, Set<String>> requires = index.requires();
+        assertEquals( 2, requires.size() );
+        assertTrue( requires.get( "foo" ).contains( "a.js" ) );
+        assertTrue( requires.get( "foo" ).contains( "lib/b.js" ) );
+        assertTrue( requires.get( "bar" ).contains( "lib/b.js" ) );
+    }
+
+    @Test
+    public void testOnlyChangedFilesAreUpdated () throws Exception {
+        index.requires();
+        write( "prj/a.js", "var baz = require('baz'), x = 1;\n" );
+        reg.awaitNextDelivery( FileChangeRegistry.DEFAULT_DELAY * 20 );
+        Map<String, Set<String>> requires = index.requires();
+        assertTrue( requires.get( "baz" ).contains( "a.js" ) );
+        assertFalse( requires.get( "foo" ).contains( "a.js" ) );
+        assertTrue( requires.get( "foo" ).contains( "lib/b.js" ) );
+
+        projectRoot.getFileObject( "lib" ).delete();
+        reg.awaitNextDelivery( FileChangeRegistry.DEFAULT_DELAY * 20 );
+        requires = index.requires();
+        assertNull( requires.get( "bar" ) );
+        assertNull( requires.get( "foo" ) );
+        assertNotNull( requires.get( "baz" ) );
+    }
+
+    @Test
+    public void testCacheRoundTrip () throws IOException {
+        File file = File.createTempFile( "requires", ".idx" );
+        try {
+            Map<String, RequireIndex.Entry> entries = new HashMap<>();
+            entries.put( "a.js", new RequireIndex.Entry( 1000L, 23L, 42,
+                    new LinkedHashSet<>( Arrays.asList( "foo", "bar" ) ) ) );
+            entries.put( "lib/b.js", new RequireIndex.Entry( 2000L, 5L, -7,
+                    Collections.<String>emptySet() ) );
+            new RequireIndexCache( file ).save( entries );
+            Map<String, RequireIndex.Entry> loaded = new RequireIndexCache( file ).load();
+            assertEquals( entries.keySet(), loaded.keySet() );
+            RequireIndex.Entry a = loaded.get( "a.js" );
+            assertEquals( 1000L, a.lastModified );
+            assertEquals( 23L, a.size );
+            assertEquals( 42, a.checksum );
+            assertEquals( Arrays.asList( "foo", "bar" ), new ArrayList<>( a.modules ) );
+            assertTrue( loaded.get( "lib/b.js" ).modules.isEmpty() );
+            assertEquals( -7, loaded.get( "lib/b.js" ).checksum );
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void write ( String path, String data ) throws IOException {
+        FileObject fo = mfs.getRoot().getFileObject( path );
+        if (fo == null) {
+            fo = FileUtil.createData( mfs.getRoot(), path );
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream( data.getBytes() );
+        OutputStream out = fo.getOutputStream();
+        FileUtil.copy( in, out );
+        out.close();
+    }
+
+    private static class Fake implements Project {
+        private final FileObject fo;
+        Lookup lookup;
+
+        public Fake ( FileObject fo ) {
+            this.fo = fo;
+        }
+
+        @Override
+        public FileObject getProjectDirectory () {
+            return fo;
+        }
+
+        @Override
+        public Lookup getLookup () {
+            return lookup;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy 
+ of this software and associated documentation files (the "Software"), to 
+ deal in the Software without restriction, including without limitation the 
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ sell copies of the Software, and to permit persons to whom the Software is 
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all 
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.node;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RequireScannerTest {
+
+    @Test
+    public void testRequireOutsideCommentsAndStrings () {
+        assertEquals( Arrays.asList( "a", "b" ), scan(
+                "var a = require('a'), b = require ( \"b\" );\n"
+                + "// require('c')\n"
+                + "/* require('d') */ var e = 'require(\"e\")';" ) );
+    }
+
+    @Test
+    public void testModules () {
+        assertEquals( Arrays.asList( "x", "y", "z", "side", "dyn", "ex1", "ex2" ), scan(
+                "import x from 'x';\n"
+                + "import {a, b as c} from \"y\";\n"
+                + "import * as ns from 'z';\n"
+                + "import 'side';\n"
+                + "const m = await import('dyn');\n"
+                + "export * from 'ex1';\n"
+                + "export { q } from 'ex2';\n"
+                + "export const k = 1;\n"
+                + "import.meta.url;" ) );
+    }
+
+    @Test
+    public void testTemplatesRegexesAndMemberCalls () {
+        assertEquals( Arrays.asList( "yes", "after" ), scan(
+                "var t = `require('no') ${ require('yes') } `;"
+                + " var r = /require\\('nor'\\)/g; foo.require('member');"
+                + " var d = a / b; require('after')" ) );
+        assertEquals( Arrays.asList( "q" ), scan(
+                "var r = x.replace(/['\"]/g, ''); require('q'); require(name); require('a' + b)" ) );
+        assertEquals( Arrays.asList( "z", "w" ), scan(
+                "#!/usr/bin/env node\nvar z=require('z');if(a)return/x'/.test(s);require('w')" ) );
+    }
+
+    @Test
+    public void testDynamicRequiresInLargeBundleAreLinear () {
+        // The old regex backtracked across the whole file for each of these
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append( "var a" ).append( i ).append( "=require(\"./m\"+i);function f(){return 'x'+y}" );
+        }
+        long then = System.currentTimeMillis();
+        assertTrue( scan( sb.toString() ).isEmpty() );
+        assertTrue( System.currentTimeMillis() - then < 2000 );
+    }
+
+    private static List<String> scan ( String text ) {
+        return new ArrayList<>( RequireScanner.scan( text.getBytes( StandardCharsets.UTF_8 ), StandardCharsets.UTF_8 ) );
+    }
+}
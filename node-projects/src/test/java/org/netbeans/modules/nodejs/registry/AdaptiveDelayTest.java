@@ -0,0 +1,78 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AdaptiveDelayTest {
+    private static final long START = 1000000000L;
+
+    private static long at ( long millis ) {
+        return START + TimeUnit.MILLISECONDS.toNanos( millis );
+    }
+
+    @Test
+    public void testIsolatedEventsAreImmediate () {
+        AdaptiveDelay d = new AdaptiveDelay( 100, 800, 2000 );
+        assertEquals( 0, d.onEvent( at( 0 ) ) );
+        d.delivering();
+        assertEquals( 0, d.onEvent( at( 500 ) ) );
+        d.delivering();
+        assertEquals( 0, d.onEvent( at( 5000 ) ) );
+    }
+
+    @Test
+    public void testDebounceGrowsWithBurst () {
+        AdaptiveDelay d = new AdaptiveDelay( 100, 800, 2000 );
+        assertEquals( 0, d.onEvent( at( 0 ) ) );
+        assertEquals( 100, d.onEvent( at( 10 ) ) );
+        assertEquals( 100, d.onEvent( at( 50 ) ) );
+        int last = 100;
+        for (int t = 100; t < 1000; t += 50) {
+            int delay = d.onEvent( at( t ) );
+            assertTrue( delay >= last );
+            last = delay;
+        }
+        assertTrue( last > 100 );
+        assertTrue( last <= 800 );
+    }
+
+    @Test
+    public void testMaxLatencyIsNeverExceeded () {
+        AdaptiveDelay d = new AdaptiveDelay( 100, 800, 2000 );
+        // A continuous stream, never delivered
+        for (int t = 0; t < 10000; t += 20) {
+            int delay = d.onEvent( at( t ) );
+            assertTrue( "Delivery at " + (t + delay) + " for an event pending since 0",
+                    t + delay <= 2000 || delay == 0 );
+        }
+        // Once delivered, the bound starts over
+        d.delivering();
+        int delay = d.onEvent( at( 10000 ) );
+        assertTrue( delay > 0 );
+        assertTrue( delay <= 800 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testBadDelays () {
+        new AdaptiveDelay( 100, 50, 2000 );
+    }
+}
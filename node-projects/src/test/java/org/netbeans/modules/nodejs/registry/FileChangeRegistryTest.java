@@ -22,7 +22,13 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -158,6 +164,135 @@ public class FileChangeRegistryTest {
         assertFalse( od.evts.isEmpty() );
     }
 
+    @Test
+    public void testDispatchBenchmark () throws Exception {
+        FileChangeRegistry big = new FileChangeRegistry( fake );
+        final AtomicInteger delivered = new AtomicInteger();
+        List<FileObserver> observers = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            FileObserver obs = new FileObserver() {
+                @Override
+                public void onEvent ( EventType type, String path ) {
+                    delivered.incrementAndGet();
+                }
+            };
+            observers.add( obs );
+            // 100 folders, each observed along with 99 files in it
+            int folder = i / 100;
+            big.registerInterest( i % 100 == 0 ? "dir" + folder : "dir" + folder + "/file" + i + ".js", obs );
+        }
+        for (int burst = 0; burst < 5; burst++) {
+            delivered.set( 0 );
+            long start = System.nanoTime();
+            for (int i = 0; i < 10000; i++) {
+                big.addEvent( new FileChangeRegistry.Event( EventType.CHANGE, "dir" + (i / 100) + "/file" + i + ".js" ) );
+            }
+            // Each event reaches its file's observer, if any, and its folder's
+            int expected = 10000 + 9900;
+            long timeout = System.currentTimeMillis() + 30000;
+            while ( delivered.get() < expected && System.currentTimeMillis() < timeout ) {
+                Thread.sleep( 5 );
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+            assertEquals( expected, delivered.get() );
+            // Generous, to not fail on a loaded build machine, but far below
+            // what a linear scan of observers per event takes
+            assertTrue( "Burst " + burst + " took " + elapsed + "ms", elapsed < 10000 );
+        }
+        assertEquals( 10000, observers.size() );
+    }
+
+    @Test
+    public void testScopedObserver () throws IOException, InterruptedException {
+        O scoped = new O( "scoped" );
+        reg.registerInterest( projectRoot, scoped, WatchScope.depth( 1 ).excluding( "sublet" ) );
+        write( "prj/sub/a.txt", "Too deep" );
+        addFile( "prj/sublet/x.txt" );
+        assertFalse( oa.await().isEmpty() );
+        Thread.sleep( FileChangeRegistry.DEFAULT_DELAY * 2 );
+        assertTrue( scoped.drain().isEmpty() );
+
+        addFile( "prj/top.txt" );
+        List<EventType> l = scoped.await();
+        assertEquals( 1, l.size() );
+        assertEquals( EventType.NEW_CHILD, l.get( 0 ) );
+        assertEquals( "top.txt", scoped.lastPath );
+    }
+
+    @Test
+    public void testCoalesce () {
+        assertEquals( EventType.CHANGE, FileChangeRegistry.coalesce( EventType.NEW_CHILD, EventType.CHANGE ) );
+        assertEquals( EventType.DELETED, FileChangeRegistry.coalesce( EventType.CHANGE, EventType.DELETED ) );
+        assertEquals( EventType.NEW_CHILD, FileChangeRegistry.coalesce( EventType.CHANGE, EventType.NEW_CHILD ) );
+        assertEquals( EventType.DELETED, FileChangeRegistry.coalesce( EventType.DELETED, EventType.NEW_CHILD ) );
+        assertEquals( EventType.CHANGE, FileChangeRegistry.coalesce( EventType.DELETED, EventType.CHANGE ) );
+    }
+
+    @Test( timeout = 20000 )
+    public void testEventsAreCoalescedAndBatched () throws Exception {
+        FileChangeRegistry batching = new FileChangeRegistry( fake );
+        final List<List<FileChangeRegistry.Event>> batches = Collections.synchronizedList(
+                new ArrayList<List<FileChangeRegistry.Event>>() );
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        FileObserver obs = new FileObserver() {
+            @Override
+            public void onEvent ( EventType type, String path ) {
+                fail( "Should be called with a batch" );
+            }
+
+            @Override
+            public void onEvents ( List<FileChangeRegistry.Event> events ) {
+                batches.add( new ArrayList<>( events ) );
+                blocked.countDown();
+                try {
+                    // Hold up delivery, so everything sent meanwhile is
+                    // queued and delivered as one batch
+                    release.await();
+                } catch ( InterruptedException ex ) {
+                    throw new AssertionError( ex );
+                }
+            }
+        };
+        batching.registerInterest( "dir", obs );
+        batching.addEvent( new FileChangeRegistry.Event( EventType.CHANGE, "dir/first.js" ) );
+        blocked.await();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 20; j++) {
+                batching.addEvent( new FileChangeRegistry.Event( EventType.CHANGE, "dir/file" + j + ".js" ) );
+            }
+        }
+        batching.addEvent( new FileChangeRegistry.Event( EventType.DELETED, "dir/gone.js" ) );
+        batching.addEvent( new FileChangeRegistry.Event( EventType.NEW_CHILD, "dir/gone.js" ) );
+        batching.addEvent( new FileChangeRegistry.Event( EventType.CHANGE, "elsewhere/file.js" ) );
+        release.countDown();
+        while ( batches.size() < 2 ) {
+            Thread.sleep( 10 );
+        }
+        FileChangeStats stats = batching.getStats();
+        while ( stats.getQueueDepth() > 0 ) {
+            Thread.sleep( 10 );
+        }
+        Thread.sleep( FileChangeRegistry.DEFAULT_DELAY * 3 );
+        synchronized ( batches ) {
+            assertEquals( batches.toString(), 2, batches.size() );
+            assertEquals( 1, batches.get( 0 ).size() );
+            List<FileChangeRegistry.Event> second = batches.get( 1 );
+            assertEquals( second.toString(), 21, second.size() );
+            Set<String> paths = new HashSet<>();
+            for (FileChangeRegistry.Event e : second) {
+                assertTrue( "Duplicate " + e + " in " + second, paths.add( e.getPath() ) );
+            }
+            assertTrue( second.contains( new FileChangeRegistry.Event( EventType.DELETED, "gone.js" ) ) );
+        }
+        assertEquals( 64, stats.getEventsReceived() );
+        // The first event, then each of the 22 distinct paths queued while
+        // delivery was held up, once
+        assertEquals( 23, stats.getEventsDelivered() );
+        assertTrue( stats.getCoalesceRatio() > 0.6 );
+        assertEquals( 0, stats.getQueueDepth() );
+    }
+
     private static class O implements FileObserver {
         private List<EventType> evts = new ArrayList<EventType>();
         private final String name;
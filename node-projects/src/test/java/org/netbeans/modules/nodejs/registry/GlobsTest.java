@@ -0,0 +1,46 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GlobsTest {
+
+    @Test
+    public void testGlobs () {
+        assertTrue( Globs.toPattern( "*.js" ).matcher( "a.js" ).matches() );
+        assertFalse( Globs.toPattern( "*.js" ).matcher( "lib/a.js" ).matches() );
+        assertTrue( Globs.toPattern( "**/*.js" ).matcher( "a.js" ).matches() );
+        assertTrue( Globs.toPattern( "**/*.js" ).matcher( "lib/a.js" ).matches() );
+        assertTrue( Globs.toPattern( "lib/**" ).matcher( "lib/a/b.js" ).matches() );
+        assertTrue( Globs.toPattern( "a?c.txt" ).matcher( "abc.txt" ).matches() );
+        assertFalse( Globs.toPattern( "a?c.txt" ).matcher( "a/c.txt" ).matches() );
+        assertFalse( Globs.toPattern( "a.txt" ).matcher( "abtxt" ).matches() );
+    }
+
+    @Test
+    public void testEscaping () {
+        assertTrue( Globs.toPattern( "a+(b)[c]{d}^$|.txt" ).matcher( "a+(b)[c]{d}^$|.txt" ).matches() );
+        assertTrue( Globs.toPattern( "\\*.js" ).matcher( "*.js" ).matches() );
+        assertFalse( Globs.toPattern( "\\*.js" ).matcher( "a.js" ).matches() );
+        assertTrue( Globs.toPattern( "why\\?" ).matcher( "why?" ).matches() );
+        assertTrue( Globs.toPattern( "back\\\\slash" ).matcher( "back\\slash" ).matches() );
+    }
+}
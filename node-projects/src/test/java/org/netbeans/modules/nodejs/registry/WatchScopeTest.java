@@ -0,0 +1,67 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.registry;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WatchScopeTest {
+
+    @Test
+    public void testDepth () {
+        WatchScope s = WatchScope.depth( 1 );
+        assertTrue( s.includes( null ) );
+        assertTrue( s.includes( "a.js" ) );
+        assertFalse( s.includes( "lib/a.js" ) );
+        assertTrue( s.includesChildrenOf( "" ) );
+        assertFalse( s.includesChildrenOf( "lib" ) );
+
+        assertTrue( WatchScope.SELF.includes( null ) );
+        assertFalse( WatchScope.SELF.includes( "a.js" ) );
+        assertFalse( WatchScope.SELF.includesChildrenOf( null ) );
+        assertSame( WatchScope.SELF, WatchScope.depth( 0 ) );
+
+        assertTrue( WatchScope.ALL.includes( "a/b/c/d/e/f.js" ) );
+        assertTrue( WatchScope.ALL.includesChildrenOf( "a/b/c/d/e" ) );
+    }
+
+    @Test
+    public void testExclusions () {
+        WatchScope s = WatchScope.ALL.excluding( "node_modules", "**/.git", "build/*.tmp" );
+        assertFalse( s.includes( "node_modules" ) );
+        assertFalse( s.includes( "node_modules/foo/index.js" ) );
+        assertFalse( s.includesChildrenOf( "node_modules" ) );
+        assertTrue( s.includes( "lib/node_modules/foo.js" ) );
+        assertFalse( s.includes( ".git/HEAD" ) );
+        assertFalse( s.includes( "sub/.git/HEAD" ) );
+        assertFalse( s.includesChildrenOf( "sub/.git" ) );
+        assertTrue( s.includes( "sub/.gitignore" ) );
+        assertFalse( s.includes( "build/a.tmp" ) );
+        assertTrue( s.includes( "build/a.js" ) );
+        assertTrue( s.includes( "build/sub/a.tmp" ) );
+        assertTrue( s.includes( "index.js" ) );
+    }
+
+    @Test
+    public void testEquality () {
+        assertEquals( WatchScope.depth( 2 ).excluding( "x" ), WatchScope.depth( 2 ).excluding( "x" ) );
+        assertFalse( WatchScope.depth( 2 ).equals( WatchScope.depth( 3 ) ) );
+        assertFalse( WatchScope.ALL.equals( WatchScope.ALL.excluding( "x" ) ) );
+    }
+}
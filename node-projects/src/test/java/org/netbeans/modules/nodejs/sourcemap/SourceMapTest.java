@@ -0,0 +1,246 @@
+/* Copyright (C) 2014 Tim Boudreau
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to
+ deal in the Software without restriction, including without limitation the
+ rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ sell copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE. */
+package org.netbeans.modules.nodejs.sourcemap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.modules.nodejs.json.SimpleJSONParser.JsonException;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class SourceMapTest {
+    private File dir;
+
+    @Before
+    public void setUp () throws IOException {
+        dir = Files.createTempDirectory( "SourceMapTest" ).toFile();
+    }
+
+    @After
+    public void tearDown () {
+        delete( dir );
+    }
+
+    @Test
+    public void testDecode () throws Exception {
+        SourceMap map = SourceMap.decode( new String[]{"a.ts"}, "AAAA;AACA,IAAI;;AAEA" );
+        assertEquals( 4, map.lineCount() );
+        assertPosition( "a.ts", 1, 1, map.originalPosition( 1, 1 ) );
+        assertPosition( "a.ts", 2, 1, map.originalPosition( 2, 1 ) );
+        assertPosition( "a.ts", 2, 1, map.originalPosition( 2, 4 ) );
+        assertPosition( "a.ts", 2, 5, map.originalPosition( 2, 5 ) );
+        assertPosition( "a.ts", 2, 5, map.originalPosition( 2, 100 ) );
+        assertPosition( "a.ts", 2, 1, map.originalPosition( 2, 0 ) );
+        assertNull( map.originalPosition( 3, 1 ) );
+        assertPosition( "a.ts", 4, 5, map.originalPosition( 4, 1 ) );
+        assertNull( map.originalPosition( 5, 1 ) );
+        assertNull( map.originalPosition( 0, 1 ) );
+    }
+
+    @Test
+    public void testMultiDigitValues () throws Exception {
+        // 0, 0, 16, 1
+        SourceMap map = SourceMap.decode( new String[]{"a.ts"}, "AAgBC" );
+        assertPosition( "a.ts", 17, 2, map.originalPosition( 1, 1 ) );
+        // Column 1000, source 1, line -2 and column -1 from there, name 5
+        map = SourceMap.decode( new String[]{"a.ts", "b.ts"}, "AAgBC,w+BCFDK" );
+        assertPosition( "b.ts", 15, 1, map.originalPosition( 1, 1001 ) );
+        assertPosition( "a.ts", 17, 2, map.originalPosition( 1, 1000 ) );
+    }
+
+    @Test
+    public void testUnmappedSegments () throws Exception {
+        SourceMap map = SourceMap.decode( new String[]{"a.ts"}, "AAAA,E" );
+        assertPosition( "a.ts", 1, 1, map.originalPosition( 1, 2 ) );
+        assertNull( map.originalPosition( 1, 3 ) );
+    }
+
+    @Test
+    public void testUnsortedColumns () throws Exception {
+        SourceMap map = SourceMap.decode( new String[]{"a.ts"}, "IAAI,DAAE" );
+        assertPosition( "a.ts", 1, 7, map.originalPosition( 1, 4 ) );
+        assertPosition( "a.ts", 1, 5, map.originalPosition( 1, 5 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void testBadMappings () throws Exception {
+        SourceMap.decode( new String[]{"a.ts"}, "AA!A" );
+    }
+
+    @Test
+    public void testParse () throws Exception {
+        SourceMap map = SourceMap.parse( new StringReader( "{\"version\":3,\"file\":\"x.js\",\"sourceRoot\":\"src\","
+                + "\"sources\":[\"x.ts\", null],\"sourcesContent\":[\"let x = {\\\"a\\\": [1]};\", null],"
+                + "\"names\":[\"x\"],\"mappings\":\"AAgBC\"}" ) );
+        assertEquals( 2, map.sourceCount() );
+        assertEquals( "src/x.ts", map.source( 0 ) );
+        assertNull( map.source( 1 ) );
+        assertPosition( "src/x.ts", 17, 2, map.originalPosition( 1, 1 ) );
+    }
+
+    @Test( expected = JsonException.class )
+    public void testIndexMapsRejected () throws Exception {
+        SourceMap.parse( new StringReader( "{\"version\":3,\"sections\":[]}" ) );
+    }
+
+    @Test
+    public void testMappingUrl () {
+        assertEquals( "app.js.map", SourceMaps.mappingUrl( "var x;\n//# sourceMappingURL=app.js.map\n" ) );
+        assertEquals( "a.map", SourceMaps.mappingUrl( "x\n/*# sourceMappingURL=a.map */" ) );
+        assertEquals( "old.map", SourceMaps.mappingUrl( "x\n//@ sourceMappingURL=old.map" ) );
+        assertEquals( "b.map", SourceMaps.mappingUrl( "//# sourceMappingURL=a.map\n//# sourceMappingURL=b.map" ) );
+        assertNull( SourceMaps.mappingUrl( "var s = 'sourceMappingURL=x.map';" ) );
+        assertNull( SourceMaps.mappingUrl( "sourceMappingURL=" ) );
+    }
+
+    @Test
+    public void testSourceMappingComment () throws Exception {
+        File dist = new File( dir, "dist" );
+        assertTrue( dist.mkdirs() );
+        File js = write( "dist/app.js", "x();\n//# sourceMappingURL=maps/app.map\n" );
+        assertTrue( new File( dist, "maps" ).mkdirs() );
+        write( "dist/maps/app.map", map( "../../src/app.ts", "AAAA;AACA" ) );
+        SourceMaps maps = new SourceMaps( 8, 0 );
+        SourceMap.Position pos = maps.originalPosition( js, 2, 1 );
+        assertNotNull( pos );
+        assertEquals( new File( dir, "src/app.ts" ).getPath(), pos.source );
+        assertEquals( 2, pos.line );
+        assertEquals( 1, pos.column );
+    }
+
+    @Test
+    public void testSiblingMapAndInvalidation () throws Exception {
+        File js = write( "app.js", "x();\n" );
+        SourceMaps maps = new SourceMaps( 8, 0 );
+        assertNull( maps.get( js ) );
+        File mapFile = write( "app.js.map", map( "app.ts", "AAAA" ) );
+        SourceMap map = maps.get( js );
+        assertNotNull( map );
+        assertSame( map, maps.get( js ) );
+        assertPosition( new File( dir, "app.ts" ).getPath(), 1, 1, maps.originalPosition( js, 1, 1 ) );
+
+        write( "app.js.map", map( "app.ts", "AAEA" ) );
+        assertTrue( mapFile.setLastModified( mapFile.lastModified() - 10000 ) );
+        assertNotSame( map, maps.get( js ) );
+        assertPosition( new File( dir, "app.ts" ).getPath(), 3, 1, maps.originalPosition( js, 1, 1 ) );
+    }
+
+    @Test
+    public void testRecheckIsThrottled () throws Exception {
+        File js = write( "app.js", "x();\n" );
+        SourceMaps maps = new SourceMaps( 8, 60000 );
+        assertNull( maps.get( js ) );
+        write( "app.js.map", map( "app.ts", "AAAA" ) );
+        assertNull( maps.get( js ) );
+    }
+
+    @Test
+    public void testInlineMap () throws Exception {
+        String json = map( "inline.ts", "AAEE" );
+        File js = write( "bundle.js", "x();\n//# sourceMappingURL=data:application/json;charset=utf-8;base64,"
+                + Base64.getEncoder().encodeToString( json.getBytes( StandardCharsets.UTF_8 ) ) + "\n" );
+        SourceMap.Position pos = new SourceMaps( 8, 0 ).originalPosition( js, 1, 1 );
+        assertPosition( new File( dir, "inline.ts" ).getPath(), 3, 3, pos );
+    }
+
+    @Test
+    public void testLargeInlineMap () throws Exception {
+        StringBuilder mappings = new StringBuilder( "AAAA" );
+        for (int i = 0; i < 5000; i++) {
+            mappings.append( ";AACA" );
+        }
+        String json = map( "big.ts", mappings.toString() );
+        File js = write( "big.js", "x();\n//# sourceMappingURL=data:application/json;base64,"
+                + Base64.getEncoder().encodeToString( json.getBytes( StandardCharsets.UTF_8 ) ) );
+        SourceMap.Position pos = new SourceMaps( 8, 0 ).originalPosition( js, 4000, 1 );
+        assertPosition( new File( dir, "big.ts" ).getPath(), 4000, 1, pos );
+    }
+
+    @Test
+    public void testMappingUrlOfLargeScript () throws Exception {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            code.append( "var x" ).append( i ).append( " = 'sourceMappingURL=no.map';\n" );
+        }
+        assertNull( SourceMaps.mappingUrl( write( "plain.js", code.toString() ) ) );
+        StringBuilder url = new StringBuilder( "data:application/json;base64," );
+        for (int i = 0; i < 4000; i++) {
+            url.append( "QUFB" );
+        }
+        assertEquals( url.toString(), SourceMaps.mappingUrl( write( "inline.js",
+                code + "//# sourceMappingURL=" + url + "\n\n" ) ) );
+        // One long line which is not the comment
+        assertNull( SourceMaps.mappingUrl( write( "minified.js", code.toString().replace( '\n', ';' ) ) ) );
+    }
+
+    @Test
+    public void testWebpackSources () throws Exception {
+        assertTrue( new File( dir, "src" ).mkdirs() );
+        File original = write( "src/index.ts", "x();\n" );
+        assertTrue( new File( dir, "dist" ).mkdirs() );
+        File js = write( "dist/main.js", "x();\n" );
+        write( "dist/main.js.map", map( "webpack://my-app/./src/index.ts?4f2a", "AAAA" ) );
+        SourceMap.Position pos = new SourceMaps( 8, 0 ).originalPosition( js, 1, 1 );
+        assertPosition( original.getPath(), 1, 1, pos );
+        write( "dist/main.js.map", map( "webpack:///webpack/bootstrap", "AAAA" ) );
+        assertTrue( new File( dir, "dist/main.js.map" ).setLastModified( 1000 ) );
+        assertNull( new SourceMaps( 8, 0 ).originalPosition( js, 1, 1 ) );
+    }
+
+    private static String map ( String source, String mappings ) {
+        return "{\"version\":3,\"sources\":[\"" + source + "\"],\"names\":[],\"mappings\":\"" + mappings + "\"}";
+    }
+
+    private File write ( String name, String content ) throws IOException {
+        File f = new File( dir, name );
+        try (OutputStream out = new FileOutputStream( f )) {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return f;
+    }
+
+    private static void assertPosition ( String source, int line, int column, SourceMap.Position pos ) {
+        assertNotNull( pos );
+        assertEquals( source, pos.source );
+        assertEquals( pos.toString(), line, pos.line );
+        assertEquals( pos.toString(), column, pos.column );
+    }
+
+    private static void delete ( File f ) {
+        File[] kids = f.listFiles();
+        if (kids != null) {
+            for (File kid : kids) {
+                delete( kid );
+            }
+        }
+        f.delete();
+    }
+}